@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 
@@ -42,6 +43,13 @@ public class SecurityConfig {
                         .requestMatchers("/ws/**").authenticated()
                         .requestMatchers("/dashboard/**").hasRole("ADMIN")
                         .requestMatchers("/front/**").hasRole("USER")
+                        // Statistiques et vidage du cache des réponses LLM : réservés aux admins malgré le permitAll de /api/**
+                        .requestMatchers(HttpMethod.GET, "/api/outbound/llm-cache").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.DELETE, "/api/outbound/llm-cache/**").hasRole("ADMIN")
+                        // Reconstruction complète de l'index plein texte : réservée aux admins
+                        .requestMatchers(HttpMethod.POST, "/search/reindex").hasRole("ADMIN")
+                        // Les identifiants de pièces jointes se devinent : le téléchargement exige une session
+                        .requestMatchers("/api/nonconformities/*/attachments/**").authenticated()
                         .requestMatchers("/api/**").permitAll()
                         .requestMatchers("/chat/**").authenticated()
 
@@ -62,9 +70,9 @@ public class SecurityConfig {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(Collections.singletonList("http://localhost:4200"));
         configuration.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS"));
-        configuration.setAllowedHeaders(List.of("Authorization", "Content-Type", "Accept"));
+        configuration.setAllowedHeaders(List.of("Authorization", "Content-Type", "Accept", "Range"));
         configuration.setAllowCredentials(true);
-        configuration.setExposedHeaders(List.of("Authorization"));
+        configuration.setExposedHeaders(List.of("Authorization", "X-Next-Cursor", "X-Total-Count", "Content-Range", "Accept-Ranges", "Content-Disposition"));
         configuration.setMaxAge(3600L);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
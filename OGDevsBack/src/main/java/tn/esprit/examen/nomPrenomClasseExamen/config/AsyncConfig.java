@@ -0,0 +1,25 @@
+package tn.esprit.examen.nomPrenomClasseExamen.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Délai des requêtes asynchrones (réponses diffusées en Server-Sent Events) : une génération
+ * complète par un modèle de langage dépasse souvent les 30 s accordées par défaut par Tomcat.
+ */
+@Configuration
+public class AsyncConfig implements WebMvcConfigurer {
+
+    private final long requestTimeoutMs;
+
+    public AsyncConfig(@Value("${streaming.request-timeout-ms:180000}") long requestTimeoutMs) {
+        this.requestTimeoutMs = requestTimeoutMs;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(requestTimeoutMs);
+    }
+}
@@ -1,29 +1,122 @@
 package tn.esprit.examen.nomPrenomClasseExamen.config;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 import tn.esprit.examen.nomPrenomClasseExamen.services.WebsocketHandler;
 import tn.esprit.examen.nomPrenomClasseExamen.services.WebsocketInterceptor;
 
-
-
+/**
+ * Messagerie STOMP. En mode {@code simple} (par défaut), les abonnements sont gérés en mémoire
+ * et une seule instance peut être déployée. En mode {@code relay}, les destinations sont relayées
+ * vers un broker STOMP externe (RabbitMQ avec le plugin STOMP, ActiveMQ Artemis...) partagé par
+ * toutes les instances : chaque message atteint les clients quel que soit le nœud auquel ils sont
+ * connectés, et le registre des sessions utilisateur est diffusé entre les nœuds.
+ */
+@Slf4j
 @Configuration
 @EnableWebSocketMessageBroker
-public class WebSocketConfig implements WebSocketMessageBrokerConfigurer  {
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${chat.broker.prefixes:/room,/topic}")
+    private String[] brokerPrefixes;
+
+    @Value("${chat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${chat.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${chat.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${chat.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${chat.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    @Value("${chat.broker.relay.heartbeat-ms:10000}")
+    private long relayHeartbeatMs;
+
+    // Une file par client ; au-delà, les envois vers une session lente sont bornés
+    @Value("${chat.ws.send-time-limit-ms:15000}")
+    private int sendTimeLimitMs;
+
+    @Value("${chat.ws.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${chat.ws.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${chat.ws.inbound-threads:8}")
+    private int inboundThreads;
+
+    @Value("${chat.ws.outbound-threads:8}")
+    private int outboundThreads;
 
     @Override
-    public void configureMessageBroker(org.springframework.messaging.simp.config.MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/room");
+    public void configureMessageBroker(MessageBrokerRegistry config) {
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            StompBrokerRelayRegistration relay = config.enableStompBrokerRelay(brokerPrefixes)
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    .setSystemHeartbeatSendInterval(relayHeartbeatMs)
+                    .setSystemHeartbeatReceiveInterval(relayHeartbeatMs)
+                    // Sessions et destinations utilisateur partagées entre les instances
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/simp-user-registry");
+            if (!relayVirtualHost.isBlank()) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+            log.info("Relais STOMP vers {}:{} pour les destinations {}", relayHost, relayPort, String.join(", ", brokerPrefixes));
+        } else {
+            config.enableSimpleBroker(brokerPrefixes);
+            log.info("Broker STOMP en mémoire pour les destinations {}", String.join(", ", brokerPrefixes));
+        }
         config.setApplicationDestinationPrefixes("/chat");
+        // Les messages d'une session sont remis dans l'ordre de publication, donc dans l'ordre du salon
+        config.setPreservePublishOrder(true);
     }
 
     @Override
-    public void registerStompEndpoints(org.springframework.web.socket.config.annotation.StompEndpointRegistry registry) {
+    public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws")
                 .setAllowedOrigins("http://localhost:4200")
                 .setHandshakeHandler(new WebsocketHandler())
                 .addInterceptors(new WebsocketInterceptor())
                 .withSockJS();
     }
-}
\ No newline at end of file
+
+    // Un client qui ne consomme plus est déconnecté au lieu de retenir les envois des autres
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor().corePoolSize(inboundThreads).maxPoolSize(inboundThreads);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor().corePoolSize(outboundThreads).maxPoolSize(outboundThreads);
+    }
+}
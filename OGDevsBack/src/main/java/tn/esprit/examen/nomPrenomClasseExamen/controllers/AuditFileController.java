@@ -3,14 +3,28 @@ package tn.esprit.examen.nomPrenomClasseExamen.controllers;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformitySource;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityType;
 import tn.esprit.examen.nomPrenomClasseExamen.services.AiSuggestionService;
+import tn.esprit.examen.nomPrenomClasseExamen.services.AuditAnalysisService;
 import tn.esprit.examen.nomPrenomClasseExamen.services.NonConformityService;
 import tn.esprit.examen.nomPrenomClasseExamen.services.TextExtractionService;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -19,18 +33,23 @@ import java.util.Map;
 public class AuditFileController {
 
     private static final Logger logger = LoggerFactory.getLogger(AuditFileController.class);
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final int MAX_PAGE_SIZE = 200;
 
     private final TextExtractionService textExtractionService;
     private final AiSuggestionService aiSuggestionService;
     private final NonConformityService nonConformityService;
+    private final AuditAnalysisService auditAnalysisService;
 
     public AuditFileController(
             TextExtractionService textExtractionService,
             AiSuggestionService aiSuggestionService,
-            NonConformityService nonConformityService) {
+            NonConformityService nonConformityService,
+            AuditAnalysisService auditAnalysisService) {
         this.textExtractionService = textExtractionService;
         this.aiSuggestionService = aiSuggestionService;
         this.nonConformityService = nonConformityService;
+        this.auditAnalysisService = auditAnalysisService;
     }
 
     @PostMapping("/upload")
@@ -55,6 +74,23 @@ public class AuditFileController {
         }
     }
 
+    // Rapport complet : chaque constat est enregistré comme non-conformité et diffusé avec ses suggestions
+    @PostMapping(value = "/analyze", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<String>>> analyzeFile(@RequestParam("file") MultipartFile file,
+                                                                     @AuthenticationPrincipal Jwt jwt) {
+        try {
+            logger.info("Analyzing audit file: {}", file.getOriginalFilename());
+            String text = textExtractionService.extractText(file);
+            return ResponseEntity.ok(auditAnalysisService.analyze(text, jwt.getSubject()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Audit file {} rejected: {}", file.getOriginalFilename(), e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Failed to analyze audit file: {}", e.getMessage(), e);
+            return ResponseEntity.status(500).build();
+        }
+    }
+
     @PostMapping("/save")
     public ResponseEntity<?> saveNonConformity(@RequestBody Map<String, Object> request) {
         try {
@@ -91,9 +127,24 @@ public class AuditFileController {
         }
     }
 
+    // Sans paramètre size, la liste complète est renvoyée ; sinon une page, avec le total en en-tête
     @GetMapping("/non-conformities")
-    public ResponseEntity<List<NonConformityDTO>> getSavedNonConformities() {
-        logger.info("Fetching all non-conformities");
-        return ResponseEntity.ok(nonConformityService.getAllNonConformities());
+    public ResponseEntity<List<NonConformityDTO>> getSavedNonConformities(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) NonConformitySource source,
+            @RequestParam(required = false) NonConformityType type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size) {
+        logger.info("Fetching non-conformities (page {}, size {})", page, size);
+        Pageable pageable = size == null
+                ? Pageable.unpaged()
+                : PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), MAX_PAGE_SIZE),
+                Sort.by(Sort.Direction.DESC, "idNonConformity"));
+        Page<NonConformityDTO> result = nonConformityService.getNonConformities(status, source, type, from, to, pageable);
+        return ResponseEntity.ok()
+                .header(TOTAL_COUNT_HEADER, String.valueOf(result.getTotalElements()))
+                .body(result.getContent());
     }
 }
\ No newline at end of file
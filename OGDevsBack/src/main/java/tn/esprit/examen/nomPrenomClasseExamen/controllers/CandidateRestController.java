@@ -1,6 +1,8 @@
 package tn.esprit.examen.nomPrenomClasseExamen.controllers;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -26,6 +28,8 @@ public class CandidateRestController {
     private final ICandidateServices candidateService;
     private final EmailService emailService;
     private static final Logger logger = LoggerFactory.getLogger(CandidateRestController.class);
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final int MAX_PAGE_SIZE = 200;
 
     @PostMapping
     public ResponseEntity<Candidate> createCandidate(@RequestBody Candidate candidate) {
@@ -154,12 +158,22 @@ public class CandidateRestController {
         }
     }
 
+    // Sans paramètre size, la liste complète est renvoyée ; sinon une page, avec le total en en-tête
     @GetMapping("/sorted-by-score/{jobOfferId}")
-    public ResponseEntity<List<Candidate>> getCandidatesSortedByScore(@PathVariable Long jobOfferId) {
+    public ResponseEntity<List<Candidate>> getCandidatesSortedByScore(@PathVariable Long jobOfferId,
+                                                                      @RequestParam(defaultValue = "0") int page,
+                                                                      @RequestParam(required = false) Integer size) {
         try {
-            List<Candidate> sortedCandidates = candidateService.getAllCandidatesSortedByScore(jobOfferId);
-            logger.info("Retrieved sorted candidates for job offer {}: {}", jobOfferId, sortedCandidates);
-            return new ResponseEntity<>(sortedCandidates, HttpStatus.OK);
+            if (size == null) {
+                List<Candidate> sortedCandidates = candidateService.getAllCandidatesSortedByScore(jobOfferId);
+                logger.info("Retrieved {} sorted candidates for job offer {}", sortedCandidates.size(), jobOfferId);
+                return new ResponseEntity<>(sortedCandidates, HttpStatus.OK);
+            }
+            Page<Candidate> ranking = candidateService.getCandidatesRankedByScore(jobOfferId,
+                    PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), MAX_PAGE_SIZE)));
+            return ResponseEntity.ok()
+                    .header(TOTAL_COUNT_HEADER, String.valueOf(ranking.getTotalElements()))
+                    .body(ranking.getContent());
         } catch (IllegalArgumentException e) {
             logger.warn("Job offer with id {} not found", jobOfferId);
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
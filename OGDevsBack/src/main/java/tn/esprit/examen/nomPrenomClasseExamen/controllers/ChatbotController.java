@@ -1,56 +1,88 @@
-package com.example.nomPrenomClasseExamen.controller;
+package tn.esprit.examen.nomPrenomClasseExamen.controllers;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.SimilarNonConformityDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformitySource;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityType;
+import tn.esprit.examen.nomPrenomClasseExamen.services.ChatbotWorkerPool;
+import tn.esprit.examen.nomPrenomClasseExamen.services.SimilarNonConformityIndex;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/chatbot")
 public class ChatbotController {
 
-    @Value("${python.executable}")
-    private String pythonExecutable;
+    private static final int SIMILAR_IN_ANSWER = 3;
+    private static final int MAX_SIMILAR = 50;
 
-    @Value("${python.script.path}")
-    private String pythonScriptPath;
+    private final ChatbotWorkerPool chatbotWorkerPool;
+    private final SimilarNonConformityIndex similarNonConformityIndex;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    public ChatbotController(ChatbotWorkerPool chatbotWorkerPool, SimilarNonConformityIndex similarNonConformityIndex) {
+        this.chatbotWorkerPool = chatbotWorkerPool;
+        this.similarNonConformityIndex = similarNonConformityIndex;
+    }
 
     @PostMapping("/query")
     @PreAuthorize("hasRole('ROLE_USER')")
     public ResponseEntity<?> queryChatbot(@RequestBody QueryRequest queryRequest) {
+        if (queryRequest.getQuery() == null || queryRequest.getQuery().isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Query is required"));
+        }
         try {
-            String query = queryRequest.getQuery().replace("\"", "\\\"");
-            ProcessBuilder pb = new ProcessBuilder(pythonExecutable, pythonScriptPath, query);
-            // Set working directory to the chatbot folder
-            pb.directory(new java.io.File("C:/Users/HP/OneDrive/Bureau/4SE4/LastPIProject/OGDev-Coconsult/chatbot"));
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line);
-                }
-            }
-
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                return ResponseEntity.status(500).body(Map.of("error", "Python script failed with exit code: " + exitCode));
+            Map<String, Object> response = new HashMap<>(chatbotWorkerPool.query(queryRequest.getQuery()).join());
+            response.put("similarNonConformities", similarCases(queryRequest.getQuery()));
+            return ResponseEntity.ok(response);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", "Chatbot unavailable: " + e.getMessage()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(Map.of("error", "Chatbot did not answer in time"));
             }
+            String reason = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+            return ResponseEntity.status(500).body(Map.of("error", "Error executing chatbot: " + reason));
+        }
+    }
 
-            Map<String, Object> response = objectMapper.readValue(output.toString(), Map.class);
-            return ResponseEntity.ok(response);
+    // Les cas similaires complètent la réponse ; leur absence ne doit pas la faire échouer
+    private List<SimilarNonConformityDTO> similarCases(String query) {
+        try {
+            return similarNonConformityIndex.findSimilar(query, SIMILAR_IN_ANSWER, SimilarNonConformityIndex.Filter.NONE);
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
 
-        } catch (Exception e) {
-            return ResponseEntity.status(500).body(Map.of("error", "Error executing chatbot: " + e.getMessage()));
+    @GetMapping("/similar-nonconformities")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    public ResponseEntity<?> similarNonConformities(@RequestParam String query,
+                                                    @RequestParam(defaultValue = "5") int limit,
+                                                    @RequestParam(required = false) NonConformitySource source,
+                                                    @RequestParam(required = false) NonConformityType type,
+                                                    @RequestParam(required = false) String status,
+                                                    @RequestParam(required = false) Long indicatorId,
+                                                    @RequestParam(required = false) Long excludeId) {
+        if (query.isBlank() || limit <= 0 || limit > MAX_SIMILAR) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Query is required and limit must be between 1 and " + MAX_SIMILAR));
+        }
+        try {
+            List<SimilarNonConformityDTO> similar = similarNonConformityIndex.findSimilar(query, limit,
+                    new SimilarNonConformityIndex.Filter(source, type, status, indicatorId, excludeId));
+            return ResponseEntity.ok(similar);
+        } catch (IOException e) {
+            return ResponseEntity.status(500).body(Map.of("error", "Similarity index unavailable: " + e.getMessage()));
         }
     }
 }
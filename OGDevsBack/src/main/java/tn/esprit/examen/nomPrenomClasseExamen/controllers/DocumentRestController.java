@@ -6,8 +6,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Document;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.IngestionJob;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.TypeDocument;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Version;
+import tn.esprit.examen.nomPrenomClasseExamen.services.IDocumentIngestionService;
 import tn.esprit.examen.nomPrenomClasseExamen.services.IDocumentServices;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -24,6 +26,7 @@ import java.util.Optional;
 public class DocumentRestController {
 
     private final IDocumentServices documentServices;
+    private final IDocumentIngestionService ingestionService;
 
     @PostMapping("/createDocument")
     public ResponseEntity<Document> createDocument(@RequestBody Document document) {
@@ -110,6 +113,42 @@ public class DocumentRestController {
         }
     }
 
+    // Ingestion asynchrone : retourne immédiatement le job à interroger
+    @PostMapping("/upload/async")
+    public ResponseEntity<IngestionJob> uploadAsync(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "userId", required = false) String userId,
+            @RequestParam(value = "config", required = false) Map<String, Object> config) {
+        try {
+            return new ResponseEntity<>(ingestionService.submit(file, userId, config), HttpStatus.ACCEPTED);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @PostMapping("/upload/batch")
+    public ResponseEntity<List<IngestionJob>> uploadBatch(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "userId", required = false) String userId,
+            @RequestParam(value = "config", required = false) Map<String, Object> config) {
+        try {
+            return new ResponseEntity<>(ingestionService.submitBatch(files, userId, config), HttpStatus.ACCEPTED);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<IngestionJob> getIngestionJob(@PathVariable Long jobId) {
+        return ingestionService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
     @GetMapping("/{id}/versions")
     public ResponseEntity<List<Version>> getDocumentVersions(@PathVariable Long id) {
         try {
@@ -3,19 +3,25 @@ package tn.esprit.examen.nomPrenomClasseExamen.controllers;
 import lombok.RequiredArgsConstructor;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.IndicatorSeriesDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Indicator;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.IndicatorDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Report;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.RollupGranularity;
+import tn.esprit.examen.nomPrenomClasseExamen.exceptions.EntityNotFoundException;
 import tn.esprit.examen.nomPrenomClasseExamen.services.IIndicatorServices;
+import tn.esprit.examen.nomPrenomClasseExamen.services.IIndicatorTimeSeriesService;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -26,6 +32,7 @@ import java.util.stream.Collectors;
 public class IndicatorRestController {
 
     private final IIndicatorServices indicatorServices;
+    private final IIndicatorTimeSeriesService indicatorTimeSeriesService;
 
     // --- Méthodes existantes pour Indicators (inchangées) ---
 
@@ -106,6 +113,22 @@ public class IndicatorRestController {
         }
     }
 
+    // Série pré-agrégée ; sans granularité, elle est choisie selon la période (heure, jour ou mois)
+    @GetMapping("/{id}/series")
+    public ResponseEntity<IndicatorSeriesDTO> fetchIndicatorSeries(
+            @PathVariable Long id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) RollupGranularity granularity) {
+        try {
+            return ResponseEntity.ok(indicatorTimeSeriesService.getSeries(id, from, to, granularity));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @PostMapping("/upload/json")
     public ResponseEntity<List<Indicator>> importJsonIndicators(@RequestBody List<Indicator> indicators) {
         try {
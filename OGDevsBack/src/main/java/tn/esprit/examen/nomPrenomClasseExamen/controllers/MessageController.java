@@ -2,6 +2,10 @@ package tn.esprit.examen.nomPrenomClasseExamen.controllers;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -13,20 +17,25 @@ import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ChatInboxDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.dto.ChatRoomCreationRequest;
 import tn.esprit.examen.nomPrenomClasseExamen.dto.ChatRoomDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.dto.MessageDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.MessagePageDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.dto.MessageRequest;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatAttachment;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatRoom;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Message;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.UserEntity;
+import tn.esprit.examen.nomPrenomClasseExamen.exceptions.EntityNotFoundException;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.UserRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.services.IChat;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
-import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -44,7 +53,7 @@ public class MessageController {
     private final SimpUserRegistry userRegistry;
     private final UserRepository userRepository;
 
-    private final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
     private UserEntity getAuthenticatedUser(Principal principal) {
         var authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -103,11 +112,16 @@ public class MessageController {
     public ResponseEntity<?> getLastMessages(@RequestParam List<Long> chatRoomIds) {
         try {
             log.info("Fetching last messages for chat rooms: {}", chatRoomIds);
+            Map<Long, ChatRoom> userRooms = new HashMap<>();
+            chatService.getRooms(getAuthenticatedUser(null).getId()).forEach(room -> userRooms.put(room.getId(), room));
             List<ChatRoom> chatRooms = chatRoomIds.stream()
-                    .map(id -> chatService.getRooms(getAuthenticatedUser(null).getId()).stream()
-                            .filter(room -> room.getId().equals(id))
-                            .findFirst()
-                            .orElseThrow(() -> new RuntimeException("Chat room not found: " + id)))
+                    .map(id -> {
+                        ChatRoom room = userRooms.get(id);
+                        if (room == null) {
+                            throw new RuntimeException("Chat room not found: " + id);
+                        }
+                        return room;
+                    })
                     .toList();
             List<Message> lastMessages = chatService.getLastMessage1(chatRooms);
             log.info("Fetched last messages for {} chat rooms", chatRoomIds.size());
@@ -120,6 +134,21 @@ public class MessageController {
         }
     }
 
+    @GetMapping("/inbox")
+    public ResponseEntity<?> getInbox() {
+        try {
+            String userId = getAuthenticatedUser(null).getId();
+            List<ChatInboxDTO> inbox = chatService.getInbox(userId);
+            log.info("Fetched inbox of {} chat rooms for user {}", inbox.size(), userId);
+            return ResponseEntity.ok(inbox);
+        } catch (Exception e) {
+            log.error("Error fetching inbox: {}", e.getMessage(), e);
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Failed to fetch inbox: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+
     @PostMapping(value = "/send", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> sendMessage(@RequestBody MessageRequest msg) {
         try {
@@ -158,30 +187,26 @@ public class MessageController {
     }
 
     @GetMapping("/rooms/{roomId}/messages")
-    public ResponseEntity<?> getMessages(@PathVariable("roomId") Long roomId, Principal principal) {
+    public ResponseEntity<?> getMessages(@PathVariable("roomId") Long roomId,
+                                         @RequestParam(value = "before", required = false) Long before,
+                                         @RequestParam(value = "limit", defaultValue = "50") int limit,
+                                         Principal principal) {
         try {
             UserEntity user = getAuthenticatedUser(principal);
-            log.info("Fetching messages for chat room {} by user {}", roomId, user.getId());
-            ChatRoom chatRoom = chatService.getRooms(user.getId()).stream()
-                    .filter(room -> room.getId().equals(roomId))
-                    .findFirst()
-                    .orElseThrow(() -> new RuntimeException("Chat room not found or user not a member: " + roomId));
-            List<Message> messages = chatService.getMessagesFrom1(chatRoom);
-            List<MessageDTO> messageDTOs = messages.stream().map(message -> {
-                MessageDTO dto = new MessageDTO();
-                dto.setId(message.getId());
-                dto.setChatRoomId(message.getChatRoom().getId());
-                dto.setChatRoomName(message.getChatRoom().getName());
-                dto.setSenderId(message.getSender().getId());
-                dto.setSenderUsername(message.getSender().getUsername());
-                dto.setContent(message.getContent());
-                dto.setAttachment(message.getAttachment() != null ? Base64.getEncoder().encodeToString(message.getAttachment()) : null);
-                dto.setCreatedAt(dateFormatter.format(message.getCreatedAt()));
-                dto.setSeen(message.isSeen());
-                return dto;
-            }).toList();
-            log.info("Fetched {} messages for chat room {}", messageDTOs.size(), roomId);
-            return ResponseEntity.ok(messageDTOs);
+            log.info("Fetching messages for chat room {} by user {} (before {}, limit {})", roomId, user.getId(), before, limit);
+            MessagePageDTO page = chatService.getMessagePage(roomId, user.getId(), before, limit);
+            log.info("Fetched {} messages for chat room {}", page.getMessages().size(), roomId);
+            // Le corps reste la liste des messages ; le curseur de la page suivante est transmis en en-tête
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.getNextCursor().toString());
+            }
+            return response.body(page.getMessages());
+        } catch (EntityNotFoundException e) {
+            log.warn("Messages not available for chat room {}: {}", roomId, e.getMessage());
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
         } catch (Exception e) {
             log.error("Error fetching messages for chat room {}: {}", roomId, e.getMessage(), e);
             Map<String, String> errorResponse = new HashMap<>();
@@ -190,6 +215,55 @@ public class MessageController {
         }
     }
 
+    @PostMapping(value = "/rooms/{roomId}/attachments", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> sendAttachment(@PathVariable("roomId") Long roomId,
+                                            @RequestParam("file") MultipartFile file,
+                                            @RequestParam(value = "message", required = false) String content) {
+        try {
+            UserEntity sender = getAuthenticatedUser(null);
+            log.info("Received attachment {} ({} bytes) for chat room {} from user {}", file.getOriginalFilename(), file.getSize(), roomId, sender.getId());
+            MessageDTO savedMessageDTO = chatService.sendAttachment(roomId, sender, content, file);
+            messagingTemplate.convertAndSend("/room/messages/" + roomId, savedMessageDTO);
+            return new ResponseEntity<>(savedMessageDTO, HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        } catch (EntityNotFoundException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+        } catch (Exception e) {
+            log.error("Error sending attachment in chat room {}: {}", roomId, e.getMessage(), e);
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Failed to send attachment: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+
+    // Réponse 206 gérée par Spring MVC lorsque la requête porte un en-tête Range
+    @GetMapping("/attachments/{attachmentId}")
+    public ResponseEntity<Resource> downloadAttachment(@PathVariable("attachmentId") Long attachmentId,
+                                                       @RequestParam(value = "inline", defaultValue = "false") boolean inline) {
+        try {
+            UserEntity user = getAuthenticatedUser(null);
+            ChatAttachment attachment = chatService.getAttachment(attachmentId, user.getId());
+            Resource content = chatService.getAttachmentContent(attachment);
+            ContentDisposition disposition = (inline ? ContentDisposition.inline() : ContentDisposition.attachment())
+                    .filename(attachment.getFileName(), StandardCharsets.UTF_8)
+                    .build();
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(attachment.getContentType()))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
+                    .cacheControl(CacheControl.maxAge(Duration.ofDays(7)).cachePrivate())
+                    .eTag(String.valueOf(attachment.getId())) // Contenu immuable pour un identifiant donné
+                    .body(content);
+        } catch (EntityNotFoundException e) {
+            log.warn("Attachment {} not available: {}", attachmentId, e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     @PostMapping(value = "/rooms/create", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> createChatRoom(@RequestBody ChatRoomCreationRequest request) {
         try {
@@ -323,7 +397,7 @@ public class MessageController {
     public ResponseEntity<?> markMessageAsRead(@PathVariable Long messageId) {
         try {
             log.info("Marking message {} as read", messageId);
-            chatService.markAsRead(messageId);
+            chatService.markAsRead(messageId, getAuthenticatedUser(null).getId());
             log.info("Message {} marked as read successfully", messageId);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
@@ -1,12 +1,15 @@
 package tn.esprit.examen.nomPrenomClasseExamen.controllers;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import tn.esprit.examen.nomPrenomClasseExamen.services.ChatbotService;
 import java.util.HashMap;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
 
 @RestController
 @RequestMapping("/api/new-chatbot")
@@ -45,4 +48,15 @@ public class NewChatbotController {
             return ResponseEntity.status(500).body(response);
         }
     }
+
+    // Même réponse, diffusée en Server-Sent Events (token, done, error)
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<String>>> streamChatbotResponse(@RequestBody Map<String, String> request) {
+        String message = request.get("message");
+        if (message == null || message.trim().isEmpty()) {
+            logger.warn("Invalid stream request: message is null or empty");
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(chatbotService.streamChatbot(message));
+    }
 }
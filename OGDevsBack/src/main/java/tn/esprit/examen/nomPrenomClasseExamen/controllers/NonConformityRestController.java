@@ -1,19 +1,39 @@
 package tn.esprit.examen.nomPrenomClasseExamen.controllers;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.http.ResponseEntity;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Indicator;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformitySource;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityType;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityAttachment;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Non_Conformity;
+import tn.esprit.examen.nomPrenomClasseExamen.exceptions.EntityNotFoundException;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.IndicatorRepository;
-import tn.esprit.examen.nomPrenomClasseExamen.services.IIndicatorServices;
 import tn.esprit.examen.nomPrenomClasseExamen.services.INonConformityService;
+import tn.esprit.examen.nomPrenomClasseExamen.services.NonConformityAttachmentStore;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/nonconformities")
@@ -27,9 +47,21 @@ import java.util.List;
 )
 public class NonConformityRestController {
 
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final int MAX_PAGE_SIZE = 200;
+
+    // Attributs de requête de Tomcat pour l'envoi de fichier sans copie (sendfile)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+    // Seuls ces types peuvent s'afficher dans le navigateur ; les autres sont toujours téléchargés
+    private static final Set<String> INLINE_TYPES = Set.of("application/pdf", "image/png", "image/jpeg");
+
     private final INonConformityService nonConformityService;
     private final IndicatorRepository indicatorRepository;
-    private final IIndicatorServices indicatorServices;
+    private final NonConformityAttachmentStore attachmentStore;
 
     @PostMapping("/manual")
     public NonConformityDTO addNonConformityManually(@RequestBody NonConformityDTO nonConformityDTO) {
@@ -51,14 +83,12 @@ public class NonConformityRestController {
 
         // Save the entity and map back to DTO
         Non_Conformity savedNonConformity = nonConformityService.addNonConformityManually(nonConformity);
-        indicatorServices.recalculateAllIndicators(); // Recalculate currentValue and handle automatic non-conformities
         return nonConformityService.mapToDTO(savedNonConformity);
     }
 
     @PostMapping("/by-indicator")
     public ResponseEntity<Non_Conformity> addNonConformityByIndicator(@RequestBody Non_Conformity nonConformity) {
         Non_Conformity created = nonConformityService.addNonConformityByIndicator(nonConformity);
-        indicatorServices.recalculateAllIndicators(); // Recalculate currentValue and handle automatic non-conformities
         return ResponseEntity.ok(created);
     }
 
@@ -68,9 +98,24 @@ public class NonConformityRestController {
         return ResponseEntity.noContent().build();
     }
 
+    // Sans paramètre size, la liste filtrée complète est renvoyée ; sinon une page, avec le total en en-tête
     @GetMapping
-    public ResponseEntity<List<NonConformityDTO>> getAllNonConformities() {
-        return ResponseEntity.ok(nonConformityService.getAllNonConformities());
+    public ResponseEntity<List<NonConformityDTO>> getAllNonConformities(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) NonConformitySource source,
+            @RequestParam(required = false) NonConformityType type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size) {
+        Pageable pageable = size == null
+                ? Pageable.unpaged()
+                : PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), MAX_PAGE_SIZE),
+                Sort.by(Sort.Direction.DESC, "idNonConformity"));
+        Page<NonConformityDTO> result = nonConformityService.getNonConformities(status, source, type, from, to, pageable);
+        return ResponseEntity.ok()
+                .header(TOTAL_COUNT_HEADER, String.valueOf(result.getTotalElements()))
+                .body(result.getContent());
     }
 
     @PutMapping("/{id}/fix")
@@ -80,7 +125,96 @@ public class NonConformityRestController {
             @RequestParam("fixDate") LocalDate fixDate,
             @RequestParam(value = "attachments", required = false) List<MultipartFile> attachments) {
         NonConformityDTO result = nonConformityService.fixNonConformity(id, actionTaken, fixDate, attachments);
-        indicatorServices.recalculateAllIndicators(); // Recalculate currentValue after fixing
         return ResponseEntity.ok(result);
     }
+
+    /**
+     * Contenu d'une pièce jointe, en entier ou pour une seule plage (Range). Le fichier est
+     * transmis par sendfile lorsque Tomcat le permet, sinon par FileChannel.transferTo, sans
+     * passer par un tampon applicatif. Le type renvoyé est celui détecté au dépôt ; l'affichage
+     * dans le navigateur ({@code inline}) n'est accordé qu'aux PDF, PNG et JPEG.
+     */
+    @GetMapping("/{id}/attachments/{attachmentId}")
+    public void downloadAttachment(@PathVariable Long id,
+                                   @PathVariable Long attachmentId,
+                                   @RequestParam(value = "inline", defaultValue = "false") boolean inline,
+                                   HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        NonConformityAttachment attachment;
+        Path file;
+        try {
+            attachment = attachmentStore.get(id, attachmentId);
+            file = attachmentStore.open(attachment);
+        } catch (EntityNotFoundException e) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        // Le contenu est identifié par son empreinte : l'ETag est fort et ne change jamais
+        String eTag = "\"" + attachment.getBlobSha256() + "\"";
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.maxAge(Duration.ofDays(7)).cachePrivate().getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (eTag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        long length = Files.size(file);
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && length > 0) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // Plusieurs plages : le contenu complet est renvoyé, comme le permet la RFC 9110
+            if (ranges.size() == 1) {
+                if (ranges.get(0).getRangeStart(length) >= length) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        long count = end - start + 1;
+        response.setContentType(attachment.getContentType());
+        response.setContentLengthLong(Math.max(count, 0));
+        boolean showInline = inline && INLINE_TYPES.contains(attachment.getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                (showInline ? ContentDisposition.inline() : ContentDisposition.attachment())
+                        .filename(attachment.getFileName(), StandardCharsets.UTF_8)
+                        .build().toString());
+        if (count <= 0 || HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+
+        if (count >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat envoie le fichier après le retour du contrôleur (FileChannel.transferTo vers la socket)
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package tn.esprit.examen.nomPrenomClasseExamen.controllers;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import tn.esprit.examen.nomPrenomClasseExamen.services.LlmResponseCache;
+import tn.esprit.examen.nomPrenomClasseExamen.services.OutboundHttpService;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/outbound")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "http://localhost:4200")
+public class OutboundHttpController {
+
+    private final OutboundHttpService outboundHttpService;
+    private final LlmResponseCache llmResponseCache;
+
+    // État des disjoncteurs, appels en cours et latences par endpoint
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(outboundHttpService.snapshot());
+    }
+
+    // Succès, appels regroupés et latences du cache des réponses LLM, par espace de noms
+    @GetMapping("/llm-cache")
+    public ResponseEntity<Map<String, Object>> getLlmCacheStatus() {
+        return ResponseEntity.ok(llmResponseCache.snapshot());
+    }
+
+    @DeleteMapping("/llm-cache/{namespace}")
+    public ResponseEntity<Map<String, Object>> invalidateLlmCache(@PathVariable String namespace) {
+        return ResponseEntity.ok(Map.of("removed", llmResponseCache.invalidate(namespace)));
+    }
+}
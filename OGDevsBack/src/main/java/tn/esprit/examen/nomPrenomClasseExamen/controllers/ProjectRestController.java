@@ -4,22 +4,22 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import tn.esprit.examen.nomPrenomClasseExamen.dto.ProjectResponseDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.*;
 import tn.esprit.examen.nomPrenomClasseExamen.exceptions.EntityNotFoundException;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.BugRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.ProjectRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.ProjectTaskRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.services.IProjectDurationService;
 import tn.esprit.examen.nomPrenomClasseExamen.services.IProjectServices;
 import tn.esprit.examen.nomPrenomClasseExamen.services.OpenAIService;
 import tn.esprit.examen.nomPrenomClasseExamen.services.ProjectServices;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.InputStreamReader;
-import java.lang.Process;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -34,6 +34,7 @@ public class ProjectRestController {
     private final BugRepository bugRepository;
     private final ProjectRepository projectRepository;
     private final ProjectTaskRepository projectTaskRepository;
+    private final IProjectDurationService projectDurationService;
 
 
     @PostMapping("/assignUserr/{idOperation}/{email}")
@@ -349,24 +350,9 @@ public class ProjectRestController {
             return ResponseEntity.notFound().build();
         }
 
-        List<Project> projects = projectRepository.findAll();
-
-        for (Project p : projects) {
-            for (Phase ph : p.getPhases()) {
-                for (ProjectOpp opp : ph.getProjectOperations()) {
-                    for (ProjectTask pt : opp.getProjecttasks()) {
-                        if (pt.getId() == idtask) {
-                            TaskInfoDTO info = new TaskInfoDTO(
-                                    p.getName(),
-                                    opp.getName(),
-                                    opp.getDeadline(),
-                                    ph.getPhase_name()
-                            );
-                            return ResponseEntity.ok(info);
-                        }
-                    }
-                }
-            }
+        List<TaskInfoDTO> infos = projectTaskRepository.findTaskInfo(idtask);
+        if (!infos.isEmpty()) {
+            return ResponseEntity.ok(infos.get(0));
         }
 
         // Si la task existe mais n’est associée à aucun projet/opération/phase
@@ -513,112 +499,42 @@ public class ProjectRestController {
             int nbTasks = 20;
             String projectType = "Mobile Application Development";
 
-            ProcessBuilder pb = new ProcessBuilder("python",
-                    "C:\\Users\\mbech\\Desktop\\OGDev-Coconsult\\OGDevsBack\\src\\main\\resources\\ml\\predictprojectduration.py",
-                    String.valueOf(nbRessources),
-                    String.valueOf(nbProjectEmployee),
-                    String.valueOf(nbTechnologies),
-                    String.valueOf(nbTasks),
-                    projectType
-            );
-
-            pb.redirectErrorStream(false); // Combine stdout + stderr
-            Process process = pb.start();
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            StringBuilder output = new StringBuilder();
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-            }
-
-            return ResponseEntity.ok( output.toString().trim());
-
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Erreur Java : " + e.getMessage());
+            double duration = projectDurationService.predict(projectType, nbRessources, nbProjectEmployee, nbTechnologies, nbTasks);
+            return ResponseEntity.ok(formatDuration(duration));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
         }
     }
 
 
     @PostMapping("/predictprojectdurationn/{idProject}")
     public ResponseEntity<?> predictDurationn(@PathVariable Long idProject) {
-
         try {
-            Project p = projectRepository.findById(idProject).orElse(null);
-            if (p == null) {
-                throw new EntityNotFoundException("Project not found with id: " + idProject);
-            }
-
-            String projectType = p.getProjectType();
-            int nbRessources = 0;
-            int nbProjectEmployee = 0;
-            int nbTechnologies = 0;
-            int nbTasks = 0;
-            Set<UserEntity> userEntitySet = new HashSet<>();
-
-            for (Resource r : p.getResources()) {
-                nbRessources++;
-            }
-
-            for (String teck : p.getTechnologies()) {
-                nbTechnologies++;
-            }
-
-            for (Phase ph : p.getPhases()) {
-                for (ProjectOpp opp : ph.getProjectOperations()) {
-                    userEntitySet.add(opp.getUser());
-                    for (ProjectTask task : opp.getProjecttasks()) {
-                        nbTasks++;
-                    }
-                }
-            }
-
-            nbProjectEmployee = userEntitySet.size();
-
-            // 🐍 Lancer le script Python
-            ProcessBuilder pb = new ProcessBuilder("python","C:\\Users\\mbech\\Desktop\\OGDev-Coconsult\\OGDevsBack\\src\\main\\resources\\ml\\predictprojectduration.py",
-
-            String.valueOf(nbRessources),
-                    String.valueOf(nbProjectEmployee),
-                    String.valueOf(nbTechnologies),
-                    String.valueOf(nbTasks),
-                    projectType
-            );
-
-            Process process = pb.start();
-
-            // 🔹 Lire stdout
-            BufferedReader stdOutput = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            StringBuilder output = new StringBuilder();
-            String line;
-            while ((line = stdOutput.readLine()) != null) {
-                output.append(line).append("\n");
-            }
-
-            // 🔹 Lire stderr
-            BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            StringBuilder errors = new StringBuilder();
-            while ((line = stdError.readLine()) != null) {
-                errors.append(line).append("\n");
-            }
-
-            int exitCode = process.waitFor();
-
-            if (exitCode == 0) {
-                return ResponseEntity.ok(output.toString().trim());
-            } else {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body("Erreur Python :\n" + errors.toString().trim());
-            }
+            return ResponseEntity.ok(formatDuration(projectDurationService.predict(idProject)));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
 
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Erreur Java : " + e.getMessage());
+    // Durée prévue de tous les projets, en un passage
+    @GetMapping("/predictprojectduration/all")
+    public ResponseEntity<?> predictAllDurations() {
+        try {
+            return ResponseEntity.ok(projectDurationService.predictAll());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
         }
     }
 
+    // Même format que l'ancien script Python
+    private static String formatDuration(double duration) {
+        return String.format(Locale.ROOT, "%.2f", duration);
+    }
+
 
 
 
@@ -669,6 +585,28 @@ public class ProjectRestController {
         return projectServices.addmanyrequiremnts(idProject, reqs);
     }
 
+    // Suggestion diffusée en Server-Sent Events : fragments "token", puis "done" avec le JSON complet
+    @PostMapping(value = "/suggest-fix/{idbug}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<String>>> streamBugFix(@PathVariable long idbug) {
+        return bugRepository.findById(idbug)
+                .map(bug -> ResponseEntity.ok(openAIService.streamBugFixing(
+                        bug.getDescription(), bug.getStatus(), bug.getPriority())))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping(value = "/suggestphases/{idProject}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<String>>> streamPhases(@PathVariable Long idProject) {
+        return projectRepository.findById(idProject)
+                .map(project -> ResponseEntity.ok(openAIService.streamPhases(
+                        project.getProjectType(),
+                        project.getDescription(),
+                        Optional.ofNullable(project.getRequirements()).orElse(List.of()),
+                        project.getProcesses().stream()
+                                .map(tn.esprit.examen.nomPrenomClasseExamen.entities.Process::getProcName)
+                                .collect(Collectors.toList()))))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @PostMapping("/suggestphases/{idProject}")
     public ResponseEntity<?> suggestPhases(@PathVariable Long idProject) {
         return projectRepository.findById(idProject)
@@ -3,10 +3,12 @@ package tn.esprit.examen.nomPrenomClasseExamen.controllers;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.SearchPageDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.dto.SearchResultDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.services.ISearchService;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/search")
@@ -14,6 +16,8 @@ import java.util.List;
 @CrossOrigin(origins = "http://localhost:4200")
 public class SearchController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final ISearchService searchService;
 
     @GetMapping
@@ -21,4 +25,19 @@ public class SearchController {
         List<SearchResultDTO> results = searchService.searchAll(query);
         return ResponseEntity.ok(results);
     }
-}
\ No newline at end of file
+
+    // Recherche classée et paginée, avec extraits surlignés
+    @GetMapping("/fulltext")
+    public ResponseEntity<SearchPageDTO> searchFullText(@RequestParam("query") String query,
+                                                        @RequestParam(value = "type", required = false) String type,
+                                                        @RequestParam(value = "page", defaultValue = "0") int page,
+                                                        @RequestParam(value = "size", defaultValue = "20") int size) {
+        return ResponseEntity.ok(searchService.searchFullText(query, type, Math.max(page, 0),
+                Math.min(Math.max(size, 1), MAX_PAGE_SIZE)));
+    }
+
+    @PostMapping("/reindex")
+    public ResponseEntity<Map<String, Integer>> reindex() {
+        return ResponseEntity.ok(Map.of("indexed", searchService.rebuildIndex()));
+    }
+}
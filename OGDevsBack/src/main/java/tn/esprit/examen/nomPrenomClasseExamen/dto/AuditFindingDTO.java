@@ -0,0 +1,15 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class AuditFindingDTO {
+    private int index;               // Position du constat dans le rapport, à partir de 1
+    private String description;
+    private List<String> aiSuggestions = new ArrayList<>();
+    private Long idNonConformity;    // Non-conformité créée pour ce constat
+    private String error;            // Échec de la suggestion ou de l'enregistrement
+}
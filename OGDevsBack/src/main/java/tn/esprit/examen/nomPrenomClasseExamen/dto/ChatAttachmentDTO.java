@@ -0,0 +1,16 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatAttachmentDTO {
+    private Long id;
+    private String fileName;
+    private String contentType;
+    private Long size;
+    private String url; // Téléchargement (requêtes Range acceptées)
+}
@@ -0,0 +1,16 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.Data;
+
+@Data
+public class ChatInboxDTO {
+    private Long roomId;
+    private String name; // Nom du salon, ou de l'autre participant pour une conversation privée
+    private boolean privateRoom;
+    private Long lastMessageId;
+    private String lastMessage;
+    private String lastSenderId;
+    private String lastSenderUsername;
+    private String lastMessageAt;
+    private long unreadCount;
+}
@@ -0,0 +1,12 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.TypeDocument;
+
+@Getter
+@AllArgsConstructor
+public class ExtractedContent {
+    private final String text;
+    private final TypeDocument type; // null lorsque le contenu n'est pas classifié
+}
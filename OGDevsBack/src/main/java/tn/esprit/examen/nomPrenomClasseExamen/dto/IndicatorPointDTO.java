@@ -0,0 +1,15 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class IndicatorPointDTO {
+    private LocalDateTime bucketStart;
+    private long samples;       // 0 : aucune variation sur la tranche, valeur reportée
+    private double average;
+    private double min;
+    private double max;
+    private double last;
+}
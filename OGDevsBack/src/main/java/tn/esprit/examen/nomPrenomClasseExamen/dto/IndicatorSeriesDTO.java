@@ -0,0 +1,17 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.Data;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+public class IndicatorSeriesDTO {
+    private Long indicatorId;
+    private String code;
+    private RollupGranularity granularity;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private List<IndicatorPointDTO> points;
+}
@@ -0,0 +1,23 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Projection d'un indicateur accompagnée du décompte de ses non-conformités,
+ * alimentée par une requête JPQL (constructeur) : décompte agrégé ou compteurs de l'indicateur.
+ */
+@Getter
+@AllArgsConstructor
+public class IndicatorStatsDTO {
+    private final Long idIndicateur;
+    private final String code;
+    private final String libelle;
+    private final String frequence;
+    private final String unite;
+    private final Double cible;
+    private final String actif;
+    private final Long totalActions;
+    private final Long fixedActions;
+    private final Long openActions;
+}
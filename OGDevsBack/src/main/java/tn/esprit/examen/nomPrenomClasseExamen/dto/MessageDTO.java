@@ -14,7 +14,7 @@ public class MessageDTO {
     private String senderId;
     private String senderUsername;
     private String content;
-    private String attachment;
+    private ChatAttachmentDTO attachment; // Métadonnées uniquement
     private String createdAt; // Changed from Date to String
     private boolean seen;
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessagePageDTO {
+    private List<MessageDTO> messages; // Du plus récent au plus ancien
+    private Long nextCursor; // À passer en paramètre "before" pour la page suivante, null en fin d'historique
+}
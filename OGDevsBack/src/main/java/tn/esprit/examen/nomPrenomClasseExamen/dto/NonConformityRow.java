@@ -0,0 +1,32 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformitySource;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityType;
+
+import java.time.LocalDate;
+
+/**
+ * Colonnes d'une non-conformité pour le registre, lues en une requête (constructeur JPQL)
+ * sans charger l'entité, ses utilisateurs ni son indicateur.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NonConformityRow {
+    private Long idNonConformity;
+    private NonConformitySource source;
+    private String description;
+    private LocalDate dateCreated;
+    private NonConformityType type;
+    private String status;
+    private String actionTaken;
+    private LocalDate fixDate;
+    private String detectedBy;      // Nom d'utilisateur
+    private LocalDate dateDetected;
+    private String fixedBy;         // Nom d'utilisateur
+    private Boolean isEffective;
+    private Long indicatorId;
+}
@@ -0,0 +1,15 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationRecipient {
+    private String id;
+    private String email;
+    private boolean enableEmailNotifications;
+    private boolean enableWebSocketNotifications;
+}
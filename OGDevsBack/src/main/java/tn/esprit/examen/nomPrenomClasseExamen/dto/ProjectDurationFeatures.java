@@ -0,0 +1,26 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Variables d'entrée du modèle de durée d'un projet, calculées en une requête.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProjectDurationFeatures {
+    private Long projectId;
+    private String projectType;
+    private int resources;
+    private int employees;
+    private int technologies;
+    private int tasks;
+
+    // Constructeur de projection JPQL : SIZE renvoie des Integer, COUNT des Long
+    public ProjectDurationFeatures(Long projectId, String projectType, Integer resources, Long employees,
+                                   Integer technologies, Long tasks) {
+        this(projectId, projectType, resources, employees.intValue(), technologies, tasks.intValue());
+    }
+}
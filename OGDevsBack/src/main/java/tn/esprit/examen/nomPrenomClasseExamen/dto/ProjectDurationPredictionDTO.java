@@ -0,0 +1,14 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProjectDurationPredictionDTO {
+    private Long projectId;
+    private String projectType;
+    private Double predictedDuration;   // null si le type de projet est inconnu du modèle
+}
@@ -0,0 +1,13 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.Data;
+
+@Data
+public class SearchHitDTO {
+    private String entityType;
+    private Long id;
+    private String title;
+    private String snippet;   // Extrait surligné avec <b>...</b>
+    private String context;   // Processus, opération ou catégorie associée
+    private float score;
+}
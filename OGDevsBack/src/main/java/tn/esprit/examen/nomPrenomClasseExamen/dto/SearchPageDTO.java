@@ -0,0 +1,14 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SearchPageDTO {
+    private String query;
+    private long totalHits;
+    private int page;
+    private int size;
+    private List<SearchHitDTO> hits;
+}
@@ -0,0 +1,17 @@
+package tn.esprit.examen.nomPrenomClasseExamen.dto;
+
+import lombok.Data;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformitySource;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityType;
+
+@Data
+public class SimilarNonConformityDTO {
+    private Long idNonConformity;
+    private String description;
+    private String actionTaken;   // Action corrective retenue, si la non-conformité a été traitée
+    private NonConformitySource source;
+    private NonConformityType type;
+    private String status;
+    private Long indicatorId;
+    private float similarity;     // Cosinus entre les descriptions, dans [-1, 1]
+}
@@ -0,0 +1,38 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Contenu d'une pièce jointe de non-conformité, stocké une seule fois sur disque sous son
+ * empreinte SHA-256. {@code refCount} compte les pièces jointes qui le référencent ; un contenu
+ * sans référence depuis {@code orphanedAt} est supprimé par le ramasse-miettes.
+ */
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(name = "attachment_blob", indexes = @Index(name = "idx_attachment_blob_orphaned", columnList = "ref_count, orphaned_at"))
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class AttachmentBlob {
+    @Id
+    @Column(length = 64)
+    String sha256;
+
+    Long size;
+
+    String contentType;
+
+    @Column(name = "ref_count", nullable = false)
+    long refCount;
+
+    LocalDateTime createdAt;
+
+    @Column(name = "orphaned_at")
+    LocalDateTime orphanedAt;
+}
@@ -0,0 +1,46 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Score d'un candidat pour une offre. Il reste valable tant que le CV (empreinte des
+ * caractéristiques) et le texte de l'offre (empreinte de l'offre) n'ont pas changé.
+ */
+@Entity
+@Table(name = "candidate_score",
+        uniqueConstraints = @UniqueConstraint(name = "uk_candidate_score", columnNames = {"job_offer_id", "candidate_id"}),
+        indexes = {
+                @Index(name = "idx_candidate_score_rank", columnList = "job_offer_id, score"),
+                @Index(name = "idx_candidate_score_candidate", columnList = "candidate_id")
+        })
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class CandidateScore {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "job_offer_id", nullable = false)
+    Long jobOfferId;
+
+    @Column(name = "candidate_id", nullable = false)
+    Long candidateId;
+
+    double score;
+
+    @Column(name = "resume_hash", length = 64)
+    String resumeHash;
+
+    @Column(name = "job_fingerprint", nullable = false, length = 64)
+    String jobFingerprint;
+
+    LocalDateTime computedAt;
+}
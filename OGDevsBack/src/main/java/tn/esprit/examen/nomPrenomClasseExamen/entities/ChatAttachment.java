@@ -0,0 +1,43 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Métadonnées d'une pièce jointe de discussion ; le contenu est stocké sur disque
+ * sous {@code storageKey} et n'est jamais chargé avec les messages.
+ */
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(indexes = @Index(name = "idx_chat_attachment_room", columnList = "chat_room_id"))
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ChatAttachment implements Serializable {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "chat_room_id")
+    Long chatRoomId;
+
+    String fileName;
+
+    String contentType;
+
+    Long size;
+
+    @JsonIgnore
+    @Column(nullable = false, unique = true)
+    String storageKey;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    Date createdAt;
+}
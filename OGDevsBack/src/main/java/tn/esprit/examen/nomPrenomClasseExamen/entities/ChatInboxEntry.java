@@ -0,0 +1,55 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Vue "boîte de réception" d'un salon pour un de ses membres : dernier message,
+ * nombre de messages non lus et nom affiché. Maintenue à chaque message et à chaque
+ * lecture pour que la liste des discussions se charge en une seule requête.
+ */
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_chat_inbox_room_user", columnNames = {"chat_room_id", "user_id"}),
+        indexes = @Index(name = "idx_chat_inbox_user", columnList = "user_id, last_message_at"))
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ChatInboxEntry implements Serializable {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "chat_room_id", nullable = false)
+    Long roomId;
+
+    @Column(name = "user_id", nullable = false)
+    String userId;
+
+    String displayName;
+
+    boolean privateRoom;
+
+    Long lastMessageId;
+
+    @Column(length = 200)
+    String lastSnippet;
+
+    String lastSenderId;
+
+    String lastSenderUsername;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "last_message_at")
+    Date lastMessageAt;
+
+    Long lastReadMessageId;
+
+    long unreadCount;
+}
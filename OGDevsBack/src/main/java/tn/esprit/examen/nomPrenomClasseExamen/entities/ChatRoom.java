@@ -36,4 +36,16 @@ public class ChatRoom implements Serializable {
     @JsonIgnore
     @OneToMany(mappedBy = "chatRoom", cascade = CascadeType.REMOVE, orphanRemoval = true)
     List<Message> messages = new ArrayList<>();
+
+    // Nom affiché pour un membre : celui de l'autre participant pour une conversation privée
+    public String displayNameFor(String userId) {
+        if (name != null) {
+            return name;
+        }
+        return users.stream()
+                .filter(u -> !u.getId().equals(userId))
+                .findFirst()
+                .map(UserEntity::getUsername)
+                .orElse("Chat " + id);
+    }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package tn.esprit.examen.nomPrenomClasseExamen.entities;
 
 import jakarta.persistence.*;
 import lombok.*;
+import tn.esprit.examen.nomPrenomClasseExamen.services.SearchIndexListener;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.List;
@@ -11,6 +12,7 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@EntityListeners(SearchIndexListener.class)
 @Table(name = "document")
 public class Document implements Serializable {
 
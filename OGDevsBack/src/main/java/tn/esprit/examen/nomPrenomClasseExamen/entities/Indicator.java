@@ -45,6 +45,16 @@ public class Indicator implements Serializable {
 
     private Double currentValue;
 
+    // Compteurs maintenus par IndicatorCounterListener, jamais écrits via la sauvegarde de l'entité
+    @Column(name = "open_count", insertable = false, updatable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long openCount;
+
+    @Column(name = "fixed_count", insertable = false, updatable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long fixedCount;
+
+    @Column(name = "total_count", insertable = false, updatable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long totalCount;
+
     @NotBlank(message = "Actif cannot be blank")
     @Column(nullable = false)
     private String actif;
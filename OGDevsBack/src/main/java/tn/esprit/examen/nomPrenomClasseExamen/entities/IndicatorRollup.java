@@ -0,0 +1,45 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Agrégat des échantillons d'un indicateur sur une tranche horaire, journalière ou mensuelle.
+ */
+@Entity
+@Table(name = "indicator_rollup",
+        uniqueConstraints = @UniqueConstraint(name = "uk_indicator_rollup_bucket",
+                columnNames = {"indicator_id", "granularity", "bucket_start"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class IndicatorRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "indicator_id", nullable = false)
+    Long indicatorId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    RollupGranularity granularity;
+
+    @Column(name = "bucket_start", nullable = false)
+    LocalDateTime bucketStart;
+
+    long sampleCount;
+    double valueSum;
+    double minValue;
+    double maxValue;
+    // LAST_VALUE est un mot réservé de MySQL 8
+    @Column(name = "last_sample_value")
+    double lastValue;       // Valeur en fin de tranche, reportée sur les tranches sans échantillon
+    LocalDateTime lastRecordedAt;
+}
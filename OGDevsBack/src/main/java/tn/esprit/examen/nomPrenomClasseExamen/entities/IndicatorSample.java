@@ -0,0 +1,31 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "indicator_sample",
+        indexes = @Index(name = "idx_indicator_sample_time", columnList = "indicator_id, recorded_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class IndicatorSample {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "indicator_id", nullable = false)
+    Long indicatorId;
+
+    @Column(name = "recorded_at", nullable = false)
+    LocalDateTime recordedAt;
+
+    @Column(name = "sample_value", nullable = false)
+    Double value;
+}
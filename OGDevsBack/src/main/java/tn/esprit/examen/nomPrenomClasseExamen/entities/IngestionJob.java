@@ -0,0 +1,49 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "ingestion_job")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class IngestionJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    String originalFilename;
+    String contentType;
+    String userId;
+
+    @JsonIgnore
+    String storedPath;      // Copie du fichier en attente de traitement
+
+    @JsonIgnore
+    @Column(columnDefinition = "TEXT")
+    String configJson;      // Options d'upload sérialisées (removeBlankPages, ...)
+
+    @Enumerated(EnumType.STRING)
+    IngestionStatus status;
+
+    int attempts;
+    int pagesDone;
+    int totalPages;
+
+    @Column(columnDefinition = "TEXT")
+    String errorMessage;
+
+    Long documentId;        // Renseigné lorsque le job est terminé
+
+    LocalDateTime createdAt;
+    LocalDateTime updatedAt;
+    LocalDateTime nextAttemptAt;
+}
@@ -0,0 +1,9 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+public enum IngestionStatus {
+    QUEUED,
+    EXTRACTING,
+    CLASSIFYING,
+    DONE,
+    FAILED
+}
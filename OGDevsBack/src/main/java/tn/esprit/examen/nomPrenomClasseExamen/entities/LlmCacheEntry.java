@@ -0,0 +1,38 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Réponse d'un modèle de langage conservée pour un prompt donné (niveau persistant du cache
+ * des réponses LLM). La clé est l'empreinte du prompt normalisé et de son espace de noms.
+ */
+@Entity
+@Table(name = "llm_response_cache", indexes = {
+        @Index(name = "idx_llm_response_cache_expires", columnList = "expires_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class LlmCacheEntry {
+
+    @Id
+    @Column(name = "cache_key", length = 64)
+    String cacheKey;        // SHA-256 de (espace de noms, prompt normalisé)
+
+    @Column(nullable = false, length = 64)
+    String namespace;       // Ex. "openai.technologies", "gemini.suggestions"
+
+    @Column(columnDefinition = "MEDIUMTEXT", nullable = false)
+    String response;
+
+    LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    LocalDateTime expiresAt;
+}
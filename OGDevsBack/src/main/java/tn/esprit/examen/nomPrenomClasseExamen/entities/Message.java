@@ -12,6 +12,7 @@ import java.util.Date;
 @Getter
 @Setter
 @Entity
+@Table(indexes = @Index(name = "idx_message_room_id", columnList = "chatroom_id, id"))
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class Message implements Serializable {
     @Id
@@ -28,8 +29,10 @@ public class Message implements Serializable {
 
     String content;
 
-    @Lob
-    byte[] attachment;
+    // Métadonnées seulement : le contenu est servi par /chat/attachments/{id}
+    @OneToOne
+    @JoinColumn(name = "attachment_id")
+    ChatAttachment attachment;
 
     @Temporal(TemporalType.TIMESTAMP)
     Date createdAt;
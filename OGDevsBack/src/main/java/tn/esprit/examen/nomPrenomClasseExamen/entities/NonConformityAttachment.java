@@ -0,0 +1,39 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Pièce jointe d'une correction de non-conformité : nom et type tels que déposés, contenu
+ * partagé dans {@link AttachmentBlob} avec tous les dépôts identiques.
+ */
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(name = "non_conformity_attachment", indexes = @Index(name = "idx_nc_attachment_nc", columnList = "non_conformity_id"))
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class NonConformityAttachment {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "non_conformity_id", nullable = false)
+    Long nonConformityId;
+
+    @Column(name = "blob_sha256", length = 64, nullable = false)
+    String blobSha256;
+
+    String fileName;
+
+    String contentType;
+
+    Long size;
+
+    LocalDateTime createdAt;
+}
@@ -2,14 +2,18 @@
 package tn.esprit.examen.nomPrenomClasseExamen.entities;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
+import tn.esprit.examen.nomPrenomClasseExamen.services.IndicatorCounterListener;
+import tn.esprit.examen.nomPrenomClasseExamen.services.SimilarNonConformityListener;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@EntityListeners({IndicatorCounterListener.class, SimilarNonConformityListener.class})
 @Getter
 @Setter
 @AllArgsConstructor
@@ -71,4 +75,13 @@ public class Non_Conformity {
     @ManyToOne
     @JsonBackReference("indicator-nonConformities")
     private Indicator indicator;
+
+    // État tel que lu en base, pour calculer l'effet d'une modification sur les compteurs de l'indicateur
+    @Transient
+    @JsonIgnore
+    private String loadedStatus;
+
+    @Transient
+    @JsonIgnore
+    private Long loadedIndicatorId;
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Notification en attente d'envoi par e-mail. Les lignes sont écrites avec la transaction
+ * de l'appelant puis envoyées par le dispatcher, regroupées par destinataire.
+ */
+@Entity
+@Table(name = "notification_outbox", indexes = {
+        @Index(name = "idx_notification_outbox_due", columnList = "status, send_after"),
+        @Index(name = "idx_notification_outbox_recipient", columnList = "recipient_id, status"),
+        @Index(name = "idx_notification_outbox_dedup", columnList = "dedup_key, created_at"),
+        @Index(name = "idx_notification_outbox_claim", columnList = "claim_token")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class NotificationOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "recipient_id", nullable = false)
+    String recipientId;
+
+    String recipientEmail;
+
+    String type;
+
+    @Column(columnDefinition = "TEXT")
+    String message;
+
+    @Column(name = "dedup_key", length = 64, nullable = false)
+    String dedupKey;        // SHA-256 de (destinataire, type, message)
+
+    boolean emailEnabled;   // Préférence du destinataire au moment de l'alerte
+
+    @Enumerated(EnumType.STRING)
+    NotificationStatus status;
+
+    int attempts;
+
+    @Column(columnDefinition = "TEXT")
+    String errorMessage;
+
+    @Column(name = "claim_token", length = 36)
+    String claimToken;      // Lot en cours d'envoi
+
+    @Column(name = "created_at")
+    LocalDateTime createdAt;
+
+    @Column(name = "send_after")
+    LocalDateTime sendAfter; // Fin de la fenêtre de regroupement, ou prochaine tentative
+
+    LocalDateTime claimedAt;
+    LocalDateTime sentAt;
+}
@@ -0,0 +1,8 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+public enum NotificationStatus {
+    PENDING,
+    SENDING,
+    SENT,
+    FAILED
+}
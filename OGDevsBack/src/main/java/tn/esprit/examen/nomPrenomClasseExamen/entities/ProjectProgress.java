@@ -0,0 +1,28 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Compteurs de tâches d'un projet, tenus à jour à chaque création, suppression ou changement
+ * de statut de tâche : l'achèvement du projet se lit sur {@code openTasks} sans parcourir
+ * l'arborescence phases / opérations / tâches.
+ */
+@Entity
+@Table(name = "project_progress")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ProjectProgress {
+
+    @Id
+    @Column(name = "project_id")
+    Long projectId;
+
+    long openTasks;     // Tâches dont le statut n'est pas "Done"
+
+    long totalTasks;
+}
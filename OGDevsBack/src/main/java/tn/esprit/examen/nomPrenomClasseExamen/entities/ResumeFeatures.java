@@ -0,0 +1,41 @@
+package tn.esprit.examen.nomPrenomClasseExamen.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Caractéristiques extraites une fois pour toutes du CV d'un candidat : phrases normalisées,
+ * années d'expérience et phrases rattachées à chaque critère de notation. Le CV n'est
+ * relu que si son empreinte change.
+ */
+@Entity
+@Table(name = "resume_features")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ResumeFeatures {
+
+    @Id
+    @Column(name = "candidate_id")
+    Long candidateId;
+
+    @Column(name = "resume_hash", nullable = false, length = 64)
+    String resumeHash;      // SHA-256 du CV encodé en Base64
+
+    @Column(columnDefinition = "MEDIUMTEXT")
+    String sentences;       // Une phrase par ligne
+
+    // Plus grand nombre d'années cité dans les phrases d'expérience, puis dans tout le CV
+    int experienceYears;
+    int maxYears;
+
+    @Column(columnDefinition = "TEXT")
+    String keywordBuckets;  // Indices de phrases par critère, ex. "0,4|1,2||3"
+
+    LocalDateTime extractedAt;
+}
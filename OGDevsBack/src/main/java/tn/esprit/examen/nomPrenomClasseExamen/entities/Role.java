@@ -7,7 +7,7 @@ import lombok.Setter;
 
 
 @Entity
-@Table(name = "roles")
+@Table(name = "roles", indexes = @Index(name = "idx_roles_role_name", columnList = "roleName"))
 @Getter
 @Setter
 public class Role {
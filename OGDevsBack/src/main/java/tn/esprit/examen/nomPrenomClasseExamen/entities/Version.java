@@ -1,4 +1,5 @@
 package tn.esprit.examen.nomPrenomClasseExamen.entities;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
@@ -19,12 +20,23 @@ public class Version  implements Serializable {
     private Long id;
     private Long numeroVersion;
     private LocalDate dateCreation;
-    private String contenu;
+    @Transient
+    private String contenu;             // Texte complet, reconstruit à la lecture
+    @JsonIgnore
+    @Column(name = "contenu", columnDefinition = "LONGTEXT")
+    private String snapshotContenu;     // Renseigné pour les versions stockées intégralement
+    @JsonIgnore
+    @Column(columnDefinition = "LONGTEXT")
+    private String delta;               // Différence avec la version précédente (TextDeltaCodec)
     private String modifiePar;
     private String modificationDetails;
     @ManyToOne
     private Document document;
     @Enumerated(EnumType.STRING)
     private StatutDocument statut;
-}
 
+    @JsonIgnore
+    public boolean isSnapshot() {
+        return delta == null;
+    }
+}
@@ -0,0 +1,45 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.AttachmentBlob;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface AttachmentBlobRepository extends JpaRepository<AttachmentBlob, String> {
+
+    // Ajoute une référence, en créant le contenu s'il est nouveau ; atomique face aux dépôts simultanés
+    @Modifying
+    @Query(value = "INSERT INTO attachment_blob (sha256, size, content_type, ref_count, created_at, orphaned_at) " +
+            "VALUES (:sha256, :size, :contentType, 1, :now, NULL) " +
+            "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1, orphaned_at = NULL", nativeQuery = true)
+    int acquire(@Param("sha256") String sha256, @Param("size") long size,
+                @Param("contentType") String contentType, @Param("now") LocalDateTime now);
+
+    // orphanedAt est affecté avant refCount : MySQL évalue les affectations dans l'ordre
+    @Modifying
+    @Query("UPDATE AttachmentBlob b SET b.orphanedAt = CASE WHEN b.refCount <= 1 THEN :now ELSE b.orphanedAt END, " +
+            "b.refCount = b.refCount - 1 WHERE b.sha256 = :sha256 AND b.refCount > 0")
+    int release(@Param("sha256") String sha256, @Param("now") LocalDateTime now);
+
+    @Query("SELECT b.sha256 FROM AttachmentBlob b WHERE b.refCount = 0 AND b.orphanedAt < :before ORDER BY b.orphanedAt")
+    List<String> findOrphans(@Param("before") LocalDateTime before, Pageable pageable);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM AttachmentBlob b WHERE b.sha256 = :sha256")
+    Optional<AttachmentBlob> lockById(@Param("sha256") String sha256);
+
+    @Query("SELECT b.sha256 FROM AttachmentBlob b WHERE b.sha256 IN :ids")
+    List<String> findExistingIds(@Param("ids") Collection<String> ids);
+
+    @Query("SELECT COALESCE(SUM(b.size), 0) FROM AttachmentBlob b")
+    long totalSize();
+}
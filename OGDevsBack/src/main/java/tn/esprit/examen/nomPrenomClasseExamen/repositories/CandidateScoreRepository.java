@@ -0,0 +1,43 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.CandidateScore;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface CandidateScoreRepository extends JpaRepository<CandidateScore, Long> {
+
+    /**
+     * Candidats de l'offre sans score, ou dont le score a été calculé sur une autre version
+     * du CV ou de l'offre.
+     */
+    @Query("SELECT c.id FROM JobOffer j JOIN j.candidates c " +
+            "LEFT JOIN CandidateScore s ON s.candidateId = c.id AND s.jobOfferId = j.id " +
+            "LEFT JOIN ResumeFeatures f ON f.candidateId = c.id " +
+            "WHERE j.id = :jobOfferId AND (s.id IS NULL OR s.jobFingerprint <> :fingerprint " +
+            "OR COALESCE(s.resumeHash, '') <> COALESCE(f.resumeHash, ''))")
+    List<Long> findStaleCandidateIds(@Param("jobOfferId") Long jobOfferId, @Param("fingerprint") String fingerprint);
+
+    List<CandidateScore> findByJobOfferIdAndCandidateIdIn(Long jobOfferId, Collection<Long> candidateIds);
+
+    @Query(value = "SELECT s FROM CandidateScore s WHERE s.jobOfferId = :jobOfferId " +
+            "AND s.candidateId IN (SELECT c.id FROM JobOffer j JOIN j.candidates c WHERE j.id = :jobOfferId) " +
+            "ORDER BY s.score DESC, s.candidateId ASC",
+            countQuery = "SELECT COUNT(s) FROM CandidateScore s WHERE s.jobOfferId = :jobOfferId " +
+                    "AND s.candidateId IN (SELECT c.id FROM JobOffer j JOIN j.candidates c WHERE j.id = :jobOfferId)")
+    Page<CandidateScore> findRanking(@Param("jobOfferId") Long jobOfferId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM CandidateScore s WHERE s.candidateId = :candidateId")
+    int deleteByCandidate(@Param("candidateId") Long candidateId);
+
+    @Modifying
+    @Query("DELETE FROM CandidateScore s WHERE s.jobOfferId = :jobOfferId")
+    int deleteByJobOffer(@Param("jobOfferId") Long jobOfferId);
+}
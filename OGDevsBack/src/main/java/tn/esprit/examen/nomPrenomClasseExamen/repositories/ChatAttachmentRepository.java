@@ -0,0 +1,10 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatAttachment;
+
+import java.util.List;
+
+public interface ChatAttachmentRepository extends JpaRepository<ChatAttachment, Long> {
+    List<ChatAttachment> findByChatRoomId(Long chatRoomId);
+}
@@ -0,0 +1,45 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatInboxEntry;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+public interface ChatInboxRepository extends JpaRepository<ChatInboxEntry, Long> {
+
+    List<ChatInboxEntry> findByUserIdOrderByLastMessageAtDesc(String userId);
+
+    List<ChatInboxEntry> findByRoomId(Long roomId);
+
+    Optional<ChatInboxEntry> findByRoomIdAndUserId(Long roomId, String userId);
+
+    // Ignoré si un message plus récent a déjà été enregistré (envois concurrents)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ChatInboxEntry e SET e.lastMessageId = :messageId, e.lastSnippet = :snippet, " +
+            "e.lastSenderId = :senderId, e.lastSenderUsername = :senderUsername, e.lastMessageAt = :sentAt " +
+            "WHERE e.roomId = :roomId AND (e.lastMessageId IS NULL OR e.lastMessageId < :messageId)")
+    int updateLastMessage(@Param("roomId") Long roomId, @Param("messageId") Long messageId,
+                          @Param("snippet") String snippet, @Param("senderId") String senderId,
+                          @Param("senderUsername") String senderUsername, @Param("sentAt") Date sentAt);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ChatInboxEntry e SET e.unreadCount = e.unreadCount + 1 " +
+            "WHERE e.roomId = :roomId AND e.userId <> :senderId")
+    int incrementUnread(@Param("roomId") Long roomId, @Param("senderId") String senderId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ChatInboxEntry e SET e.unreadCount = :unread, e.lastReadMessageId = :messageId " +
+            "WHERE e.roomId = :roomId AND e.userId = :userId " +
+            "AND (e.lastReadMessageId IS NULL OR e.lastReadMessageId <= :messageId)")
+    int markRead(@Param("roomId") Long roomId, @Param("userId") String userId,
+                 @Param("messageId") Long messageId, @Param("unread") long unread);
+
+    @Modifying
+    @Query("DELETE FROM ChatInboxEntry e WHERE e.roomId = :roomId")
+    int deleteByRoom(@Param("roomId") Long roomId);
+}
@@ -13,6 +13,17 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
 
     List<ChatRoom> findByUsersContaining(UserEntity user);
 
+    // Salons d'un utilisateur avec leurs membres, sans chargement paresseux par salon
+    @Query("SELECT DISTINCT c FROM ChatRoom c LEFT JOIN FETCH c.users " +
+            "WHERE c.id IN (SELECT c2.id FROM ChatRoom c2 JOIN c2.users u WHERE u.id = :userId)")
+    List<ChatRoom> findByMemberWithUsers(@Param("userId") String userId);
+
+    @Query("SELECT DISTINCT c FROM ChatRoom c LEFT JOIN FETCH c.users WHERE c.id = :id")
+    Optional<ChatRoom> findByIdWithUsers(@Param("id") Long id);
+
+    @Query("SELECT DISTINCT c FROM ChatRoom c LEFT JOIN FETCH c.users")
+    List<ChatRoom> findAllWithUsers();
+
     Optional<ChatRoom> findByUsersContainingAndUsersContainingAndNameIsNull(UserEntity user1, UserEntity user2);
 
     // Add a query to check if a user is in a chat room
@@ -1,11 +1,51 @@
 package tn.esprit.examen.nomPrenomClasseExamen.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import tn.esprit.examen.nomPrenomClasseExamen.dto.IndicatorStatsDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Indicator;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface IndicatorRepository extends JpaRepository<Indicator, Long> {
     Indicator findByCode(String code);
+
+    @Query("SELECT new tn.esprit.examen.nomPrenomClasseExamen.dto.IndicatorStatsDTO(i.idIndicateur, i.code, i.libelle, " +
+            "i.frequence, i.unite, i.cible, i.actif, COUNT(nc), " +
+            "SUM(CASE WHEN UPPER(nc.status) = 'FIXED' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN UPPER(nc.status) = 'OPEN' THEN 1 ELSE 0 END)) " +
+            "FROM Indicator i LEFT JOIN i.nonConformities nc " +
+            "GROUP BY i.idIndicateur, i.code, i.libelle, i.frequence, i.unite, i.cible, i.actif")
+    List<IndicatorStatsDTO> findAllWithStats();
+
+    @Query("SELECT new tn.esprit.examen.nomPrenomClasseExamen.dto.IndicatorStatsDTO(i.idIndicateur, i.code, i.libelle, " +
+            "i.frequence, i.unite, i.cible, i.actif, COUNT(nc), " +
+            "SUM(CASE WHEN UPPER(nc.status) = 'FIXED' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN UPPER(nc.status) = 'OPEN' THEN 1 ELSE 0 END)) " +
+            "FROM Indicator i JOIN i.objective o LEFT JOIN i.nonConformities nc WHERE o.process.id = :processId " +
+            "GROUP BY i.idIndicateur, i.code, i.libelle, i.frequence, i.unite, i.cible, i.actif")
+    List<IndicatorStatsDTO> findStatsByProcess(@Param("processId") Long processId);
+
+    // Décomptes lus dans les compteurs de l'indicateur (IndicatorCounterListener), sans agrégation
+    @Query("SELECT new tn.esprit.examen.nomPrenomClasseExamen.dto.IndicatorStatsDTO(i.idIndicateur, i.code, i.libelle, " +
+            "i.frequence, i.unite, i.cible, i.actif, i.totalCount, i.fixedCount, i.openCount) " +
+            "FROM Indicator i WHERE i.idIndicateur IN :ids")
+    List<IndicatorStatsDTO> findStatsByIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Indicator i SET i.openCount = i.openCount + :open, i.fixedCount = i.fixedCount + :fixed, " +
+            "i.totalCount = i.totalCount + :total WHERE i.idIndicateur = :id")
+    int incrementCounters(@Param("id") Long id, @Param("open") long open, @Param("fixed") long fixed, @Param("total") long total);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Indicator i SET i.openCount = :open, i.fixedCount = :fixed, i.totalCount = :total WHERE i.idIndicateur = :id")
+    int setCounters(@Param("id") Long id, @Param("open") long open, @Param("fixed") long fixed, @Param("total") long total);
+
+    @Modifying
+    @Query("UPDATE Indicator i SET i.currentValue = :value WHERE i.idIndicateur = :id")
+    int updateCurrentValue(@Param("id") Long id, @Param("value") Double value);
 }
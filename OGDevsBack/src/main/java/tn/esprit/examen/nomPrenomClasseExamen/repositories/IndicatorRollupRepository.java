@@ -0,0 +1,51 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.IndicatorRollup;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface IndicatorRollupRepository extends JpaRepository<IndicatorRollup, Long> {
+    // Ajoute un échantillon à la tranche, en la créant si besoin ; atomique face aux enregistrements simultanés
+    @Modifying
+    @Query(value = "INSERT INTO indicator_rollup (indicator_id, granularity, bucket_start, sample_count, value_sum, " +
+            "min_value, max_value, last_sample_value, last_recorded_at) " +
+            "VALUES (:indicatorId, :granularity, :bucketStart, 1, :value, :value, :value, :value, :now) " +
+            "ON DUPLICATE KEY UPDATE sample_count = sample_count + 1, value_sum = value_sum + :value, " +
+            "min_value = LEAST(min_value, :value), max_value = GREATEST(max_value, :value), " +
+            "last_sample_value = :value, last_recorded_at = :now", nativeQuery = true)
+    int addSample(@Param("indicatorId") Long indicatorId, @Param("granularity") String granularity,
+                  @Param("bucketStart") LocalDateTime bucketStart, @Param("value") double value,
+                  @Param("now") LocalDateTime now);
+
+    List<IndicatorRollup> findByIndicatorIdAndGranularityAndBucketStartBetweenOrderByBucketStartAsc(
+            Long indicatorId, RollupGranularity granularity, LocalDateTime from, LocalDateTime to);
+
+    // Dernière tranche antérieure à la période demandée, pour reporter sa valeur
+    Optional<IndicatorRollup> findFirstByIndicatorIdAndGranularityAndBucketStartLessThanOrderByBucketStartDesc(
+            Long indicatorId, RollupGranularity granularity, LocalDateTime before);
+
+    // Dernière tranche de chaque indicateur antérieure à la période demandée
+    @Query("SELECT r FROM IndicatorRollup r WHERE r.granularity = :granularity AND r.bucketStart = " +
+            "(SELECT MAX(p.bucketStart) FROM IndicatorRollup p WHERE p.indicatorId = r.indicatorId " +
+            "AND p.granularity = :granularity AND p.bucketStart < :before)")
+    List<IndicatorRollup> findLatestBefore(@Param("granularity") RollupGranularity granularity,
+                                           @Param("before") LocalDateTime before);
+
+    List<IndicatorRollup> findByGranularityAndBucketStartGreaterThanEqualOrderByIndicatorIdAscBucketStartAsc(
+            RollupGranularity granularity, LocalDateTime from);
+
+    @Modifying
+    @Query("DELETE FROM IndicatorRollup r WHERE r.granularity = :granularity AND r.bucketStart < :cutoff")
+    int deleteOlderThan(@Param("granularity") RollupGranularity granularity, @Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Query("DELETE FROM IndicatorRollup r WHERE r.indicatorId = :indicatorId")
+    int deleteByIndicator(@Param("indicatorId") Long indicatorId);
+}
@@ -0,0 +1,22 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.IndicatorSample;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface IndicatorSampleRepository extends JpaRepository<IndicatorSample, Long> {
+    List<IndicatorSample> findByIndicatorIdAndRecordedAtBetweenOrderByRecordedAtAsc(Long indicatorId, LocalDateTime from, LocalDateTime to);
+
+    @Modifying
+    @Query("DELETE FROM IndicatorSample s WHERE s.recordedAt < :cutoff")
+    int deleteRecordedBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Query("DELETE FROM IndicatorSample s WHERE s.indicatorId = :indicatorId")
+    int deleteByIndicator(@Param("indicatorId") Long indicatorId);
+}
@@ -0,0 +1,14 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.IngestionJob;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.IngestionStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, Long> {
+    List<IngestionJob> findByStatusAndNextAttemptAtLessThanEqualOrderByCreatedAtAsc(IngestionStatus status, LocalDateTime now);
+    List<IngestionJob> findByStatusIn(Collection<IngestionStatus> statuses);
+}
@@ -0,0 +1,23 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.LlmCacheEntry;
+
+import java.time.LocalDateTime;
+
+public interface LlmCacheEntryRepository extends JpaRepository<LlmCacheEntry, String> {
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM LlmCacheEntry e WHERE e.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM LlmCacheEntry e WHERE e.namespace = :namespace")
+    int deleteByNamespace(@Param("namespace") String namespace);
+}
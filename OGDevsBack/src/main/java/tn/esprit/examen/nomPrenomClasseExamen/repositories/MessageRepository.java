@@ -1,5 +1,6 @@
 package tn.esprit.examen.nomPrenomClasseExamen.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -16,6 +17,36 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     List<Message> findByChatRoomOrderByCreatedAtDesc(ChatRoom chatRoom);
     List<Message> findTop10ByChatRoomAndIdLessThanEqualOrderByCreatedAtDesc(ChatRoom chatRoom, Long messageId);
 
+    // Dernier message de chaque salon, en une requête
+    @Query("SELECT m FROM Message m WHERE m.id IN " +
+            "(SELECT MAX(m2.id) FROM Message m2 WHERE m2.chatRoom IN :chatRooms GROUP BY m2.chatRoom.id)")
+    List<Message> findLastMessages(@Param("chatRooms") List<ChatRoom> chatRooms);
+
+    @Query("SELECT m FROM Message m WHERE m.id IN (SELECT MAX(m2.id) FROM Message m2 GROUP BY m2.chatRoom.id)")
+    List<Message> findLastMessagesOfAllRooms();
+
+    long countByChatRoomIdAndIdGreaterThanAndSenderIdNot(Long chatRoomId, Long messageId, String userId);
+
+    // Lignes [salon, membre, messages non vus envoyés par les autres membres]
+    @Query("SELECT r.id, u.id, COUNT(m) FROM Message m JOIN m.chatRoom r JOIN r.users u " +
+            "WHERE m.seen = false AND m.sender.id <> u.id GROUP BY r.id, u.id")
+    List<Object[]> countUnseenByRoomAndMember();
+
+    // Pagination par curseur sur l'identifiant (index chatroom_id, id)
+    List<Message> findByChatRoomIdOrderByIdDesc(Long chatRoomId, Pageable pageable);
+    List<Message> findByChatRoomIdAndIdLessThanOrderByIdDesc(Long chatRoomId, Long before, Pageable pageable);
+
+    // Ancienne colonne BLOB "attachment", vidée au fur et à mesure de la migration vers le stockage disque
+    @Query(value = "SELECT id FROM message WHERE attachment IS NOT NULL ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<Long> findLegacyAttachmentIds(@Param("limit") int limit);
+
+    @Query(value = "SELECT attachment FROM message WHERE id = :id", nativeQuery = true)
+    byte[] findLegacyAttachment(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = "UPDATE message SET attachment = NULL, attachment_id = :attachmentId WHERE id = :id", nativeQuery = true)
+    int moveLegacyAttachment(@Param("id") Long id, @Param("attachmentId") Long attachmentId);
+
     @Modifying
     @Transactional
     @Query("DELETE FROM Message m WHERE m.chatRoom = :chatRoom")
@@ -0,0 +1,13 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityAttachment;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface NonConformityAttachmentRepository extends JpaRepository<NonConformityAttachment, Long> {
+    List<NonConformityAttachment> findByNonConformityId(Long nonConformityId);
+
+    Optional<NonConformityAttachment> findByIdAndNonConformityId(Long id, Long nonConformityId);
+}
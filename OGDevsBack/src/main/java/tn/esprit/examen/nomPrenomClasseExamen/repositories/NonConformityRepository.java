@@ -1,25 +1,66 @@
 // NonConformityRepository.java
 package tn.esprit.examen.nomPrenomClasseExamen.repositories;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.NonConformityRow;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Indicator;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformitySource;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityType;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Non_Conformity;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface NonConformityRepository extends JpaRepository<Non_Conformity, Long> {
+
+    // Filtres du registre ; un paramètre null n'est pas appliqué, le statut est attendu en majuscules
+    String REGISTER_FILTER = "WHERE (:status IS NULL OR UPPER(nc.status) = :status) " +
+            "AND (:source IS NULL OR nc.source = :source) " +
+            "AND (:type IS NULL OR nc.type = :type) " +
+            "AND (:fromDate IS NULL OR nc.dateCreated >= :fromDate) " +
+            "AND (:toDate IS NULL OR nc.dateCreated <= :toDate)";
+
     List<Non_Conformity> findByIndicatorIdIndicateur(Long indicatorId);
     List<Non_Conformity> findByIndicator (Indicator ind);
     @Query("SELECT nc FROM Non_Conformity nc WHERE nc.source = :source AND nc.indicator.code = :indicatorCode AND nc.status = 'OPEN'")
     Optional<Non_Conformity> findBySourceAndIndicatorCodeAndStatusOpen(@Param("source") NonConformitySource source, @Param("indicatorCode") String indicatorCode);
 
 
+    // [idIndicateur, ouvertes, corrigées, total] pour chaque indicateur ayant au moins une non-conformité
+    @Query("SELECT nc.indicator.idIndicateur, SUM(CASE WHEN UPPER(nc.status) = 'OPEN' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN UPPER(nc.status) = 'FIXED' THEN 1 ELSE 0 END), COUNT(nc) " +
+            "FROM Non_Conformity nc WHERE nc.indicator IS NOT NULL GROUP BY nc.indicator.idIndicateur")
+    List<Object[]> countStatusesByIndicator();
+
     @Query("SELECT COUNT(nc) FROM Non_Conformity nc WHERE nc.actionTaken IS NOT NULL AND nc.actionTaken != '' AND nc.status = 'CLOSED'")
     long countByActionTakenNotNullAndStatus(String status);
-}
 
+    @Query(value = "SELECT new tn.esprit.examen.nomPrenomClasseExamen.dto.NonConformityRow(nc.idNonConformity, nc.source, " +
+            "nc.description, nc.dateCreated, nc.type, nc.status, nc.actionTaken, nc.fixDate, d.username, nc.dateDetected, " +
+            "f.username, nc.isEffective, i.idIndicateur) " +
+            "FROM Non_Conformity nc LEFT JOIN nc.detectedBy d LEFT JOIN nc.fixedBy f LEFT JOIN nc.indicator i " +
+            REGISTER_FILTER,
+            countQuery = "SELECT COUNT(nc) FROM Non_Conformity nc " + REGISTER_FILTER)
+    Page<NonConformityRow> findRegisterRows(@Param("status") String status,
+                                            @Param("source") NonConformitySource source,
+                                            @Param("type") NonConformityType type,
+                                            @Param("fromDate") LocalDate fromDate,
+                                            @Param("toDate") LocalDate toDate,
+                                            Pageable pageable);
 
+    // Collections des non-conformités d'une page : [idNonConformity, valeur]
+    @Query("SELECT nc.idNonConformity, a FROM Non_Conformity nc JOIN nc.attachments a WHERE nc.idNonConformity IN :ids")
+    List<Object[]> findAttachments(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT nc.idNonConformity, s FROM Non_Conformity nc JOIN nc.aiSuggestions s WHERE nc.idNonConformity IN :ids")
+    List<Object[]> findAiSuggestions(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT nc.idNonConformity, p FROM Non_Conformity nc JOIN nc.selectedProposals p WHERE nc.idNonConformity IN :ids")
+    List<Object[]> findSelectedProposals(@Param("ids") Collection<Long> ids);
+}
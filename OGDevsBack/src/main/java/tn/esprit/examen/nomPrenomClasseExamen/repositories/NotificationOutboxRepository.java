@@ -0,0 +1,64 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NotificationOutbox;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NotificationStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutbox, Long> {
+
+    boolean existsByDedupKeyAndCreatedAtAfter(String dedupKey, LocalDateTime since);
+
+    // Destinataires ayant au moins une notification arrivée à échéance
+    @Query("SELECT DISTINCT n.recipientId FROM NotificationOutbox n WHERE n.status = :status AND n.sendAfter <= :now")
+    List<String> findDueRecipients(@Param("status") NotificationStatus status, @Param("now") LocalDateTime now);
+
+    List<NotificationOutbox> findByClaimTokenOrderByCreatedAtAsc(String claimToken);
+
+    /**
+     * Réserve toutes les notifications en attente d'un destinataire, y compris celles dont la
+     * fenêtre de regroupement n'est pas terminée : elles partent dans le même e-mail.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE NotificationOutbox n SET n.status = :sending, n.claimToken = :token, n.claimedAt = :now " +
+            "WHERE n.recipientId = :recipientId AND n.status = :pending")
+    int claim(@Param("recipientId") String recipientId, @Param("token") String token, @Param("now") LocalDateTime now,
+              @Param("pending") NotificationStatus pending, @Param("sending") NotificationStatus sending);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE NotificationOutbox n SET n.status = :sent, n.sentAt = :now, n.claimToken = NULL WHERE n.claimToken = :token")
+    int markSent(@Param("token") String token, @Param("now") LocalDateTime now, @Param("sent") NotificationStatus sent);
+
+    // Statut évalué avant l'incrément : MySQL applique les affectations de gauche à droite
+    @Modifying
+    @Transactional
+    @Query("UPDATE NotificationOutbox n SET " +
+            "n.status = CASE WHEN n.attempts + 1 >= :maxAttempts THEN :failed ELSE :pending END, " +
+            "n.sendAfter = :retryAt, n.errorMessage = :error, n.claimToken = NULL, n.attempts = n.attempts + 1 " +
+            "WHERE n.claimToken = :token")
+    int markFailed(@Param("token") String token, @Param("error") String error,
+                   @Param("maxAttempts") int maxAttempts, @Param("retryAt") LocalDateTime retryAt,
+                   @Param("pending") NotificationStatus pending, @Param("failed") NotificationStatus failed);
+
+    // Lots abandonnés par une instance arrêtée en cours d'envoi
+    @Modifying
+    @Transactional
+    @Query("UPDATE NotificationOutbox n SET n.status = :pending, n.claimToken = NULL " +
+            "WHERE n.status = :sending AND n.claimedAt < :before")
+    int releaseStaleClaims(@Param("before") LocalDateTime before,
+                           @Param("pending") NotificationStatus pending, @Param("sending") NotificationStatus sending);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM NotificationOutbox n WHERE n.status IN :statuses AND n.createdAt < :before")
+    int deleteBefore(@Param("statuses") Collection<NotificationStatus> statuses, @Param("before") LocalDateTime before);
+}
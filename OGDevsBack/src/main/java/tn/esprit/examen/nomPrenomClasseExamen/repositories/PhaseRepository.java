@@ -5,6 +5,9 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Phase;
+
+import java.util.List;
+
 @Repository
 public interface PhaseRepository extends JpaRepository<Phase, Long> {
     @Query("SELECT DISTINCT p FROM Phase p " +
@@ -12,4 +15,7 @@ public interface PhaseRepository extends JpaRepository<Phase, Long> {
             "LEFT JOIN FETCH po.user " +  // Ajout de LEFT JOIN FETCH pour éviter le problème
             "WHERE p.idPhase = :idphase")
     Phase findPhaseWithOperationsAndUsers(@Param("idphase") Long idphase);
+
+    @Query("SELECT ph FROM Phase ph JOIN ph.projectOperations po WHERE po.idProjectOperation = :projectOppId")
+    List<Phase> findByProjectOperationId(@Param("projectOppId") Long projectOppId);
 }
@@ -0,0 +1,18 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ProjectProgress;
+
+public interface ProjectProgressRepository extends JpaRepository<ProjectProgress, Long> {
+
+    @Modifying
+    @Query("UPDATE ProjectProgress p SET p.openTasks = p.openTasks + :openDelta, p.totalTasks = p.totalTasks + :totalDelta " +
+            "WHERE p.projectId = :projectId")
+    int adjust(@Param("projectId") Long projectId, @Param("openDelta") long openDelta, @Param("totalDelta") long totalDelta);
+
+    @Query("SELECT p.openTasks FROM ProjectProgress p WHERE p.projectId = :projectId")
+    long findOpenTasks(@Param("projectId") Long projectId);
+}
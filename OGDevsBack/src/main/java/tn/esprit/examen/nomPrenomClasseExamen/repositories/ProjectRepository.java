@@ -1,12 +1,46 @@
 package tn.esprit.examen.nomPrenomClasseExamen.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
-
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ProjectDurationFeatures;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Project;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.UserEntity;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface ProjectRepository extends JpaRepository<Project, Long> {
+
+    String DURATION_FEATURES = "SELECT new tn.esprit.examen.nomPrenomClasseExamen.dto.ProjectDurationFeatures(" +
+            "p.idProjet, p.projectType, SIZE(p.resources), " +
+            "(SELECT COUNT(DISTINCT po.user.id) FROM Phase ph JOIN ph.projectOperations po WHERE ph.project = p), " +
+            "SIZE(p.technologies), " +
+            "(SELECT COUNT(t) FROM Phase ph2 JOIN ph2.projectOperations po2 JOIN po2.projecttasks t WHERE ph2.project = p)) " +
+            "FROM Project p";
+
     List<Project> findByClient(UserEntity client);
+
+    // Remontée directe tâche -> opération -> phase -> projet
+    @Query("SELECT ph.project FROM Phase ph JOIN ph.projectOperations po JOIN po.projecttasks t WHERE t.id = :taskId")
+    Optional<Project> findByProjectTaskId(@Param("taskId") Long taskId);
+
+    @Query("SELECT ph.project FROM Phase ph JOIN ph.projectOperations po WHERE po.idProjectOperation = :projectOppId")
+    Optional<Project> findByProjectOppId(@Param("projectOppId") Long projectOppId);
+
+    @Query("SELECT COUNT(t) FROM Phase ph JOIN ph.projectOperations po JOIN po.projecttasks t " +
+            "WHERE ph.project.idProjet = :projectId")
+    long countTasks(@Param("projectId") Long projectId);
+
+    @Query("SELECT COUNT(t) FROM Phase ph JOIN ph.projectOperations po JOIN po.projecttasks t " +
+            "WHERE ph.project.idProjet = :projectId AND (t.status IS NULL OR UPPER(t.status) <> 'DONE')")
+    long countOpenTasks(@Param("projectId") Long projectId);
+
+    // Ressources, intervenants distincts, technologies et tâches de chaque projet
+    @Query(DURATION_FEATURES + " WHERE p.idProjet IN :projectIds")
+    List<ProjectDurationFeatures> findDurationFeatures(@Param("projectIds") Collection<Long> projectIds);
+
+    @Query(DURATION_FEATURES)
+    List<ProjectDurationFeatures> findAllDurationFeatures();
 }
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.ProjectTask;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.TaskInfoDTO;
 
 import java.util.List;
 
@@ -18,4 +19,15 @@ public interface ProjectTaskRepository extends JpaRepository<ProjectTask, Long>
     @Modifying
     @Query("DELETE FROM ProjectTask pt WHERE pt.projectOpp.idProjectOperation = :projectOppId")
     void deleteByProjectOppId(@Param("projectOppId") Long projectOppId);
+
+    @Query("SELECT t FROM ProjectTask t JOIN t.bugs b WHERE b.idBug = :bugId")
+    List<ProjectTask> findByBugId(@Param("bugId") Long bugId);
+
+    @Query("SELECT COUNT(t) FROM ProjectTask t WHERE t.projectOpp.idProjectOperation = :projectOppId " +
+            "AND (t.status IS NULL OR UPPER(t.status) <> 'DONE')")
+    long countOpenByProjectOpp(@Param("projectOppId") Long projectOppId);
+
+    @Query("SELECT new tn.esprit.examen.nomPrenomClasseExamen.entities.TaskInfoDTO(p.name, po.name, po.deadline, ph.phase_name) " +
+            "FROM Phase ph JOIN ph.project p JOIN ph.projectOperations po JOIN po.projecttasks t WHERE t.id = :taskId")
+    List<TaskInfoDTO> findTaskInfo(@Param("taskId") Long taskId);
 }
@@ -0,0 +1,7 @@
+package tn.esprit.examen.nomPrenomClasseExamen.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ResumeFeatures;
+
+public interface ResumeFeaturesRepository extends JpaRepository<ResumeFeatures, Long> {
+}
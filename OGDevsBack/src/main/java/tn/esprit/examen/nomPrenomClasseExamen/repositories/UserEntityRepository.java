@@ -2,6 +2,7 @@ package tn.esprit.examen.nomPrenomClasseExamen.repositories;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.NotificationRecipient;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.UserEntity;
 
 import java.util.List;
@@ -15,12 +16,15 @@ public interface UserEntityRepository extends JpaRepository<UserEntity, String>
     List<UserEntity> findAllWithRoles();
 
     List<UserEntity> findAll();
-    @Query("SELECT DISTINCT u FROM UserEntity u JOIN FETCH u.roles r WHERE r.roleName = 'ROLE_ADMIN'")
-    List<UserEntity> findAdminsWithRoles();
     @Query("SELECT u FROM UserEntity u WHERE LOWER(u.username) LIKE LOWER(CONCAT('%', :query, '%')) " +
             "OR LOWER(u.email) LIKE LOWER(CONCAT('%', :query, '%')) " +
             "OR LOWER(u.phoneNumber) LIKE LOWER(CONCAT('%', :query, '%'))")
     List<UserEntity> searchByUsernameOrEmailOrPhoneNumber(@Param("query") String query);
+    // Destinataires d'alerte d'un rôle, sans charger les entités ni leurs rôles
+    @Query("SELECT new tn.esprit.examen.nomPrenomClasseExamen.dto.NotificationRecipient(" +
+            "u.id, u.email, u.enableEmailNotifications, u.enableWebSocketNotifications) " +
+            "FROM UserEntity u JOIN u.roles r WHERE r.roleName = :roleName")
+    List<NotificationRecipient> findNotificationRecipientsByRole(@Param("roleName") String roleName);
     @Query("SELECT u FROM UserEntity u JOIN u.roles r WHERE r.roleName = :roleName")
     List<UserEntity> findByRole(String roleName);
 
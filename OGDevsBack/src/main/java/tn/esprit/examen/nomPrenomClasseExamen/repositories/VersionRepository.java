@@ -1,12 +1,30 @@
 package tn.esprit.examen.nomPrenomClasseExamen.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Document;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Version;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface VersionRepository extends JpaRepository<Version, Long> {
     List<Version> findByDocument(Document document);
+    List<Version> findByDocumentOrderByNumeroVersionAsc(Document document);
     Version findByDocumentAndNumeroVersion(Document document, Long numeroVersion);
+    Optional<Version> findFirstByDocumentAndNumeroVersionGreaterThanOrderByNumeroVersionAsc(Document document, Long numeroVersion);
+    List<Version> findByDocumentAndNumeroVersionBetweenOrderByNumeroVersionAsc(Document document, Long from, Long to);
+
+    // Prochain numéro de version sans charger l'historique
+    @Query("SELECT COALESCE(MAX(v.numeroVersion), 0) FROM Version v WHERE v.document = :document")
+    Long findMaxNumeroVersion(@Param("document") Document document);
+
+    // Dernière version complète à partir de laquelle rejouer les deltas
+    @Query("SELECT MAX(v.numeroVersion) FROM Version v WHERE v.document = :document " +
+            "AND v.delta IS NULL AND v.numeroVersion <= :numeroVersion")
+    Long findSnapshotNumeroAtOrBefore(@Param("document") Document document, @Param("numeroVersion") Long numeroVersion);
+
+    @Query("SELECT v FROM Version v ORDER BY v.document.id, v.numeroVersion")
+    List<Version> findAllOrderByDocumentAndNumero();
 }
@@ -8,7 +8,6 @@ import tn.esprit.examen.nomPrenomClasseExamen.repositories.BudgetRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.FinancialTransactionRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.AdministrativeDeviationRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.IndicatorRepository;
-import tn.esprit.examen.nomPrenomClasseExamen.repositories.UserEntityRepository;
 
 import java.time.LocalDate;
 import java.util.HashMap;
@@ -20,7 +19,6 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.beans.factory.annotation.Value;
 
 @Slf4j
@@ -33,7 +31,7 @@ public class AFCServiceImpl implements AFCService {
     private final BudgetRepository budgetRepository;
     private final IndicatorRepository indicatorRepository;
     private final NotificationService notificationService;
-    private final UserEntityRepository userEntityRepository;
+    private final OutboundHttpService outboundHttpService;
 //récupèrer toutes les transactions financières (par exemple, des paiements ou des factures) pour une année donnée
     @Override
     public List<FinancialTransaction> getFinancialTransactions(String year) {
@@ -207,19 +205,16 @@ public class AFCServiceImpl implements AFCService {
     }
 
     private void notifyAdmins(String message, String type) {
-        List<UserEntity> users = userEntityRepository.findAll();
-        for (UserEntity user : users) {
-            if (user.getRoles().stream().anyMatch(role -> "ROLE_ADMIN".equals(role.getRoleName()))) {
-                notificationService.sendNotification(user.getId(), message, type);
-            }
-        }
+        notificationService.notifyRole("ROLE_ADMIN", message, type);
     }
 
     //récupère les données historiques des 3 dernières années+prompt d hisorique +API
     @Value("${google.gemini.api.key}")
     private String geminiApiKey;
 
-    private final RestTemplate restTemplate = new RestTemplate();//envoie cette requête à l’URL de l’API de Gemini
+    @Value("${gemini.api.base-url:https://generativelanguage.googleapis.com}")
+    private String geminiBaseUrl;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     public double predictBudget(int year) {
@@ -259,9 +254,10 @@ public class AFCServiceImpl implements AFCService {
                     ))
             ));
 
-            String url = "https://generativelanguage.googleapis.com/v1beta/models/gemini-1.5-flash:generateContent?key=" + geminiApiKey;
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            String response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class).getBody();
+            String url = geminiBaseUrl + "/v1beta/models/gemini-1.5-flash:generateContent?key=" + geminiApiKey;
+            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);//envoie cette requête à l’URL de l’API de Gemini
+            String response = outboundHttpService.execute("gemini", "predictBudget",
+                    rt -> rt.exchange(url, HttpMethod.POST, entity, String.class).getBody());
 
             // Extraire le résultat
             Map<String, Object> jsonResponse = objectMapper.readValue(response, Map.class);
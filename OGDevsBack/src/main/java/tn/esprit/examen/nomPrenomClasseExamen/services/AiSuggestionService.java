@@ -1,31 +1,153 @@
 package tn.esprit.examen.nomPrenomClasseExamen.services;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.SimilarNonConformityDTO;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
+@RequiredArgsConstructor
 public class AiSuggestionService {
 
     @Value("${gemini.api.key}")
     private String apiKey;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Value("${gemini.api.base-url:https://generativelanguage.googleapis.com}")
+    private String apiBaseUrl;
 
-    public List<String> suggest(String nonConformityText) {
-        String url = "https://generativelanguage.googleapis.com/v1beta/models/gemini-1.5-flash-latest:generateContent?key=" + apiKey;
+    private final OutboundHttpService outboundHttpService;
+    private final SimilarNonConformityIndex similarNonConformityIndex;
+    private final LlmResponseCache responseCache;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final int SIMILAR_CASES = 3;
+    private static final int SIMILAR_CASES_PER_FINDING = 2;
+    private static final int TOKENS_PER_FINDING = 200;
 
+    public List<String> suggest(String nonConformityText) {
         String promptText = "Voici le texte extrait d'un fichier d'audit contenant une non-conformité et sa cause racine :\n\n" +
                 nonConformityText +
+                similarCasesContext(nonConformityText, SIMILAR_CASES) +
                 "\n\nTu dois analyser la cause de non-conformité et proposer EXACTEMENT deux actions correctives précises, réalistes et numérotées (1. et 2.). Utilise le format suivant : '1. [Première action]' et '2. [Seconde action]'. Si tu ne peux identifier qu'une seule action, répète-la comme '2.' ou ajoute '2. Effectuer un suivi régulier pour vérifier l'efficacité des actions.' :";
 
+        // Un même fichier d'audit ne relance pas l'appel : les suggestions sont mises en cache (tableau
+        // JSON), sauf si Gemini en a renvoyé moins de deux et qu'il faut les compléter
+        String json = responseCache.getOrCompute("gemini.suggestions", promptText,
+                () -> toJson(callGemini(promptText)),
+                cached -> parseList(cached).size() >= 2);
+        return exactlyTwo(parseList(json));
+    }
+
+    /**
+     * Deux actions correctives pour chacun des constats d'un même lot, dans l'ordre reçu. Un seul
+     * appel Gemini traite tout le lot ; un constat absent de la réponse reçoit les actions par défaut.
+     */
+    public List<List<String>> suggestForFindings(List<String> findings) {
+        StringBuilder promptText = new StringBuilder("Voici ").append(findings.size())
+                .append(" constats extraits d'un rapport d'audit, chacun décrivant une non-conformité et sa cause racine :\n");
+        for (int i = 0; i < findings.size(); i++) {
+            promptText.append("\n[").append(i + 1).append("] ").append(findings.get(i))
+                    .append(similarCasesContext(findings.get(i), SIMILAR_CASES_PER_FINDING));
+        }
+        promptText.append("\n\nPour CHAQUE constat, analyse la cause de non-conformité et propose EXACTEMENT deux actions correctives précises, réalistes et numérotées (1. et 2.). ")
+                .append("Réponds uniquement par un tableau JSON contenant un objet par constat, au format : ")
+                .append("[{\"constat\": 1, \"actions\": [\"1. [Première action]\", \"2. [Seconde action]\"]}]");
+
+        String prompt = promptText.toString();
+        // Un même rapport redécoupé à l'identique ne relance pas les appels ; une réponse incomplète,
+        // qui serait complétée par les actions par défaut, n'est pas conservée
+        String json = responseCache.getOrCompute("gemini.audit", prompt, () -> {
+            String text = generate(prompt, "audit", TOKENS_PER_FINDING * findings.size() + 100, true)
+                    .replaceAll("```json|```", "").trim();
+            try {
+                if (!objectMapper.readTree(text).isArray()) {
+                    throw new IllegalStateException("Réponse Gemini inattendue : tableau JSON attendu");
+                }
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Réponse Gemini invalide : " + e.getOriginalMessage(), e);
+            }
+            return text;
+        }, cached -> {
+            Map<Integer, List<String>> byFinding = parseFindings(cached);
+            for (int i = 1; i <= findings.size(); i++) {
+                if (byFinding.getOrDefault(i, List.of()).size() < 2) {
+                    return false;
+                }
+            }
+            return true;
+        });
+
+        Map<Integer, List<String>> byFinding = parseFindings(json);
+        List<List<String>> result = new ArrayList<>();
+        for (int i = 1; i <= findings.size(); i++) {
+            result.add(exactlyTwo(byFinding.getOrDefault(i, new ArrayList<>())));
+        }
+        return result;
+    }
+
+    // Actions proposées par numéro de constat, lues dans la réponse JSON du lot
+    private Map<Integer, List<String>> parseFindings(String json) {
+        Map<Integer, List<String>> byFinding = new HashMap<>();
+        try {
+            for (JsonNode item : objectMapper.readTree(json)) {
+                List<String> actions = new ArrayList<>();
+                item.path("actions").forEach(action -> {
+                    if (action.isTextual() && !action.asText().isBlank()) {
+                        actions.add(action.asText().trim());
+                    }
+                });
+                byFinding.put(item.path("constat").asInt(), actions);
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Réponse Gemini invalide : " + e.getOriginalMessage(), e);
+        }
+        return byFinding;
+    }
+
+    private List<String> parseList(String json) {
+        try {
+            return new ArrayList<>(Arrays.asList(objectMapper.readValue(json, String[].class)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Suggestions en cache illisibles : " + e.getOriginalMessage(), e);
+        }
+    }
+
+    private String toJson(List<String> suggestions) {
+        try {
+            return objectMapper.writeValueAsString(suggestions);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Sérialisation impossible : " + e.getMessage(), e);
+        }
+    }
+
+    private List<String> callGemini(String promptText) {
+        String text = generate(promptText, "suggest", 250, false); // Augmente légèrement pour s'assurer d'avoir deux lignes
+        // Extraction des suggestions numérotées
+        List<String> suggestions = Arrays.stream(text.split("\n"))
+                .filter(s -> !s.isBlank() && s.matches("^\\d+\\..*"))
+                .map(String::trim)
+                .collect(Collectors.toList());
+        // Au plus deux ; le complément éventuel est ajouté après la mise en cache
+        return suggestions.size() > 2 ? suggestions.subList(0, 2) : suggestions;
+    }
+
+    // Texte brut généré par Gemini ; jsonResponse demande une sortie JSON au modèle
+    private String generate(String promptText, String endpoint, int maxOutputTokens, boolean jsonResponse) {
+        String url = apiBaseUrl + "/v1beta/models/gemini-1.5-flash-latest:generateContent?key=" + apiKey;
+
         // Préparation du body JSON pour Gemini
         Map<String, Object> part = new HashMap<>();
         part.put("text", promptText);
@@ -43,7 +165,10 @@ public class AiSuggestionService {
         // Configuration de génération (réduire la température pour plus de précision)
         Map<String, Object> generationConfig = new HashMap<>();
         generationConfig.put("temperature", 0.4); // Réduit la créativité pour respecter le format
-        generationConfig.put("maxOutputTokens", 250); // Augmente légèrement pour s'assurer d'avoir deux lignes
+        generationConfig.put("maxOutputTokens", maxOutputTokens);
+        if (jsonResponse) {
+            generationConfig.put("responseMimeType", "application/json");
+        }
         requestBody.put("generationConfig", generationConfig);
 
         HttpHeaders headers = new HttpHeaders();
@@ -52,7 +177,8 @@ public class AiSuggestionService {
         HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
 
         try {
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, entity, Map.class);
+            ResponseEntity<Map> response = outboundHttpService.execute("gemini", endpoint,
+                    rt -> rt.postForEntity(url, entity, Map.class));
 
             if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
                 Map body = response.getBody();
@@ -63,26 +189,8 @@ public class AiSuggestionService {
                     List<Map> partsResp = (List<Map>) contentResp.get("parts");
                     if (partsResp != null && !partsResp.isEmpty()) {
                         String text = (String) partsResp.get(0).get("text");
-                        System.out.println("Texte brut retourné par Gemini : " + text); // Débogage
-                        // Extraction des suggestions numérotées
-                        List<String> suggestions = Arrays.stream(text.split("\n"))
-                                .filter(s -> !s.isBlank() && s.matches("^\\d+\\..*"))
-                                .map(String::trim)
-                                .collect(Collectors.toList());
-
-                        // Assurer exactement 2 suggestions
-                        if (suggestions.size() < 2) {
-                            if (suggestions.isEmpty()) {
-                                suggestions.add("1. Proposer une solution basée sur la cause identifiée.");
-                                suggestions.add("2. Effectuer un suivi régulier pour vérifier l'efficacité des actions.");
-                            } else {
-                                suggestions.add("2. " + (suggestions.get(0).replace("1.", "2.") + " (répété)")); // Répéter avec ajustement
-                            }
-                        } else if (suggestions.size() > 2) {
-                            suggestions = suggestions.subList(0, 2); // Limiter à 2
-                        }
-
-                        return suggestions;
+                        log.debug("Texte brut retourné par Gemini : {}", text);
+                        return text;
                     }
                 }
             }
@@ -91,4 +199,43 @@ public class AiSuggestionService {
             throw new RuntimeException("Erreur lors de l'appel à l'API Gemini : " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    // Assurer exactement 2 suggestions
+    private static List<String> exactlyTwo(List<String> suggestions) {
+        if (suggestions.size() < 2) {
+            if (suggestions.isEmpty()) {
+                suggestions.add("1. Proposer une solution basée sur la cause identifiée.");
+                suggestions.add("2. Effectuer un suivi régulier pour vérifier l'efficacité des actions.");
+            } else {
+                suggestions.add("2. " + (suggestions.get(0).replace("1.", "2.") + " (répété)")); // Répéter avec ajustement
+            }
+        } else if (suggestions.size() > 2) {
+            suggestions = suggestions.subList(0, 2); // Limiter à 2
+        }
+        return suggestions;
+    }
+
+    // Non-conformités proches déjà traitées, pour que les actions proposées s'appuient sur l'historique
+    private String similarCasesContext(String nonConformityText, int limit) {
+        try {
+            List<SimilarNonConformityDTO> fixed = similarNonConformityIndex
+                    .findSimilar(nonConformityText, limit * 3, SimilarNonConformityIndex.Filter.NONE).stream()
+                    .filter(nc -> nc.getActionTaken() != null)
+                    .limit(limit)
+                    .toList();
+            if (fixed.isEmpty()) {
+                return "";
+            }
+            StringBuilder context = new StringBuilder("\n\nNon-conformités similaires déjà traitées dans l'entreprise :\n");
+            for (SimilarNonConformityDTO nc : fixed) {
+                context.append("- ").append(nc.getDescription())
+                        .append(" -> action corrective : ").append(nc.getActionTaken()).append('\n');
+            }
+            return context.toString();
+        } catch (Exception e) {
+            // Les suggestions restent possibles sans cas similaires
+            log.warn("Recherche des non-conformités similaires impossible, suggestions sans historique : {}", e.getMessage(), e);
+            return "";
+        }
+    }
+}
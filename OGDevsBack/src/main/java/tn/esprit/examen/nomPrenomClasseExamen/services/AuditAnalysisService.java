@@ -0,0 +1,238 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.AuditFindingDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Non_Conformity;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Analyse d'un rapport d'audit complet. Le texte extrait est découpé en constats, envoyés à
+ * Gemini par lots bornés (nombre de constats et taille du texte) avec un nombre limité de lots
+ * simultanés. Chaque lot traité est enregistré en une transaction comme non-conformités AUDIT,
+ * puis ses constats sont diffusés sans attendre les lots suivants. Le traitement se poursuit
+ * même si le client cesse d'écouter.
+ */
+@Service
+public class AuditAnalysisService {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditAnalysisService.class);
+
+    static final String EVENT_FINDING = "finding";
+
+    // Début de constat : "Constat n°2 :", "NC 3 -", "Écart 1.", "Finding 4:", "1.", "2)"
+    private static final Pattern NUMBERED_START = Pattern.compile(
+            "^\\s*(?:(?:constat|[ée]cart|non[- ]?conformit[ée]|nc|finding|observation)\\b.{0,15}?[:.)\\-–]|\\d{1,3}\\s*[.)\\-–]\\s)",
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    // Puces, retenues seulement en l'absence de numérotation (elles servent aussi aux détails d'un constat)
+    private static final Pattern BULLET_START = Pattern.compile("^\\s*[•▪●◦*\\-–]\\s+");
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\R\\s*\\R");
+
+    private final AiSuggestionService aiSuggestionService;
+    private final INonConformityService nonConformityService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int batchSize;
+    private final int batchMaxChars;
+    private final int concurrency;
+    private final int maxFindings;
+    private final int minFindingChars;
+    private final int maxFindingChars;
+
+    public AuditAnalysisService(AiSuggestionService aiSuggestionService,
+                                INonConformityService nonConformityService,
+                                @Value("${audit.analysis.batch-size:8}") int batchSize,
+                                @Value("${audit.analysis.batch-max-chars:6000}") int batchMaxChars,
+                                @Value("${audit.analysis.concurrency:3}") int concurrency,
+                                @Value("${audit.analysis.max-findings:200}") int maxFindings,
+                                @Value("${audit.analysis.min-finding-chars:30}") int minFindingChars,
+                                @Value("${audit.analysis.max-finding-chars:2000}") int maxFindingChars) {
+        this.aiSuggestionService = aiSuggestionService;
+        this.nonConformityService = nonConformityService;
+        this.batchSize = batchSize;
+        this.batchMaxChars = batchMaxChars;
+        this.concurrency = concurrency;
+        this.maxFindings = maxFindings;
+        this.minFindingChars = minFindingChars;
+        this.maxFindingChars = maxFindingChars;
+    }
+
+    /**
+     * Découpe, analyse et enregistre les constats de {@code text}. Le flux émet un événement
+     * "finding" par constat (dans l'ordre d'achèvement des lots), puis un événement "done" avec
+     * le bilan. Lève {@link IllegalArgumentException} si aucun constat n'est reconnu.
+     * <p>
+     * Le traitement démarre immédiatement et ne dépend pas de l'abonné : une déconnexion du
+     * client ou l'expiration de la requête n'interrompt pas l'enregistrement des lots restants.
+     * Le flux renvoyé rejoue les événements déjà produits puis suit les suivants.
+     */
+    public Flux<ServerSentEvent<String>> analyze(String text, String userId) {
+        List<String> findings = segment(text);
+        if (findings.isEmpty()) {
+            throw new IllegalArgumentException("Aucun constat exploitable dans le fichier d'audit");
+        }
+        List<List<Integer>> batches = batches(findings);
+        log.info("Analyse d'audit : {} constat(s) en {} lot(s)", findings.size(), batches.size());
+
+        AtomicInteger saved = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        return Flux.fromIterable(batches)
+                .flatMap(batch -> Mono.fromCallable(() -> processBatch(findings, batch, userId))
+                        .subscribeOn(Schedulers.boundedElastic()), concurrency)
+                .flatMapIterable(results -> results)
+                .doOnNext(result -> {
+                    if (result.getIdNonConformity() != null) {
+                        saved.incrementAndGet();
+                    }
+                    if (result.getError() != null) {
+                        failed.incrementAndGet();
+                    }
+                })
+                .map(result -> OpenAIService.event(EVENT_FINDING, toJson(result)))
+                .concatWith(Mono.fromCallable(() -> {
+                    log.info("Analyse d'audit terminée : {} constat(s) enregistré(s), {} en échec", saved.get(), failed.get());
+                    return OpenAIService.event(OpenAIService.EVENT_DONE, toJson(Map.of(
+                            "findings", findings.size(),
+                            "batches", batches.size(),
+                            "saved", saved.get(),
+                            "failed", failed.get())));
+                }))
+                .doOnError(e -> log.error("Analyse d'audit interrompue : {}", e.getMessage(), e))
+                // Abonnement immédiat et relecture pour le client : l'abonné ne fait qu'observer le traitement
+                .replay()
+                .autoConnect(0);
+    }
+
+    /**
+     * Constats du rapport : blocs ouverts par une numérotation ou un intitulé ("Constat", "NC",
+     * "Écart"...), à défaut par des puces, à défaut les paragraphes. Un texte sans structure
+     * reconnue donne un seul constat.
+     */
+    List<String> segment(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        List<String> lines = text.lines().toList();
+        List<String> blocks = splitOn(lines, NUMBERED_START);
+        if (blocks.size() < 2) {
+            blocks = splitOn(lines, BULLET_START);
+        }
+        if (blocks.size() < 2) {
+            blocks = Arrays.asList(PARAGRAPH_BREAK.split(text));
+        }
+
+        Set<String> findings = new LinkedHashSet<>();
+        for (String block : blocks) {
+            String finding = block.replaceAll("\\s+", " ").trim();
+            if (finding.length() >= minFindingChars) {
+                findings.add(finding.length() > maxFindingChars ? finding.substring(0, maxFindingChars) : finding);
+            }
+        }
+        if (findings.isEmpty()) {
+            String whole = text.replaceAll("\\s+", " ").trim();
+            return List.of(whole.length() > maxFindingChars ? whole.substring(0, maxFindingChars) : whole);
+        }
+        if (findings.size() > maxFindings) {
+            log.warn("Analyse d'audit : {} constats, seuls les {} premiers sont traités", findings.size(), maxFindings);
+        }
+        return findings.stream().limit(maxFindings).toList();
+    }
+
+    // Lots consécutifs d'au plus batchSize constats et batchMaxChars caractères (au moins un constat)
+    List<List<Integer>> batches(List<String> findings) {
+        List<List<Integer>> batches = new ArrayList<>();
+        List<Integer> current = new ArrayList<>();
+        int chars = 0;
+        for (int i = 0; i < findings.size(); i++) {
+            int length = findings.get(i).length();
+            if (!current.isEmpty() && (current.size() >= batchSize || chars + length > batchMaxChars)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                chars = 0;
+            }
+            current.add(i);
+            chars += length;
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    // Le texte précédant le premier début de constat (en-tête du rapport) est ignoré
+    private static List<String> splitOn(List<String> lines, Pattern start) {
+        List<String> blocks = new ArrayList<>();
+        StringBuilder current = null;
+        for (String line : lines) {
+            if (start.matcher(line).find()) {
+                if (current != null) {
+                    blocks.add(current.toString());
+                }
+                current = new StringBuilder(line);
+            } else if (current != null) {
+                current.append('\n').append(line);
+            }
+        }
+        if (current != null) {
+            blocks.add(current.toString());
+        }
+        return blocks;
+    }
+
+    // Un lot en échec côté Gemini est tout de même enregistré, sans suggestions
+    private List<AuditFindingDTO> processBatch(List<String> findings, List<Integer> batch, String userId) {
+        List<String> texts = batch.stream().map(findings::get).toList();
+        List<AuditFindingDTO> results = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            AuditFindingDTO result = new AuditFindingDTO();
+            result.setIndex(batch.get(i) + 1);
+            result.setDescription(texts.get(i));
+            results.add(result);
+        }
+
+        List<List<String>> suggestions;
+        try {
+            suggestions = aiSuggestionService.suggestForFindings(texts);
+        } catch (RuntimeException e) {
+            log.warn("Analyse d'audit : échec des suggestions pour les constats {} : {}", batch, e.getMessage());
+            suggestions = texts.stream().<List<String>>map(t -> List.of()).toList();
+            for (AuditFindingDTO result : results) {
+                result.setError("Suggestions indisponibles : " + e.getMessage());
+            }
+        }
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).setAiSuggestions(suggestions.get(i));
+        }
+
+        try {
+            List<Non_Conformity> saved = nonConformityService.addNonConformitiesFromAudit(texts, suggestions, userId);
+            for (int i = 0; i < results.size(); i++) {
+                results.get(i).setIdNonConformity(saved.get(i).getIdNonConformity());
+            }
+        } catch (RuntimeException e) {
+            log.error("Analyse d'audit : échec de l'enregistrement des constats {} : {}", batch, e.getMessage(), e);
+            for (AuditFindingDTO result : results) {
+                result.setError("Enregistrement impossible : " + e.getMessage());
+            }
+        }
+        return results;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Sérialisation impossible : " + e.getMessage(), e);
+        }
+    }
+}
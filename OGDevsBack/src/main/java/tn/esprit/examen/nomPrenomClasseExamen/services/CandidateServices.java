@@ -2,25 +2,23 @@ package tn.esprit.examen.nomPrenomClasseExamen.services;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Transactional;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Candidate;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.CandidateScore;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.JobOffer;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ResumeFeatures;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.CandidateRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.CandidateScoreRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.JobOfferRepository;
 
-import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.Base64;
 
 @Service
 @RequiredArgsConstructor
@@ -30,19 +28,22 @@ public class CandidateServices implements ICandidateServices {
     private final CandidateRepository candidateRepository;
     private final JobOfferRepository jobOfferRepository;
     private final EmailService emailService;
-    private final RestTemplate restTemplate = new RestTemplate();
-    private static final String SIMILARITY_API_URL = "http://localhost:8000/calculate_similarity"; // Corrected port
+    private final CandidateScoreRepository candidateScoreRepository;
+    private final ResumeFeatureService resumeFeatureService;
+    private final SemanticSimilarityEngine similarityEngine;
+    // Verrous en nombre fixe répartis par identifiant d'offre : des offres partageant un verrou s'attendent simplement
+    private final Object[] rankingLocks = newLocks();
 
-    // Weightings for scoring criteria
-    private static final double WEIGHT_EXPERIENCE = 0.35;
-    private static final double WEIGHT_SKILLS = 0.35;
-    private static final double WEIGHT_TOOLS = 0.20;
-    private static final double WEIGHT_QUALITIES = 0.10;
+    private static final int RANKING_LOCK_STRIPES = 64;
+    // À incrémenter quand la méthode de notation change, pour invalider les scores enregistrés
+    private static final String SCORING_VERSION = "1";
 
     @Override
     public Candidate createCandidate(Candidate candidate) {
         log.info("Creating candidate: {}", candidate);
-        return candidateRepository.save(candidate);
+        Candidate saved = candidateRepository.save(candidate);
+        resumeFeatureService.refresh(saved);
+        return saved;
     }
 
     @Override
@@ -52,7 +53,10 @@ public class CandidateServices implements ICandidateServices {
         }
         candidate.setId(id);
         log.info("Updating candidate with id {}: {}", id, candidate);
-        return candidateRepository.save(candidate);
+        Candidate saved = candidateRepository.save(candidate);
+        // Sans effet si le CV est inchangé ; sinon les scores existants deviennent obsolètes
+        resumeFeatureService.refresh(saved);
+        return saved;
     }
 
     @Override
@@ -69,11 +73,14 @@ public class CandidateServices implements ICandidateServices {
     }
 
     @Override
+    @Transactional
     public void deleteCandidate(Long id) {
         if (!candidateRepository.existsById(id)) {
             throw new IllegalArgumentException("Candidate with id " + id + " does not exist.");
         }
         log.info("Deleting candidate with id: {}", id);
+        candidateScoreRepository.deleteByCandidate(id);
+        resumeFeatureService.delete(id);
         candidateRepository.deleteById(id);
     }
 
@@ -127,97 +134,6 @@ public class CandidateServices implements ICandidateServices {
         }
     }
 
-    // Extract text from a Base64-encoded PDF
-    private String extractTextFromPDF(String base64EncodedPDF) {
-        try {
-            if (base64EncodedPDF == null || base64EncodedPDF.trim().isEmpty()) {
-                log.warn("Base64-encoded PDF is null or empty");
-                return "";
-            }
-            String base64 = base64EncodedPDF.replace("data:application/pdf;base64,", "").trim();
-            byte[] decodedBytes = Base64.getDecoder().decode(base64);
-            ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(decodedBytes);
-            try (PDDocument document = PDDocument.load(byteArrayInputStream)) {
-                PDFTextStripper textStripper = new PDFTextStripper();
-                String text = textStripper.getText(document);
-                log.info("Extracted PDF text: {}", text);
-                return text;
-            }
-        } catch (Exception e) {
-            log.error("Error extracting text from PDF: {}", e.getMessage(), e);
-            return "";
-        }
-    }
-
-    // Preprocess text
-    private String preprocessText(String text) {
-        if (text == null) {
-            return "";
-        }
-        String normalized = text.toLowerCase()
-                .replaceAll("[àáâãäå]", "a")
-                .replaceAll("[èéêë]", "e")
-                .replaceAll("[ìíîï]", "i")
-                .replaceAll("[òóôõö]", "o")
-                .replaceAll("[ùúûü]", "u")
-                .replaceAll("[ç]", "c")
-                .replaceAll("[^a-z0-9\\s\\.]", " ") // Keep periods for sentence splitting
-                .replaceAll("\\s+", " ")
-                .trim();
-        log.info("Preprocessed text: {}", normalized);
-        return normalized;
-    }
-
-    // Extract relevant sentences
-    private List<String> extractSentences(String text) {
-        if (text == null || text.trim().isEmpty()) {
-            log.warn("Text is empty; no sentences to extract");
-            return Collections.emptyList();
-        }
-        String[] sentences = text.split("[.!?]");
-        List<String> result = Arrays.stream(sentences)
-                .map(String::trim)
-                .filter(s -> !s.isEmpty())
-                .collect(Collectors.toList());
-        log.info("Extracted sentences: {}", result);
-        return result;
-    }
-
-    // Call the Python API for semantic similarity
-    private double calculateSemanticSimilarity(List<String> resumeSentences, List<String> jobSentences) {
-        try {
-            log.info("Sending to FastAPI - Resume sentences: {}", resumeSentences);
-            log.info("Sending to FastAPI - Job sentences: {}", jobSentences);
-            if (resumeSentences.isEmpty() || jobSentences.isEmpty()) {
-                log.warn("Empty sentence lists sent to FastAPI");
-                return 0.0;
-            }
-            Map<String, List<String>> request = new HashMap<>();
-            request.put("resume_sentences", resumeSentences);
-            request.put("job_sentences", jobSentences);
-
-            HttpEntity<Map<String, List<String>>> requestEntity = new HttpEntity<>(request);
-            ResponseEntity<Map> response = restTemplate.exchange(SIMILARITY_API_URL, HttpMethod.POST, requestEntity, Map.class);
-            log.info("FastAPI response status: {}", response.getStatusCode());
-            log.info("FastAPI response body: {}", response.getBody());
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null && response.getBody().containsKey("similarity")) {
-                double similarity = ((Number) response.getBody().get("similarity")).doubleValue();
-                log.info("Received similarity score: {}", similarity);
-                return similarity;
-            } else {
-                log.error("Invalid response from FastAPI: {}", response.getBody());
-                return 0.0;
-            }
-        } catch (HttpClientErrorException e) {
-            log.error("FastAPI error - Status: {}, Response: {}", e.getStatusCode(), e.getResponseBodyAsString());
-            return 0.0;
-        } catch (Exception e) {
-            log.error("Error calling FastAPI: {}", e.getMessage(), e);
-            return 0.0;
-        }
-    }
-
     // Calculate a candidate's score relative to a job offer
     public double calculateCandidateScore(Candidate candidate, JobOffer jobOffer) {
         log.info("Calculating score for candidate {} and job offer {}", candidate.getId(), jobOffer.getId());
@@ -226,183 +142,133 @@ public class CandidateServices implements ICandidateServices {
                     candidate.getId(), jobOffer.getId());
             return 0.0;
         }
-
-        // Extract and preprocess text
-        String resumeText = preprocessText(extractTextFromPDF(candidate.getResume()));
-        String jobText = preprocessText(jobOffer.getDescription() + " " + jobOffer.getRequirements());
-
-        if (resumeText.isEmpty()) {
-            log.warn("No text extracted from resume for candidate {}", candidate.getId());
-            return 0.0;
-        }
-
-        // Extract sentences
-        List<String> resumeSentences = extractSentences(resumeText);
-        List<String> jobSentences = extractSentences(jobText);
-
-        // Calculate sub-scores
-        double experienceScore = calculateExperienceScore(resumeSentences, jobSentences);
-        double skillsScore = calculateSkillsScore(resumeSentences, jobSentences);
-        double toolsScore = calculateToolsScore(resumeSentences, jobSentences);
-        double qualitiesScore = calculateQualitiesScore(resumeSentences, jobSentences);
-
-        // Final score
-        double finalScore = (experienceScore * WEIGHT_EXPERIENCE) +
-                (skillsScore * WEIGHT_SKILLS) +
-                (toolsScore * WEIGHT_TOOLS) +
-                (qualitiesScore * WEIGHT_QUALITIES);
-
-        log.info("Score for candidate {}: experience={}, skills={}, tools={}, qualities={}, final={}",
-                candidate.getId(), experienceScore, skillsScore, toolsScore, qualitiesScore, finalScore);
-        return finalScore;
+        ResumeFeatures features = resumeFeatureService.refresh(candidate);
+        return features == null ? 0.0 : scoreResume(candidate.getId(), features, prepareJobOffer(jobOffer));
     }
 
-    // Calculate experience score
-    private double calculateExperienceScore(List<String> resumeSentences, List<String> jobSentences) {
-        List<String> experienceResumeSentences = resumeSentences.stream()
-                .filter(s -> s.contains("experience") || s.contains("annee") || s.contains("year"))
-                .collect(Collectors.toList());
-        List<String> experienceJobSentences = jobSentences.stream()
-                .filter(s -> s.contains("experience") || s.contains("annee") || s.contains("year"))
-                .collect(Collectors.toList());
-        log.info("Experience resume sentences: {}", experienceResumeSentences);
-        log.info("Experience job sentences: {}", experienceJobSentences);
-
-        if (experienceResumeSentences.isEmpty() || experienceJobSentences.isEmpty()) {
-            // Fall back to raw sentences if no experience-specific sentences are found
-            experienceResumeSentences = resumeSentences.isEmpty() ? Collections.emptyList() : resumeSentences;
-            experienceJobSentences = jobSentences.isEmpty() ? Collections.emptyList() : jobSentences;
-            log.info("Falling back to raw sentences for experience scoring");
-        }
+    // Preprocess and encode the job offer once, whatever the number of candidates
+    private JobProfile prepareJobOffer(JobOffer jobOffer) {
+        String rawText = jobOffer.getDescription() + " " + jobOffer.getRequirements();
+        List<String> sentences = resumeFeatureService.extractSentences(resumeFeatureService.preprocessText(rawText));
+        return new JobProfile(similarityEngine.encode(sentences), resumeFeatureService.buckets(sentences),
+                ResumeFeatureService.sha256(SCORING_VERSION + "\n" + rawText));
+    }
 
-        if (experienceResumeSentences.isEmpty() || experienceJobSentences.isEmpty()) {
-            log.warn("No sentences available for experience scoring");
+    private double scoreResume(Long candidateId, ResumeFeatures features, JobProfile job) {
+        List<String> sentences = resumeFeatureService.sentences(features);
+        if (sentences.isEmpty() || job.sentences().isEmpty()) {
+            log.warn("No sentences available to score candidate {}", candidateId);
             return 0.0;
         }
-
-        // Extract years to adjust the score
-        Pattern experiencePattern = Pattern.compile("(\\d+)\\s*(an|annee|year|years)\\b", Pattern.CASE_INSENSITIVE);
-        int requiredYears = 0;
-        for (String sentence : experienceJobSentences) {
-            Matcher matcher = experiencePattern.matcher(sentence);
-            if (matcher.find()) {
-                requiredYears = Math.max(requiredYears, Integer.parseInt(matcher.group(1)));
+        SemanticSimilarityEngine.EncodedSentences resumeSentences = similarityEngine.encode(sentences);
+
+        // One matrix of sentence similarities, from which the four sub-scores are read
+        SemanticSimilarityEngine.SimilarityMatrix similarities = similarityEngine.compare(job.sentences(), resumeSentences);
+        Map<ScoringCriterion, int[]> resumeBuckets = resumeFeatureService.buckets(features);
+        Map<ScoringCriterion, Double> subScores = new EnumMap<>(ScoringCriterion.class);
+        double finalScore = 0.0;
+        for (ScoringCriterion criterion : ScoringCriterion.values()) {
+            int[] jobRows = job.buckets().get(criterion);
+            int[] resumeCols = resumeBuckets.get(criterion);
+            boolean fallback = jobRows.length == 0 || resumeCols.length == 0;
+            if (fallback) {
+                // Fall back to raw sentences if no criterion-specific sentences are found
+                jobRows = job.sentences().allIndices();
+                resumeCols = resumeSentences.allIndices();
             }
-        }
-
-        int candidateYears = 0;
-        for (String sentence : experienceResumeSentences) {
-            Matcher matcher = experiencePattern.matcher(sentence);
-            if (matcher.find()) {
-                candidateYears = Math.max(candidateYears, Integer.parseInt(matcher.group(1)));
+            double score = similarities.coverage(jobRows, resumeCols);
+            if (criterion == ScoringCriterion.EXPERIENCE) {
+                int requiredYears = resumeFeatureService.extractYears(job.sentences().sentences(), jobRows);
+                int candidateYears = fallback ? features.getMaxYears() : features.getExperienceYears();
+                double yearsScore = requiredYears > 0 ? Math.min((double) candidateYears / requiredYears, 1.0) : 0.5;
+                score = 0.6 * yearsScore + 0.4 * score;
             }
+            subScores.put(criterion, score);
+            finalScore += score * criterion.weight;
         }
 
-        double yearsScore = requiredYears > 0 ? Math.min((double) candidateYears / requiredYears, 1.0) : 0.5;
-        double semanticScore = calculateSemanticSimilarity(experienceResumeSentences, experienceJobSentences);
-        return 0.6 * yearsScore + 0.4 * semanticScore;
+        log.debug("Score for candidate {}: {}, final={}", candidateId, subScores, finalScore);
+        return finalScore;
     }
 
-    // Calculate skills score
-    private double calculateSkillsScore(List<String> resumeSentences, List<String> jobSentences) {
-        List<String> skillsResumeSentences = resumeSentences.stream()
-                .filter(s -> s.contains("competence") || s.contains("creation") || s.contains("developpement") ||
-                        s.contains("maille") || s.contains("textile") || s.contains("skill") || s.contains("java") ||
-                        s.contains("python") || s.contains("spring"))
-                .collect(Collectors.toList());
-        List<String> skillsJobSentences = jobSentences.stream()
-                .filter(s -> s.contains("competence") || s.contains("creation") || s.contains("developpement") ||
-                        s.contains("maille") || s.contains("textile") || s.contains("skill") || s.contains("java") ||
-                        s.contains("python") || s.contains("spring"))
-                .collect(Collectors.toList());
-        log.info("Skills resume sentences: {}", skillsResumeSentences);
-        log.info("Skills job sentences: {}", skillsJobSentences);
-
-        if (skillsResumeSentences.isEmpty() || skillsJobSentences.isEmpty()) {
-            // Fall back to raw sentences if no skill-specific sentences are found
-            skillsResumeSentences = resumeSentences.isEmpty() ? Collections.emptyList() : resumeSentences;
-            skillsJobSentences = jobSentences.isEmpty() ? Collections.emptyList() : jobSentences;
-            log.info("Falling back to raw sentences for skills scoring");
-        }
-
-        if (skillsResumeSentences.isEmpty() || skillsJobSentences.isEmpty()) {
-            log.warn("No sentences available for skills scoring");
-            return 0.0;
-        }
-
-        return calculateSemanticSimilarity(skillsResumeSentences, skillsJobSentences);
+    @Override
+    public List<Candidate> getAllCandidatesSortedByScore(Long jobOfferId) {
+        return getCandidatesRankedByScore(jobOfferId, Pageable.unpaged()).getContent();
     }
 
-    // Calculate tools score
-    private double calculateToolsScore(List<String> resumeSentences, List<String> jobSentences) {
-        List<String> toolsResumeSentences = resumeSentences.stream()
-                .filter(s -> s.contains("lectra") || s.contains("tool") || s.contains("software"))
-                .collect(Collectors.toList());
-        List<String> toolsJobSentences = jobSentences.stream()
-                .filter(s -> s.contains("lectra") || s.contains("tool") || s.contains("software"))
-                .collect(Collectors.toList());
-        log.info("Tools resume sentences: {}", toolsResumeSentences);
-        log.info("Tools job sentences: {}", toolsJobSentences);
-
-        if (toolsResumeSentences.isEmpty() || toolsJobSentences.isEmpty()) {
-            // Fall back to raw sentences if no tool-specific sentences are found
-            toolsResumeSentences = resumeSentences.isEmpty() ? Collections.emptyList() : resumeSentences;
-            toolsJobSentences = jobSentences.isEmpty() ? Collections.emptyList() : jobSentences;
-            log.info("Falling back to raw sentences for tools scoring");
-        }
-
-        if (toolsResumeSentences.isEmpty() || toolsJobSentences.isEmpty()) {
-            log.warn("No sentences available for tools scoring");
-            return 0.0;
+    /**
+     * Classement des candidats d'une offre, lu dans les scores enregistrés. Seuls les
+     * candidats sans score à jour (nouveau candidat, CV ou offre modifiés) sont notés.
+     */
+    @Override
+    public Page<Candidate> getCandidatesRankedByScore(Long jobOfferId, Pageable pageable) {
+        log.info("Fetching candidates sorted by score for job offer {}", jobOfferId);
+        JobOffer jobOffer = jobOfferRepository.findById(jobOfferId)
+                .orElseThrow(() -> new IllegalArgumentException("Job offer not found"));
+        refreshScores(jobOffer);
+
+        Page<CandidateScore> ranking = candidateScoreRepository.findRanking(jobOfferId, pageable);
+        Map<Long, Candidate> candidates = candidateRepository
+                .findAllById(ranking.map(CandidateScore::getCandidateId).getContent()).stream()
+                .collect(Collectors.toMap(Candidate::getId, Function.identity()));
+        List<Candidate> content = new ArrayList<>();
+        for (CandidateScore score : ranking) {
+            Candidate candidate = candidates.get(score.getCandidateId());
+            if (candidate != null) {
+                candidate.setScore(score.getScore());
+                content.add(candidate);
+            }
         }
-
-        return calculateSemanticSimilarity(toolsResumeSentences, toolsJobSentences);
+        return new PageImpl<>(content, pageable, ranking.getTotalElements());
     }
 
-    // Calculate qualities score
-    private double calculateQualitiesScore(List<String> resumeSentences, List<String> jobSentences) {
-        List<String> qualitiesResumeSentences = resumeSentences.stream()
-                .filter(s -> s.contains("creativite") || s.contains("rigueur") || s.contains("detail") ||
-                        s.contains("equipe") || s.contains("delais") || s.contains("team") || s.contains("organized"))
-                .collect(Collectors.toList());
-        List<String> qualitiesJobSentences = jobSentences.stream()
-                .filter(s -> s.contains("creativite") || s.contains("rigueur") || s.contains("detail") ||
-                        s.contains("equipe") || s.contains("delais") || s.contains("team") || s.contains("organized"))
-                .collect(Collectors.toList());
-        log.info("Qualities resume sentences: {}", qualitiesResumeSentences);
-        log.info("Qualities job sentences: {}", qualitiesJobSentences);
-
-        if (qualitiesResumeSentences.isEmpty() || qualitiesJobSentences.isEmpty()) {
-            // Fall back to raw sentences if no quality-specific sentences are found
-            qualitiesResumeSentences = resumeSentences.isEmpty() ? Collections.emptyList() : resumeSentences;
-            qualitiesJobSentences = jobSentences.isEmpty() ? Collections.emptyList() : jobSentences;
-            log.info("Falling back to raw sentences for qualities scoring");
-        }
+    private static Object[] newLocks() {
+        Object[] locks = new Object[RANKING_LOCK_STRIPES];
+        Arrays.setAll(locks, i -> new Object());
+        return locks;
+    }
 
-        if (qualitiesResumeSentences.isEmpty() || qualitiesJobSentences.isEmpty()) {
-            log.warn("No sentences available for qualities scoring");
-            return 0.0;
+    private void refreshScores(JobOffer jobOffer) {
+        Long jobOfferId = jobOffer.getId();
+        JobProfile job = prepareJobOffer(jobOffer);
+        // Deux recruteurs ouvrant la même offre ne notent pas deux fois les mêmes candidats
+        synchronized (rankingLocks[Math.floorMod(jobOfferId.hashCode(), RANKING_LOCK_STRIPES)]) {
+            List<Long> staleIds = candidateScoreRepository.findStaleCandidateIds(jobOfferId, job.fingerprint());
+            if (staleIds.isEmpty()) {
+                return;
+            }
+            List<Candidate> candidates = candidateRepository.findAllById(staleIds);
+            Map<Long, ResumeFeatures> features = resumeFeatureService.ensureFeatures(candidates);
+            List<Long> candidateIds = candidates.stream().map(Candidate::getId).toList();
+            List<Double> scores = similarityEngine.mapInParallel(candidateIds, id -> {
+                ResumeFeatures resume = features.get(id);
+                return resume == null || jobOffer.getDescription() == null ? 0.0 : scoreResume(id, resume, job);
+            });
+
+            Map<Long, CandidateScore> existing = candidateScoreRepository
+                    .findByJobOfferIdAndCandidateIdIn(jobOfferId, candidateIds).stream()
+                    .collect(Collectors.toMap(CandidateScore::getCandidateId, Function.identity()));
+            LocalDateTime now = LocalDateTime.now();
+            List<CandidateScore> updated = new ArrayList<>();
+            for (int i = 0; i < candidateIds.size(); i++) {
+                Long candidateId = candidateIds.get(i);
+                CandidateScore score = existing.getOrDefault(candidateId, new CandidateScore());
+                ResumeFeatures resume = features.get(candidateId);
+                score.setJobOfferId(jobOfferId);
+                score.setCandidateId(candidateId);
+                score.setScore(scores.get(i));
+                score.setResumeHash(resume != null ? resume.getResumeHash() : null);
+                score.setJobFingerprint(job.fingerprint());
+                score.setComputedAt(now);
+                updated.add(score);
+            }
+            candidateScoreRepository.saveAll(updated);
+            log.info("{} candidate scores computed for job offer {}", updated.size(), jobOfferId);
         }
-
-        return calculateSemanticSimilarity(qualitiesResumeSentences, qualitiesJobSentences);
     }
 
-    @Override
-    public List<Candidate> getAllCandidatesSortedByScore(Long jobOfferId) {
-        log.info("Fetching candidates sorted by score for job offer {}", jobOfferId);
-        JobOffer jobOffer = jobOfferRepository.findById(jobOfferId)
-                .orElseThrow(() -> new IllegalArgumentException("Job offer not found"));
-
-        List<Candidate> candidates = jobOffer.getCandidates().stream().collect(Collectors.toList());
-        log.info("Found {} candidates for job offer {}", candidates.size(), jobOfferId);
-
-        return candidates.stream()
-                .peek(candidate -> {
-                    double score = calculateCandidateScore(candidate, jobOffer);
-                    log.info("Setting score {} for candidate {}", score, candidate.getId());
-                    candidate.setScore(score);
-                })
-                .sorted(Comparator.comparingDouble(Candidate::getScore).reversed())
-                .collect(Collectors.toList());
+    private record JobProfile(SemanticSimilarityEngine.EncodedSentences sentences,
+                              Map<ScoringCriterion, int[]> buckets,
+                              String fingerprint) {
     }
-}
\ No newline at end of file
+}
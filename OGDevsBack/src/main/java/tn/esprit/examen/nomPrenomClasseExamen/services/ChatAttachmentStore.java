@@ -0,0 +1,236 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import jakarta.annotation.PostConstruct;
+import org.apache.tika.Tika;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatAttachment;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatRoom;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Message;
+import tn.esprit.examen.nomPrenomClasseExamen.exceptions.EntityNotFoundException;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.ChatAttachmentRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.MessageRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Stockage des pièces jointes de discussion sur le système de fichiers local, hors de la
+ * base : seules les métadonnées ({@link ChatAttachment}) sont persistées et référencées
+ * par les messages. Les fichiers sont répartis en sous-répertoires de 256 entrées au plus.
+ */
+@Service
+public class ChatAttachmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatAttachmentStore.class);
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final int MIGRATION_BATCH = 50;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ChatAttachmentRepository attachmentRepository;
+    private final MessageRepository messageRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Path root;
+    private final long maxBytes;
+    private final Tika tika = new Tika();
+
+    public ChatAttachmentStore(ChatAttachmentRepository attachmentRepository,
+                               MessageRepository messageRepository,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${chat.attachments.dir:${file.upload-dir}/chat-attachments}") String dir,
+                               @Value("${chat.attachments.max-bytes:26214400}") long maxBytes) {
+        this.attachmentRepository = attachmentRepository;
+        this.messageRepository = messageRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(root);
+    }
+
+    /**
+     * Écrit le contenu sur disque puis enregistre ses métadonnées. Si la transaction
+     * appelante est annulée, le fichier écrit est supprimé.
+     */
+    public ChatAttachment store(Long chatRoomId, String fileName, String contentType, InputStream content) throws IOException {
+        String name = UUID.randomUUID().toString();
+        String storageKey = name.substring(0, 2) + "/" + name;
+        Path target = resolve(storageKey);
+        Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling(name + ".tmp");
+        long size = 0;
+        try {
+            // Comptage pendant la copie : un dépôt trop volumineux est interrompu dès le dépassement
+            try (OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxBytes) {
+                        throw new IllegalArgumentException("Pièce jointe trop volumineuse (maximum " + maxBytes + " octets).");
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        if (contentType == null || contentType.isBlank() || DEFAULT_CONTENT_TYPE.equals(contentType)) {
+            contentType = detectContentType(target, fileName);
+        }
+        ChatAttachment attachment = attachmentRepository.save(ChatAttachment.builder()
+                .chatRoomId(chatRoomId)
+                .fileName(fileName != null && !fileName.isBlank() ? Paths.get(fileName).getFileName().toString() : name)
+                .contentType(contentType)
+                .size(size)
+                .storageKey(storageKey)
+                .createdAt(new Date())
+                .build());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        deleteFile(storageKey);
+                    }
+                }
+            });
+        }
+        log.info("Pièce jointe {} ({} octets) stockée pour le salon {}", attachment.getId(), size, chatRoomId);
+        return attachment;
+    }
+
+    public ChatAttachment get(Long id) {
+        return attachmentRepository.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("Attachment with id " + id + " does not exist."));
+    }
+
+    public Resource open(ChatAttachment attachment) {
+        Path file = resolve(attachment.getStorageKey());
+        if (!Files.isReadable(file)) {
+            throw new EntityNotFoundException("Attachment file for id " + attachment.getId() + " is missing.");
+        }
+        return new FileSystemResource(file);
+    }
+
+    /**
+     * Supprime les métadonnées ; le fichier n'est effacé qu'après le commit.
+     */
+    public void delete(ChatAttachment attachment) {
+        if (attachment == null) {
+            return;
+        }
+        attachmentRepository.delete(attachment);
+        deleteFileAfterCommit(attachment.getStorageKey());
+    }
+
+    public void deleteByChatRoom(Long chatRoomId) {
+        List<ChatAttachment> attachments = attachmentRepository.findByChatRoomId(chatRoomId);
+        attachmentRepository.deleteAllInBatch(attachments);
+        attachments.forEach(a -> deleteFileAfterCommit(a.getStorageKey()));
+    }
+
+    /**
+     * Déplace les pièces jointes encore stockées dans l'ancienne colonne BLOB de la table
+     * message vers le stockage disque, par lots et une transaction par message.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyAttachments() {
+        int migrated = 0;
+        try {
+            List<Long> ids;
+            while (!(ids = messageRepository.findLegacyAttachmentIds(MIGRATION_BATCH)).isEmpty()) {
+                for (Long messageId : ids) {
+                    transactionTemplate.executeWithoutResult(status -> migrate(messageId));
+                    migrated++;
+                }
+            }
+        } catch (InvalidDataAccessResourceUsageException e) {
+            // Schéma créé sans l'ancienne colonne : rien à migrer
+            log.debug("Migration des pièces jointes de discussion ignorée : {}", e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Migration des pièces jointes de discussion interrompue : {}", e.getMessage());
+        }
+        if (migrated > 0) {
+            log.info("{} pièces jointes de discussion migrées vers {}", migrated, root);
+        }
+    }
+
+    private void migrate(Long messageId) {
+        byte[] content = messageRepository.findLegacyAttachment(messageId);
+        Long roomId = messageRepository.findById(messageId)
+                .map(Message::getChatRoom)
+                .map(ChatRoom::getId)
+                .orElse(null);
+        try {
+            ChatAttachment attachment = store(roomId, "piece-jointe-" + messageId, null, new ByteArrayInputStream(content));
+            messageRepository.moveLegacyAttachment(messageId, attachment.getId());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String detectContentType(Path file, String fileName) {
+        try {
+            String detected = tika.detect(file);
+            if (DEFAULT_CONTENT_TYPE.equals(detected) && fileName != null) {
+                detected = tika.detect(fileName);
+            }
+            return detected;
+        } catch (IOException e) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+    }
+
+    private Path resolve(String storageKey) {
+        Path file = root.resolve(storageKey).normalize();
+        if (!file.startsWith(root)) {
+            throw new IllegalArgumentException("Clé de stockage invalide : " + storageKey);
+        }
+        return file;
+    }
+
+    private void deleteFileAfterCommit(String storageKey) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deleteFile(storageKey);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deleteFile(storageKey);
+            }
+        });
+    }
+
+    private void deleteFile(String storageKey) {
+        try {
+            Files.deleteIfExists(resolve(storageKey));
+        } catch (IOException e) {
+            log.warn("Suppression du fichier de pièce jointe {} impossible : {}", storageKey, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ChatInboxDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatInboxEntry;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatRoom;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Message;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.UserEntity;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.ChatInboxRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.ChatRoomRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.MessageRepository;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Tient à jour une entrée de boîte de réception par (salon, membre) : la liste des
+ * discussions se lit ensuite en une requête, sans parcourir salons ni messages.
+ */
+@Slf4j
+@Service
+public class ChatInboxServiceImpl implements IChatInbox {
+
+    private static final int SNIPPET_LENGTH = 200;
+
+    private final ChatInboxRepository inboxRepository;
+    private final ChatRoomRepository chatRoomRepository;
+    private final MessageRepository messageRepository;
+
+    public ChatInboxServiceImpl(ChatInboxRepository inboxRepository,
+                                ChatRoomRepository chatRoomRepository,
+                                MessageRepository messageRepository) {
+        this.inboxRepository = inboxRepository;
+        this.chatRoomRepository = chatRoomRepository;
+        this.messageRepository = messageRepository;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ChatInboxDTO> getInbox(String userId) {
+        SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+        return inboxRepository.findByUserIdOrderByLastMessageAtDesc(userId).stream().map(entry -> {
+            ChatInboxDTO dto = new ChatInboxDTO();
+            dto.setRoomId(entry.getRoomId());
+            dto.setName(entry.getDisplayName());
+            dto.setPrivateRoom(entry.isPrivateRoom());
+            dto.setLastMessageId(entry.getLastMessageId());
+            dto.setLastMessage(entry.getLastSnippet());
+            dto.setLastSenderId(entry.getLastSenderId());
+            dto.setLastSenderUsername(entry.getLastSenderUsername());
+            dto.setLastMessageAt(entry.getLastMessageAt() != null ? dateFormatter.format(entry.getLastMessageAt()) : null);
+            dto.setUnreadCount(entry.getUnreadCount());
+            return dto;
+        }).toList();
+    }
+
+    @Override
+    @Transactional
+    public void onMessageSaved(Message message) {
+        Long roomId = message.getChatRoom().getId();
+        String senderId = message.getSender().getId();
+        inboxRepository.updateLastMessage(roomId, message.getId(), snippet(message), senderId,
+                message.getSender().getUsername(), message.getCreatedAt());
+        inboxRepository.incrementUnread(roomId, senderId);
+        // L'expéditeur a nécessairement lu le salon jusqu'à son propre message
+        inboxRepository.markRead(roomId, senderId, message.getId(),
+                messageRepository.countByChatRoomIdAndIdGreaterThanAndSenderIdNot(roomId, message.getId(), senderId));
+    }
+
+    @Override
+    @Transactional
+    public void onMessageRead(Long chatRoomId, Long messageId, String userId) {
+        long unread = messageRepository.countByChatRoomIdAndIdGreaterThanAndSenderIdNot(chatRoomId, messageId, userId);
+        inboxRepository.markRead(chatRoomId, userId, messageId, unread);
+    }
+
+    @Override
+    @Transactional
+    public void syncRoom(Long chatRoomId) {
+        ChatRoom room = chatRoomRepository.findByIdWithUsers(chatRoomId).orElse(null);
+        if (room == null) {
+            inboxRepository.deleteByRoom(chatRoomId);
+            return;
+        }
+        Map<String, ChatInboxEntry> existing = inboxRepository.findByRoomId(chatRoomId).stream()
+                .collect(Collectors.toMap(ChatInboxEntry::getUserId, Function.identity()));
+        Message last = messageRepository.findLastMessages(List.of(room)).stream().findFirst().orElse(null);
+        Long lastId = last != null ? last.getId() : null;
+        for (UserEntity member : room.getUsers()) {
+            ChatInboxEntry entry = existing.remove(member.getId());
+            if (entry == null) {
+                entry = ChatInboxEntry.builder().roomId(chatRoomId).userId(member.getId()).build();
+                applyLastMessage(entry, last);
+                // Un nouveau membre part de l'état courant : rien de non lu
+                entry.setLastReadMessageId(lastId);
+            } else if (!Objects.equals(entry.getLastMessageId(), lastId)) {
+                // Le dernier message a été supprimé : l'aperçu et les non-lus sont recalculés
+                applyLastMessage(entry, last);
+                if (entry.getLastReadMessageId() != null) {
+                    entry.setUnreadCount(messageRepository.countByChatRoomIdAndIdGreaterThanAndSenderIdNot(
+                            chatRoomId, entry.getLastReadMessageId(), member.getId()));
+                }
+            }
+            entry.setDisplayName(room.displayNameFor(member.getId()));
+            entry.setPrivateRoom(room.getName() == null);
+            inboxRepository.save(entry);
+        }
+        // Membres ayant quitté le salon
+        inboxRepository.deleteAll(existing.values());
+    }
+
+    @Override
+    @Transactional
+    public void onRoomDeleted(Long chatRoomId) {
+        inboxRepository.deleteByRoom(chatRoomId);
+    }
+
+    /**
+     * Reconstruit toutes les entrées à partir des salons et des messages ; les non-lus
+     * initiaux reprennent l'indicateur "seen" des messages.
+     */
+    @Override
+    @Transactional
+    public void rebuild() {
+        List<ChatRoom> rooms = chatRoomRepository.findAllWithUsers();
+        Map<Long, Message> lastByRoom = messageRepository.findLastMessagesOfAllRooms().stream()
+                .collect(Collectors.toMap(m -> m.getChatRoom().getId(), Function.identity()));
+        Map<String, Long> unseen = new HashMap<>();
+        for (Object[] row : messageRepository.countUnseenByRoomAndMember()) {
+            unseen.put(row[0] + ":" + row[1], ((Number) row[2]).longValue());
+        }
+
+        inboxRepository.deleteAllInBatch();
+        List<ChatInboxEntry> entries = new ArrayList<>();
+        for (ChatRoom room : rooms) {
+            Message last = lastByRoom.get(room.getId());
+            for (UserEntity member : room.getUsers()) {
+                ChatInboxEntry entry = ChatInboxEntry.builder()
+                        .roomId(room.getId())
+                        .userId(member.getId())
+                        .displayName(room.displayNameFor(member.getId()))
+                        .privateRoom(room.getName() == null)
+                        .unreadCount(unseen.getOrDefault(room.getId() + ":" + member.getId(), 0L))
+                        .build();
+                applyLastMessage(entry, last);
+                entries.add(entry);
+            }
+        }
+        inboxRepository.saveAll(entries);
+        log.info("Boîtes de réception reconstruites : {} entrées pour {} salons", entries.size(), rooms.size());
+    }
+
+    // Première mise en service : le modèle de lecture est construit à partir de l'existant
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (inboxRepository.count() == 0 && chatRoomRepository.count() > 0) {
+            rebuild();
+        }
+    }
+
+    private static void applyLastMessage(ChatInboxEntry entry, Message last) {
+        if (last == null) {
+            entry.setLastMessageId(null);
+            entry.setLastSnippet(null);
+            entry.setLastSenderId(null);
+            entry.setLastSenderUsername(null);
+            entry.setLastMessageAt(null);
+            return;
+        }
+        entry.setLastMessageId(last.getId());
+        entry.setLastSnippet(snippet(last));
+        entry.setLastSenderId(last.getSender().getId());
+        entry.setLastSenderUsername(last.getSender().getUsername());
+        entry.setLastMessageAt(last.getCreatedAt());
+    }
+
+    private static String snippet(Message message) {
+        String content = message.getContent();
+        if ((content == null || content.isBlank()) && message.getAttachment() != null) {
+            content = message.getAttachment().getFileName();
+        }
+        if (content == null) {
+            return null;
+        }
+        return content.length() > SNIPPET_LENGTH ? content.substring(0, SNIPPET_LENGTH - 1) + "…" : content;
+    }
+}
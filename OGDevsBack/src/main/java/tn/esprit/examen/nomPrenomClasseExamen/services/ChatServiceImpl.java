@@ -3,20 +3,36 @@ package tn.esprit.examen.nomPrenomClasseExamen.services;
 import lombok.AllArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ChatAttachmentDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ChatInboxDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.dto.MessageDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.MessagePageDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatAttachment;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatRoom;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Message;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.UserEntity;
+import tn.esprit.examen.nomPrenomClasseExamen.exceptions.EntityNotFoundException;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.ChatRoomRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.MessageRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.UserRepository;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,14 +41,24 @@ import java.util.Optional;
 public class ChatServiceImpl implements IChat {
 
     private static final Logger log = LoggerFactory.getLogger(ChatServiceImpl.class);
+    private static final int MAX_PAGE_SIZE = 200;
 
     private final ChatRoomRepository chatRoomRepository;
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final SimpMessagingTemplate messagingTemplate;
+    private final ChatAttachmentStore attachmentStore;
+    private final IChatInbox chatInbox;
+    private final PlatformTransactionManager transactionManager;
 
     private final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
 
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
+    }
+
     private boolean isUserInChatRoom(Long chatRoomId, String userId) {
         boolean isPresent = chatRoomRepository.existsByIdAndUsersId(chatRoomId, userId);
         log.debug("User {} is {} in chat room {}", userId, isPresent ? "present" : "not present", chatRoomId);
@@ -61,19 +87,8 @@ public class ChatServiceImpl implements IChat {
         message.setChatRoom(chatRoom);
         Message savedMessage = messageRepository.save(message);
         log.info("Saved message ID {} for chat room {}", savedMessage.getId(), channelId);
-
-        MessageDTO messageDTO = new MessageDTO();
-        messageDTO.setId(savedMessage.getId());
-        messageDTO.setChatRoomId(savedMessage.getChatRoom().getId());
-        messageDTO.setChatRoomName(savedMessage.getChatRoom().getName());
-        messageDTO.setSenderId(savedMessage.getSender().getId());
-        messageDTO.setSenderUsername(savedMessage.getSender().getUsername());
-        messageDTO.setContent(savedMessage.getContent());
-        messageDTO.setAttachment(savedMessage.getAttachment() != null ? Base64.getEncoder().encodeToString(savedMessage.getAttachment()) : null);
-        messageDTO.setCreatedAt(dateFormatter.format(savedMessage.getCreatedAt()));
-        messageDTO.setSeen(savedMessage.isSeen());
-
-        return messageDTO;
+        chatInbox.onMessageSaved(savedMessage);
+        return toMessageDTO(savedMessage);
     }
 
     @Override
@@ -103,86 +118,100 @@ public class ChatServiceImpl implements IChat {
         message.setChatRoom(chatRoom);
         message.setSender(sender);
         Message savedMessage = messageRepository.save(message);
-        MessageDTO messageDTO = new MessageDTO();
-        messageDTO.setId(savedMessage.getId());
-        messageDTO.setChatRoomId(savedMessage.getChatRoom().getId());
-        messageDTO.setChatRoomName(savedMessage.getChatRoom().getName());
-        messageDTO.setSenderId(savedMessage.getSender().getId());
-        messageDTO.setSenderUsername(savedMessage.getSender().getUsername());
-        messageDTO.setContent(savedMessage.getContent());
-        messageDTO.setAttachment(savedMessage.getAttachment() != null ? Base64.getEncoder().encodeToString(savedMessage.getAttachment()) : null);
-        messageDTO.setCreatedAt(dateFormatter.format(savedMessage.getCreatedAt()));
-        messageDTO.setSeen(savedMessage.isSeen());
+        chatInbox.onMessageSaved(savedMessage);
+        MessageDTO messageDTO = toMessageDTO(savedMessage);
 
         log.info("Sending private message to /room/messages/{}: {}", chatRoom.getId(), messageDTO);
         messagingTemplate.convertAndSend("/room/messages/" + chatRoom.getId(), messageDTO);
     }
 
     @Override
-    public void markAsRead(Long messageId) {
+    public void markAsRead(Long messageId, String userId) {
         Optional<Message> msg = messageRepository.findById(messageId);
         msg.ifPresent(message -> {
             message.setSeen(true);
             messageRepository.save(message);
+            chatInbox.onMessageRead(message.getChatRoom().getId(), messageId, userId);
             log.info("Marked message ID {} as read, broadcasting to /room/messages/{}", messageId, message.getChatRoom().getId());
-            MessageDTO messageDTO = new MessageDTO();
-            messageDTO.setId(message.getId());
-            messageDTO.setChatRoomId(message.getChatRoom().getId());
-            messageDTO.setChatRoomName(message.getChatRoom().getName());
-            messageDTO.setSenderId(message.getSender().getId());
-            messageDTO.setSenderUsername(message.getSender().getUsername());
-            messageDTO.setContent(message.getContent());
-            messageDTO.setAttachment(message.getAttachment() != null ? Base64.getEncoder().encodeToString(message.getAttachment()) : null);
-            messageDTO.setCreatedAt(dateFormatter.format(message.getCreatedAt()));
-            messageDTO.setSeen(message.isSeen());
-
+            MessageDTO messageDTO = toMessageDTO(message);
             messagingTemplate.convertAndSend("/room/messages/" + message.getChatRoom().getId(), messageDTO);
         });
     }
 
     @Override
+    @Transactional
+    public MessageDTO sendAttachment(Long chatRoomId, UserEntity sender, String content, MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("Attachment must not be empty");
+        }
+        if (!isUserInChatRoom(chatRoomId, sender.getId())) {
+            throw new EntityNotFoundException("Chat room not found or user not a member: " + chatRoomId);
+        }
+        ChatAttachment attachment;
+        try (InputStream in = file.getInputStream()) {
+            attachment = attachmentStore.store(chatRoomId, file.getOriginalFilename(), file.getContentType(), in);
+        }
+        Message message = Message.builder()
+                .sender(sender)
+                .content(content)
+                .attachment(attachment)
+                .createdAt(new Date())
+                .seen(false)
+                .build();
+        return saveMessage(chatRoomId, message);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ChatAttachment getAttachment(Long attachmentId, String userId) {
+        ChatAttachment attachment = attachmentStore.get(attachmentId);
+        if (attachment.getChatRoomId() == null || !isUserInChatRoom(attachment.getChatRoomId(), userId)) {
+            // Même réponse qu'une pièce jointe inexistante, pour ne rien révéler des autres salons
+            throw new EntityNotFoundException("Attachment with id " + attachmentId + " does not exist.");
+        }
+        return attachment;
+    }
+
+    @Override
+    public Resource getAttachmentContent(ChatAttachment attachment) {
+        return attachmentStore.open(attachment);
+    }
+
+    @Override
+    @Transactional
     public void deleteMessage(Long id) {
         log.info("Deleting message ID {}", id);
-        messageRepository.deleteById(id);
+        messageRepository.findById(id).ifPresent(message -> {
+            ChatAttachment attachment = message.getAttachment();
+            Long roomId = message.getChatRoom().getId();
+            messageRepository.delete(message);
+            attachmentStore.delete(attachment);
+            // Après validation, dans sa propre transaction : l'aperçu ne doit plus citer le message supprimé
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    newTransaction().executeWithoutResult(status -> chatInbox.syncRoom(roomId));
+                }
+            });
+        });
     }
 
     @Override
     public List<Message> getLastMessage(List<ChatRoom> chatRooms) {
-        List<Message> messages = new ArrayList<>();
-        for (ChatRoom chatRoom : chatRooms) {
-            messageRepository.findTopByChatRoomOrderByCreatedAtDesc(chatRoom)
-                    .ifPresent(messages::add);
-        }
+        List<Message> messages = chatRooms.isEmpty() ? List.of() : messageRepository.findLastMessages(chatRooms);
         log.debug("Retrieved last messages for {} chat rooms: {}", chatRooms.size(), messages.size());
         return messages;
     }
 
     @Override
     public List<Message> getLastMessage1(List<ChatRoom> chatRooms) {
-        List<Message> messages = new ArrayList<>();
-        for (ChatRoom chatRoom : chatRooms) {
-            List<Message> roomMessages = messageRepository.findByChatRoomOrderByCreatedAtDesc(chatRoom);
-            if (!roomMessages.isEmpty()) {
-                messages.add(roomMessages.get(0));
-            }
-        }
-        log.debug("Retrieved last messages (method 1) for {} chat rooms: {}", chatRooms.size(), messages.size());
-        return messages;
+        return getLastMessage(chatRooms);
     }
 
     private ChatRoom roomNamer(ChatRoom chatRoom, UserEntity user) {
         if (chatRoom.getName() == null) {
-            UserEntity otherUser = chatRoom.getUsers().stream()
-                    .filter(u -> !u.getId().equals(user.getId()))
-                    .findFirst()
-                    .orElse(null);
-            if (otherUser != null) {
-                chatRoom.setName(otherUser.getUsername());
-                log.debug("Renamed chat room {} to {}", chatRoom.getId(), chatRoom.getName());
-            } else {
-                chatRoom.setName("Chat " + chatRoom.getId());
-                log.debug("No other users in chat room {}, assigned default name: {}", chatRoom.getId(), chatRoom.getName());
-            }
+            chatRoom.setName(chatRoom.displayNameFor(user.getId()));
+            log.debug("Renamed chat room {} to {}", chatRoom.getId(), chatRoom.getName());
         }
         return chatRoom;
     }
@@ -193,7 +222,7 @@ public class ChatServiceImpl implements IChat {
         UserEntity user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found: " + userId));
         log.info("User found: {}", user.getId());
-        List<ChatRoom> chatRooms = chatRoomRepository.findByUsersContaining(user);
+        List<ChatRoom> chatRooms = chatRoomRepository.findByMemberWithUsers(user.getId());
         log.info("Found {} chat rooms for user {}", chatRooms.size(), userId);
         chatRooms.forEach(chatRoom -> roomNamer(chatRoom, user));
         log.info("Retrieved {} chat rooms for user {}", chatRooms.size(), userId);
@@ -218,6 +247,7 @@ public class ChatServiceImpl implements IChat {
                 }
             }
         }
+        chatInbox.syncRoom(savedChatRoom.getId());
         return savedChatRoom;
     }
 
@@ -230,6 +260,7 @@ public class ChatServiceImpl implements IChat {
                     .orElseThrow(() -> new RuntimeException("User not found: " + userId));
             chatRoom.getUsers().add(user);
             chatRoomRepository.save(chatRoom);
+            chatInbox.syncRoom(chatRoomId);
             log.info("User {} joined chat room {}", userId, chatRoomId);
         }
     }
@@ -249,7 +280,11 @@ public class ChatServiceImpl implements IChat {
             if (chatRoom.getUsers().isEmpty()) {
                 log.info("Chat room {} is empty, deleting it", chatRoomId);
                 messageRepository.deleteByChatRoom(chatRoom);
+                attachmentStore.deleteByChatRoom(chatRoomId);
                 chatRoomRepository.deleteById(chatRoomId);
+                chatInbox.onRoomDeleted(chatRoomId);
+            } else {
+                chatInbox.syncRoom(chatRoomId);
             }
         }
     }
@@ -277,6 +312,7 @@ public class ChatServiceImpl implements IChat {
         }
 
         ChatRoom updatedChatRoom = chatRoomRepository.save(existingChatRoom);
+        chatInbox.syncRoom(updatedChatRoom.getId());
         log.info("Updated chat room ID {}", updatedChatRoom.getId());
         return updatedChatRoom;
     }
@@ -289,7 +325,9 @@ public class ChatServiceImpl implements IChat {
             ChatRoom chatRoom = chatRoomRepository.findById(id)
                     .orElseThrow(() -> new RuntimeException("Chat room not found: " + id));
             messageRepository.deleteByChatRoom(chatRoom);
+            attachmentStore.deleteByChatRoom(id);
             chatRoomRepository.deleteById(id);
+            chatInbox.onRoomDeleted(id);
             log.info("Successfully deleted chat room ID {}", id);
         } catch (Exception e) {
             log.error("Failed to delete chat room ID {}: {}", id, e.getMessage());
@@ -297,6 +335,11 @@ public class ChatServiceImpl implements IChat {
         }
     }
 
+    @Override
+    public List<ChatInboxDTO> getInbox(String userId) {
+        return chatInbox.getInbox(userId);
+    }
+
     @Override
     public List<Message> getMessagesFrom(ChatRoom chatRoom, Long messageId) {
         List<Message> messages = messageRepository.findTop10ByChatRoomAndIdLessThanEqualOrderByCreatedAtDesc(chatRoom, messageId);
@@ -311,6 +354,33 @@ public class ChatServiceImpl implements IChat {
         return messages;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public MessagePageDTO getMessagePage(Long chatRoomId, String userId, Long before, int limit) {
+        if (!isUserInChatRoom(chatRoomId, userId)) {
+            throw new EntityNotFoundException("Chat room not found or user not a member: " + chatRoomId);
+        }
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // Une ligne de plus que demandé indique s'il reste un historique plus ancien
+        Pageable window = PageRequest.of(0, size + 1);
+        List<Message> messages = before == null
+                ? messageRepository.findByChatRoomIdOrderByIdDesc(chatRoomId, window)
+                : messageRepository.findByChatRoomIdAndIdLessThanOrderByIdDesc(chatRoomId, before, window);
+        boolean hasMore = messages.size() > size;
+        if (hasMore) {
+            messages = messages.subList(0, size);
+        }
+        List<MessageDTO> dtos = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            MessageDTO dto = toMessageDTO(message);
+            dto.setChatRoomName(message.getChatRoom().displayNameFor(userId));
+            dtos.add(dto);
+        }
+        Long nextCursor = hasMore ? messages.get(messages.size() - 1).getId() : null;
+        log.debug("Retrieved {} messages from chat room {} before {} (next cursor {})", dtos.size(), chatRoomId, before, nextCursor);
+        return new MessagePageDTO(dtos, nextCursor);
+    }
+
     @Override
     public List<Message> getLast10MessageStartingFrom(ChatRoom chatRoom, Long messageId) {
         List<Message> messages = messageRepository.findTop10ByChatRoomAndIdLessThanEqualOrderByCreatedAtDesc(chatRoom, messageId);
@@ -318,6 +388,24 @@ public class ChatServiceImpl implements IChat {
         return messages;
     }
 
+    private MessageDTO toMessageDTO(Message message) {
+        MessageDTO messageDTO = new MessageDTO();
+        messageDTO.setId(message.getId());
+        messageDTO.setChatRoomId(message.getChatRoom().getId());
+        messageDTO.setChatRoomName(message.getChatRoom().getName());
+        messageDTO.setSenderId(message.getSender().getId());
+        messageDTO.setSenderUsername(message.getSender().getUsername());
+        messageDTO.setContent(message.getContent());
+        ChatAttachment attachment = message.getAttachment();
+        if (attachment != null) {
+            messageDTO.setAttachment(new ChatAttachmentDTO(attachment.getId(), attachment.getFileName(),
+                    attachment.getContentType(), attachment.getSize(), "/chat/attachments/" + attachment.getId()));
+        }
+        messageDTO.setCreatedAt(dateFormatter.format(message.getCreatedAt()));
+        messageDTO.setSeen(message.isSeen());
+        return messageDTO;
+    }
+
     @Override
     public List<UserEntity> getAllUsers() {
         List<UserEntity> users = userRepository.findAll();
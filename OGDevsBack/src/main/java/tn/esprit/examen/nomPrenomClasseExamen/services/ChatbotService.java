@@ -3,18 +3,30 @@ package tn.esprit.examen.nomPrenomClasseExamen.services;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class ChatbotService {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatbotService.class);
+    private static final String MODEL = "deepseek/deepseek-prover-v2:free";
+    private static final String CACHE_NAMESPACE = "openrouter.chat";
+    private static final String NO_RESPONSE = "No response from chatbot";
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE = new ParameterizedTypeReference<>() {
+    };
 
     @Value("${openrouter.api.url:https://openrouter.ai/api/v1/chat/completions}")
     private String apiUrl;
@@ -22,12 +34,17 @@ public class ChatbotService {
     @Value("${openrouter.api.key:}")
     private String apiKey;
 
-    private final RestTemplate restTemplate;
+    private final OutboundHttpService outboundHttpService;
     private final ObjectMapper objectMapper;
+    private final LlmResponseCache responseCache;
+    private final WebClient streamingClient;
 
-    public ChatbotService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    public ChatbotService(OutboundHttpService outboundHttpService, LlmResponseCache responseCache,
+                          WebClient.Builder webClientBuilder) {
+        this.outboundHttpService = outboundHttpService;
+        this.responseCache = responseCache;
         this.objectMapper = new ObjectMapper();
+        this.streamingClient = webClientBuilder.build();
     }
 
     public String callChatbot(String message) {
@@ -38,47 +55,149 @@ public class ChatbotService {
                 throw new IllegalStateException("OpenRouter API key is not configured");
             }
 
+            String prompt = promptFor(message);
+
+            // Une même question ne relance pas l'appel : la réponse est mise en cache
+            return responseCache.getOrCompute(CACHE_NAMESPACE, prompt, () -> requestCompletion(message, prompt),
+                    response -> !NO_RESPONSE.equals(response));
+        } catch (Exception e) {
+            logger.error("OpenRouter API call failed: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to call OpenRouter API: " + e.getMessage(), e);
+        }
+    }
+
+    private String requestCompletion(String message, String prompt) {
+        try {
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             headers.set("Authorization", "Bearer " + apiKey);
 
-            // Enhanced prompt to enforce conversational or code response
-            String prompt;
-            if (message.matches("(?i).*\\b(code|program|python|algorithm|function|script)\\b.*")) {
-                prompt = "Provide a concise Python code solution for the query, with minimal explanation: " + message;
-            } else {
-                prompt = "Respond concisely and conversationally to the query, without any code or technical examples unless explicitly requested. Keep the response short and professional: " + message;
-            }
-
             String requestBody = String.format(
-                    "{\"model\": \"deepseek/deepseek-prover-v2:free\", \"messages\": [{\"role\": \"user\", \"content\": \"%s\"}]}",
+                    "{\"model\": \"" + MODEL + "\", \"messages\": [{\"role\": \"user\", \"content\": \"%s\"}]}",
                     prompt.replace("\"", "\\\"")
             );
 
             HttpEntity<String> request = new HttpEntity<>(requestBody, headers);
-            String rawResponse = restTemplate.postForObject(apiUrl, request, String.class);
+            String rawResponse = outboundHttpService.execute("openrouter", "chat",
+                    rt -> rt.postForObject(apiUrl, request, String.class));
 
             // Log raw response for debugging
             logger.debug("Raw OpenRouter response: {}", rawResponse);
 
             // Parse JSON response
             JsonNode responseJson = objectMapper.readTree(rawResponse);
-            String responseContent = responseJson.path("choices").path(0).path("message").path("content").asText("No content returned");
+            String responseContent = responseJson.path("choices").path(0).path("message").path("content").asText("");
 
             // Clean whitespace
             responseContent = responseContent.trim();
+            if (responseContent.isEmpty()) {
+                // Réponse de repli : elle n'est pas mise en cache
+                return NO_RESPONSE;
+            }
 
             // Trim verbose text for non-code queries
-            if (!message.matches("(?i).*\\b(code|program|python|algorithm|function|script)\\b.*")) {
+            if (!isCodeQuery(message)) {
                 responseContent = responseContent.split("\\.")[0] + ".";
             }
 
             logger.info("Processed OpenRouter response: {}", responseContent);
-            return responseContent.isEmpty() ? "No response from chatbot" : responseContent;
+            return responseContent;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid OpenRouter response: " + e.getMessage(), e);
+        }
+    }
 
-        } catch (Exception e) {
-            logger.error("OpenRouter API call failed: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to call OpenRouter API: " + e.getMessage(), e);
+    /**
+     * Réponse diffusée fragment par fragment : événements "token", puis "done" avec le texte
+     * complet, ou "error". Pour une question non technique, le flux s'arrête à la fin de la
+     * première phrase et la requête vers OpenRouter est annulée au lieu d'attendre toute la
+     * génération pour la tronquer ensuite.
+     */
+    public Flux<ServerSentEvent<String>> streamChatbot(String message) {
+        if (apiKey.isEmpty()) {
+            return Flux.just(event(OpenAIService.EVENT_ERROR, "OpenRouter API key is not configured"));
+        }
+        String prompt = promptFor(message);
+        String cached = responseCache.peek(CACHE_NAMESPACE, prompt);
+        if (cached != null) {
+            return Flux.just(event(OpenAIService.EVENT_DONE, cached));
         }
+        boolean firstSentenceOnly = !isCodeQuery(message);
+        return Flux.defer(() -> {
+            StringBuilder text = new StringBuilder();
+            return requestStream(prompt)
+                    .<String>handle((token, sink) -> {
+                        int end = firstSentenceOnly ? token.indexOf('.') : -1;
+                        if (end < 0) {
+                            sink.next(token);
+                            return;
+                        }
+                        // Fin de la première phrase : on n'attend pas la suite
+                        sink.next(token.substring(0, end + 1));
+                        sink.complete();
+                    })
+                    .doOnNext(text::append)
+                    .map(token -> event(OpenAIService.EVENT_TOKEN, token))
+                    .concatWith(Flux.defer(() -> {
+                        String response = text.toString().trim();
+                        if (response.isEmpty()) {
+                            return Flux.just(event(OpenAIService.EVENT_DONE, NO_RESPONSE));
+                        }
+                        if (firstSentenceOnly && !response.endsWith(".")) {
+                            response = response + ".";
+                        }
+                        responseCache.put(CACHE_NAMESPACE, prompt, response);
+                        return Flux.just(event(OpenAIService.EVENT_DONE, response));
+                    }))
+                    .onErrorResume(e -> {
+                        logger.error("OpenRouter streaming call failed: {}", e.getMessage());
+                        return Flux.just(event(OpenAIService.EVENT_ERROR, "Failed to call OpenRouter API: " + e.getMessage()));
+                    });
+        });
+    }
+
+    // Fragments de texte de la complétion diffusée par OpenRouter (format SSE d'OpenAI)
+    private Flux<String> requestStream(String prompt) {
+        Map<String, Object> body = Map.of(
+                "model", MODEL,
+                "stream", true,
+                "messages", List.of(Map.of("role", "user", "content", prompt)));
+        return streamingClient.post()
+                .uri(apiUrl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToFlux(SSE_TYPE)
+                // Les commentaires ": OPENROUTER PROCESSING" n'ont pas de données
+                .mapNotNull(ServerSentEvent::data)
+                .takeWhile(data -> !"[DONE]".equals(data.trim()))
+                .<String>handle((data, sink) -> {
+                    try {
+                        JsonNode delta = objectMapper.readTree(data).path("choices").path(0).path("delta").path("content");
+                        if (delta.isTextual() && !delta.asText().isEmpty()) {
+                            sink.next(delta.asText());
+                        }
+                    } catch (JsonProcessingException e) {
+                        sink.error(new IllegalStateException("Invalid OpenRouter response: " + e.getMessage(), e));
+                    }
+                });
+    }
+
+    // Enhanced prompt to enforce conversational or code response
+    private static String promptFor(String message) {
+        if (isCodeQuery(message)) {
+            return "Provide a concise Python code solution for the query, with minimal explanation: " + message;
+        }
+        return "Respond concisely and conversationally to the query, without any code or technical examples unless explicitly requested. Keep the response short and professional: " + message;
+    }
+
+    private static boolean isCodeQuery(String message) {
+        return message.matches("(?i).*\\b(code|program|python|algorithm|function|script)\\b.*");
+    }
+
+    private static ServerSentEvent<String> event(String name, String data) {
+        return OpenAIService.event(name, data);
     }
 }
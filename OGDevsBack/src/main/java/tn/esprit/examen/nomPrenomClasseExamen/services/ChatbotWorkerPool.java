@@ -0,0 +1,332 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pool de processus Python persistants pour le chatbot RAG. Chaque worker charge une seule fois
+ * l'index Chroma et le modèle d'embedding, puis répond aux questions reçues sur son entrée
+ * standard. Protocole : une ligne JSON par message dans chaque sens.
+ * <ul>
+ *     <li>worker → JVM au démarrage : {@code {"ready": true}}</li>
+ *     <li>JVM → worker : {@code {"id": 12, "query": "..."}} ou {@code {"id": 13, "type": "ping"}}</li>
+ *     <li>worker → JVM : {@code {"id": 12, "result": {...}}}, {@code {"id": 12, "error": "..."}}
+ *     ou {@code {"id": 13, "pong": true}}</li>
+ * </ul>
+ * Les requêtes sont réparties sur le worker le moins chargé et identifiées par leur id ; le
+ * nombre total de requêtes en attente est borné, chaque requête a un délai maximal et un
+ * worker bloqué ou arrêté est relancé.
+ */
+@Slf4j
+@Service
+public class ChatbotWorkerPool {
+
+    private static final String LAUNCHER = "ChatBot/chatbot_worker.py";
+
+    private final ObjectMapper objectMapper;
+    private final String pythonExecutable;
+    private final String scriptPath;
+    private final String workingDir;
+    private final String launcherPath;
+    private final int size;
+    private final long requestTimeoutMs;
+    private final long startupTimeoutMs;
+    private final long restartDelayMs;
+    private final Semaphore pending;
+    private final AtomicReferenceArray<Worker> workers;
+    private final AtomicLong ids = new AtomicLong();
+    private final ScheduledExecutorService supervisor;
+    private volatile boolean running;
+    private volatile Path launcher;
+
+    public ChatbotWorkerPool(ObjectMapper objectMapper,
+                             @Value("${python.executable:python}") String pythonExecutable,
+                             @Value("${python.script.path:}") String scriptPath,
+                             @Value("${python.script.dir:}") String workingDir,
+                             @Value("${chatbot.workers.launcher:}") String launcherPath,
+                             @Value("${chatbot.workers.size:2}") int size,
+                             @Value("${chatbot.workers.max-pending:32}") int maxPending,
+                             @Value("${chatbot.workers.request-timeout-ms:60000}") long requestTimeoutMs,
+                             @Value("${chatbot.workers.startup-timeout-ms:180000}") long startupTimeoutMs,
+                             @Value("${chatbot.workers.restart-delay-ms:5000}") long restartDelayMs,
+                             @Value("${chatbot.workers.health-interval-ms:30000}") long healthIntervalMs) {
+        this.objectMapper = objectMapper;
+        this.pythonExecutable = pythonExecutable;
+        this.scriptPath = scriptPath;
+        this.workingDir = workingDir;
+        this.launcherPath = launcherPath;
+        this.size = Math.max(1, size);
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.startupTimeoutMs = startupTimeoutMs;
+        this.restartDelayMs = restartDelayMs;
+        this.pending = new Semaphore(Math.max(1, maxPending));
+        this.workers = new AtomicReferenceArray<>(this.size);
+        this.supervisor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chatbot-supervisor");
+            t.setDaemon(true);
+            return t;
+        });
+        this.supervisor.scheduleWithFixedDelay(this::checkHealth, healthIntervalMs, healthIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (scriptPath.isBlank()) {
+            log.info("Chatbot RAG désactivé : python.script.path non renseigné");
+            return;
+        }
+        try {
+            launcher = resolveLauncher();
+        } catch (IOException e) {
+            log.error("Lanceur des workers du chatbot introuvable : {}", e.getMessage());
+            return;
+        }
+        running = true;
+        for (int i = 0; i < size; i++) {
+            spawn(i);
+        }
+    }
+
+    /**
+     * Envoie la question au worker le moins chargé. La réponse est le contenu de {@code result}.
+     *
+     * @throws RejectedExecutionException si trop de requêtes sont déjà en attente
+     * @throws IllegalStateException      si aucun worker n'est prêt
+     */
+    public CompletableFuture<Map<String, Object>> query(String query) {
+        if (!running) {
+            throw new IllegalStateException("Chatbot indisponible.");
+        }
+        if (!pending.tryAcquire()) {
+            throw new RejectedExecutionException("Trop de questions en attente pour le chatbot, réessayez plus tard.");
+        }
+        Worker worker = leastLoaded();
+        if (worker == null) {
+            pending.release();
+            throw new IllegalStateException("Aucun worker du chatbot n'est prêt.");
+        }
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("query", query);
+        return worker.send(message, requestTimeoutMs)
+                .thenApply(this::toResult)
+                .whenComplete((result, error) -> pending.release());
+    }
+
+    private Map<String, Object> toResult(JsonNode response) {
+        if (response.hasNonNull("error")) {
+            throw new CompletionException(new IllegalStateException(response.get("error").asText()));
+        }
+        JsonNode result = response.path("result");
+        if (result.isTextual()) {
+            return Map.of("response", result.asText());
+        }
+        return objectMapper.convertValue(result, new TypeReference<Map<String, Object>>() {});
+    }
+
+    private Worker leastLoaded() {
+        Worker best = null;
+        for (int i = 0; i < size; i++) {
+            Worker worker = workers.get(i);
+            if (worker != null && worker.ready && (best == null || worker.inFlight.size() < best.inFlight.size())) {
+                best = worker;
+            }
+        }
+        return best;
+    }
+
+    private void spawn(int index) {
+        if (!running) {
+            return;
+        }
+        Path script = Paths.get(scriptPath).toAbsolutePath();
+        ProcessBuilder pb = new ProcessBuilder(pythonExecutable, "-u", launcher.toString(), script.toString());
+        pb.directory((workingDir.isBlank() ? script.getParent() : Paths.get(workingDir)).toFile());
+        pb.environment().put("PYTHONIOENCODING", "utf-8");
+        // Les journaux Python passent par la sortie d'erreur de l'application
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            Worker worker = new Worker(index, pb.start());
+            workers.set(index, worker);
+            worker.startReader();
+            log.info("Worker chatbot {} démarré (pid {})", index, worker.process.pid());
+        } catch (IOException e) {
+            log.error("Démarrage du worker chatbot {} impossible : {}", index, e.getMessage());
+            scheduleRestart(index);
+        }
+    }
+
+    private void scheduleRestart(int index) {
+        if (running) {
+            supervisor.schedule(() -> spawn(index), restartDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Worker inactif : ping ; worker occupé : aucune réponse depuis plus que le délai d'une requête
+    private void checkHealth() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            Worker worker = workers.get(i);
+            if (worker == null || !worker.process.isAlive()) {
+                continue;
+            }
+            if (!worker.ready) {
+                if (now - worker.startedAt > startupTimeoutMs) {
+                    worker.recycle("pas prêt après " + startupTimeoutMs + " ms");
+                }
+            } else if (!worker.inFlight.isEmpty()) {
+                if (now - worker.lastActivity > requestTimeoutMs * 2) {
+                    worker.recycle("aucune réponse depuis " + (now - worker.lastActivity) + " ms");
+                }
+            } else {
+                try {
+                    ObjectNode ping = objectMapper.createObjectNode();
+                    ping.put("type", "ping");
+                    worker.send(ping, 10_000).get(11, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    worker.recycle("ping sans réponse");
+                }
+            }
+        }
+    }
+
+    private Path resolveLauncher() throws IOException {
+        if (!launcherPath.isBlank()) {
+            return Paths.get(launcherPath).toAbsolutePath();
+        }
+        // Le lanceur est embarqué dans le jar : copie dans un fichier temporaire exécutable par Python
+        Path target = Files.createTempFile("chatbot_worker", ".py");
+        target.toFile().deleteOnExit();
+        try (InputStream in = new ClassPathResource(LAUNCHER).getInputStream()) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return target;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        supervisor.shutdownNow();
+        for (int i = 0; i < size; i++) {
+            Worker worker = workers.get(i);
+            if (worker != null) {
+                worker.process.destroy();
+            }
+        }
+    }
+
+    private final class Worker {
+        private final int index;
+        private final Process process;
+        private final BufferedWriter stdin;
+        private final Map<Long, CompletableFuture<JsonNode>> inFlight = new ConcurrentHashMap<>();
+        private final long startedAt = System.currentTimeMillis();
+        private volatile long lastActivity = startedAt;
+        private volatile boolean ready;
+
+        Worker(int index, Process process) {
+            this.index = index;
+            this.process = process;
+            this.stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        void startReader() {
+            Thread reader = new Thread(this::readLoop, "chatbot-worker-" + index);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        CompletableFuture<JsonNode> send(ObjectNode message, long timeoutMs) {
+            long id = ids.incrementAndGet();
+            message.put("id", id);
+            CompletableFuture<JsonNode> future = new CompletableFuture<>();
+            if (inFlight.isEmpty()) {
+                lastActivity = System.currentTimeMillis();
+            }
+            inFlight.put(id, future);
+            try {
+                String line = objectMapper.writeValueAsString(message);
+                synchronized (stdin) {
+                    stdin.write(line);
+                    stdin.newLine();
+                    stdin.flush();
+                }
+            } catch (IOException e) {
+                inFlight.remove(id);
+                future.completeExceptionally(new IllegalStateException("Worker chatbot " + index + " injoignable", e));
+                return future;
+            }
+            // Une réponse arrivée après le délai est ignorée
+            return future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                    .whenComplete((response, error) -> inFlight.remove(id));
+        }
+
+        private void readLoop() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    handle(line);
+                }
+            } catch (IOException e) {
+                log.debug("Lecture du worker chatbot {} interrompue : {}", index, e.getMessage());
+            }
+            ready = false;
+            IllegalStateException stopped = new IllegalStateException("Worker chatbot " + index + " arrêté");
+            new ArrayList<>(inFlight.values()).forEach(f -> f.completeExceptionally(stopped));
+            inFlight.clear();
+            if (running) {
+                log.warn("Worker chatbot {} arrêté, relance dans {} ms", index, restartDelayMs);
+                scheduleRestart(index);
+            }
+        }
+
+        private void handle(String line) {
+            if (!line.startsWith("{")) {
+                log.debug("Worker chatbot {} : {}", index, line);
+                return;
+            }
+            try {
+                JsonNode message = objectMapper.readTree(line);
+                lastActivity = System.currentTimeMillis();
+                if (message.path("ready").asBoolean(false)) {
+                    ready = true;
+                    log.info("Worker chatbot {} prêt en {} ms", index, lastActivity - startedAt);
+                    return;
+                }
+                CompletableFuture<JsonNode> future = inFlight.remove(message.path("id").asLong());
+                if (future != null) {
+                    future.complete(message);
+                }
+            } catch (IOException e) {
+                log.warn("Message illisible du worker chatbot {} : {}", index, line);
+            }
+        }
+
+        void recycle(String reason) {
+            log.warn("Worker chatbot {} relancé : {}", index, reason);
+            ready = false;
+            process.destroyForcibly();
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ExtractedContent;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Document;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.IngestionJob;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.IngestionStatus;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.IngestionJobRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * File d'ingestion asynchrone des documents : l'upload est mis en attente et
+ * rend immédiatement la main, un pool borné de workers se charge ensuite de
+ * l'extraction, de la classification et de l'enregistrement du document.
+ */
+@Service
+public class DocumentIngestionService implements IDocumentIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentIngestionService.class);
+
+    private final IngestionJobRepository jobRepository;
+    private final IDocumentServices documentServices;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path spoolDir;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final ThreadPoolExecutor executor;
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    public DocumentIngestionService(IngestionJobRepository jobRepository,
+                                    IDocumentServices documentServices,
+                                    @Value("${file.upload-dir}") String uploadDir,
+                                    @Value("${ingestion.workers:2}") int workers,
+                                    @Value("${ingestion.queue-capacity:100}") int queueCapacity,
+                                    @Value("${ingestion.max-attempts:3}") int maxAttempts,
+                                    @Value("${ingestion.retry-backoff-ms:30000}") long retryBackoffMs) {
+        this.jobRepository = jobRepository;
+        this.documentServices = documentServices;
+        this.spoolDir = Paths.get(uploadDir, "ingestion").toAbsolutePath().normalize();
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread t = new Thread(r, "ingestion-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public IngestionJob submit(MultipartFile file, String userId, Map<String, Object> config) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("Le fichier ne peut pas être null ou vide.");
+        }
+        Files.createDirectories(spoolDir);
+        // Seul le dernier segment du nom fourni par le client est conservé, pour garder l'extension
+        String name = file.getOriginalFilename() != null ? Paths.get(file.getOriginalFilename()).getFileName().toString() : "";
+        Path target = spoolDir.resolve(UUID.randomUUID() + "_" + name).normalize();
+        if (!target.startsWith(spoolDir)) {
+            throw new IllegalArgumentException("Nom de fichier invalide : " + file.getOriginalFilename());
+        }
+        file.transferTo(target);
+
+        IngestionJob job = new IngestionJob();
+        job.setOriginalFilename(file.getOriginalFilename());
+        job.setContentType(file.getContentType());
+        job.setUserId(userId);
+        job.setStoredPath(target.toString());
+        job.setConfigJson(writeConfig(config));
+        job.setStatus(IngestionStatus.QUEUED);
+        job.setCreatedAt(LocalDateTime.now());
+        job.setUpdatedAt(job.getCreatedAt());
+        job.setNextAttemptAt(job.getCreatedAt());
+        job = jobRepository.save(job);
+
+        log.info("Job d'ingestion {} créé pour le fichier {}", job.getId(), file.getOriginalFilename());
+        dispatch(job.getId());
+        return job;
+    }
+
+    @Override
+    public List<IngestionJob> submitBatch(List<MultipartFile> files, String userId, Map<String, Object> config)
+            throws IOException {
+        List<IngestionJob> jobs = new ArrayList<>();
+        for (MultipartFile file : files) {
+            jobs.add(submit(file, userId, config));
+        }
+        return jobs;
+    }
+
+    @Override
+    public Optional<IngestionJob> getJob(Long jobId) {
+        return jobRepository.findById(jobId);
+    }
+
+    // Relance les jobs en attente (nouvelle tentative ou file saturée lors de la soumission)
+    @Scheduled(fixedDelay = 15000)
+    public void dispatchPendingJobs() {
+        List<IngestionJob> pending = jobRepository
+                .findByStatusAndNextAttemptAtLessThanEqualOrderByCreatedAtAsc(IngestionStatus.QUEUED, LocalDateTime.now());
+        for (IngestionJob job : pending) {
+            if (executor.getQueue().remainingCapacity() == 0) {
+                break;
+            }
+            dispatch(job.getId());
+        }
+    }
+
+    // Les jobs interrompus par un arrêt de l'application sont remis en file
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverInterruptedJobs() {
+        List<IngestionJob> interrupted = jobRepository.findByStatusIn(
+                List.of(IngestionStatus.EXTRACTING, IngestionStatus.CLASSIFYING));
+        for (IngestionJob job : interrupted) {
+            job.setStatus(IngestionStatus.QUEUED);
+            job.setNextAttemptAt(LocalDateTime.now());
+            job.setUpdatedAt(LocalDateTime.now());
+        }
+        if (!interrupted.isEmpty()) {
+            jobRepository.saveAll(interrupted);
+            log.info("{} job(s) d'ingestion interrompu(s) remis en file", interrupted.size());
+        }
+    }
+
+    private void dispatch(Long jobId) {
+        if (!inFlight.add(jobId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> process(jobId));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(jobId);
+            log.warn("File d'ingestion saturée, le job {} reste en attente", jobId);
+        }
+    }
+
+    private void process(Long jobId) {
+        IngestionJob job = null;
+        try {
+            job = jobRepository.findById(jobId).orElse(null);
+            if (job == null || job.getStatus() != IngestionStatus.QUEUED) {
+                return;
+            }
+            job.setAttempts(job.getAttempts() + 1);
+            job.setErrorMessage(null);
+            updateStatus(job, IngestionStatus.EXTRACTING);
+
+            Map<String, Object> config = readConfig(job.getConfigJson());
+            final IngestionJob current = job;
+            ExtractedContent content = documentServices.extractContent(new File(job.getStoredPath()), job.getContentType(),
+                    config, (page, completed, total, dpi, confidence) -> {
+                        current.setPagesDone(completed);
+                        current.setTotalPages(total);
+                        jobRepository.save(current);
+                    });
+
+            updateStatus(job, IngestionStatus.CLASSIFYING);
+            Document document = documentServices.saveExtractedDocument(job.getOriginalFilename(), content,
+                    job.getUserId(), config);
+
+            job.setDocumentId(document.getId());
+            updateStatus(job, IngestionStatus.DONE);
+            deleteSpooledFile(job);
+            log.info("Job d'ingestion {} terminé - document ID : {}", jobId, document.getId());
+        } catch (Exception e) {
+            if (job != null) {
+                handleFailure(job, e);
+            } else {
+                log.error("Impossible de charger le job d'ingestion {} : {}", jobId, e.getMessage(), e);
+            }
+        } finally {
+            inFlight.remove(jobId);
+        }
+    }
+
+    private void handleFailure(IngestionJob job, Exception e) {
+        job.setErrorMessage(e.getMessage());
+        // Une erreur de validation ne disparaîtra pas en réessayant
+        boolean retryable = !(e instanceof IllegalArgumentException);
+        if (retryable && job.getAttempts() < maxAttempts) {
+            job.setNextAttemptAt(LocalDateTime.now().plus(Duration.ofMillis(retryBackoffMs * job.getAttempts())));
+            updateStatus(job, IngestionStatus.QUEUED);
+            log.warn("Échec du job d'ingestion {} (tentative {}/{}) : {}",
+                    job.getId(), job.getAttempts(), maxAttempts, e.getMessage());
+        } else {
+            updateStatus(job, IngestionStatus.FAILED);
+            deleteSpooledFile(job);
+            log.error("Job d'ingestion {} en échec définitif : {}", job.getId(), e.getMessage(), e);
+        }
+    }
+
+    private void updateStatus(IngestionJob job, IngestionStatus status) {
+        job.setStatus(status);
+        job.setUpdatedAt(LocalDateTime.now());
+        jobRepository.save(job);
+    }
+
+    private void deleteSpooledFile(IngestionJob job) {
+        try {
+            Files.deleteIfExists(Paths.get(job.getStoredPath()));
+        } catch (IOException e) {
+            log.warn("Échec de la suppression du fichier {} : {}", job.getStoredPath(), e.getMessage());
+        }
+    }
+
+    private String writeConfig(Map<String, Object> config) {
+        if (config == null || config.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(config);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Configuration d'upload invalide : " + e.getMessage(), e);
+        }
+    }
+
+    private Map<String, Object> readConfig(String configJson) throws JsonProcessingException {
+        if (configJson == null) {
+            return null;
+        }
+        return objectMapper.readValue(configJson, new TypeReference<Map<String, Object>>() {});
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,16 +1,15 @@
 package tn.esprit.examen.nomPrenomClasseExamen.services;
 
 import lombok.RequiredArgsConstructor;
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ExtractedContent;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Document;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.TypeDocument;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.UserEntity;
@@ -37,34 +36,16 @@ public class DocumentServices implements IDocumentServices {
     private final DocumentationRepository documentRepository;
     private final UserRepository userRepository;
     private final IVersionServices versionServices;
+    private final OcrPipelineService ocrPipelineService;
+    private final ExtractionCacheService extractionCache;
+    private final FullTextIndexService fullTextIndexService;
     private static final Logger log = LoggerFactory.getLogger(DocumentServices.class);
     private static final String UPLOAD_DIR = "C:\\Uploads\\";
-    private static final String TESSDATA_PATH;
 
-    static {
-        String tessdataPrefix = System.getenv("TESSDATA_PREFIX");
-        if (tessdataPrefix != null && !tessdataPrefix.isEmpty()) {
-            TESSDATA_PATH = tessdataPrefix;
-            log.info("Using TESSDATA_PREFIX from environment: {}", TESSDATA_PATH);
-        } else {
-            try {
-                Path tempDir = Files.createTempDirectory("tessdata");
-                Path tessdataDir = tempDir.resolve("tessdata");
-                Files.createDirectory(tessdataDir);
-                ClassPathResource resource = new ClassPathResource("tessdata/eng.traineddata");
-                if (resource.exists()) {
-                    Files.copy(resource.getInputStream(), tessdataDir.resolve("eng.traineddata"));
-                    TESSDATA_PATH = tessdataDir.toString();
-                    log.info("Extracted tessdata to temporary directory: {}", TESSDATA_PATH);
-                } else {
-                    throw new RuntimeException("eng.traineddata not found in src/main/resources/tessdata");
-                }
-            } catch (IOException e) {
-                log.error("Failed to extract tessdata to temporary directory", e);
-                throw new RuntimeException("Failed to initialize tessdata directory", e);
-            }
-        }
+    @Value("${search.max-results:200}")
+    private int maxSearchResults;
 
+    static {
         File uploadDir = new File(UPLOAD_DIR);
         if (!uploadDir.exists() && !uploadDir.mkdirs()) {
             log.error("Échec de la création du dossier d'upload : {}", UPLOAD_DIR);
@@ -216,44 +197,9 @@ public class DocumentServices implements IDocumentServices {
             file.transferTo(tempFile);
             log.info("Fichier sauvegardé : {}", filePath);
 
-            String extractedText = extractTextFromFile(tempFile, file.getContentType(), config);
-            log.info("Texte extrait (100 premiers caractères) : {}",
-                    extractedText.length() > 100 ? extractedText.substring(0, 100) : extractedText);
-
-            Document document = new Document();
-            document.setTitle(file.getOriginalFilename());
-            document.setContent(extractedText);
-            document.setDateCreation(LocalDate.now());
-            document.setCategory("Files");
-            document.setType(determineDocumentType(extractedText, config));
-
-            if (userId != null && !userId.isEmpty()) {
-                UserEntity user = userRepository.findById(userId)
-                        .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
-                document.setCreatedBy(user);
-            } else {
-                document.setCreatedBy(null);
-            }
-
-            if (extractedText != null && !extractedText.trim().isEmpty()) {
-                populateDocumentFields(document, extractedText, config);
-            } else {
-                log.warn("Texte vide, champs spécifiques non remplis");
-            }
-
-            log.info("Sauvegarde du document : {}", document.getTitle());
-            Document savedDocument = documentRepository.save(document);
-
-            Version initialVersion = new Version();
-            initialVersion.setDocument(savedDocument);
-            initialVersion.setContenu(savedDocument.getContent());
-            initialVersion.setModifiePar(savedDocument.getCreatedBy() != null
-                    ? savedDocument.getCreatedBy().getUsername()
-                    : "Système");
-            initialVersion.setModificationDetails("Document créé via upload");
-            versionServices.createVersion(initialVersion);
-
-            return savedDocument;
+            ExtractedContent content = extractContent(tempFile, file.getContentType(), config,
+                    OcrPipelineService.LOGGING_LISTENER);
+            return saveExtractedDocument(file.getOriginalFilename(), content, userId, config);
         } catch (IOException e) {
             log.error("Erreur d'entrée/sortie lors du traitement du fichier {}: {}", file.getOriginalFilename(), e.getMessage(), e);
             throw e;
@@ -272,6 +218,61 @@ public class DocumentServices implements IDocumentServices {
         }
     }
 
+    @Override
+    public ExtractedContent extractContent(File file, String contentType, Map<String, Object> config,
+                                           OcrPipelineService.ProgressListener listener)
+            throws IOException, TesseractException {
+        boolean removeBlankPages = config != null && config.containsKey("removeBlankPages")
+                && (Boolean) config.get("removeBlankPages");
+        String namespace = removeBlankPages ? "ocr-noblank" : "ocr";
+        ExtractedContent content = extractionCache.getOrExtract(namespace, extractionCache.hash(file.toPath()),
+                () -> extractTextFromFile(file, contentType, config, listener),
+                text -> determineDocumentType(text, config));
+        String extractedText = content.getText();
+        log.info("Texte extrait (100 premiers caractères) : {}",
+                extractedText.length() > 100 ? extractedText.substring(0, 100) : extractedText);
+        return content;
+    }
+
+    @Override
+    public Document saveExtractedDocument(String title, ExtractedContent content, String userId, Map<String, Object> config) {
+        String extractedText = content.getText();
+        Document document = new Document();
+        document.setTitle(title);
+        document.setContent(extractedText);
+        document.setDateCreation(LocalDate.now());
+        document.setCategory("Files");
+        document.setType(content.getType() != null ? content.getType() : determineDocumentType(extractedText, config));
+
+        if (userId != null && !userId.isEmpty()) {
+            UserEntity user = userRepository.findById(userId)
+                    .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
+            document.setCreatedBy(user);
+        } else {
+            document.setCreatedBy(null);
+        }
+
+        if (extractedText != null && !extractedText.trim().isEmpty()) {
+            populateDocumentFields(document, extractedText, config);
+        } else {
+            log.warn("Texte vide, champs spécifiques non remplis");
+        }
+
+        log.info("Sauvegarde du document : {}", document.getTitle());
+        Document savedDocument = documentRepository.save(document);
+
+        Version initialVersion = new Version();
+        initialVersion.setDocument(savedDocument);
+        initialVersion.setContenu(savedDocument.getContent());
+        initialVersion.setModifiePar(savedDocument.getCreatedBy() != null
+                ? savedDocument.getCreatedBy().getUsername()
+                : "Système");
+        initialVersion.setModificationDetails("Document créé via upload");
+        versionServices.createVersion(initialVersion);
+
+        return savedDocument;
+    }
+
     @Override
     public List<Document> searchDocuments(String keyword) {
         if (keyword == null || keyword.trim().isEmpty()) {
@@ -279,7 +280,16 @@ public class DocumentServices implements IDocumentServices {
             return documentRepository.findAll();
         }
         log.info("Recherche avec mot-clé : {}", keyword);
-        return documentRepository.findByTitleContainingIgnoreCaseOrContentContainingIgnoreCase(keyword, keyword);
+        List<Long> rankedIds;
+        try {
+            rankedIds = fullTextIndexService.searchIds(keyword, FullTextIndexService.TYPE_DOCUMENT, maxSearchResults);
+        } catch (IOException e) {
+            log.error("Échec de la recherche plein texte, repli sur la recherche SQL : {}", e.getMessage(), e);
+            return documentRepository.findByTitleContainingIgnoreCaseOrContentContainingIgnoreCase(keyword, keyword);
+        }
+        Map<Long, Document> byId = documentRepository.findAllById(rankedIds).stream()
+                .collect(Collectors.toMap(Document::getId, d -> d));
+        return rankedIds.stream().map(byId::get).filter(Objects::nonNull).collect(Collectors.toList());
     }
 
     @Override
@@ -331,7 +341,8 @@ public class DocumentServices implements IDocumentServices {
         return documentRepository.save(document);
     }
 
-    private String extractTextFromFile(File tempFile, String contentType, Map<String, Object> config)
+    private String extractTextFromFile(File tempFile, String contentType, Map<String, Object> config,
+                                       OcrPipelineService.ProgressListener listener)
             throws IOException, TesseractException {
         if ("application/pdf".equals(contentType)) {
             try (PDDocument pdfDocument = PDDocument.load(tempFile)) {
@@ -345,54 +356,10 @@ public class DocumentServices implements IDocumentServices {
                     log.info("Aucun texte natif extrait, passage à l'OCR");
                 }
 
-                PDFRenderer pdfRenderer = new PDFRenderer(pdfDocument);
-                List<BufferedImage> images = new ArrayList<>();
                 boolean removeBlankPages = config != null && config.containsKey("removeBlankPages")
                         && (Boolean) config.get("removeBlankPages");
 
-                log.info("Traitement PDF - Pages : {}", pdfDocument.getNumberOfPages());
-                for (int page = 0; page < pdfDocument.getNumberOfPages(); page++) {
-                    BufferedImage image = pdfRenderer.renderImageWithDPI(page, 600);
-                    if (image == null) {
-                        log.warn("Page {} non rendue, ignorée", page + 1);
-                        continue;
-                    }
-                    if (!removeBlankPages || !isBlankPage(image)) {
-                        images.add(image);
-                    }
-                }
-
-                if (images.isEmpty()) {
-                    log.error("Aucune page valide trouvée dans le PDF");
-                    throw new IOException("Aucune page avec du contenu détecté.");
-                }
-
-                Tesseract tesseract = new Tesseract();
-                log.info("Configuration Tesseract - TESSDATA_PATH : {}", TESSDATA_PATH);
-                tesseract.setDatapath(TESSDATA_PATH);
-                tesseract.setLanguage("eng");
-
-                if (!new File(TESSDATA_PATH).exists()) {
-                    log.error("Dossier tessdata introuvable : {}", TESSDATA_PATH);
-                    throw new TesseractException("Chemin tessdata invalide : " + TESSDATA_PATH);
-                }
-
-                StringBuilder textBuilder = new StringBuilder();
-                for (int i = 0; i < images.size(); i++) {
-                    try {
-                        String pageText = tesseract.doOCR(images.get(i));
-                        if (pageText == null || pageText.trim().isEmpty()) {
-                            log.warn("Aucun texte extrait de la page {}", i + 1);
-                            continue;
-                        }
-                        textBuilder.append(pageText).append("\n");
-                        log.info("Page {} traitée - Texte : {} caractères", i + 1, pageText.length());
-                    } catch (TesseractException e) {
-                        log.error("Erreur OCR pour la page {} : {}", i + 1, e.getMessage(), e);
-                    }
-                }
-
-                String result = textBuilder.toString();
+                String result = ocrPipelineService.extractPdf(pdfDocument, removeBlankPages, listener);
                 if (result.trim().isEmpty()) {
                     log.warn("Aucun texte extrait via OCR, retour de chaîne vide");
                     return "";
@@ -407,17 +374,7 @@ public class DocumentServices implements IDocumentServices {
                 throw new IOException("Fichier image invalide : " + tempFile.getName());
             }
 
-            Tesseract tesseract = new Tesseract();
-            log.info("Configuration Tesseract - TESSDATA_PATH : {}", TESSDATA_PATH);
-            tesseract.setDatapath(TESSDATA_PATH);
-            tesseract.setLanguage("eng");
-
-            if (!new File(TESSDATA_PATH).exists()) {
-                log.error("Dossier tessdata introuvable : {}", TESSDATA_PATH);
-                throw new TesseractException("Chemin tessdata invalide : " + TESSDATA_PATH);
-            }
-
-            String extractedText = tesseract.doOCR(image);
+            String extractedText = ocrPipelineService.extractImage(image);
             if (extractedText == null || extractedText.trim().isEmpty()) {
                 log.warn("Aucun texte extrait de l'image, retour de chaîne vide");
                 return "";
@@ -427,29 +384,6 @@ public class DocumentServices implements IDocumentServices {
         }
     }
 
-    private boolean isBlankPage(BufferedImage image) {
-        if (image == null) {
-            log.error("Image null lors de la vérification des pages blanches");
-            return true;
-        }
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int whitePixelCount = 0;
-        int totalPixels = width * height;
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int rgb = image.getRGB(x, y);
-                if (rgb == -1 || (Math.abs((rgb & 0xFF) - 255) < 10
-                        && Math.abs(((rgb >> 8) & 0xFF) - 255) < 10
-                        && Math.abs(((rgb >> 16) & 0xFF) - 255) < 10)) {
-                    whitePixelCount++;
-                }
-            }
-        }
-        return whitePixelCount > totalPixels * 0.98;
-    }
-
     private void validateDocument(Document document) {
         if (document == null) {
             throw new IllegalArgumentException("Le document ne peut pas être null.");
@@ -0,0 +1,227 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ExtractedContent;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.TypeDocument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Cache du texte extrait (et de sa classification) indexé par l'empreinte SHA-256
+ * du fichier source. Un niveau mémoire LRU sert les accès fréquents ; un niveau
+ * disque borné en taille, évincé lui aussi en LRU, survit aux redémarrages.
+ */
+@Service
+public class ExtractionCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExtractionCacheService.class);
+    private static final String NO_TYPE = "-";
+
+    /**
+     * Extraction coûteuse exécutée uniquement en cas d'absence dans le cache.
+     */
+    @FunctionalInterface
+    public interface Extractor<E extends Exception> {
+        String extract() throws IOException, E;
+    }
+
+    private final Path cacheDir;
+    private final long maxDiskBytes;
+    private final Map<String, ExtractedContent> memory;
+    private final LinkedHashMap<String, Long> diskIndex = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+
+    public ExtractionCacheService(@Value("${file.upload-dir}") String uploadDir,
+                                  @Value("${extraction.cache.memory-entries:256}") int memoryEntries,
+                                  @Value("${extraction.cache.disk-max-bytes:536870912}") long maxDiskBytes) {
+        this.cacheDir = Paths.get(uploadDir, "extraction-cache");
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ExtractedContent> eldest) {
+                return size() > memoryEntries;
+            }
+        });
+    }
+
+    // Reconstruit l'index disque en conservant l'ordre des derniers accès
+    @PostConstruct
+    public void loadIndex() throws IOException {
+        Files.createDirectories(cacheDir);
+        List<Path> files;
+        try (Stream<Path> stale = Files.list(cacheDir)) {
+            stale.filter(p -> p.getFileName().toString().endsWith(".tmp")).forEach(this::deleteQuietly);
+        }
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            files = stream.filter(p -> p.getFileName().toString().endsWith(".txt"))
+                    .sorted(Comparator.comparing(this::lastModified))
+                    .toList();
+        }
+        synchronized (diskIndex) {
+            for (Path file : files) {
+                long size = Files.size(file);
+                diskIndex.put(keyOf(file), size);
+                diskBytes += size;
+            }
+        }
+        log.info("Cache d'extraction initialisé - {} entrées, {} octets", files.size(), diskBytes);
+    }
+
+    public String hash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return hash(in);
+        }
+    }
+
+    public String hash(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Retourne le contenu en cache pour cette empreinte, ou exécute l'extraction,
+     * classifie le texte obtenu et l'enregistre. L'espace de noms distingue les
+     * extracteurs (OCR, Tika...) dont le résultat diffère pour un même fichier.
+     */
+    public <E extends Exception> ExtractedContent getOrExtract(String namespace, String sha256, Extractor<E> extractor,
+                                                               Function<String, TypeDocument> classifier)
+            throws IOException, E {
+        String key = namespace + "-" + sha256;
+        Optional<ExtractedContent> cached = get(key);
+        if (cached.isPresent()) {
+            log.info("Extraction servie depuis le cache : {}", key);
+            return cached.get();
+        }
+        String text = extractor.extract();
+        ExtractedContent content = new ExtractedContent(text, classifier != null ? classifier.apply(text) : null);
+        put(key, content);
+        return content;
+    }
+
+    private Optional<ExtractedContent> get(String key) {
+        ExtractedContent content = memory.get(key);
+        if (content != null) {
+            return Optional.of(content);
+        }
+        synchronized (diskIndex) {
+            if (diskIndex.get(key) == null) {
+                return Optional.empty();
+            }
+        }
+        Path file = fileOf(key);
+        try {
+            String raw = Files.readString(file, StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            int newline = raw.indexOf('\n');
+            String typeName = raw.substring(0, newline);
+            content = new ExtractedContent(raw.substring(newline + 1),
+                    NO_TYPE.equals(typeName) ? null : TypeDocument.valueOf(typeName));
+            memory.put(key, content);
+            return Optional.of(content);
+        } catch (IOException | RuntimeException e) {
+            // Entrée évincée entre-temps ou illisible : traitée comme absente
+            log.warn("Entrée de cache illisible {} : {}", key, e.getMessage());
+            remove(key);
+            return Optional.empty();
+        }
+    }
+
+    private void put(String key, ExtractedContent content) {
+        memory.put(key, content);
+        String typeName = content.getType() != null ? content.getType().name() : NO_TYPE;
+        byte[] bytes = (typeName + "\n" + (content.getText() != null ? content.getText() : ""))
+                .getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxDiskBytes) {
+            return;
+        }
+        Path file = fileOf(key);
+        try {
+            Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Échec de l'écriture du cache {} : {}", key, e.getMessage());
+            return;
+        }
+        List<String> evicted = new ArrayList<>();
+        synchronized (diskIndex) {
+            Long previous = diskIndex.put(key, (long) bytes.length);
+            diskBytes += bytes.length - (previous != null ? previous : 0L);
+            Iterator<Map.Entry<String, Long>> it = diskIndex.entrySet().iterator();
+            while (diskBytes > maxDiskBytes && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                diskBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                it.remove();
+            }
+        }
+        for (String evictedKey : evicted) {
+            deleteQuietly(fileOf(evictedKey));
+        }
+        if (!evicted.isEmpty()) {
+            log.info("{} entrée(s) évincée(s) du cache d'extraction", evicted.size());
+        }
+    }
+
+    private void remove(String key) {
+        memory.remove(key);
+        synchronized (diskIndex) {
+            Long size = diskIndex.remove(key);
+            if (size != null) {
+                diskBytes -= size;
+            }
+        }
+        deleteQuietly(fileOf(key));
+    }
+
+    private Path fileOf(String key) {
+        return cacheDir.resolve(key + ".txt");
+    }
+
+    private String keyOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - ".txt".length());
+    }
+
+    private FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Échec de la suppression de {} : {}", file, e.getMessage());
+        }
+    }
+}
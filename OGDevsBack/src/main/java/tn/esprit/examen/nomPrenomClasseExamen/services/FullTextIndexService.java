@@ -0,0 +1,367 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.fr.FrenchAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.util.ElisionFilter;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.SearchHitDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.SearchPageDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Document;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Operation;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Process;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Task;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.DocumentationRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.OperationRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.ProcessRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.TaskRepository;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Index plein texte Lucene (stocké sur le disque local) des documents, processus,
+ * opérations et tâches. L'index est tenu à jour au fil des écritures JPA par
+ * {@link SearchIndexListener} et peut être reconstruit entièrement à la demande.
+ */
+@Service
+public class FullTextIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(FullTextIndexService.class);
+
+    public static final String TYPE_DOCUMENT = "Document";
+    public static final String TYPE_PROCESS = "Process";
+    public static final String TYPE_OPERATION = "Operation";
+    public static final String TYPE_TASK = "Task";
+
+    private static final String F_UID = "uid";
+    private static final String F_TYPE = "type";
+    private static final String F_ID = "id";
+    private static final String F_TITLE = "title";
+    private static final String F_BODY = "body";
+    private static final String F_CONTEXT = "context";
+    private static final int REBUILD_BATCH_SIZE = 500;
+    // Profondeur maximale de pagination : (page + 1) * size résultats sont classés en mémoire
+    private static final int MAX_RESULT_WINDOW = 10_000;
+    private static final int SNIPPET_FALLBACK_LENGTH = 200;
+
+    /**
+     * Contenu indexable extrait d'une entité, capturé tant que la session JPA est ouverte.
+     */
+    public record IndexEntry(String type, Long id, String title, String body, String context) {
+    }
+
+    private final DocumentationRepository documentRepository;
+    private final ProcessRepository processRepository;
+    private final OperationRepository operationRepository;
+    private final TaskRepository taskRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final String indexDir;
+    private final Analyzer analyzer = new Analyzer() {
+        // Contenus majoritairement français : élisions (l'audit) et accents neutralisés
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            StandardTokenizer tokenizer = new StandardTokenizer();
+            TokenStream stream = new ElisionFilter(tokenizer, FrenchAnalyzer.DEFAULT_ARTICLES);
+            stream = new LowerCaseFilter(stream);
+            stream = new ASCIIFoldingFilter(stream);
+            return new TokenStreamComponents(tokenizer, stream);
+        }
+
+        @Override
+        protected TokenStream normalize(String fieldName, TokenStream in) {
+            return new ASCIIFoldingFilter(new LowerCaseFilter(in));
+        }
+    };
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+
+    public FullTextIndexService(DocumentationRepository documentRepository,
+                                ProcessRepository processRepository,
+                                OperationRepository operationRepository,
+                                TaskRepository taskRepository,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${search.index.dir:${file.upload-dir}/search-index}") String indexDir) {
+        this.documentRepository = documentRepository;
+        this.processRepository = processRepository;
+        this.operationRepository = operationRepository;
+        this.taskRepository = taskRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.indexDir = indexDir;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        directory = FSDirectory.open(Paths.get(indexDir));
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        writer = new IndexWriter(directory, config);
+        searcherManager = new SearcherManager(writer, null);
+        log.info("Index plein texte ouvert : {} ({} entrées)", indexDir, writer.getDocStats().numDocs);
+    }
+
+    // Premier démarrage : l'index est construit à partir de la base
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() throws IOException {
+        if (writer.getDocStats().numDocs == 0) {
+            rebuild();
+        }
+    }
+
+    public IndexEntry toEntry(Object entity) {
+        if (entity instanceof Document d) {
+            return new IndexEntry(TYPE_DOCUMENT, d.getId(), d.getTitle(), d.getContent(), d.getCategory());
+        }
+        if (entity instanceof Process p) {
+            return new IndexEntry(TYPE_PROCESS, p.getId(), p.getProcName(), p.getDescription(),
+                    p.getPilote() != null ? p.getPilote().getUsername() : null);
+        }
+        if (entity instanceof Operation o) {
+            return new IndexEntry(TYPE_OPERATION, o.getId(), o.getOperationName(), o.getOperationDescription(),
+                    o.getProcess() != null ? o.getProcess().getProcName() : null);
+        }
+        if (entity instanceof Task t) {
+            String context = t.getOperation() != null
+                    ? t.getOperation().getOperationName() + " " + Objects.toString(t.getTaskStatus(), "")
+                    : t.getTaskStatus();
+            return new IndexEntry(TYPE_TASK, t.getId(), t.getTaskName(), t.getTaskDescription(), context);
+        }
+        return null;
+    }
+
+    public void index(IndexEntry entry) {
+        try {
+            writer.updateDocument(new Term(F_UID, uid(entry.type(), entry.id())), toLuceneDocument(entry));
+            dirty.set(true);
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            log.error("Échec de l'indexation de {} {} : {}", entry.type(), entry.id(), e.getMessage(), e);
+        }
+    }
+
+    public void delete(String type, Long id) {
+        try {
+            writer.deleteDocuments(new Term(F_UID, uid(type, id)));
+            dirty.set(true);
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            log.error("Échec de la suppression de {} {} de l'index : {}", type, id, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recherche classée par pertinence, paginée, avec extraits surlignés.
+     * {@code type} restreint éventuellement les résultats à un type d'entité.
+     */
+    public SearchPageDTO search(String queryText, String type, int page, int size) throws IOException {
+        SearchPageDTO result = new SearchPageDTO();
+        result.setQuery(queryText);
+        result.setPage(page);
+        result.setSize(size);
+        result.setHits(new ArrayList<>());
+        Query query = buildQuery(queryText, type);
+        if (query == null || size <= 0 || page < 0 || (long) (page + 1) * size > MAX_RESULT_WINDOW) {
+            return result;
+        }
+
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopDocs top = searcher.search(query, (page + 1) * size);
+            result.setTotalHits(top.totalHits.value);
+            int from = page * size;
+            if (from >= top.scoreDocs.length) {
+                return result;
+            }
+            ScoreDoc[] slice = Arrays.copyOfRange(top.scoreDocs, from, top.scoreDocs.length);
+            UnifiedHighlighter highlighter = UnifiedHighlighter.builder(searcher, analyzer)
+                    .withMaxLength(Integer.MAX_VALUE - 1)
+                    .build();
+            String[] snippets = highlighter.highlight(F_BODY, query, new TopDocs(top.totalHits, slice));
+
+            for (int i = 0; i < slice.length; i++) {
+                org.apache.lucene.document.Document doc = searcher.storedFields().document(slice[i].doc);
+                SearchHitDTO hit = new SearchHitDTO();
+                hit.setEntityType(doc.get(F_TYPE));
+                hit.setId(Long.valueOf(doc.get(F_ID)));
+                hit.setTitle(doc.get(F_TITLE));
+                hit.setContext(doc.get(F_CONTEXT));
+                hit.setScore(slice[i].score);
+                hit.setSnippet(snippets[i] != null ? snippets[i] : fallbackSnippet(doc.get(F_BODY)));
+                result.getHits().add(hit);
+            }
+            return result;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Identifiants des entités d'un type donné, par pertinence décroissante.
+     */
+    public List<Long> searchIds(String queryText, String type, int limit) throws IOException {
+        Query query = buildQuery(queryText, type);
+        if (query == null) {
+            return List.of();
+        }
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            List<Long> ids = new ArrayList<>();
+            for (ScoreDoc scoreDoc : searcher.search(query, limit).scoreDocs) {
+                ids.add(Long.valueOf(searcher.storedFields().document(scoreDoc.doc).get(F_ID)));
+            }
+            return ids;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Reconstruit l'index complet à partir de la base, par lots lus chacun dans une transaction
+     * en lecture seule.
+     */
+    public synchronized int rebuild() throws IOException {
+        log.info("Reconstruction de l'index plein texte...");
+        writer.deleteAll();
+        int count = reindexAll(documentRepository)
+                + reindexAll(processRepository)
+                + reindexAll(operationRepository)
+                + reindexAll(taskRepository);
+        writer.commit();
+        dirty.set(false);
+        searcherManager.maybeRefresh();
+        log.info("Index plein texte reconstruit : {} entrées", count);
+        return count;
+    }
+
+    @Scheduled(fixedDelay = 30000)
+    public void commitIfDirty() {
+        if (dirty.getAndSet(false)) {
+            try {
+                writer.commit();
+            } catch (IOException e) {
+                dirty.set(true);
+                log.error("Échec du commit de l'index plein texte : {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        commitIfDirty();
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    private <T> int reindexAll(JpaRepository<T, Long> repository) throws IOException {
+        int count = 0;
+        // Ordre stable : sans tri, la pagination par décalage peut sauter ou répéter des lignes
+        Pageable pageable = PageRequest.of(0, REBUILD_BATCH_SIZE, Sort.by("id"));
+        while (pageable != null) {
+            Pageable current = pageable;
+            // Les entrées sont extraites dans la transaction : les associations paresseuses restent accessibles
+            Slice<IndexEntry> batch = readOnlyTransaction.execute(status -> {
+                Page<T> page = repository.findAll(current);
+                return new SliceImpl<>(page.getContent().stream().map(this::toEntry).toList(), current, page.hasNext());
+            });
+            for (IndexEntry entry : batch.getContent()) {
+                if (entry != null && entry.id() != null) {
+                    writer.updateDocument(new Term(F_UID, uid(entry.type(), entry.id())), toLuceneDocument(entry));
+                    count++;
+                }
+            }
+            pageable = batch.hasNext() ? batch.nextPageable() : null;
+        }
+        return count;
+    }
+
+    private Query buildQuery(String queryText, String type) {
+        if (queryText == null || queryText.trim().isEmpty()) {
+            return null;
+        }
+        Map<String, Float> boosts = Map.of(F_TITLE, 3f, F_BODY, 1f, F_CONTEXT, 0.5f);
+        MultiFieldQueryParser parser = new MultiFieldQueryParser(
+                new String[]{F_TITLE, F_BODY, F_CONTEXT}, analyzer, boosts);
+        parser.setDefaultOperator(QueryParser.Operator.AND);
+        Query textQuery;
+        try {
+            textQuery = parser.parse(queryText);
+        } catch (ParseException e) {
+            try {
+                textQuery = parser.parse(QueryParser.escape(queryText));
+            } catch (ParseException escaped) {
+                log.warn("Requête de recherche invalide : {}", queryText);
+                return null;
+            }
+        }
+        if (type == null || type.isEmpty()) {
+            return textQuery;
+        }
+        return new BooleanQuery.Builder()
+                .add(textQuery, BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term(F_TYPE, type)), BooleanClause.Occur.FILTER)
+                .build();
+    }
+
+    private org.apache.lucene.document.Document toLuceneDocument(IndexEntry entry) {
+        org.apache.lucene.document.Document doc = new org.apache.lucene.document.Document();
+        doc.add(new StringField(F_UID, uid(entry.type(), entry.id()), Field.Store.NO));
+        doc.add(new StringField(F_TYPE, entry.type(), Field.Store.YES));
+        doc.add(new StoredField(F_ID, String.valueOf(entry.id())));
+        doc.add(new TextField(F_TITLE, Objects.toString(entry.title(), ""), Field.Store.YES));
+        doc.add(new TextField(F_BODY, Objects.toString(entry.body(), ""), Field.Store.YES));
+        doc.add(new TextField(F_CONTEXT, Objects.toString(entry.context(), ""), Field.Store.YES));
+        return doc;
+    }
+
+    private String uid(String type, Long id) {
+        return type + ":" + id;
+    }
+
+    private String fallbackSnippet(String body) {
+        if (body == null) {
+            return "";
+        }
+        return body.length() > SNIPPET_FALLBACK_LENGTH ? body.substring(0, SNIPPET_FALLBACK_LENGTH) + "..." : body;
+    }
+}
@@ -1,5 +1,7 @@
 package tn.esprit.examen.nomPrenomClasseExamen.services;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Candidate;
 
 import java.util.List;
@@ -14,5 +16,6 @@ public interface ICandidateServices {
     void assignCandidateToJobOffer(Long candidateId, Long jobOfferId);
     public Candidate acceptCandidate(Long candidateId);
     public List<Candidate> getAllCandidatesSortedByScore(Long jobOfferId);
+    Page<Candidate> getCandidatesRankedByScore(Long jobOfferId, Pageable pageable);
 
 }
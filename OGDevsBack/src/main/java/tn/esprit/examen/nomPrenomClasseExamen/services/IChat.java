@@ -1,21 +1,31 @@
 package tn.esprit.examen.nomPrenomClasseExamen.services;
 
+import org.springframework.core.io.Resource;
+import org.springframework.web.multipart.MultipartFile;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ChatInboxDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.dto.MessageDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.MessagePageDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatAttachment;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.ChatRoom;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Message;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.UserEntity;
 
+import java.io.IOException;
 import java.util.List;
 
 public interface IChat {
     MessageDTO saveMessage(Long channelId, Message message);
     void sendMessage(Long channelId, Message message);
     void sendPrivateMessage(String senderId, String receiverId, Message message);
-    void markAsRead(Long messageId);
+    void markAsRead(Long messageId, String userId);
+    MessageDTO sendAttachment(Long chatRoomId, UserEntity sender, String content, MultipartFile file) throws IOException;
+    ChatAttachment getAttachment(Long attachmentId, String userId); // Vérifie l'appartenance au salon
+    Resource getAttachmentContent(ChatAttachment attachment);
     void deleteMessage(Long id);
     List<Message> getLastMessage(List<ChatRoom> chatRooms);
     List<Message> getLastMessage1(List<ChatRoom> chatRooms);
     List<ChatRoom> getRooms(String userId);
+    List<ChatInboxDTO> getInbox(String userId); // Un résumé par salon, en une requête
     ChatRoom createChatRoom(ChatRoom chatRoom, UserEntity authed, List<String> userIdsToAdd); // Updated to accept user IDs
     void joinChatRoom(Long chatRoomId, String userId);
     void leaveChatRoom(Long chatRoomId, String userId);
@@ -23,6 +33,7 @@ public interface IChat {
     void deleteChatRoom(Long id);
     List<Message> getMessagesFrom(ChatRoom chatRoom, Long messageId);
     List<Message> getMessagesFrom1(ChatRoom chatRoom);
+    MessagePageDTO getMessagePage(Long chatRoomId, String userId, Long before, int limit); // Page d'historique avant le curseur "before"
     List<Message> getLast10MessageStartingFrom(ChatRoom chatRoom, Long messageId);
     List<UserEntity> getAllUsers(); // New method to fetch all users
 }
\ No newline at end of file
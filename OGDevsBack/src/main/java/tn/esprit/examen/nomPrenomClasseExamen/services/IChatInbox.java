@@ -0,0 +1,15 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ChatInboxDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Message;
+
+import java.util.List;
+
+public interface IChatInbox {
+    List<ChatInboxDTO> getInbox(String userId);
+    void onMessageSaved(Message message);
+    void onMessageRead(Long chatRoomId, Long messageId, String userId);
+    void syncRoom(Long chatRoomId); // Après création, modification ou changement de membres d'un salon
+    void onRoomDeleted(Long chatRoomId);
+    void rebuild();
+}
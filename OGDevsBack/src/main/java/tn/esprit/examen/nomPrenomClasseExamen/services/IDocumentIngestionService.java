@@ -0,0 +1,15 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import org.springframework.web.multipart.MultipartFile;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.IngestionJob;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface IDocumentIngestionService {
+    IngestionJob submit(MultipartFile file, String userId, Map<String, Object> config) throws IOException;
+    List<IngestionJob> submitBatch(List<MultipartFile> files, String userId, Map<String, Object> config) throws IOException;
+    Optional<IngestionJob> getJob(Long jobId);
+}
@@ -2,10 +2,12 @@ package tn.esprit.examen.nomPrenomClasseExamen.services;
 
 import net.sourceforge.tess4j.TesseractException;
 import org.springframework.web.multipart.MultipartFile;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ExtractedContent;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Document;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.TypeDocument;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Version;
 
+import java.io.File;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.List;
@@ -19,6 +21,10 @@ public interface IDocumentServices {
     Optional<Document> getDocumentById(Long id);
     List<Document> getAllDocuments();
     Document uploadAndSummarize(MultipartFile file, String userId, Map<String, Object> config) throws IOException, TesseractException;
+    // Étapes de l'upload, réutilisées par l'ingestion asynchrone
+    ExtractedContent extractContent(File file, String contentType, Map<String, Object> config,
+                                    OcrPipelineService.ProgressListener listener) throws IOException, TesseractException;
+    Document saveExtractedDocument(String title, ExtractedContent content, String userId, Map<String, Object> config);
     List<Document> searchDocuments(String keyword);
     Document archiveDocument(Long id);
     List<Document> getArchivedDocuments();
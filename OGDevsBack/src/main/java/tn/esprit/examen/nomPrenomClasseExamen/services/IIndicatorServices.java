@@ -24,6 +24,7 @@ public interface IIndicatorServices {
     List<IndicatorDTO> getIndicatorsForProcess(Long processId);
     public List<IndicatorDTO> getAllIndicatorsDTO();
     void updateIndicatorValue(String indicatorCode);
+    void applyCounterDelta(Long indicatorId, long openDelta, long fixedDelta, long totalDelta);
 
     public void recalculateAllIndicators();
 
@@ -0,0 +1,15 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import tn.esprit.examen.nomPrenomClasseExamen.dto.IndicatorSeriesDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+public interface IIndicatorTimeSeriesService {
+    void record(Long indicatorId, Double value);
+    IndicatorSeriesDTO getSeries(Long indicatorId, LocalDateTime from, LocalDateTime to, RollupGranularity granularity);
+    Map<Long, List<Double>> getDailyTrends(int days);
+    void deleteHistory(Long indicatorId);
+}
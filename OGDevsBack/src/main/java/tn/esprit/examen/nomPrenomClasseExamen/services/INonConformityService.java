@@ -1,8 +1,12 @@
 // src/main/java/tn/esprit/examen/nomPrenomClasseExamen/services/INonConformityService.java
 package tn.esprit.examen.nomPrenomClasseExamen.services;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.web.multipart.MultipartFile;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformitySource;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityType;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Non_Conformity;
 
 import java.time.LocalDate;
@@ -12,8 +16,11 @@ public interface INonConformityService {
     Non_Conformity addNonConformityManually(Non_Conformity nonConformity);
     Non_Conformity addNonConformityByIndicator(Non_Conformity nonConformity);
     Non_Conformity addNonConformityFromFile(String description, List<String> aiSuggestions, List<String> selectedProposals);
+    List<Non_Conformity> addNonConformitiesFromAudit(List<String> descriptions, List<List<String>> aiSuggestions, String userId);
     void deleteNonConformity(Long idNonConformity);
     List<NonConformityDTO> getAllNonConformities();
+    Page<NonConformityDTO> getNonConformities(String status, NonConformitySource source, NonConformityType type,
+                                              LocalDate fromDate, LocalDate toDate, Pageable pageable);
     NonConformityDTO fixNonConformity(Long id, String actionTaken, LocalDate fixDate, List<MultipartFile> attachments);
     NonConformityDTO mapToDTO(Non_Conformity nc);
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ProjectDurationPredictionDTO;
+
+import java.util.List;
+
+public interface IProjectDurationService {
+    double predict(String projectType, int resources, int employees, int technologies, int tasks);
+    double predict(Long projectId);
+    List<ProjectDurationPredictionDTO> predictAll();
+}
@@ -1,8 +1,11 @@
 package tn.esprit.examen.nomPrenomClasseExamen.services;
 
+import tn.esprit.examen.nomPrenomClasseExamen.dto.SearchPageDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.dto.SearchResultDTO;
 import java.util.List;
 
 public interface ISearchService {
     List<SearchResultDTO> searchAll(String query);
-}
\ No newline at end of file
+    SearchPageDTO searchFullText(String query, String type, int page, int size);
+    int rebuildIndex();
+}
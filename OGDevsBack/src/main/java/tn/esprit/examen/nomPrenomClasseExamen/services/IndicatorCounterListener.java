@@ -0,0 +1,135 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Non_Conformity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Traduit chaque création, changement de statut ou suppression d'une non-conformité
+ * en variations des compteurs ouvert/corrigé/total de son indicateur. Les variations
+ * d'une même transaction sont cumulées puis appliquées en une fois après le commit.
+ */
+@Component
+public class IndicatorCounterListener {
+
+    private static final Logger log = LoggerFactory.getLogger(IndicatorCounterListener.class);
+
+    // Résolu paresseusement : le listener est instancié pendant la création de l'EntityManagerFactory
+    private final ObjectProvider<IIndicatorServices> indicatorServices;
+
+    public IndicatorCounterListener(ObjectProvider<IIndicatorServices> indicatorServices) {
+        this.indicatorServices = indicatorServices;
+    }
+
+    @PostLoad
+    public void onLoad(Non_Conformity nc) {
+        snapshot(nc);
+    }
+
+    @PostPersist
+    public void onPersist(Non_Conformity nc) {
+        Map<Long, long[]> deltas = new HashMap<>();
+        add(deltas, indicatorId(nc), nc.getStatus(), 1);
+        snapshot(nc);
+        record(deltas);
+    }
+
+    @PostUpdate
+    public void onUpdate(Non_Conformity nc) {
+        Map<Long, long[]> deltas = new HashMap<>();
+        add(deltas, nc.getLoadedIndicatorId(), nc.getLoadedStatus(), -1);
+        add(deltas, indicatorId(nc), nc.getStatus(), 1);
+        snapshot(nc);
+        record(deltas);
+    }
+
+    @PostRemove
+    public void onRemove(Non_Conformity nc) {
+        Map<Long, long[]> deltas = new HashMap<>();
+        add(deltas, nc.getLoadedIndicatorId(), nc.getLoadedStatus(), -1);
+        record(deltas);
+    }
+
+    private void snapshot(Non_Conformity nc) {
+        nc.setLoadedStatus(nc.getStatus());
+        nc.setLoadedIndicatorId(indicatorId(nc));
+    }
+
+    private static Long indicatorId(Non_Conformity nc) {
+        return nc.getIndicator() != null ? nc.getIndicator().getIdIndicateur() : null;
+    }
+
+    // Variation sous la forme {ouvertes, corrigées, total}
+    private static void add(Map<Long, long[]> deltas, Long indicatorId, String status, int sign) {
+        if (indicatorId == null) {
+            return;
+        }
+        long[] delta = deltas.computeIfAbsent(indicatorId, id -> new long[3]);
+        if ("OPEN".equalsIgnoreCase(status)) {
+            delta[0] += sign;
+        } else if ("FIXED".equalsIgnoreCase(status)) {
+            delta[1] += sign;
+        }
+        delta[2] += sign;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void record(Map<Long, long[]> deltas) {
+        deltas.values().removeIf(d -> d[0] == 0 && d[1] == 0 && d[2] == 0);
+        if (deltas.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(deltas);
+            return;
+        }
+        Map<Long, long[]> pending = (Map<Long, long[]>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<Long, long[]> created = new HashMap<>();
+            pending = created;
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    // Libéré avant l'application : celle-ci ouvre sa propre transaction sur le même thread
+                    TransactionSynchronizationManager.unbindResourceIfPossible(IndicatorCounterListener.this);
+                    if (status == STATUS_COMMITTED) {
+                        apply(created);
+                    }
+                }
+            });
+        }
+        for (Map.Entry<Long, long[]> entry : deltas.entrySet()) {
+            long[] target = pending.computeIfAbsent(entry.getKey(), id -> new long[3]);
+            for (int i = 0; i < 3; i++) {
+                target[i] += entry.getValue()[i];
+            }
+        }
+    }
+
+    private void apply(Map<Long, long[]> deltas) {
+        IIndicatorServices services = indicatorServices.getObject();
+        deltas.forEach((indicatorId, delta) -> {
+            if (delta[0] == 0 && delta[1] == 0 && delta[2] == 0) {
+                return;
+            }
+            try {
+                services.applyCounterDelta(indicatorId, delta[0], delta[1], delta[2]);
+            } catch (RuntimeException e) {
+                // Les compteurs seront corrigés par la réconciliation nocturne
+                log.warn("Mise à jour des compteurs de l'indicateur {} impossible : {}", indicatorId, e.getMessage());
+            }
+        });
+    }
+}
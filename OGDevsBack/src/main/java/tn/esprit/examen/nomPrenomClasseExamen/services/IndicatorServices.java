@@ -2,10 +2,15 @@ package tn.esprit.examen.nomPrenomClasseExamen.services;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.IndicatorStatsDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.*;
-import tn.esprit.examen.nomPrenomClasseExamen.entities.Process;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.*;
 
 import java.time.LocalDate;
@@ -21,51 +26,91 @@ public class IndicatorServices implements IIndicatorServices {
     private final ReportRepository reportRepository;
     private final ProcessRepository processRepository;
     private final NonConformityRepository nonConformityRepository;
-    private final UserEntityRepository userEntityRepository;
     private final NotificationService notificationService;
+    private final IIndicatorTimeSeriesService indicatorTimeSeriesService;
+
+    @Value("${indicators.trends.days:30}")
+    private int trendDays;
 
     @Override
     public Indicator createIndicator(Indicator indicator) {
-        return indicatorRepository.save(indicator);
+        Indicator saved = indicatorRepository.save(indicator);
+        indicatorTimeSeriesService.record(saved.getIdIndicateur(), saved.getCurrentValue());
+        return saved;
     }
 
     @Override
+    @Transactional
     public void updateIndicatorValue(String indicatorCode) {
         Indicator indicator = indicatorRepository.findByCode(indicatorCode);
         if (indicator == null) {
             throw new IllegalArgumentException("Indicator with code " + indicatorCode + " does not exist.");
         }
-        else {
-            // Simplified calculation for other indicators
-            List<Non_Conformity> nonConformities = nonConformityRepository.findByIndicator(indicator);
-            long totalActions = nonConformities.size();
-            long openActions = nonConformities.stream()
-                    .filter(nc -> "OPEN".equalsIgnoreCase(nc.getStatus()))
-                    .count();
-            double currentValue = totalActions > 0 ? ((double) openActions / totalActions) * 100 : 0.0;
-            log.info("Indicator: {}, Total Actions: {}, Open Actions: {}, Current Value: {}",
-                    indicator.getCode(), totalActions, openActions, currentValue);
-            indicator.setCurrentValue(currentValue);
-            indicatorRepository.save(indicator);
-        }
-        updateIndicatorCorrectiveActionsValue(indicator);
-        updateIndicatorNonConfCurrentValue(indicator);
+        long[] counts = countStatusesByIndicator().getOrDefault(indicator.getIdIndicateur(), new long[3]);
+        reconcileIndicator(indicator, counts);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void applyCounterDelta(Long indicatorId, long openDelta, long fixedDelta, long totalDelta) {
+        if (indicatorRepository.incrementCounters(indicatorId, openDelta, fixedDelta, totalDelta) == 0) {
+            log.debug("Indicator {} no longer exists, counter delta ignored", indicatorId);
+            return;
+        }
+        indicatorRepository.findById(indicatorId).ifPresent(this::refreshIndicator);
+    }
+
+    // Aligne les compteurs d'un indicateur sur un comptage complet, puis réévalue ses seuils
+    private void reconcileIndicator(Indicator indicator, long[] counts) {
+        long open = counts[0];
+        long fixed = counts[1];
+        long total = counts[2];
+        if (open != count(indicator.getOpenCount()) || fixed != count(indicator.getFixedCount())
+                || total != count(indicator.getTotalCount())) {
+            log.info("Indicator {}: counters drifted (open {}, fixed {}, total {}), reset to open {}, fixed {}, total {}",
+                    indicator.getCode(), indicator.getOpenCount(), indicator.getFixedCount(), indicator.getTotalCount(),
+                    open, fixed, total);
+            indicatorRepository.setCounters(indicator.getIdIndicateur(), open, fixed, total);
+            indicator.setOpenCount(open);
+            indicator.setFixedCount(fixed);
+            indicator.setTotalCount(total);
+        }
+        refreshIndicator(indicator);
+    }
 
+    // Recalcule la valeur courante à partir des compteurs ; seule une valeur modifiée est écrite
+    private void refreshIndicator(Indicator indicator) {
+        long totalActions = count(indicator.getTotalCount());
+        long openActions = count(indicator.getOpenCount());
+        long completedActions = count(indicator.getFixedCount());
+        double openRate = totalActions > 0 ? ((double) openActions / totalActions) * 100 : 0.0;
+        double completedRate = totalActions > 0 ? ((double) completedActions / totalActions) * 100 : 0.0;
+        log.info("Indicator: {}, Total Actions: {}, Open Actions: {}, Completed Actions: {}, Current Value: {}",
+                indicator.getCode(), totalActions, openActions, completedActions, openRate);
+
+        if (!Objects.equals(indicator.getCurrentValue(), openRate)) {
+            indicatorRepository.updateCurrentValue(indicator.getIdIndicateur(), openRate);
+            indicator.setCurrentValue(openRate);
+            indicatorTimeSeriesService.record(indicator.getIdIndicateur(), openRate);
+        }
+        checkCorrectiveActionsTarget(indicator, completedRate, totalActions);
+        checkOpenNonConformitiesTarget(indicator, openRate, openActions);
     }
 
-    private void updateIndicatorNonConfCurrentValue(Indicator indicator) {
-        List<Non_Conformity> nonConformities = nonConformityRepository.findByIndicator(indicator);
-        long totalActions = nonConformities.size();
-        long openActions = nonConformities.stream()
-                .filter(nc -> "OPEN".equalsIgnoreCase(nc.getStatus()))
-                .count();
-        double currentValue = (totalActions > 0) ? ((double) openActions / totalActions) * 100 : 0.0;
-        System.out.println("Indicator: " + indicator.getCode() + ", Total Actions: " + totalActions + ", Open Actions: " + openActions + ", Current Value: " + currentValue);
+    private static long count(Long value) {
+        return value != null ? value : 0L;
+    }
 
-        // Update currentValue in the Indicator entity
-        indicator.setCurrentValue(currentValue);
-        indicatorRepository.save(indicator);
+    private Map<Long, long[]> countStatusesByIndicator() {
+        Map<Long, long[]> counts = new HashMap<>();
+        for (Object[] row : nonConformityRepository.countStatusesByIndicator()) {
+            counts.put((Long) row[0], new long[]{
+                    ((Number) row[1]).longValue(), ((Number) row[2]).longValue(), ((Number) row[3]).longValue()});
+        }
+        return counts;
+    }
 
+    private void checkOpenNonConformitiesTarget(Indicator indicator, double currentValue, long openActions) {
         // Check if currentValue > cible
         Double cible = indicator.getCible();
         if (cible != null && currentValue > cible && openActions > 0) {
@@ -97,19 +142,7 @@ public class IndicatorServices implements IIndicatorServices {
         }
     }
 
-    private void updateIndicatorCorrectiveActionsValue(Indicator indicator) {
-        List<Non_Conformity> nonConformities = nonConformityRepository.findByIndicator(indicator);
-        long totalActions = nonConformities.size();
-        long completedActions = nonConformities.stream()
-                .filter(nc -> "FIXED".equalsIgnoreCase(nc.getStatus()))
-                .count();
-        double currentValue = (totalActions > 0) ? ((double) completedActions / totalActions) * 100 : 0.0;
-        System.out.println("Indicator: " + indicator.getCode() + ", Total Actions: " + totalActions + ", Completed Actions: " + completedActions + ", Current Value: " + currentValue);
-
-        // Update currentValue in the Indicator entity
-        indicator.setCurrentValue(currentValue);
-        indicatorRepository.save(indicator);
-
+    private void checkCorrectiveActionsTarget(Indicator indicator, double currentValue, long totalActions) {
         // Check if currentValue < cible
         Double cible = indicator.getCible();
         if (cible != null && currentValue < cible && totalActions > 0) {
@@ -143,20 +176,20 @@ public class IndicatorServices implements IIndicatorServices {
     }
 
     private void notifyAdmins(String message, String type) {
-        List<UserEntity> admins = userEntityRepository.findAdminsWithRoles();
-        for (UserEntity admin : admins) {
-            log.info("Sending notification to admin {}: {}", admin.getId(), message);
-            notificationService.sendNotification(admin.getId(), message, type);
-        }
+        notificationService.notifyRole("ROLE_ADMIN", message, type);
     }
 
     @Override
     public Indicator updateIndicator(Long id, Indicator indicator) {
-        if (!indicatorRepository.existsById(id)) {
-            throw new IllegalArgumentException("Indicator with id " + id + " does not exist.");
-        }
+        Double previousValue = indicatorRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Indicator with id " + id + " does not exist."))
+                .getCurrentValue();
         indicator.setIdIndicateur(id);
-        return indicatorRepository.save(indicator);
+        Indicator saved = indicatorRepository.save(indicator);
+        if (!Objects.equals(previousValue, saved.getCurrentValue())) {
+            indicatorTimeSeriesService.record(id, saved.getCurrentValue());
+        }
+        return saved;
     }
 
     @Override
@@ -175,21 +208,20 @@ public class IndicatorServices implements IIndicatorServices {
             throw new IllegalArgumentException("Indicator with id " + id + " does not exist.");
         }
         indicatorRepository.deleteById(id);
+        indicatorTimeSeriesService.deleteHistory(id);
     }
 
     @Override
     public Map<String, List<Double>> getIndicatorTrends() {
         List<Indicator> indicators = indicatorRepository.findAll();
+        Map<Long, List<Double>> history = indicatorTimeSeriesService.getDailyTrends(trendDays);
         Map<String, List<Double>> trends = new HashMap<>();
 
         for (Indicator indicator : indicators) {
-            List<Double> values = new ArrayList<>();
-            if (indicator.getCurrentValue() != null) {
-                values.add(indicator.getCurrentValue());
-                values.add(indicator.getCurrentValue() * 0.95); // -5%
-                values.add(indicator.getCurrentValue() * 1.05); // +5%
-            } else {
-                values.add(0.0); // Default value if no data
+            // Valeurs de clôture journalières ; à défaut d'historique, la valeur courante seule
+            List<Double> values = history.get(indicator.getIdIndicateur());
+            if (values == null || values.isEmpty()) {
+                values = List.of(indicator.getCurrentValue() != null ? indicator.getCurrentValue() : 0.0);
             }
             trends.put(indicator.getCode(), values);
         }
@@ -232,7 +264,9 @@ public class IndicatorServices implements IIndicatorServices {
         if (indicators == null || indicators.isEmpty()) {
             throw new IllegalArgumentException("La liste des indicateurs ne peut pas être vide ou nulle.");
         }
-        return indicatorRepository.saveAll(indicators);
+        List<Indicator> saved = indicatorRepository.saveAll(indicators);
+        saved.forEach(ind -> indicatorTimeSeriesService.record(ind.getIdIndicateur(), ind.getCurrentValue()));
+        return saved;
     }
 
     @Override
@@ -317,81 +351,64 @@ public class IndicatorServices implements IIndicatorServices {
 
     @Override
     public List<IndicatorDTO> getIndicatorsForProcess(Long processId) {
-        Optional<Process> process = processRepository.findById(processId);
-        if (!process.isPresent()) {
+        if (!processRepository.existsById(processId)) {
             throw new IllegalArgumentException("Process with id " + processId + " does not exist.");
         }
-
-        List<Indicator> indicators = indicatorRepository.findAll().stream()
-                .filter(ind -> ind.getObjective() != null && ind.getObjective().getProcess() != null
-                        && ind.getObjective().getProcess().getId().equals(processId))
-                .collect(Collectors.toList());
-
-        return indicators.stream()
-                .map(ind -> {
-                    IndicatorDTO dto = new IndicatorDTO();
-                    dto.setIdIndicateur(ind.getIdIndicateur());
-                    dto.setCode(ind.getCode());
-                    dto.setLibelle(ind.getLibelle());
-                    dto.setFrequence(ind.getFrequence());
-                    dto.setUnite(ind.getUnite());
-                    dto.setCible(ind.getCible());
-                    List<Non_Conformity> nonConformities = nonConformityRepository.findByIndicator(ind);
-                    long totalActions = nonConformities.size();
-                    long completedActions = nonConformities.stream()
-                            .filter(nc -> "FIXED".equalsIgnoreCase(nc.getStatus()))
-                            .count();
-                    double currentValue = totalActions > 0 ? ((double) completedActions / totalActions) * 100 : 0.0;
-                    log.info("Indicator: {}, Total Actions: {}, Completed Actions: {}, Current Value: {}",
-                            ind.getCode(), totalActions, completedActions, currentValue);
-                    dto.setCurrentValue(currentValue);
-                    dto.setStatus(currentValue >= ind.getCible() ? "OK" : "CRITICAL");
-                    dto.setActif(ind.getActif());
-                    dto.setMethodeCalcul(null);
-                    return dto;
-                })
+        return indicatorRepository.findStatsByProcess(processId).stream()
+                .map(this::toIndicatorDTO)
                 .collect(Collectors.toList());
     }
 
     @Override
     public List<IndicatorDTO> getAllIndicatorsDTO() {
-        return indicatorRepository.findAll().stream()
-                .map(ind -> {
-                    IndicatorDTO dto = new IndicatorDTO();
-                    dto.setIdIndicateur(ind.getIdIndicateur());
-                    dto.setCode(ind.getCode());
-                    dto.setLibelle(ind.getLibelle());
-                    dto.setFrequence(ind.getFrequence());
-                    dto.setUnite(ind.getUnite());
-                    dto.setCible(ind.getCible());
-                    List<Non_Conformity> nonConformities = nonConformityRepository.findByIndicator(ind);
-                    long totalActions = nonConformities.size();
-                    long completedActions = nonConformities.stream()
-                            .filter(nc -> "FIXED".equalsIgnoreCase(nc.getStatus()))
-                            .count();
-                    double currentValue = totalActions > 0 ? ((double) completedActions / totalActions) * 100 : 0.0;
-                    log.info("Indicator: {}, Total Actions: {}, Completed Actions: {}, Current Value: {}",
-                            ind.getCode(), totalActions, completedActions, currentValue);
-                    dto.setCurrentValue(currentValue);
-                    dto.setStatus(currentValue >= ind.getCible() ? "OK" : "CRITICAL");
-                    dto.setActif(ind.getActif());
-                    dto.setMethodeCalcul(null);
-                    return dto;
-                })
+        return indicatorRepository.findAllWithStats().stream()
+                .map(this::toIndicatorDTO)
                 .collect(Collectors.toList());
     }
 
+    private IndicatorDTO toIndicatorDTO(IndicatorStatsDTO stats) {
+        IndicatorDTO dto = new IndicatorDTO();
+        dto.setIdIndicateur(stats.getIdIndicateur());
+        dto.setCode(stats.getCode());
+        dto.setLibelle(stats.getLibelle());
+        dto.setFrequence(stats.getFrequence());
+        dto.setUnite(stats.getUnite());
+        dto.setCible(stats.getCible());
+        long totalActions = count(stats.getTotalActions());
+        long completedActions = count(stats.getFixedActions());
+        double currentValue = totalActions > 0 ? ((double) completedActions / totalActions) * 100 : 0.0;
+        log.debug("Indicator: {}, Total Actions: {}, Completed Actions: {}, Current Value: {}",
+                stats.getCode(), totalActions, completedActions, currentValue);
+        dto.setCurrentValue(currentValue);
+        dto.setStatus(stats.getCible() == null || currentValue >= stats.getCible() ? "OK" : "CRITICAL");
+        dto.setActif(stats.getActif());
+        dto.setMethodeCalcul(null);
+        return dto;
+    }
+
     @Override
+    @Transactional
     public void recalculateAllIndicators() {
-        List<Indicator> indicators = indicatorRepository.findAll();
-        for (Indicator indicator : indicators) {
-            updateIndicatorValue(indicator.getCode());
+        Map<Long, long[]> counts = countStatusesByIndicator();
+        for (Indicator indicator : indicatorRepository.findAll()) {
+            reconcileIndicator(indicator, counts.getOrDefault(indicator.getIdIndicateur(), new long[3]));
         }
     }
 
-    @Scheduled(fixedDelay = 60000) // Runs every minute
+    // Les compteurs sont tenus à jour par IndicatorCounterListener ; ce recalcul complet
+    // ne sert qu'à corriger une éventuelle dérive (écritures SQL directes, échec après commit)
+    @Scheduled(cron = "${indicators.reconciliation-cron:0 0 2 * * *}")
+    @Transactional
     public void scheduledRecalculateAllIndicators() {
-        log.info("Running scheduled recalculation of all indicators at {}", new Date());
+        log.info("Running nightly reconciliation of all indicators at {}", new Date());
+        recalculateAllIndicators();
+    }
+
+    // Initialise les compteurs au démarrage (nouvelle installation ou colonnes fraîchement ajoutées)
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void reconcileOnStartup() {
+        log.info("Reconciling indicator counters at startup");
         recalculateAllIndicators();
     }
 }
@@ -0,0 +1,206 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.IndicatorPointDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.IndicatorSeriesDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Indicator;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.IndicatorRollup;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.IndicatorSample;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.RollupGranularity;
+import tn.esprit.examen.nomPrenomClasseExamen.exceptions.EntityNotFoundException;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.IndicatorRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.IndicatorRollupRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.IndicatorSampleRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Historique des valeurs d'indicateurs. Chaque changement de valeur ajoute un échantillon brut
+ * et met à jour, dans la même transaction, les agrégats horaire, journalier et mensuel ; les
+ * séries de tableau de bord sont ainsi lues directement dans les agrégats.
+ * La moyenne d'une tranche porte sur les échantillons (elle n'est pas pondérée par la durée).
+ */
+@Slf4j
+@Service
+public class IndicatorTimeSeriesService implements IIndicatorTimeSeriesService {
+
+    // Nombre maximal de points renvoyés pour une série
+    private static final int MAX_POINTS = 2000;
+
+    private final IndicatorSampleRepository sampleRepository;
+    private final IndicatorRollupRepository rollupRepository;
+    private final IndicatorRepository indicatorRepository;
+    private final int rawRetentionDays;
+    private final int hourlyRetentionDays;
+    private final int dailyRetentionDays;
+    private final int monthlyRetentionDays;
+
+    public IndicatorTimeSeriesService(IndicatorSampleRepository sampleRepository,
+                                      IndicatorRollupRepository rollupRepository,
+                                      IndicatorRepository indicatorRepository,
+                                      @Value("${indicators.history.raw-retention-days:30}") int rawRetentionDays,
+                                      @Value("${indicators.history.hourly-retention-days:90}") int hourlyRetentionDays,
+                                      @Value("${indicators.history.daily-retention-days:1825}") int dailyRetentionDays,
+                                      @Value("${indicators.history.monthly-retention-days:0}") int monthlyRetentionDays) {
+        this.sampleRepository = sampleRepository;
+        this.rollupRepository = rollupRepository;
+        this.indicatorRepository = indicatorRepository;
+        this.rawRetentionDays = rawRetentionDays;
+        this.hourlyRetentionDays = hourlyRetentionDays;
+        this.dailyRetentionDays = dailyRetentionDays;
+        this.monthlyRetentionDays = monthlyRetentionDays;
+    }
+
+    @Override
+    @Transactional
+    public void record(Long indicatorId, Double value) {
+        if (indicatorId == null || value == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        sampleRepository.save(new IndicatorSample(null, indicatorId, now, value));
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            rollupRepository.addSample(indicatorId, granularity.name(), granularity.truncate(now), value, now);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public IndicatorSeriesDTO getSeries(Long indicatorId, LocalDateTime from, LocalDateTime to, RollupGranularity granularity) {
+        Indicator indicator = indicatorRepository.findById(indicatorId)
+                .orElseThrow(() -> new EntityNotFoundException("Indicator with id " + indicatorId + " does not exist."));
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusYears(1);
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("La date de début doit précéder la date de fin.");
+        }
+        RollupGranularity effective = granularity != null ? granularity : chooseGranularity(start, end);
+        LocalDateTime firstBucket = effective.truncate(start);
+
+        List<IndicatorRollup> rollups = rollupRepository
+                .findByIndicatorIdAndGranularityAndBucketStartBetweenOrderByBucketStartAsc(indicatorId, effective, firstBucket, end);
+        Double carried = rollupRepository
+                .findFirstByIndicatorIdAndGranularityAndBucketStartLessThanOrderByBucketStartDesc(indicatorId, effective, firstBucket)
+                .map(IndicatorRollup::getLastValue)
+                .orElse(null);
+
+        IndicatorSeriesDTO series = new IndicatorSeriesDTO();
+        series.setIndicatorId(indicatorId);
+        series.setCode(indicator.getCode());
+        series.setGranularity(effective);
+        series.setFrom(start);
+        series.setTo(end);
+        series.setPoints(fill(rollups, effective, firstBucket, end, carried));
+        return series;
+    }
+
+    /**
+     * Valeurs de clôture journalières des {@code days} derniers jours, par identifiant d'indicateur,
+     * lues dans les agrégats journaliers ; la dernière valeur antérieure à la période est reportée
+     * sur les jours sans échantillon.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Long, List<Double>> getDailyTrends(int days) {
+        LocalDateTime end = LocalDateTime.now();
+        LocalDateTime firstBucket = RollupGranularity.DAY.truncate(end.minusDays(days - 1L));
+        Map<Long, List<IndicatorRollup>> byIndicator = new LinkedHashMap<>();
+        for (IndicatorRollup rollup : rollupRepository
+                .findByGranularityAndBucketStartGreaterThanEqualOrderByIndicatorIdAscBucketStartAsc(RollupGranularity.DAY, firstBucket)) {
+            byIndicator.computeIfAbsent(rollup.getIndicatorId(), id -> new ArrayList<>()).add(rollup);
+        }
+        // Valeur reportée sur les premiers jours sans échantillon
+        Map<Long, Double> carried = new HashMap<>();
+        for (IndicatorRollup rollup : rollupRepository.findLatestBefore(RollupGranularity.DAY, firstBucket)) {
+            carried.put(rollup.getIndicatorId(), rollup.getLastValue());
+            byIndicator.putIfAbsent(rollup.getIndicatorId(), List.of());
+        }
+        Map<Long, List<Double>> trends = new HashMap<>();
+        byIndicator.forEach((indicatorId, rollups) -> trends.put(indicatorId,
+                fill(rollups, RollupGranularity.DAY, firstBucket, end, carried.get(indicatorId)).stream()
+                        .map(IndicatorPointDTO::getLast)
+                        .toList()));
+        return trends;
+    }
+
+    @Override
+    @Transactional
+    public void deleteHistory(Long indicatorId) {
+        sampleRepository.deleteByIndicator(indicatorId);
+        rollupRepository.deleteByIndicator(indicatorId);
+    }
+
+    @Scheduled(cron = "${indicators.history.retention-cron:0 30 3 * * *}")
+    @Transactional
+    public void applyRetention() {
+        LocalDateTime now = LocalDateTime.now();
+        int samples = rawRetentionDays > 0 ? sampleRepository.deleteRecordedBefore(now.minusDays(rawRetentionDays)) : 0;
+        int hourly = purge(RollupGranularity.HOUR, hourlyRetentionDays, now);
+        int daily = purge(RollupGranularity.DAY, dailyRetentionDays, now);
+        int monthly = purge(RollupGranularity.MONTH, monthlyRetentionDays, now);
+        log.info("Rétention de l'historique des indicateurs : {} échantillons, {} tranches horaires, {} journalières, {} mensuelles supprimés",
+                samples, hourly, daily, monthly);
+    }
+
+    private int purge(RollupGranularity granularity, int retentionDays, LocalDateTime now) {
+        if (retentionDays <= 0) {
+            return 0;
+        }
+        return rollupRepository.deleteOlderThan(granularity, granularity.truncate(now.minusDays(retentionDays)));
+    }
+
+    private static RollupGranularity chooseGranularity(LocalDateTime from, LocalDateTime to) {
+        Duration span = Duration.between(from, to);
+        if (span.compareTo(Duration.ofDays(3)) <= 0) {
+            return RollupGranularity.HOUR;
+        }
+        if (span.compareTo(Duration.ofDays(180)) <= 0) {
+            return RollupGranularity.DAY;
+        }
+        return RollupGranularity.MONTH;
+    }
+
+    /**
+     * Produit un point par tranche ; une tranche sans échantillon reprend la dernière valeur
+     * connue. Les tranches antérieures à toute valeur connue sont omises.
+     */
+    private static List<IndicatorPointDTO> fill(List<IndicatorRollup> rollups, RollupGranularity granularity,
+                                                LocalDateTime firstBucket, LocalDateTime end, Double carried) {
+        List<IndicatorPointDTO> points = new ArrayList<>();
+        Iterator<IndicatorRollup> it = rollups.iterator();
+        IndicatorRollup current = it.hasNext() ? it.next() : null;
+        int buckets = 0;
+        for (LocalDateTime bucket = firstBucket; !bucket.isAfter(end); bucket = granularity.next(bucket)) {
+            if (++buckets > MAX_POINTS) {
+                throw new IllegalArgumentException("Période trop longue pour une granularité " + granularity
+                        + " (maximum " + MAX_POINTS + " points).");
+            }
+            IndicatorPointDTO point = new IndicatorPointDTO();
+            point.setBucketStart(bucket);
+            if (current != null && current.getBucketStart().equals(bucket)) {
+                point.setSamples(current.getSampleCount());
+                point.setAverage(current.getValueSum() / current.getSampleCount());
+                point.setMin(current.getMinValue());
+                point.setMax(current.getMaxValue());
+                point.setLast(current.getLastValue());
+                carried = current.getLastValue();
+                current = it.hasNext() ? it.next() : null;
+            } else if (carried != null) {
+                point.setAverage(carried);
+                point.setMin(carried);
+                point.setMax(carried);
+                point.setLast(carried);
+            } else {
+                continue;
+            }
+            points.add(point);
+        }
+        return points;
+    }
+}
@@ -3,7 +3,9 @@ package tn.esprit.examen.nomPrenomClasseExamen.services;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.JobOffer;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.CandidateScoreRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.JobOfferRepository;
 
 import java.util.List;
@@ -15,6 +17,7 @@ import java.util.Optional;
 public class JobOfferServices implements IJobOfferServices {
 
     private final JobOfferRepository jobOfferRepository;
+    private final CandidateScoreRepository candidateScoreRepository;
 
     @Override
     public JobOffer createJobOffer(JobOffer jobOffer) {
@@ -45,11 +48,13 @@ public class JobOfferServices implements IJobOfferServices {
     }
 
     @Override
+    @Transactional
     public void deleteJobOffer(Long id) {
         if (!jobOfferRepository.existsById(id)) {
             throw new IllegalArgumentException("Job Offer with id " + id + " does not exist.");
         }
         log.info("Deleting job offer with id: {}", id);
+        candidateScoreRepository.deleteByJobOffer(id);
         jobOfferRepository.deleteById(id);
     }
 }
\ No newline at end of file
@@ -6,8 +6,13 @@ import org.keycloak.OAuth2Constants;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.KeycloakBuilder;
 import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.RoleResource;
+import org.keycloak.admin.client.resource.UserResource;
 import org.keycloak.admin.client.resource.UsersResource;
+import org.keycloak.representations.idm.AdminEventRepresentation;
 import org.keycloak.representations.idm.CredentialRepresentation;
+import org.keycloak.representations.idm.EventRepresentation;
+import org.keycloak.representations.idm.RealmEventsConfigRepresentation;
 import org.keycloak.representations.idm.RoleRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.beans.factory.annotation.Value;
@@ -20,19 +25,28 @@ import tn.esprit.examen.nomPrenomClasseExamen.repositories.RoleRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.UserEntityRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.UserRepository;
 
+import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.core.Response;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class KeycloakUserService {
+    private static final Pattern KEYCLOAK_ID =
+            Pattern.compile("^[0-9a-f]{8}-[0-9a-f]{4}-[1-5][0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}$");
+    private static final long EVENT_CLOCK_MARGIN_MS = 60_000;
+    private static final List<String> USER_EVENT_TYPES = List.of("REGISTER", "UPDATE_PROFILE", "UPDATE_EMAIL");
+
     private final ReentrantLock syncLock = new ReentrantLock();
     private final Keycloak keycloak;
     private final UserRepository userRepository;
@@ -43,6 +57,15 @@ public class KeycloakUserService {
     private String realm;
     @Value("${file.upload-dir}")
     private String uploadDir;
+    @Value("${keycloak.sync.page-size:100}")
+    private int syncPageSize;
+    @Value("${keycloak.sync.full-interval-ms:3600000}")
+    private long fullSyncIntervalMs;
+
+    // État de la synchronisation incrémentale (horodatages en millisecondes)
+    private volatile boolean eventsAvailable;
+    private volatile long lastFullSync;
+    private volatile long eventWatermark;
 
     public KeycloakUserService(@Value("${keycloak.auth-server-url}") String serverUrl,
                                @Value("${keycloak.realm}") String realm,
@@ -186,7 +209,31 @@ public class KeycloakUserService {
         }
     }
 
-    @Scheduled(fixedDelay = 60000)
+    /**
+     * Synchronisation périodique : complète au démarrage puis à intervalle régulier, incrémentale
+     * entre-temps à partir des événements Keycloak (admin et utilisateur). Si les événements ne sont
+     * pas activés sur le realm, chaque passage est une synchronisation complète.
+     */
+    @Scheduled(fixedDelayString = "${keycloak.sync.interval-ms:60000}")
+    @Transactional
+    public void syncFromKeycloak() {
+        if (!syncLock.tryLock()) {
+            log.info("syncFromKeycloak already running, skipping...");
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            if (!eventsAvailable || lastFullSync == 0 || now - lastFullSync >= fullSyncIntervalMs) {
+                syncRolesFromKeycloak();
+                syncUsersFromKeycloak();
+            } else {
+                syncChangesFromEvents();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
     @Transactional
     public void syncRolesFromKeycloak() {
         if (!syncLock.tryLock()) {
@@ -198,43 +245,40 @@ public class KeycloakUserService {
             List<RoleRepresentation> keycloakRoles = getRealm().roles().list();
             log.info("Nombre de rôles récupérés depuis Keycloak: {}", keycloakRoles.size());
 
+            Map<String, Role> localRoles = roleRepository.findAll().stream()
+                    .collect(Collectors.toMap(Role::getId, role -> role));
+            List<Role> changed = new ArrayList<>();
             for (RoleRepresentation roleRep : keycloakRoles) {
-                log.debug("Processing role: {} (ID: {})", roleRep.getName(), roleRep.getId());
-                if (roleRep.getId() == null || !roleRep.getId().matches("^[0-9a-f]{8}-[0-9a-f]{4}-[1-5][0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}$")) {
+                if (!isValidKeycloakId(roleRep.getId())) {
                     log.warn("Skipping role with invalid ID: {}", roleRep.getName());
                     continue;
                 }
-                Optional<Role> existingRoleOpt = roleRepository.findById(roleRep.getId());
-
-                Role role;
-                if (existingRoleOpt.isPresent()) {
-                    role = existingRoleOpt.get();
-                    role.setRoleName(roleRep.getName());
-                    role.setDescription(roleRep.getDescription());
-                    log.info("Mise à jour du rôle existant: {} (ID: {})", roleRep.getName(), roleRep.getId());
-                } else {
+                Role role = localRoles.get(roleRep.getId());
+                if (role == null) {
                     role = new Role();
                     role.setId(roleRep.getId());
-                    role.setRoleName(roleRep.getName());
-                    role.setDescription(roleRep.getDescription());
                     log.info("Création d'un nouveau rôle: {} (ID: {})", roleRep.getName(), roleRep.getId());
+                } else if (Objects.equals(role.getRoleName(), roleRep.getName())
+                        && Objects.equals(role.getDescription(), roleRep.getDescription())) {
+                    continue;
+                } else {
+                    log.info("Mise à jour du rôle existant: {} (ID: {})", roleRep.getName(), roleRep.getId());
                 }
-                log.debug("Saving role: {} (ID: {})", role.getRoleName(), role.getId());
-                roleRepository.saveAndFlush(role);
+                role.setRoleName(roleRep.getName());
+                role.setDescription(roleRep.getDescription());
+                changed.add(role);
             }
+            roleRepository.saveAll(changed);
 
-            log.info("Synchronisation des rôles terminée avec succès.");
+            log.info("Synchronisation des rôles terminée avec succès ({} rôle(s) modifié(s)).", changed.size());
         } catch (Exception e) {
             log.error("Erreur lors de la synchronisation des rôles depuis Keycloak: {}", e.getMessage(), e);
             throw e;
         } finally {
-            if (syncLock.isHeldByCurrentThread()) {
-                syncLock.unlock();
-            }
+            syncLock.unlock();
         }
     }
 
-    @Scheduled(fixedDelay = 60000)
     @Transactional
     public void syncUsersFromKeycloak() {
         if (!syncLock.tryLock()) {
@@ -243,77 +287,215 @@ public class KeycloakUserService {
         }
         try {
             log.info("Début de la synchronisation des utilisateurs depuis Keycloak...");
-            List<UserRepresentation> keycloakUsers = getUsersResource().list();
-            log.info("Nombre d'utilisateurs récupérés depuis Keycloak: {}", keycloakUsers.size());
-
-            List<UserEntity> existingUsers = userRepository.findAll();
-            log.info("Nombre d'utilisateurs existants dans la base locale: {}", existingUsers.size());
-
-            List<UserEntity> users = keycloakUsers.stream()
-                    .filter(user -> {
-                        boolean isValid = user.getId() != null && user.getId().matches("^[0-9a-f]{8}-[0-9a-f]{4}-[1-5][0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}$");
-                        if (!isValid) {
-                            log.warn("Skipping invalid Keycloak user with ID: {}", user.getId());
-                        }
-                        return isValid;
-                    })
-                    .map(user -> {
-                        List<RoleRepresentation> roles = getUsersResource().get(user.getId()).roles().realmLevel().listAll();
-                        log.debug("Processing user: {} with {} roles", user.getId(), roles.size());
-                        Set<Role> roleEntities = roles.stream()
-                                .filter(roleRep -> {
-                                    if (roleRep.getId() == null || !roleRep.getId().matches("^[0-9a-f]{8}-[0-9a-f]{4}-[1-5][0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}$")) {
-                                        log.warn("Skipping role with invalid ID for user {}: {}", user.getId(), roleRep.getName());
-                                        return false;
-                                    }
-                                    return true;
-                                })
-                                .map(roleRep -> roleRepository.findById(roleRep.getId())
-                                        .orElseGet(() -> {
-                                            Role newRole = new Role();
-                                            newRole.setId(roleRep.getId());
-                                            newRole.setRoleName(roleRep.getName());
-                                            newRole.setDescription(roleRep.getDescription());
-                                            log.debug("Creating new role in syncUsersFromKeycloak: {} (ID: {})", roleRep.getName(), roleRep.getId());
-                                            return roleRepository.saveAndFlush(newRole);
-                                        }))
-                                .collect(Collectors.toSet());
-
-                        Optional<UserEntity> existingUserOpt = existingUsers.stream()
-                                .filter(u -> u.getId().equals(user.getId()))
-                                .findFirst();
-
-                        UserEntity userEntity;
-                        if (existingUserOpt.isPresent()) {
-                            userEntity = existingUserOpt.get();
-                            userEntity.setUsername(user.getUsername());
-                            userEntity.setEmail(user.getEmail());
-                            userEntity.setEnabled(user.isEnabled());
-                            userEntity.setRoles(roleEntities);
-                            log.info("Mise à jour de l'utilisateur existant: {}", user.getId());
-                        } else {
-                            userEntity = new UserEntity();
-                            userEntity.setId(user.getId());
-                            userEntity.setUsername(user.getUsername());
-                            userEntity.setEmail(user.getEmail());
-                            userEntity.setEnabled(user.isEnabled());
-                            userEntity.setRoles(roleEntities);
-                            log.info("Création d'un nouvel utilisateur: {}", user.getId());
-                        }
-                        return userEntity;
-                    })
-                    .collect(Collectors.toList());
-
-            userRepository.saveAll(users);
-            log.info("Synchronisation des utilisateurs terminée avec succès.");
+            long startedAt = System.currentTimeMillis();
+            eventsAvailable = checkEventsEnabled();
+
+            Map<String, Role> rolesById = roleRepository.findAll().stream()
+                    .collect(Collectors.toMap(Role::getId, role -> role));
+            Map<String, Set<String>> roleIdsByUser = fetchRealmRoleMappings();
+
+            int total = 0;
+            int changed = 0;
+            for (int first = 0; ; first += syncPageSize) {
+                List<UserRepresentation> page = getUsersResource().list(first, syncPageSize);
+                total += page.size();
+                changed += applyUsers(page, roleIdsByUser, rolesById);
+                if (page.size() < syncPageSize) {
+                    break;
+                }
+            }
+
+            lastFullSync = startedAt;
+            // Marge pour un éventuel décalage d'horloge avec Keycloak ; rejouer un événement est sans effet
+            eventWatermark = startedAt - EVENT_CLOCK_MARGIN_MS;
+            log.info("Synchronisation des utilisateurs terminée avec succès : {} utilisateur(s) Keycloak, {} modifié(s).",
+                    total, changed);
         } catch (Exception e) {
             log.error("Erreur lors de la synchronisation des utilisateurs depuis Keycloak: {}", e.getMessage(), e);
             throw e;
         } finally {
-            if (syncLock.isHeldByCurrentThread()) {
-                syncLock.unlock();
+            syncLock.unlock();
+        }
+    }
+
+    // Ne resynchronise que les utilisateurs visés par un événement depuis le dernier passage
+    private void syncChangesFromEvents() {
+        long since = eventWatermark;
+        long newest = since;
+        String dateFrom = LocalDate.ofInstant(Instant.ofEpochMilli(since), ZoneId.systemDefault()).toString();
+        Set<String> userIds = new LinkedHashSet<>();
+        boolean rolesChanged = false;
+
+        for (int first = 0; ; first += syncPageSize) {
+            List<AdminEventRepresentation> events = getRealm().getAdminEvents(null, null, null, null, null, null,
+                    List.of("USER", "REALM_ROLE_MAPPING", "REALM_ROLE"), dateFrom, null, first, syncPageSize);
+            for (AdminEventRepresentation event : events) {
+                if (event.getTime() < since) {
+                    continue;
+                }
+                newest = Math.max(newest, event.getTime());
+                if ("REALM_ROLE".equals(event.getResourceType())) {
+                    rolesChanged = true;
+                } else {
+                    String userId = userIdFromResourcePath(event.getResourcePath());
+                    if (userId != null) {
+                        userIds.add(userId);
+                    }
+                }
+            }
+            if (events.size() < syncPageSize) {
+                break;
+            }
+        }
+        // Inscriptions et modifications de profil faites par l'utilisateur lui-même
+        for (int first = 0; ; first += syncPageSize) {
+            List<EventRepresentation> events = getRealm().getEvents(USER_EVENT_TYPES, null, null, dateFrom, null, null,
+                    first, syncPageSize);
+            for (EventRepresentation event : events) {
+                if (event.getTime() >= since && event.getUserId() != null) {
+                    newest = Math.max(newest, event.getTime());
+                    userIds.add(event.getUserId());
+                }
+            }
+            if (events.size() < syncPageSize) {
+                break;
             }
         }
+
+        if (rolesChanged) {
+            syncRolesFromKeycloak();
+        }
+        if (!userIds.isEmpty()) {
+            Map<String, Role> rolesById = roleRepository.findAll().stream()
+                    .collect(Collectors.toMap(Role::getId, role -> role));
+            List<UserRepresentation> users = new ArrayList<>();
+            Map<String, Set<String>> roleIdsByUser = new HashMap<>();
+            for (String userId : userIds) {
+                try {
+                    UserResource userResource = getUsersResource().get(userId);
+                    users.add(userResource.toRepresentation());
+                    roleIdsByUser.put(userId, userResource.roles().realmLevel().listAll().stream()
+                            .map(RoleRepresentation::getId)
+                            .collect(Collectors.toSet()));
+                } catch (NotFoundException e) {
+                    // Comme lors d'une synchronisation complète, l'utilisateur local est conservé
+                    log.info("Utilisateur {} supprimé de Keycloak, ignoré", userId);
+                }
+            }
+            int changed = applyUsers(users, roleIdsByUser, rolesById);
+            log.info("Synchronisation incrémentale : {} utilisateur(s) concerné(s), {} modifié(s).", userIds.size(), changed);
+        }
+        eventWatermark = newest;
+    }
+
+    /**
+     * Rôles realm directement attribués à chaque utilisateur, obtenus rôle par rôle
+     * plutôt qu'utilisateur par utilisateur.
+     */
+    private Map<String, Set<String>> fetchRealmRoleMappings() {
+        Map<String, Set<String>> roleIdsByUser = new HashMap<>();
+        for (RoleRepresentation roleRep : getRealm().roles().list()) {
+            if (!isValidKeycloakId(roleRep.getId())) {
+                continue;
+            }
+            RoleResource roleResource = getRealm().roles().get(roleRep.getName());
+            for (int first = 0; ; first += syncPageSize) {
+                List<UserRepresentation> members = roleResource.getUserMembers(true, first, syncPageSize);
+                for (UserRepresentation member : members) {
+                    roleIdsByUser.computeIfAbsent(member.getId(), id -> new HashSet<>()).add(roleRep.getId());
+                }
+                if (members.size() < syncPageSize) {
+                    break;
+                }
+            }
+        }
+        return roleIdsByUser;
+    }
+
+    // Compare chaque utilisateur Keycloak à sa copie locale et n'enregistre que ceux qui diffèrent
+    private int applyUsers(List<UserRepresentation> keycloakUsers, Map<String, Set<String>> roleIdsByUser,
+                           Map<String, Role> rolesById) {
+        List<String> ids = keycloakUsers.stream()
+                .map(UserRepresentation::getId)
+                .filter(id -> {
+                    boolean isValid = isValidKeycloakId(id);
+                    if (!isValid) {
+                        log.warn("Skipping invalid Keycloak user with ID: {}", id);
+                    }
+                    return isValid;
+                })
+                .collect(Collectors.toList());
+        Map<String, UserEntity> existingUsers = userRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(UserEntity::getId, u -> u));
+
+        List<UserEntity> changed = new ArrayList<>();
+        for (UserRepresentation user : keycloakUsers) {
+            if (!isValidKeycloakId(user.getId())) {
+                continue;
+            }
+            Set<Role> roleEntities = roleIdsByUser.getOrDefault(user.getId(), Set.of()).stream()
+                    .map(rolesById::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+            boolean enabled = Boolean.TRUE.equals(user.isEnabled());
+
+            UserEntity userEntity = existingUsers.get(user.getId());
+            if (userEntity == null) {
+                userEntity = new UserEntity();
+                userEntity.setId(user.getId());
+                log.info("Création d'un nouvel utilisateur: {}", user.getId());
+            } else if (Objects.equals(userEntity.getUsername(), user.getUsername())
+                    && Objects.equals(userEntity.getEmail(), user.getEmail())
+                    && userEntity.isEnabled() == enabled
+                    && roleIds(userEntity.getRoles()).equals(roleIds(roleEntities))) {
+                continue;
+            } else {
+                log.info("Mise à jour de l'utilisateur existant: {}", user.getId());
+            }
+            userEntity.setUsername(user.getUsername());
+            userEntity.setEmail(user.getEmail());
+            userEntity.setEnabled(enabled);
+            userEntity.setRoles(roleEntities);
+            changed.add(userEntity);
+        }
+        userRepository.saveAll(changed);
+        return changed.size();
+    }
+
+    private static Set<String> roleIds(Set<Role> roles) {
+        if (roles == null) {
+            return Set.of();
+        }
+        return roles.stream().map(Role::getId).collect(Collectors.toSet());
+    }
+
+    // "users/{id}" ou "users/{id}/role-mappings/realm"
+    private static String userIdFromResourcePath(String resourcePath) {
+        if (resourcePath == null || !resourcePath.startsWith("users/")) {
+            return null;
+        }
+        String rest = resourcePath.substring("users/".length());
+        int slash = rest.indexOf('/');
+        String userId = slash >= 0 ? rest.substring(0, slash) : rest;
+        return isValidKeycloakId(userId) ? userId : null;
+    }
+
+    private boolean checkEventsEnabled() {
+        try {
+            RealmEventsConfigRepresentation config = getRealm().getRealmEventsConfig();
+            boolean enabled = Boolean.TRUE.equals(config.isAdminEventsEnabled()) && config.isEventsEnabled();
+            if (!enabled) {
+                log.info("Événements Keycloak désactivés sur le realm {} : synchronisation complète à chaque passage", realm);
+            }
+            return enabled;
+        } catch (Exception e) {
+            log.warn("Configuration des événements Keycloak illisible, synchronisation complète à chaque passage : {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean isValidKeycloakId(String id) {
+        return id != null && KEYCLOAK_ID.matcher(id).matches();
     }
 
     public String createRole(String roleName, String description) {
@@ -0,0 +1,310 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.LlmCacheEntry;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.LlmCacheEntryRepository;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Cache des réponses des modèles de langage (OpenAI, Gemini, OpenRouter), indexé par l'empreinte
+ * du prompt normalisé. Un niveau mémoire borné (LRU, durée de vie {@code llm.cache.ttl-minutes})
+ * répond en premier ; le niveau persistant en base, optionnel, survit aux redémarrages. Les
+ * demandes identiques arrivant pendant un appel en cours attendent son résultat au lieu d'en
+ * émettre un autre. Les erreurs ne sont jamais mises en cache, ni les réponses refusées par
+ * l'appelant.
+ */
+@Service
+public class LlmResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmResponseCache.class);
+    private static final String METRIC_NAME = "llm.cache.requests";
+    private static final Set<String> SERVED_OUTCOMES = Set.of("hit", "persistent_hit", "coalesced");
+
+    private final LlmCacheEntryRepository entryRepository;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final boolean persistent;
+    private final Duration ttl;
+    private final Map<String, CachedResponse> memory;
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    public LlmResponseCache(LlmCacheEntryRepository entryRepository,
+                            ObjectProvider<MeterRegistry> meterRegistry,
+                            @Value("${llm.cache.enabled:true}") boolean enabled,
+                            @Value("${llm.cache.persistent:false}") boolean persistent,
+                            @Value("${llm.cache.ttl-minutes:1440}") long ttlMinutes,
+                            @Value("${llm.cache.max-entries:1000}") int maxEntries) {
+        this.entryRepository = entryRepository;
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.enabled = enabled;
+        this.persistent = persistent;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        // Ordre d'accès : l'entrée la moins récemment lue est évincée en premier
+        this.memory = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        log.info("Cache des réponses LLM - actif : {}, persistant : {}, durée de vie : {} min, {} entrées max",
+                enabled, persistent, ttlMinutes, maxEntries);
+    }
+
+    /**
+     * Réponse en cache pour {@code prompt}, ou résultat de {@code upstream} appelé une seule fois
+     * quel que soit le nombre d'appelants simultanés. {@code namespace} distingue les usages
+     * (un même texte peut servir de prompt à deux fonctionnalités) et étiquette les métriques.
+     */
+    public String getOrCompute(String namespace, String prompt, Supplier<String> upstream) {
+        return getOrCompute(namespace, prompt, upstream, value -> true);
+    }
+
+    /**
+     * Comme {@link #getOrCompute(String, String, Supplier)}, mais une réponse refusée par
+     * {@code cacheable} (réponse vide, valeur de repli) est renvoyée sans être conservée : la
+     * demande suivante interroge de nouveau le modèle.
+     */
+    public String getOrCompute(String namespace, String prompt, Supplier<String> upstream, Predicate<String> cacheable) {
+        long start = System.nanoTime();
+        if (!enabled) {
+            String value = upstream.get();
+            record(namespace, "bypass", start);
+            return value;
+        }
+        String key = key(namespace, prompt);
+        String cached = fromMemory(key);
+        if (cached != null) {
+            record(namespace, "hit", start);
+            return cached;
+        }
+
+        CompletableFuture<String> own = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            try {
+                String value = running.join();
+                record(namespace, "coalesced", start);
+                return value;
+            } catch (CompletionException e) {
+                record(namespace, "error", start);
+                throw unwrap(e);
+            }
+        }
+        try {
+            // Un autre appelant a pu terminer entre la lecture du cache et la réservation
+            String value = fromMemory(key);
+            String outcome = "hit";
+            if (value == null) {
+                value = fromDatabase(key);
+                outcome = "persistent_hit";
+            }
+            if (value == null) {
+                value = upstream.get();
+                outcome = "miss";
+                if (value != null && cacheable.test(value)) {
+                    store(key, namespace, value);
+                }
+            }
+            own.complete(value);
+            record(namespace, outcome, start);
+            return value;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            record(namespace, "error", start);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * Réponse en cache sans appel amont, pour les réponses diffusées au fil de l'eau : l'appelant
+     * enregistre ensuite le texte complet avec {@link #put}.
+     */
+    public String peek(String namespace, String prompt) {
+        long start = System.nanoTime();
+        if (!enabled) {
+            return null;
+        }
+        String key = key(namespace, prompt);
+        String value = fromMemory(key);
+        String outcome = "hit";
+        if (value == null) {
+            value = fromDatabase(key);
+            outcome = value != null ? "persistent_hit" : "stream_miss";
+        }
+        record(namespace, outcome, start);
+        return value;
+    }
+
+    public void put(String namespace, String prompt, String value) {
+        if (enabled) {
+            store(key(namespace, prompt), namespace, value);
+        }
+    }
+
+    /**
+     * Oublie les réponses d'un espace de noms, par exemple après une modification de son prompt.
+     */
+    public int invalidate(String namespace) {
+        int removed;
+        synchronized (memory) {
+            int before = memory.size();
+            memory.values().removeIf(response -> response.namespace().equals(namespace));
+            removed = before - memory.size();
+        }
+        if (persistent) {
+            removed += entryRepository.deleteByNamespace(namespace);
+        }
+        log.info("Cache des réponses LLM : {} entrée(s) de {} supprimée(s)", removed, namespace);
+        return removed;
+    }
+
+    @Scheduled(fixedDelayString = "${llm.cache.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            memory.values().removeIf(response -> response.expiresAt() <= now);
+        }
+        if (persistent) {
+            int deleted = entryRepository.deleteExpired(LocalDateTime.now());
+            if (deleted > 0) {
+                log.info("Cache des réponses LLM : {} entrée(s) expirée(s) supprimée(s) de la base", deleted);
+            }
+        }
+    }
+
+    /**
+     * Taille du cache, appels en cours et, par espace de noms, nombre et latence des demandes
+     * pour chaque issue (hit, persistent_hit, coalesced, miss, stream_miss, error).
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("persistent", persistent);
+        result.put("entries", memory.size());
+        result.put("inFlight", inFlight.size());
+        Map<String, Map<String, Object>> namespaces = new TreeMap<>();
+        for (Timer timer : meterRegistry.find(METRIC_NAME).timers()) {
+            Map<String, Object> stats = namespaces.computeIfAbsent(timer.getId().getTag("namespace"), n -> new TreeMap<>());
+            stats.put(timer.getId().getTag("outcome"), Map.of(
+                    "count", timer.count(),
+                    "meanMs", timer.mean(TimeUnit.MILLISECONDS),
+                    "maxMs", timer.max(TimeUnit.MILLISECONDS)));
+        }
+        namespaces.values().forEach(stats -> stats.put("hitRatio", hitRatio(stats)));
+        result.put("namespaces", namespaces);
+        return result;
+    }
+
+    private String fromMemory(String key) {
+        CachedResponse response = memory.get(key);
+        if (response == null) {
+            return null;
+        }
+        if (response.expiresAt() <= System.currentTimeMillis()) {
+            memory.remove(key, response);
+            return null;
+        }
+        return response.value();
+    }
+
+    private String fromDatabase(String key) {
+        if (!persistent) {
+            return null;
+        }
+        try {
+            Optional<LlmCacheEntry> entry = entryRepository.findById(key);
+            if (entry.isEmpty() || entry.get().getExpiresAt().isBefore(LocalDateTime.now())) {
+                return null;
+            }
+            long remainingMs = Duration.between(LocalDateTime.now(), entry.get().getExpiresAt()).toMillis();
+            memory.put(key, new CachedResponse(entry.get().getNamespace(), entry.get().getResponse(),
+                    System.currentTimeMillis() + remainingMs));
+            return entry.get().getResponse();
+        } catch (RuntimeException e) {
+            log.warn("Lecture du cache des réponses LLM en base impossible : {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void store(String key, String namespace, String value) {
+        if (value == null) {
+            return;
+        }
+        memory.put(key, new CachedResponse(namespace, value, System.currentTimeMillis() + ttl.toMillis()));
+        if (!persistent) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            entryRepository.save(new LlmCacheEntry(key, namespace, value, now, now.plus(ttl)));
+        } catch (RuntimeException e) {
+            // La réponse reste servie depuis la mémoire
+            log.warn("Écriture du cache des réponses LLM en base impossible : {}", e.getMessage());
+        }
+    }
+
+    // Espaces et forme Unicode normalisés ; la casse est conservée (extraits de code, noms propres)
+    private static String key(String namespace, String prompt) {
+        String normalized = Normalizer.normalize(Objects.toString(prompt, ""), Normalizer.Form.NFC)
+                .replaceAll("\\s+", " ")
+                .trim();
+        return ResumeFeatureService.sha256(namespace + "\n" + normalized);
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(cause.getMessage(), cause);
+    }
+
+    private static double hitRatio(Map<String, Object> stats) {
+        long served = 0;
+        long total = 0;
+        for (Map.Entry<String, Object> entry : stats.entrySet()) {
+            if (entry.getValue() instanceof Map<?, ?> outcome && !"bypass".equals(entry.getKey())) {
+                long count = (Long) outcome.get("count");
+                total += count;
+                if (SERVED_OUTCOMES.contains(entry.getKey())) {
+                    served += count;
+                }
+            }
+        }
+        return total == 0 ? 0.0 : (double) served / total;
+    }
+
+    private void record(String namespace, String outcome, long startNanos) {
+        Timer.builder(METRIC_NAME)
+                .tag("namespace", namespace)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private record CachedResponse(String namespace, String value, long expiresAt) {
+    }
+}
@@ -0,0 +1,269 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import jakarta.annotation.PostConstruct;
+import org.apache.tika.Tika;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.AttachmentBlob;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityAttachment;
+import tn.esprit.examen.nomPrenomClasseExamen.exceptions.EntityNotFoundException;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.AttachmentBlobRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.NonConformityAttachmentRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Stockage adressé par contenu des pièces jointes de correction des non-conformités. Le dépôt
+ * est haché pendant son écriture sur disque ; un contenu déjà connu n'est pas conservé une
+ * seconde fois, seul son compteur de références augmente. Les contenus sans référence sont
+ * supprimés en tâche de fond après un délai de grâce.
+ * <p>
+ * Un contenu est rangé sous {@code blobs/ab/cd/<sha256>}. Le ramasse-miettes verrouille la
+ * ligne du contenu avant d'effacer le fichier : un dépôt simultané du même contenu attend la
+ * fin de la suppression puis réécrit son fichier.
+ */
+@Service
+public class NonConformityAttachmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(NonConformityAttachmentStore.class);
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GC_BATCH = 100;
+
+    private final NonConformityAttachmentRepository attachmentRepository;
+    private final AttachmentBlobRepository blobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Path blobs;
+    private final Path tmp;
+    private final long maxBytes;
+    private final long maxTotalBytes;
+    private final Duration gcGrace;
+    private final Tika tika = new Tika();
+
+    public NonConformityAttachmentStore(NonConformityAttachmentRepository attachmentRepository,
+                                        AttachmentBlobRepository blobRepository,
+                                        TransactionTemplate transactionTemplate,
+                                        @Value("${nonconformity.attachments.dir:${file.upload-dir}/nonconformity-attachments}") String dir,
+                                        @Value("${nonconformity.attachments.max-bytes:26214400}") long maxBytes,
+                                        @Value("${nonconformity.attachments.max-total-bytes:10737418240}") long maxTotalBytes,
+                                        @Value("${nonconformity.attachments.gc-grace-minutes:60}") long gcGraceMinutes) {
+        this.attachmentRepository = attachmentRepository;
+        this.blobRepository = blobRepository;
+        this.transactionTemplate = transactionTemplate;
+        Path root = Paths.get(dir).toAbsolutePath().normalize();
+        this.blobs = root.resolve("blobs");
+        this.tmp = root.resolve("tmp");
+        this.maxBytes = maxBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.gcGrace = Duration.ofMinutes(gcGraceMinutes);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(blobs);
+        Files.createDirectories(tmp);
+    }
+
+    /**
+     * Enregistre une pièce jointe pour la non-conformité {@code nonConformityId}. À appeler dans
+     * la transaction qui référence la pièce jointe : en cas d'annulation, la référence l'est aussi
+     * et un contenu nouveau reste orphelin sur disque jusqu'au passage du ramasse-miettes.
+     * Le type de contenu est toujours détecté par Tika ; celui annoncé par le client est ignoré.
+     */
+    public NonConformityAttachment store(Long nonConformityId, String fileName, InputStream content)
+            throws IOException {
+        if (fileName == null || fileName.isBlank()) {
+            throw new IllegalArgumentException("Invalid file name");
+        }
+        Path upload = tmp.resolve(UUID.randomUUID() + ".tmp");
+        try {
+            String sha256;
+            long size = 0;
+            MessageDigest digest = sha256Digest();
+            try (OutputStream out = Files.newOutputStream(upload, StandardOpenOption.CREATE_NEW)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxBytes) {
+                        throw new IllegalArgumentException("Pièce jointe trop volumineuse (maximum " + maxBytes + " octets).");
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            sha256 = HexFormat.of().formatHex(digest.digest());
+
+            String contentType = detectContentType(upload, fileName);
+            boolean known = blobRepository.existsById(sha256);
+            if (!known && blobRepository.totalSize() + size > maxTotalBytes) {
+                throw new IllegalArgumentException("Quota de stockage des pièces jointes atteint (" + maxTotalBytes + " octets).");
+            }
+            // La référence est prise avant de poser le fichier : le ramasse-miettes ne peut plus l'effacer
+            blobRepository.acquire(sha256, size, contentType, LocalDateTime.now());
+            Path target = blobPath(sha256);
+            if (!known || !Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                Files.move(upload, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            NonConformityAttachment attachment = attachmentRepository.save(NonConformityAttachment.builder()
+                    .nonConformityId(nonConformityId)
+                    .blobSha256(sha256)
+                    .fileName(Paths.get(fileName).getFileName().toString())
+                    .contentType(contentType)
+                    .size(size)
+                    .createdAt(LocalDateTime.now())
+                    .build());
+            log.info("Pièce jointe {} ({} octets, {}) enregistrée pour la non-conformité {}",
+                    attachment.getId(), size, known ? "contenu déjà stocké" : "nouveau contenu", nonConformityId);
+            return attachment;
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    public NonConformityAttachment get(Long nonConformityId, Long attachmentId) {
+        return attachmentRepository.findByIdAndNonConformityId(attachmentId, nonConformityId)
+                .orElseThrow(() -> new EntityNotFoundException("Attachment with id " + attachmentId + " does not exist."));
+    }
+
+    public Path open(NonConformityAttachment attachment) {
+        Path file = blobPath(attachment.getBlobSha256());
+        if (!Files.isReadable(file)) {
+            throw new EntityNotFoundException("Attachment file for id " + attachment.getId() + " is missing.");
+        }
+        return file;
+    }
+
+    /**
+     * Retire les pièces jointes d'une non-conformité ; leurs contenus deviennent orphelins
+     * s'ils ne sont plus référencés ailleurs. À appeler dans une transaction.
+     */
+    public void releaseAll(Long nonConformityId) {
+        List<NonConformityAttachment> attachments = attachmentRepository.findByNonConformityId(nonConformityId);
+        if (attachments.isEmpty()) {
+            return;
+        }
+        attachmentRepository.deleteAllInBatch(attachments);
+        LocalDateTime now = LocalDateTime.now();
+        attachments.forEach(a -> blobRepository.release(a.getBlobSha256(), now));
+    }
+
+    /**
+     * Supprime les contenus sans référence depuis plus que le délai de grâce, puis les fichiers
+     * présents sur disque sans contenu enregistré (dépôt annulé, arrêt pendant une écriture).
+     */
+    @Scheduled(fixedDelayString = "${nonconformity.attachments.gc-interval-ms:3600000}",
+            initialDelayString = "${nonconformity.attachments.gc-initial-delay-ms:300000}")
+    public void collectGarbage() {
+        int blobsDeleted = 0;
+        int strays = 0;
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minus(gcGrace);
+            List<String> orphans;
+            do {
+                orphans = blobRepository.findOrphans(cutoff, PageRequest.of(0, GC_BATCH));
+                for (String sha256 : orphans) {
+                    if (Boolean.TRUE.equals(transactionTemplate.execute(status -> deleteIfOrphan(sha256, cutoff)))) {
+                        blobsDeleted++;
+                    }
+                }
+            } while (orphans.size() == GC_BATCH);
+        } catch (RuntimeException e) {
+            log.warn("Suppression des contenus orphelins interrompue : {}", e.getMessage());
+        }
+        try {
+            strays = sweepUnreferencedFiles();
+        } catch (RuntimeException | IOException e) {
+            log.warn("Nettoyage des fichiers isolés interrompu : {}", e.getMessage());
+        }
+        if (blobsDeleted > 0 || strays > 0) {
+            log.info("Pièces jointes de non-conformité : {} contenu(s) orphelin(s) et {} fichier(s) isolé(s) supprimés",
+                    blobsDeleted, strays);
+        }
+    }
+
+    // Sous verrou : un dépôt du même contenu attend, puis recrée la ligne et le fichier
+    private boolean deleteIfOrphan(String sha256, LocalDateTime cutoff) {
+        Optional<AttachmentBlob> blob = blobRepository.lockById(sha256);
+        if (blob.isEmpty() || blob.get().getRefCount() > 0
+                || blob.get().getOrphanedAt() == null || !blob.get().getOrphanedAt().isBefore(cutoff)) {
+            return false;
+        }
+        try {
+            Files.deleteIfExists(blobPath(sha256));
+        } catch (IOException e) {
+            throw new IllegalStateException("Suppression du contenu " + sha256 + " impossible : " + e.getMessage(), e);
+        }
+        blobRepository.delete(blob.get());
+        return true;
+    }
+
+    private int sweepUnreferencedFiles() throws IOException {
+        FileTime before = FileTime.from(Instant.now().minus(gcGrace));
+        int deleted = 0;
+        List<Path> candidates = new ArrayList<>();
+        try (Stream<Path> files = Stream.concat(Files.walk(blobs), Files.walk(tmp))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file) && Files.getLastModifiedTime(file).compareTo(before) < 0) {
+                    candidates.add(file);
+                }
+            }
+        }
+        for (int from = 0; from < candidates.size(); from += GC_BATCH) {
+            List<Path> batch = candidates.subList(from, Math.min(from + GC_BATCH, candidates.size()));
+            Set<String> known = new HashSet<>(blobRepository.findExistingIds(
+                    batch.stream().map(p -> p.getFileName().toString()).toList()));
+            for (Path file : batch) {
+                if (!known.contains(file.getFileName().toString()) && Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private Path blobPath(String sha256) {
+        if (sha256 == null || !sha256.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Empreinte de contenu invalide : " + sha256);
+        }
+        return blobs.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    private String detectContentType(Path file, String fileName) {
+        try {
+            String detected = tika.detect(file);
+            if (DEFAULT_CONTENT_TYPE.equals(detected) && fileName != null) {
+                detected = tika.detect(fileName);
+            }
+            return detected;
+        } catch (IOException e) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+}
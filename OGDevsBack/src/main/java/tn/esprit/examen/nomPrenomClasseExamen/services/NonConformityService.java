@@ -1,11 +1,15 @@
 package tn.esprit.examen.nomPrenomClasseExamen.services;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.IndicatorStatsDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.NonConformityRow;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.*;
 import tn.esprit.examen.nomPrenomClasseExamen.exceptions.EntityNotFoundException;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.NonConformityRepository;
@@ -13,14 +17,10 @@ import tn.esprit.examen.nomPrenomClasseExamen.repositories.IndicatorRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.UserEntityRepository;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.io.InputStream;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,9 +29,10 @@ public class NonConformityService implements INonConformityService {
 
     private final NonConformityRepository nonConformityRepository;
     private final IndicatorRepository indicatorRepository;
-    private final IIndicatorServices indicatorServices;
     private final UserEntityRepository userEntityRepository;
-    private static final String UPLOAD_DIR = "Uploads/nonconformities/";
+    private final NonConformityAttachmentStore attachmentStore;
+    private static final String ATTACHMENT_URL = "/api/nonconformities/";
+    private static final int IN_CLAUSE_CHUNK = 1000;
 
     @Override
     public Non_Conformity addNonConformityManually(Non_Conformity nonConformity) {
@@ -59,10 +60,6 @@ public class NonConformityService implements INonConformityService {
         nonConformity.setFixDate(null);
         nonConformity.setFixedBy(null);
 
-        if (indicatorId != null) {
-            indicatorServices.updateIndicatorValue("IND-MAG-02");
-        }
-
         return nonConformityRepository.save(nonConformity);
     }
 
@@ -104,14 +101,61 @@ public class NonConformityService implements INonConformityService {
         if (!nonConformityRepository.existsById(idNonConformity)) {
             throw new IllegalArgumentException("Non-conformity not found: " + idNonConformity);
         }
+        attachmentStore.releaseAll(idNonConformity);
         nonConformityRepository.deleteById(idNonConformity);
     }
 
     @Override
     public List<NonConformityDTO> getAllNonConformities() {
-        return nonConformityRepository.findAll().stream()
-                .map(this::mapToDTO)
-                .collect(Collectors.toList());
+        return getNonConformities(null, null, null, null, null, Pageable.unpaged()).getContent();
+    }
+
+    /**
+     * Registre filtré des non-conformités. Les colonnes sont lues par projection, les collections
+     * de la page en une requête chacune, et la valeur des indicateurs concernés par une seule
+     * requête agrégée : le coût ne dépend plus du nombre de non-conformités par indicateur.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<NonConformityDTO> getNonConformities(String status, NonConformitySource source, NonConformityType type,
+                                                     LocalDate fromDate, LocalDate toDate, Pageable pageable) {
+        if (fromDate != null && toDate != null && fromDate.isAfter(toDate)) {
+            throw new IllegalArgumentException("Start date must not be after end date");
+        }
+        Page<NonConformityRow> rows = nonConformityRepository.findRegisterRows(
+                status != null && !status.isBlank() ? status.trim().toUpperCase() : null,
+                source, type, fromDate, toDate, pageable);
+
+        List<Long> ids = rows.map(NonConformityRow::getIdNonConformity).getContent();
+        Map<Long, List<String>> attachments = collectionsByNonConformity(ids, nonConformityRepository::findAttachments);
+        Map<Long, List<String>> aiSuggestions = collectionsByNonConformity(ids, nonConformityRepository::findAiSuggestions);
+        Map<Long, List<String>> selectedProposals = collectionsByNonConformity(ids, nonConformityRepository::findSelectedProposals);
+        Map<Long, IndicatorDTO> indicators = indicatorsById(rows.stream()
+                .map(NonConformityRow::getIndicatorId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+
+        return rows.map(row -> {
+            NonConformityDTO dto = new NonConformityDTO();
+            dto.setIdNonConformity(row.getIdNonConformity());
+            dto.setSource(row.getSource());
+            dto.setDescription(row.getDescription());
+            dto.setDateCreated(row.getDateCreated());
+            dto.setType(row.getType());
+            dto.setStatus(row.getStatus());
+            dto.setActionTaken(row.getActionTaken());
+            dto.setFixDate(row.getFixDate());
+            dto.setDetectedBy(row.getDetectedBy());
+            dto.setDateDetected(row.getDateDetected());
+            dto.setFixedBy(row.getFixedBy());
+            dto.setIsEffective(row.getIsEffective());
+            dto.setAttachments(attachments.getOrDefault(row.getIdNonConformity(), new ArrayList<>()));
+            dto.setAiSuggestions(aiSuggestions.getOrDefault(row.getIdNonConformity(), new ArrayList<>()));
+            dto.setSelectedProposals(selectedProposals.getOrDefault(row.getIdNonConformity(), new ArrayList<>()));
+            dto.setIndicatorId(row.getIndicatorId());
+            dto.setIndicator(row.getIndicatorId() != null ? indicators.get(row.getIndicatorId()) : null);
+            return dto;
+        });
     }
 
     @Override
@@ -130,6 +174,8 @@ public class NonConformityService implements INonConformityService {
         nonConformity.setFixedBy(fixedBy);
 
         if (attachments != null && !attachments.isEmpty()) {
+            // Les nouvelles pièces jointes remplacent les précédentes, dont les références sont libérées
+            attachmentStore.releaseAll(id);
             List<String> attachmentPaths = saveAttachments(attachments, id);
             nonConformity.setAttachments(attachmentPaths);
         }
@@ -161,39 +207,55 @@ public class NonConformityService implements INonConformityService {
         return nonConformityRepository.save(nonConformity);
     }
 
+    /**
+     * Enregistre en une seule transaction les constats d'un rapport d'audit, avec leurs
+     * suggestions d'actions. L'utilisateur est passé explicitement : l'analyse s'exécute
+     * hors du thread de la requête.
+     */
+    @Override
+    @Transactional
+    public List<Non_Conformity> addNonConformitiesFromAudit(List<String> descriptions, List<List<String>> aiSuggestions, String userId) {
+        if (descriptions.size() != aiSuggestions.size()) {
+            throw new IllegalArgumentException("Each audit finding needs its list of AI suggestions");
+        }
+        UserEntity detectedBy = userEntityRepository.findById(userId)
+                .orElseThrow(() -> new EntityNotFoundException("User not found with id: " + userId));
+        LocalDate today = LocalDate.now();
+
+        List<Non_Conformity> nonConformities = new ArrayList<>(descriptions.size());
+        for (int i = 0; i < descriptions.size(); i++) {
+            Non_Conformity nonConformity = new Non_Conformity();
+            nonConformity.setDescription(descriptions.get(i));
+            nonConformity.setSource(NonConformitySource.AUDIT);
+            nonConformity.setDateCreated(today);
+            nonConformity.setStatus("OPEN");
+            nonConformity.setAiSuggestions(new ArrayList<>(aiSuggestions.get(i)));
+            nonConformity.setDetectedBy(detectedBy);
+            nonConformity.setDateDetected(today);
+            nonConformities.add(nonConformity);
+        }
+        return nonConformityRepository.saveAll(nonConformities);
+    }
+
     private String extractUserIdFromJwt() {
         Jwt jwt = (Jwt) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
         return jwt.getSubject();
     }
 
+    // Chemins de téléchargement des pièces jointes, conservés dans la liste attachments de l'entité
     private List<String> saveAttachments(List<MultipartFile> attachments, Long nonConformityId) {
         List<String> paths = new ArrayList<>();
-        Path uploadPath = Paths.get(UPLOAD_DIR, nonConformityId.toString(), "fixes").toAbsolutePath();
-
         try {
-            Files.createDirectories(uploadPath);
-
             for (MultipartFile file : attachments) {
-                String originalFileName = file.getOriginalFilename();
-                if (originalFileName == null || originalFileName.isEmpty()) {
-                    throw new IllegalArgumentException("Invalid file name");
+                NonConformityAttachment attachment;
+                try (InputStream in = file.getInputStream()) {
+                    attachment = attachmentStore.store(nonConformityId, file.getOriginalFilename(), in);
                 }
-
-                String fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
-                String uniqueFileName = UUID.randomUUID().toString() + fileExtension;
-                Path filePath = uploadPath.resolve(uniqueFileName);
-
-                if (!filePath.normalize().startsWith(uploadPath)) {
-                    throw new SecurityException("Invalid file path");
-                }
-
-                Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-                paths.add(filePath.toString());
+                paths.add(ATTACHMENT_URL + nonConformityId + "/attachments/" + attachment.getId());
             }
         } catch (IOException e) {
             throw new RuntimeException("Failed to store attachments", e);
         }
-
         return paths;
     }
 
@@ -217,34 +279,54 @@ public class NonConformityService implements INonConformityService {
         dto.setSelectedProposals(nc.getSelectedProposals());
         if (nc.getIndicator() != null) {
             dto.setIndicatorId(nc.getIndicator().getIdIndicateur());
-            IndicatorDTO indicatorDTO = new IndicatorDTO();
-            indicatorDTO.setIdIndicateur(nc.getIndicator().getIdIndicateur());
-            indicatorDTO.setCode(nc.getIndicator().getCode());
-            indicatorDTO.setLibelle(nc.getIndicator().getLibelle());
-            indicatorDTO.setFrequence(nc.getIndicator().getFrequence());
-            indicatorDTO.setUnite(nc.getIndicator().getUnite());
-            indicatorDTO.setCible(nc.getIndicator().getCible());
-            List<Non_Conformity> nonConformities = nonConformityRepository.findByIndicator(nc.getIndicator());
-            long totalActions = nonConformities.size();
-            double currentValue;
-            if ("IND-MAG-01".equals(nc.getIndicator().getCode())) {
-                long openActions = nonConformities.stream()
-                        .filter(n -> "OPEN".equalsIgnoreCase(n.getStatus()))
-                        .count();
-                currentValue = totalActions > 0 ? ((double) openActions / totalActions) * 100 : 0.0;
-            } else {
-                long completedActions = nonConformities.stream()
-                        .filter(n -> "FIXED".equalsIgnoreCase(n.getStatus()))
-                        .count();
-                currentValue = totalActions > 0 ? ((double) completedActions / totalActions) * 100 : 0.0;
-            }
-            System.out.println("Indicator: " + nc.getIndicator().getCode() + ", Total Actions: " + totalActions + ", Current Value: " + currentValue);
-            indicatorDTO.setCurrentValue(currentValue);
-            indicatorDTO.setStatus(currentValue >= nc.getIndicator().getCible() ? "OK" : "CRITICAL");
-            indicatorDTO.setActif(nc.getIndicator().getActif());
-            indicatorDTO.setMethodeCalcul(null);
-            dto.setIndicator(indicatorDTO);
+            dto.setIndicator(indicatorsById(Set.of(nc.getIndicator().getIdIndicateur())).get(nc.getIndicator().getIdIndicateur()));
         }
         return dto;
     }
-}
\ No newline at end of file
+
+    // Les listes d'identifiants sont découpées pour borner la taille des clauses IN
+    private static Map<Long, List<String>> collectionsByNonConformity(List<Long> ids,
+                                                                      Function<Collection<Long>, List<Object[]>> query) {
+        Map<Long, List<String>> values = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK) {
+            for (Object[] row : query.apply(ids.subList(from, Math.min(from + IN_CLAUSE_CHUNK, ids.size())))) {
+                values.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[1]);
+            }
+        }
+        return values;
+    }
+
+    // Valeur courante de chaque indicateur, calculée une fois à partir de ses compteurs
+    private Map<Long, IndicatorDTO> indicatorsById(Set<Long> indicatorIds) {
+        Map<Long, IndicatorDTO> indicators = new HashMap<>();
+        List<Long> ids = new ArrayList<>(indicatorIds);
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK) {
+            for (IndicatorStatsDTO stats : indicatorRepository.findStatsByIds(ids.subList(from, Math.min(from + IN_CLAUSE_CHUNK, ids.size())))) {
+                indicators.put(stats.getIdIndicateur(), toIndicatorDTO(stats));
+            }
+        }
+        return indicators;
+    }
+
+    private static IndicatorDTO toIndicatorDTO(IndicatorStatsDTO stats) {
+        long totalActions = stats.getTotalActions() != null ? stats.getTotalActions() : 0L;
+        // IND-MAG-01 mesure la part de non-conformités ouvertes, les autres la part corrigée
+        long counted = "IND-MAG-01".equals(stats.getCode())
+                ? (stats.getOpenActions() != null ? stats.getOpenActions() : 0L)
+                : (stats.getFixedActions() != null ? stats.getFixedActions() : 0L);
+        double currentValue = totalActions > 0 ? ((double) counted / totalActions) * 100 : 0.0;
+
+        IndicatorDTO indicatorDTO = new IndicatorDTO();
+        indicatorDTO.setIdIndicateur(stats.getIdIndicateur());
+        indicatorDTO.setCode(stats.getCode());
+        indicatorDTO.setLibelle(stats.getLibelle());
+        indicatorDTO.setFrequence(stats.getFrequence());
+        indicatorDTO.setUnite(stats.getUnite());
+        indicatorDTO.setCible(stats.getCible());
+        indicatorDTO.setCurrentValue(currentValue);
+        indicatorDTO.setStatus(stats.getCible() == null || currentValue >= stats.getCible() ? "OK" : "CRITICAL");
+        indicatorDTO.setActif(stats.getActif());
+        indicatorDTO.setMethodeCalcul(null);
+        return indicatorDTO;
+    }
+}
@@ -0,0 +1,163 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NotificationOutbox;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NotificationStatus;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.NotificationOutboxRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Envoi des e-mails de l'outbox de notifications par un pool borné de workers. Toutes les
+ * notifications en attente d'un même destinataire partent dans un seul e-mail ; avec une
+ * fenêtre de regroupement ({@code notifications.digest-window-minutes}), les alertes
+ * d'une rafale sont ainsi réunies en un résumé.
+ */
+@Service
+public class NotificationDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private final NotificationOutboxRepository outboxRepository;
+    private final JavaMailSender mailSender;
+    private final String from;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final long claimTimeoutMs;
+    private final int retentionDays;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public NotificationDispatcher(NotificationOutboxRepository outboxRepository,
+                                  JavaMailSender mailSender,
+                                  @Value("${notifications.mail.from:noreply@yourapp.com}") String from,
+                                  @Value("${notifications.workers:2}") int workers,
+                                  @Value("${notifications.queue-capacity:200}") int queueCapacity,
+                                  @Value("${notifications.max-attempts:5}") int maxAttempts,
+                                  @Value("${notifications.retry-backoff-ms:60000}") long retryBackoffMs,
+                                  @Value("${notifications.claim-timeout-ms:600000}") long claimTimeoutMs,
+                                  @Value("${notifications.retention-days:30}") int retentionDays) {
+        this.outboxRepository = outboxRepository;
+        this.mailSender = mailSender;
+        this.from = from;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+        this.claimTimeoutMs = claimTimeoutMs;
+        this.retentionDays = retentionDays;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread t = new Thread(r, "notification-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Déclenche un passage immédiat sans attendre la prochaine planification.
+     */
+    public void wakeUp() {
+        try {
+            executor.execute(this::dispatchDue);
+        } catch (RejectedExecutionException e) {
+            // File pleine : le passage planifié reprendra les notifications
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.dispatch-interval-ms:15000}")
+    public void dispatchDue() {
+        LocalDateTime now = LocalDateTime.now();
+        int released = outboxRepository.releaseStaleClaims(now.minus(Duration.ofMillis(claimTimeoutMs)),
+                NotificationStatus.PENDING, NotificationStatus.SENDING);
+        if (released > 0) {
+            log.warn("{} notifications abandonnées en cours d'envoi remises en attente", released);
+        }
+        for (String recipientId : outboxRepository.findDueRecipients(NotificationStatus.PENDING, now)) {
+            if (!inFlight.add(recipientId)) {
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        deliver(recipientId);
+                    } finally {
+                        inFlight.remove(recipientId);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(recipientId);
+                break;
+            }
+        }
+    }
+
+    private void deliver(String recipientId) {
+        String token = UUID.randomUUID().toString();
+        if (outboxRepository.claim(recipientId, token, LocalDateTime.now(),
+                NotificationStatus.PENDING, NotificationStatus.SENDING) == 0) {
+            return; // Déjà pris par une autre instance
+        }
+        List<NotificationOutbox> batch = outboxRepository.findByClaimTokenOrderByCreatedAtAsc(token);
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            mailSender.send(buildMail(batch));
+            outboxRepository.markSent(token, LocalDateTime.now(), NotificationStatus.SENT);
+            log.info("E-mail de {} notification(s) envoyé à {}", batch.size(), recipientId);
+        } catch (RuntimeException e) {
+            int attempt = batch.get(0).getAttempts() + 1;
+            LocalDateTime retryAt = LocalDateTime.now().plus(Duration.ofMillis(retryBackoffMs * attempt));
+            outboxRepository.markFailed(token, e.getMessage(), maxAttempts, retryAt,
+                    NotificationStatus.PENDING, NotificationStatus.FAILED);
+            log.warn("Échec d'envoi des notifications de {} (tentative {}/{}) : {}", recipientId, attempt, maxAttempts, e.getMessage());
+        }
+    }
+
+    private SimpleMailMessage buildMail(List<NotificationOutbox> batch) {
+        NotificationOutbox first = batch.get(0);
+        SimpleMailMessage mail = new SimpleMailMessage();
+        mail.setTo(first.getRecipientEmail());
+        mail.setFrom(from);
+        if (batch.size() == 1) {
+            mail.setSubject("Alerte AFC - " + first.getType());
+            mail.setText(first.getMessage());
+            return mail;
+        }
+        mail.setSubject("Alertes AFC - " + batch.size() + " notifications");
+        StringBuilder text = new StringBuilder();
+        for (NotificationOutbox notification : batch) {
+            text.append('[').append(notification.getType()).append("] ")
+                    .append(notification.getCreatedAt().withNano(0)).append('\n')
+                    .append(notification.getMessage()).append("\n\n");
+        }
+        mail.setText(text.toString().trim());
+        return mail;
+    }
+
+    @Scheduled(cron = "${notifications.retention-cron:0 15 4 * * *}")
+    public void purgeCompleted() {
+        int deleted = outboxRepository.deleteBefore(
+                EnumSet.of(NotificationStatus.SENT, NotificationStatus.FAILED), LocalDateTime.now().minusDays(retentionDays));
+        log.info("Outbox de notifications : {} entrées traitées supprimées", deleted);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -2,4 +2,5 @@ package tn.esprit.examen.nomPrenomClasseExamen.services;
 
 public interface NotificationService {
     void sendNotification(String userId, String message, String type);
-}
\ No newline at end of file
+    void notifyRole(String roleName, String message, String type); // Tous les utilisateurs du rôle (ex. ROLE_ADMIN)
+}
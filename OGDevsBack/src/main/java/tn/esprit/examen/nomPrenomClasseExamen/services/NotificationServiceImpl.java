@@ -1,43 +1,132 @@
 package tn.esprit.examen.nomPrenomClasseExamen.services;
 
-import lombok.RequiredArgsConstructor;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
-import tn.esprit.examen.nomPrenomClasseExamen.entities.UserEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.NotificationRecipient;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NotificationOutbox;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NotificationStatus;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.NotificationOutboxRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.UserEntityRepository;
 
-import java.util.Optional;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
 
+/**
+ * Point d'entrée des alertes. Rien n'est envoyé sur le fil de l'appelant : la notification
+ * est écrite dans l'outbox (sauf doublon récent), poussée en WebSocket après le commit,
+ * et l'e-mail est laissé au {@link NotificationDispatcher}.
+ */
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class NotificationServiceImpl implements NotificationService {
 
     private final SimpMessagingTemplate messagingTemplate;
-    private final JavaMailSender mailSender;
     private final UserEntityRepository userEntityRepository;
+    private final NotificationOutboxRepository outboxRepository;
+    private final NotificationDispatcher dispatcher;
+    private final long dedupWindowMinutes;
+    private final long digestWindowMinutes;
+    // Transaction propre : un échec d'alerte ne doit pas annuler le calcul qui l'a déclenchée
+    private final TransactionTemplate transactionTemplate;
+
+    public NotificationServiceImpl(SimpMessagingTemplate messagingTemplate,
+                                   UserEntityRepository userEntityRepository,
+                                   NotificationOutboxRepository outboxRepository,
+                                   NotificationDispatcher dispatcher,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${notifications.dedup-window-minutes:60}") long dedupWindowMinutes,
+                                   @Value("${notifications.digest-window-minutes:0}") long digestWindowMinutes) {
+        this.messagingTemplate = messagingTemplate;
+        this.userEntityRepository = userEntityRepository;
+        this.outboxRepository = outboxRepository;
+        this.dispatcher = dispatcher;
+        this.dedupWindowMinutes = dedupWindowMinutes;
+        this.digestWindowMinutes = digestWindowMinutes;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
 
     @Override
     public void sendNotification(String userId, String message, String type) {
-        Optional<UserEntity> userOptional = userEntityRepository.findById(userId);
-        if (userOptional.isPresent()) {
-            UserEntity user = userOptional.get();
-            messagingTemplate.convertAndSend("/topic/notifications/" + userId, message);
-            if (user.isEnableEmailNotifications()) {
-                sendEmail(user.getEmail(), "Alerte AFC - " + type, message);
-            }
-        } else {
-            System.out.println("Utilisateur avec l'ID " + userId + " non trouvé.");
+        try {
+            transactionTemplate.executeWithoutResult(status -> userEntityRepository.findById(userId).ifPresentOrElse(
+                    user -> enqueue(new NotificationRecipient(user.getId(), user.getEmail(),
+                            user.isEnableEmailNotifications(), user.isEnableWebSocketNotifications()), message, type),
+                    () -> log.warn("Utilisateur avec l'ID {} non trouvé.", userId)));
+        } catch (RuntimeException e) {
+            log.error("Notification {} pour {} non enregistrée : {}", type, userId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void notifyRole(String roleName, String message, String type) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<NotificationRecipient> recipients = userEntityRepository.findNotificationRecipientsByRole(roleName);
+                recipients.forEach(recipient -> enqueue(recipient, message, type));
+                log.info("Notification {} mise en file pour {} utilisateurs du rôle {}", type, recipients.size(), roleName);
+            });
+        } catch (RuntimeException e) {
+            log.error("Notification {} pour le rôle {} non enregistrée : {}", type, roleName, e.getMessage());
         }
     }
 
-    private void sendEmail(String to, String subject, String text) {
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(to);
-        message.setSubject(subject);
-        message.setText(text);
-        message.setFrom("noreply@yourapp.com");
-        mailSender.send(message);
+    private void enqueue(NotificationRecipient recipient, String message, String type) {
+        LocalDateTime now = LocalDateTime.now();
+        String dedupKey = dedupKey(recipient.getId(), type, message);
+        if (dedupWindowMinutes > 0
+                && outboxRepository.existsByDedupKeyAndCreatedAtAfter(dedupKey, now.minusMinutes(dedupWindowMinutes))) {
+            log.debug("Notification {} identique déjà émise pour {}, ignorée", type, recipient.getId());
+            return;
+        }
+        boolean email = recipient.isEnableEmailNotifications() && recipient.getEmail() != null;
+
+        NotificationOutbox entry = new NotificationOutbox();
+        entry.setRecipientId(recipient.getId());
+        entry.setRecipientEmail(recipient.getEmail());
+        entry.setType(type);
+        entry.setMessage(message);
+        entry.setDedupKey(dedupKey);
+        entry.setEmailEnabled(email);
+        entry.setCreatedAt(now);
+        entry.setSendAfter(now.plusMinutes(digestWindowMinutes));
+        // Conservée même sans e-mail, pour la déduplication
+        entry.setStatus(email ? NotificationStatus.PENDING : NotificationStatus.SENT);
+        entry.setSentAt(email ? null : now);
+        outboxRepository.save(entry);
+
+        boolean webSocket = recipient.isEnableWebSocketNotifications();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (webSocket) {
+                    messagingTemplate.convertAndSend("/topic/notifications/" + recipient.getId(), message);
+                }
+                if (email && digestWindowMinutes <= 0) {
+                    dispatcher.wakeUp();
+                }
+            }
+        });
+    }
+
+    private static String dedupKey(String userId, String type, String message) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((userId + '\n' + type + '\n' + message).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
-}
\ No newline at end of file
+}
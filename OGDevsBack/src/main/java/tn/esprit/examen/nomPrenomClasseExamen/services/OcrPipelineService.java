@@ -0,0 +1,269 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import jakarta.annotation.PreDestroy;
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.Word;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipeline OCR en flux : chaque page est rendue, reconnue puis libérée
+ * immédiatement. Les pages sont réparties sur un pool borné de workers,
+ * chacun disposant de son propre moteur Tesseract réutilisable.
+ */
+@Service
+public class OcrPipelineService {
+
+    private static final Logger log = LoggerFactory.getLogger(OcrPipelineService.class);
+    private static final String TESSDATA_PATH;
+
+    static {
+        String tessdataPrefix = System.getenv("TESSDATA_PREFIX");
+        if (tessdataPrefix != null && !tessdataPrefix.isEmpty()) {
+            TESSDATA_PATH = tessdataPrefix;
+            log.info("Using TESSDATA_PREFIX from environment: {}", TESSDATA_PATH);
+        } else {
+            try {
+                Path tempDir = Files.createTempDirectory("tessdata");
+                Path tessdataDir = tempDir.resolve("tessdata");
+                Files.createDirectory(tessdataDir);
+                ClassPathResource resource = new ClassPathResource("tessdata/eng.traineddata");
+                if (resource.exists()) {
+                    Files.copy(resource.getInputStream(), tessdataDir.resolve("eng.traineddata"));
+                    TESSDATA_PATH = tessdataDir.toString();
+                    log.info("Extracted tessdata to temporary directory: {}", TESSDATA_PATH);
+                } else {
+                    throw new RuntimeException("eng.traineddata not found in src/main/resources/tessdata");
+                }
+            } catch (IOException e) {
+                log.error("Failed to extract tessdata to temporary directory", e);
+                throw new RuntimeException("Failed to initialize tessdata directory", e);
+            }
+        }
+    }
+
+    /**
+     * Notifié après le traitement de chaque page (l'ordre d'arrivée n'est pas garanti).
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onPage(int pageNumber, int completedPages, int totalPages, int dpi, float confidence);
+    }
+
+    public static final ProgressListener LOGGING_LISTENER = (page, completed, total, dpi, confidence) ->
+            log.info("Page {} traitée ({}/{}) - DPI : {}, confiance : {}", page, completed, total, dpi, confidence);
+
+    private final int defaultDpi;
+    private final int highDpi;
+    private final float minConfidence;
+    private final ExecutorService executor;
+    private final ThreadLocal<Tesseract> engines = ThreadLocal.withInitial(this::newEngine);
+
+    public OcrPipelineService(@Value("${ocr.dpi.default:300}") int defaultDpi,
+                              @Value("${ocr.dpi.high:600}") int highDpi,
+                              @Value("${ocr.confidence.min:70}") float minConfidence,
+                              @Value("${ocr.pipeline.threads:0}") int threads) {
+        this.defaultDpi = defaultDpi;
+        this.highDpi = highDpi;
+        this.minConfidence = minConfidence;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread t = new Thread(r, "ocr-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        log.info("Pipeline OCR initialisé - workers : {}, DPI : {}/{}, confiance min : {}",
+                poolSize, defaultDpi, highDpi, minConfidence);
+    }
+
+    /**
+     * Effectue l'OCR de toutes les pages d'un PDF. Le rendu est sérialisé (PDFBox n'est pas
+     * thread-safe sur un même document) tandis que la reconnaissance s'exécute en parallèle ;
+     * au plus une image par worker est donc en mémoire à un instant donné.
+     */
+    public String extractPdf(PDDocument pdfDocument, boolean removeBlankPages, ProgressListener listener)
+            throws IOException, TesseractException {
+        checkTessdata();
+        int totalPages = pdfDocument.getNumberOfPages();
+        PDFRenderer renderer = new PDFRenderer(pdfDocument);
+        ProgressListener progress = listener != null ? listener : LOGGING_LISTENER;
+        AtomicInteger completed = new AtomicInteger();
+        log.info("Traitement PDF - Pages : {}", totalPages);
+
+        CompletionService<PageResult> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<PageResult>, Integer> pages = new HashMap<>();
+        for (int page = 0; page < totalPages; page++) {
+            final int pageIndex = page;
+            pages.put(completion.submit(() -> ocrPage(renderer, pageIndex, removeBlankPages)), pageIndex);
+        }
+
+        String[] pageTexts = new String[totalPages];
+        boolean anyContent = false;
+        try {
+            for (int i = 0; i < totalPages; i++) {
+                Future<PageResult> done = completion.take();
+                int pageIndex = pages.get(done);
+                PageResult result;
+                try {
+                    result = done.get();
+                } catch (ExecutionException e) {
+                    // Une page illisible n'interrompt pas le document
+                    log.warn("Erreur OCR sur la page {}, ignorée : {}", pageIndex + 1, e.getCause().getMessage());
+                    result = new PageResult(pageIndex, null, defaultDpi, 0f, true);
+                }
+                if (!result.blank()) {
+                    anyContent = true;
+                }
+                pageTexts[pageIndex] = result.text();
+                progress.onPage(pageIndex + 1, completed.incrementAndGet(), totalPages,
+                        result.dpi(), result.confidence());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Traitement OCR interrompu", e);
+        } finally {
+            // Interruption ou erreur de l'appelant : les pages restantes ne sont pas traitées pour rien
+            pages.keySet().forEach(future -> future.cancel(true));
+        }
+
+        if (!anyContent) {
+            log.error("Aucune page valide trouvée dans le PDF");
+            throw new IOException("Aucune page avec du contenu détecté.");
+        }
+
+        StringBuilder textBuilder = new StringBuilder();
+        for (String pageText : pageTexts) {
+            if (pageText != null && !pageText.trim().isEmpty()) {
+                textBuilder.append(pageText).append("\n");
+            }
+        }
+        return textBuilder.toString();
+    }
+
+    /**
+     * Effectue l'OCR d'une image isolée sur le pool de workers.
+     */
+    public String extractImage(BufferedImage image) throws IOException, TesseractException {
+        checkTessdata();
+        try {
+            return executor.submit(() -> engines.get().doOCR(image)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Traitement OCR interrompu", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TesseractException te) {
+                throw te;
+            }
+            throw new IOException("Erreur OCR : " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private PageResult ocrPage(PDFRenderer renderer, int pageIndex, boolean removeBlankPages) throws IOException {
+        BufferedImage image = render(renderer, pageIndex, defaultDpi);
+        if (image == null) {
+            log.warn("Page {} non rendue, ignorée", pageIndex + 1);
+            return new PageResult(pageIndex, null, defaultDpi, 0f, true);
+        }
+        if (removeBlankPages && isBlankPage(image)) {
+            return new PageResult(pageIndex, null, defaultDpi, 0f, true);
+        }
+
+        PageResult result = recognize(image, pageIndex, defaultDpi);
+        image = null;
+        if (result.confidence() < minConfidence && highDpi > defaultDpi) {
+            log.info("Page {} - confiance {} insuffisante, nouveau rendu à {} DPI",
+                    pageIndex + 1, result.confidence(), highDpi);
+            BufferedImage highRes = render(renderer, pageIndex, highDpi);
+            if (highRes != null) {
+                PageResult retry = recognize(highRes, pageIndex, highDpi);
+                if (retry.confidence() >= result.confidence()) {
+                    result = retry;
+                }
+            }
+        }
+        return result;
+    }
+
+    private BufferedImage render(PDFRenderer renderer, int pageIndex, int dpi) throws IOException {
+        synchronized (renderer) {
+            return renderer.renderImageWithDPI(pageIndex, dpi, ImageType.GRAY);
+        }
+    }
+
+    private PageResult recognize(BufferedImage image, int pageIndex, int dpi) {
+        List<Word> lines = engines.get().getWords(image, ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE);
+        StringBuilder text = new StringBuilder();
+        float confidenceSum = 0f;
+        for (Word line : lines) {
+            text.append(line.getText().trim()).append('\n');
+            confidenceSum += line.getConfidence();
+        }
+        float confidence = lines.isEmpty() ? 0f : confidenceSum / lines.size();
+        if (text.toString().trim().isEmpty()) {
+            log.warn("Aucun texte extrait de la page {}", pageIndex + 1);
+        }
+        return new PageResult(pageIndex, text.toString(), dpi, confidence, false);
+    }
+
+    private boolean isBlankPage(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int whitePixelCount = 0;
+        int totalPixels = width * height;
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int rgb = image.getRGB(x, y);
+                if (rgb == -1 || (Math.abs((rgb & 0xFF) - 255) < 10
+                        && Math.abs(((rgb >> 8) & 0xFF) - 255) < 10
+                        && Math.abs(((rgb >> 16) & 0xFF) - 255) < 10)) {
+                    whitePixelCount++;
+                }
+            }
+        }
+        return whitePixelCount > totalPixels * 0.98;
+    }
+
+    private Tesseract newEngine() {
+        Tesseract tesseract = new Tesseract();
+        tesseract.setDatapath(TESSDATA_PATH);
+        tesseract.setLanguage("eng");
+        log.info("Moteur Tesseract créé pour {}", Thread.currentThread().getName());
+        return tesseract;
+    }
+
+    private void checkTessdata() throws TesseractException {
+        if (!new File(TESSDATA_PATH).exists()) {
+            log.error("Dossier tessdata introuvable : {}", TESSDATA_PATH);
+            throw new TesseractException("Chemin tessdata invalide : " + TESSDATA_PATH);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record PageResult(int pageIndex, String text, int dpi, float confidence, boolean blank) {
+    }
+}
@@ -2,10 +2,14 @@ package tn.esprit.examen.nomPrenomClasseExamen.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.util.List;
@@ -13,11 +17,18 @@ import java.util.List;
 @Service
 public class OpenAIService {
 
+    // Événements des réponses diffusées en Server-Sent Events
+    static final String EVENT_TOKEN = "token";
+    static final String EVENT_DONE = "done";
+    static final String EVENT_ERROR = "error";
+
     private final ChatModel chatModel;
+    private final LlmResponseCache responseCache;
 
     @Autowired
-    public OpenAIService(OpenAiChatModel chatModel) {
+    public OpenAIService(OpenAiChatModel chatModel, LlmResponseCache responseCache) {
         this.chatModel = chatModel;
+        this.responseCache = responseCache;
     }
     public String suggestTechnologies(String projectType, String description, String deadline, List<String> requirements) {
         // Join requirements into a single string with newlines
@@ -44,29 +55,100 @@ public class OpenAIService {
         );
 
 
-        // Create the prompt for the language model
-        Prompt prompt = new Prompt(promptText);
+        // Réponse mise en cache : un prompt identique ne relance pas le modèle
+        return responseCache.getOrCompute("openai.technologies", promptText, () -> {
+            // Create the prompt for the language model
+            Prompt prompt = new Prompt(promptText);
 
-        // Call the language model
-        var chatResponse = chatModel.call(prompt);
+            // Call the language model
+            var chatResponse = chatModel.call(prompt);
 
-        // Extract the response text
-        String responseText = chatResponse.getResults().get(0).getOutput().getText();
+            // Extract the response text
+            String responseText = chatResponse.getResults().get(0).getOutput().getText();
 
-        // Clean the response (remove any Markdown or extra formatting)
-        String cleanedResponse = responseText.replaceAll("```json|```", "").trim();
+            // Clean the response (remove any Markdown or extra formatting)
+            String cleanedResponse = responseText.replaceAll("```json|```", "").trim();
 
-        // Validate that the response is valid JSON
-        try {
-            new ObjectMapper().readTree(cleanedResponse);
-            return cleanedResponse;
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Invalid or malformed response from language model: " + responseText, e);
-        }
+            // Validate that the response is valid JSON
+            try {
+                new ObjectMapper().readTree(cleanedResponse);
+                return cleanedResponse;
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Invalid or malformed response from language model: " + responseText, e);
+            }
+        });
     }
     public String suggestBugFixing(String bugDescription, String status, String priority) {
+        String promptText = bugFixingPrompt(bugDescription, status, priority);
+
+
+        return responseCache.getOrCompute("openai.bugfix", promptText, () -> {
+            // Créer le prompt pour OpenAI
+            Prompt prompt = new Prompt(promptText);
+
+            // Exécuter la requête OpenAI et récupérer la réponse
+            var chatResponse = chatModel.call(prompt);
+
+            // Extraire la réponse sous forme de texte
+            String responseText = chatResponse.getResults().get(0).getOutput().getText();
+
+            // Nettoyer la réponse pour enlever les balises Markdown
+            String cleanedResponse = responseText.replaceAll("```json|```", "").trim();
+
+            // Vérifier si la réponse nettoyée est un JSON valide
+            try {
+                new ObjectMapper().readTree(cleanedResponse);  // Utilise Jackson pour valider le JSON
+                return cleanedResponse;
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Réponse OpenAI invalide ou mal formatée : " + responseText);
+            }
+        });
+    }
+
+
+
+
+    public String suggestPhases(String projectType, String description, List<String> requirements, List<String> processes) {
+        String promptText = phasesPrompt(projectType, description, requirements, processes);
+
+        return responseCache.getOrCompute("openai.phases", promptText, () -> {
+            // Create the prompt for the language model
+            Prompt prompt = new Prompt(promptText);
+
+            // Call the language model
+            var chatResponse = chatModel.call(prompt);
+
+            // Extract the response text
+            String responseText = chatResponse.getResults().get(0).getOutput().getText();
+
+            // Clean the response (remove any Markdown or extra formatting)
+            String cleanedResponse = responseText.replaceAll("```json|```", "").trim();
+
+            // Validate that the response is valid JSON
+            try {
+                new ObjectMapper().readTree(cleanedResponse);
+                return cleanedResponse;
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Invalid or malformed response from language model: " + responseText, e);
+            }
+        });
+    }
+
+    /**
+     * Version diffusée de {@link #suggestBugFixing} : les fragments arrivent au fil de la génération,
+     * puis un événement "done" porte le JSON complet validé (ou "error").
+     */
+    public Flux<ServerSentEvent<String>> streamBugFixing(String bugDescription, String status, String priority) {
+        return streamJson("openai.bugfix", bugFixingPrompt(bugDescription, status, priority));
+    }
+
+    public Flux<ServerSentEvent<String>> streamPhases(String projectType, String description, List<String> requirements, List<String> processes) {
+        return streamJson("openai.phases", phasesPrompt(projectType, description, requirements, processes));
+    }
+
+    private static String bugFixingPrompt(String bugDescription, String status, String priority) {
         // Construct the detailed prompt for AI-powered bug detection and fixing
-        String promptText = String.format(
+        return String.format(
                 "AI-Powered Bug Detection & Fixing\n" +
                         "This system analyzes code errors. It detects syntax, logic, and performance issues, classifies them, and suggests corrections with explanations. It provides automated debugging to help developers fix issues faster and improve code quality.\n\n" +
                         "🔹 Inputs:\n" +
@@ -89,39 +171,15 @@ public class OpenAIService {
                         "Please ensure that the response includes all three keys and is formatted correctly.",
                 bugDescription, status, priority
         );
-
-
-        // Créer le prompt pour OpenAI
-        Prompt prompt = new Prompt(promptText);
-
-        // Exécuter la requête OpenAI et récupérer la réponse
-        var chatResponse = chatModel.call(prompt);
-
-        // Extraire la réponse sous forme de texte
-        String responseText = chatResponse.getResults().get(0).getOutput().getText();
-
-        // Nettoyer la réponse pour enlever les balises Markdown
-        String cleanedResponse = responseText.replaceAll("```json|```", "").trim();
-
-        // Vérifier si la réponse nettoyée est un JSON valide
-        try {
-            new ObjectMapper().readTree(cleanedResponse);  // Utilise Jackson pour valider le JSON
-            return cleanedResponse;
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Réponse OpenAI invalide ou mal formatée : " + responseText);
-        }
     }
 
-
-
-
-    public String suggestPhases(String projectType, String description, List<String> requirements, List<String> processes) {
+    private static String phasesPrompt(String projectType, String description, List<String> requirements, List<String> processes) {
         // Join requirements and processes into single strings with newlines
         String requirementsText = String.join("\n", requirements);
         String processesText = String.join("\n", processes);
 
         // Craft the prompt for the language model
-        String promptText = String.format(
+        return String.format(
                 "I am working on a project of type '%s' with the following description: '%s'. " +
                         "The project requirements are:\n%s\n" +
                         "The project involves the following processes:\n%s\n" +
@@ -134,27 +192,39 @@ public class OpenAIService {
                         "The response must contain only valid JSON, with no explanations, comments, or Markdown formatting.",
                 projectType, description, requirementsText, processesText
         );
+    }
 
-        // Create the prompt for the language model
-        Prompt prompt = new Prompt(promptText);
-
-        // Call the language model
-        var chatResponse = chatModel.call(prompt);
-
-        // Extract the response text
-        String responseText = chatResponse.getResults().get(0).getOutput().getText();
-
-        // Clean the response (remove any Markdown or extra formatting)
-        String cleanedResponse = responseText.replaceAll("```json|```", "").trim();
-
-        // Validate that the response is valid JSON
-        try {
-            new ObjectMapper().readTree(cleanedResponse);
-            return cleanedResponse;
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Invalid or malformed response from language model: " + responseText, e);
+    // Partagé avec les appels non diffusés : une réponse déjà obtenue est renvoyée d'un bloc
+    private Flux<ServerSentEvent<String>> streamJson(String namespace, String promptText) {
+        String cached = responseCache.peek(namespace, promptText);
+        if (cached != null) {
+            return Flux.just(event(EVENT_DONE, cached));
         }
+        return Flux.defer(() -> {
+            StringBuilder text = new StringBuilder();
+            return chatModel.stream(new Prompt(promptText))
+                    .mapNotNull(OpenAIService::token)
+                    .doOnNext(text::append)
+                    .map(token -> event(EVENT_TOKEN, token))
+                    .concatWith(Mono.fromCallable(() -> {
+                        String json = text.toString().replaceAll("```json|```", "").trim();
+                        new ObjectMapper().readTree(json);
+                        responseCache.put(namespace, promptText, json);
+                        return event(EVENT_DONE, json);
+                    }))
+                    .onErrorResume(e -> Flux.just(event(EVENT_ERROR, "Invalid or failed response from language model: " + e.getMessage())));
+        });
     }
 
+    private static String token(ChatResponse response) {
+        if (response.getResult() == null || response.getResult().getOutput() == null) {
+            return null;
+        }
+        String text = response.getResult().getOutput().getText();
+        return text == null || text.isEmpty() ? null : text;
+    }
 
+    static ServerSentEvent<String> event(String name, String data) {
+        return ServerSentEvent.builder(data).event(name).build();
+    }
 }
@@ -0,0 +1,318 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Client HTTP sortant partagé par les appels aux services externes (Gemini, OpenRouter, FastAPI).
+ * <p>
+ * Les connexions keep-alive sont mutualisées dans un pool unique. Chaque service amont ("upstream")
+ * a ses propres délais, un nombre maximal d'appels simultanés (bulkhead), un disjoncteur et une
+ * politique de nouvelle tentative, configurables sous {@code outbound.<upstream>.*}. Les URL
+ * appelées restant configurables côté services, un serveur bouchon local peut les remplacer en test.
+ */
+@Service
+public class OutboundHttpService {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundHttpService.class);
+    private static final String METRIC_NAME = "outbound.requests";
+
+    /**
+     * Levée lorsque l'appel est refusé sans être émis : disjoncteur ouvert ou bulkhead saturé.
+     */
+    public static class UpstreamUnavailableException extends ResourceAccessException {
+        public UpstreamUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final Map<String, Upstream> upstreams = new ConcurrentHashMap<>();
+
+    public OutboundHttpService(Environment environment,
+                               ObjectProvider<MeterRegistry> meterRegistry,
+                               @Value("${outbound.pool.max-total:100}") int maxTotal,
+                               @Value("${outbound.pool.max-per-route:20}") int maxPerRoute,
+                               @Value("${outbound.connect-timeout-ms:3000}") long connectTimeoutMs) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .build())
+                .build();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                // Les nouvelles tentatives sont gérées ici, par upstream
+                .disableAutomaticRetries()
+                .build();
+        log.info("Client HTTP sortant initialisé - pool : {} connexions ({} par hôte)", maxTotal, maxPerRoute);
+    }
+
+    /**
+     * Exécute un appel vers {@code upstream} en lui appliquant bulkhead, disjoncteur, nouvelles
+     * tentatives et mesures. {@code endpoint} ne sert qu'à étiqueter les métriques.
+     */
+    public <T> T execute(String upstream, String endpoint, Function<RestTemplate, T> call) {
+        Upstream target = upstreams.computeIfAbsent(upstream, this::createUpstream);
+        if (!target.breaker.tryAcquire()) {
+            record(upstream, endpoint, "short_circuited", 0);
+            throw new UpstreamUnavailableException("Service " + upstream + " temporairement indisponible (disjoncteur ouvert)");
+        }
+        boolean permitted;
+        try {
+            permitted = target.bulkhead.tryAcquire(target.maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            target.breaker.release();
+            throw new UpstreamUnavailableException("Appel à " + upstream + " interrompu");
+        }
+        if (!permitted) {
+            target.breaker.release();
+            record(upstream, endpoint, "rejected", 0);
+            throw new UpstreamUnavailableException("Trop d'appels simultanés vers " + upstream);
+        }
+        try {
+            return executeWithRetry(target, upstream, endpoint, call);
+        } finally {
+            target.bulkhead.release();
+        }
+    }
+
+    private <T> T executeWithRetry(Upstream target, String upstream, String endpoint, Function<RestTemplate, T> call) {
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                T result = call.apply(target.restTemplate);
+                record(upstream, endpoint, "success", System.nanoTime() - start);
+                target.breaker.onSuccess();
+                return result;
+            } catch (RuntimeException e) {
+                record(upstream, endpoint, "error", System.nanoTime() - start);
+                if (!isUpstreamFailure(e)) {
+                    // Erreur client (4xx) : le service répond, le disjoncteur n'a pas à s'ouvrir
+                    target.breaker.onSuccess();
+                    throw e;
+                }
+                if (attempt >= target.maxAttempts) {
+                    target.breaker.onFailure();
+                    throw e;
+                }
+                long delay = backoff(target.backoffMs, attempt);
+                log.warn("Appel {} {} en échec (tentative {}/{}) : {} - nouvel essai dans {} ms",
+                        upstream, endpoint, attempt, target.maxAttempts, e.getMessage(), delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    target.breaker.onFailure();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // Erreurs réseau, délais dépassés, 5xx et 429 ; les autres erreurs HTTP ne sont pas rejouées
+    private static boolean isUpstreamFailure(RuntimeException e) {
+        if (e instanceof ResourceAccessException) {
+            return true;
+        }
+        if (e instanceof HttpStatusCodeException status) {
+            return status.getStatusCode().is5xxServerError() || status.getStatusCode().value() == 429;
+        }
+        return false;
+    }
+
+    // Backoff exponentiel avec gigue
+    private static long backoff(long baseMs, int attempt) {
+        long delay = baseMs << Math.min(attempt - 1, 6);
+        return delay + ThreadLocalRandom.current().nextLong(baseMs + 1);
+    }
+
+    private void record(String upstream, String endpoint, String outcome, long nanos) {
+        Timer.builder(METRIC_NAME)
+                .tag("upstream", upstream)
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * État courant de chaque upstream et latences par endpoint, pour la supervision.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new TreeMap<>();
+        upstreams.forEach((name, upstream) -> {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("circuit", upstream.breaker.state());
+            status.put("inFlight", upstream.maxConcurrent - upstream.bulkhead.availablePermits());
+            status.put("maxConcurrent", upstream.maxConcurrent);
+            Map<String, Object> endpoints = new TreeMap<>();
+            for (Timer timer : meterRegistry.find(METRIC_NAME).tag("upstream", name).timers()) {
+                String key = timer.getId().getTag("endpoint") + "/" + timer.getId().getTag("outcome");
+                endpoints.put(key, Map.of(
+                        "count", timer.count(),
+                        "meanMs", timer.mean(TimeUnit.MILLISECONDS),
+                        "maxMs", timer.max(TimeUnit.MILLISECONDS)));
+            }
+            status.put("endpoints", endpoints);
+            result.put(name, status);
+        });
+        return result;
+    }
+
+    private Upstream createUpstream(String name) {
+        String prefix = "outbound." + name + ".";
+        long responseTimeoutMs = property(prefix + "response-timeout-ms", 30000L);
+        long poolTimeoutMs = property(prefix + "pool-timeout-ms", 2000L);
+        int maxConcurrent = property(prefix + "max-concurrent", 10).intValue();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeoutMs))
+                .build();
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        factory.setHttpContextFactory((method, uri) -> {
+            HttpClientContext context = HttpClientContext.create();
+            context.setRequestConfig(requestConfig);
+            return context;
+        });
+
+        Upstream upstream = new Upstream(
+                new RestTemplate(factory),
+                new Semaphore(maxConcurrent, true),
+                maxConcurrent,
+                property(prefix + "max-wait-ms", 200L),
+                property(prefix + "max-attempts", 2).intValue(),
+                property(prefix + "backoff-ms", 300L),
+                new CircuitBreaker(name,
+                        property(prefix + "failure-threshold", 5).intValue(),
+                        property(prefix + "open-ms", 30000L)));
+        log.info("Upstream {} - délai de réponse : {} ms, appels simultanés : {}, tentatives : {}",
+                name, responseTimeoutMs, maxConcurrent, upstream.maxAttempts);
+        return upstream;
+    }
+
+    private Long property(String key, long defaultValue) {
+        return environment.getProperty(key, Long.class, defaultValue);
+    }
+
+    private Integer property(String key, int defaultValue) {
+        return environment.getProperty(key, Integer.class, defaultValue);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        httpClient.close();
+        connectionManager.close();
+    }
+
+    private record Upstream(RestTemplate restTemplate, Semaphore bulkhead, int maxConcurrent, long maxWaitMs,
+                            int maxAttempts, long backoffMs, CircuitBreaker breaker) {
+    }
+
+    /**
+     * Disjoncteur à compteur d'échecs consécutifs : ouvert après {@code failureThreshold} échecs,
+     * il laisse passer un unique appel d'essai une fois {@code openMs} écoulé.
+     */
+    private static final class CircuitBreaker {
+        private enum State { CLOSED, OPEN, HALF_OPEN }
+
+        private final String name;
+        private final int failureThreshold;
+        private final long openMs;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        CircuitBreaker(String name, int failureThreshold, long openMs) {
+            this.name = name;
+            this.failureThreshold = failureThreshold;
+            this.openMs = openMs;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMs) {
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            }
+            return state == State.CLOSED;
+        }
+
+        // Autorisation rendue sans qu'un appel ait eu lieu (bulkhead saturé)
+        synchronized void release() {
+            trialInFlight = false;
+        }
+
+        synchronized void onSuccess() {
+            if (state != State.CLOSED) {
+                log.info("Disjoncteur {} refermé", name);
+            }
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+
+        synchronized void onFailure() {
+            consecutiveFailures++;
+            trialInFlight = false;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                if (state != State.OPEN) {
+                    log.warn("Disjoncteur {} ouvert après {} échec(s) consécutif(s)", name, consecutiveFailures);
+                }
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+            }
+        }
+
+        synchronized String state() {
+            return state.name();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ProjectDurationFeatures;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.ProjectDurationPredictionDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.exceptions.EntityNotFoundException;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.ProjectRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Prédiction de la durée d'un projet par le modèle random forest, évalué dans la JVM.
+ * Le modèle est chargé une fois au démarrage ; les variables d'entrée de tous les projets
+ * sont lues en une requête, ce qui rend la prévision du portefeuille complet peu coûteuse.
+ */
+@Slf4j
+@Service
+public class ProjectDurationService implements IProjectDurationService {
+
+    private final ProjectRepository projectRepository;
+    private final Resource modelResource;
+    private final ObjectMapper objectMapper;
+    private volatile TreeEnsembleModel model;
+
+    public ProjectDurationService(ProjectRepository projectRepository,
+                                  ObjectMapper objectMapper,
+                                  @Value("${projects.duration-model:classpath:ml/project-duration-model.json}") Resource modelResource) {
+        this.projectRepository = projectRepository;
+        this.objectMapper = objectMapper;
+        this.modelResource = modelResource;
+    }
+
+    @PostConstruct
+    public void loadModel() {
+        if (!modelResource.exists()) {
+            log.warn("Modèle de durée des projets introuvable ({}) : exporter random_forest_model.pkl avec ml/export_duration_model.py",
+                    modelResource.getDescription());
+            return;
+        }
+        try (InputStream in = modelResource.getInputStream()) {
+            model = TreeEnsembleModel.read(in, objectMapper);
+            log.info("Modèle de durée des projets chargé : {} arbres, {} variables", model.treeCount(), model.featureCount());
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Chargement du modèle de durée des projets impossible : {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public double predict(String projectType, int resources, int employees, int technologies, int tasks) {
+        TreeEnsembleModel current = requireModel();
+        int encodedType = current.encodeCategory(projectType);
+        if (encodedType < 0) {
+            throw new IllegalArgumentException("Type de projet non reconnu : " + projectType);
+        }
+        // Même ordre que le script d'entraînement : ressources, équipe, technologies, tâches, type
+        return current.predict(new double[]{resources, employees, technologies, tasks, encodedType});
+    }
+
+    @Override
+    public double predict(Long projectId) {
+        ProjectDurationFeatures features = projectRepository.findDurationFeatures(List.of(projectId)).stream()
+                .findFirst()
+                .orElseThrow(() -> new EntityNotFoundException("Project not found with id: " + projectId));
+        return predict(features);
+    }
+
+    @Override
+    public List<ProjectDurationPredictionDTO> predictAll() {
+        requireModel();
+        return projectRepository.findAllDurationFeatures().stream()
+                .map(f -> {
+                    Double duration = null;
+                    try {
+                        duration = predict(f);
+                    } catch (IllegalArgumentException e) {
+                        log.debug("Projet {} ignoré : {}", f.getProjectId(), e.getMessage());
+                    }
+                    return new ProjectDurationPredictionDTO(f.getProjectId(), f.getProjectType(), duration);
+                })
+                .toList();
+    }
+
+    private double predict(ProjectDurationFeatures f) {
+        return predict(f.getProjectType(), f.getResources(), f.getEmployees(), f.getTechnologies(), f.getTasks());
+    }
+
+    private TreeEnsembleModel requireModel() {
+        TreeEnsembleModel current = model;
+        if (current == null) {
+            throw new IllegalStateException("Modèle de prédiction de durée indisponible.");
+        }
+        return current;
+    }
+}
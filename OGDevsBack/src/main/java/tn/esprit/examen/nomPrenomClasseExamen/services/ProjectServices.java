@@ -28,6 +28,7 @@ public class ProjectServices implements IProjectServices {
     private  final ProjectTaskRepository projectTaskRepository;
     private final BugRepository bugRepository;
     private final ResourceRepository resourceRepository;
+    private final ProjectProgressRepository projectProgressRepository;
 
     @Value("${file.upload-dir}/logoprojects")
     private String uploadDir;
@@ -188,7 +189,10 @@ public class ProjectServices implements IProjectServices {
                 project.getProcesses().clear(); // Dissocier tous les processus liés
             }
 
-            // Supprimer le projet
+            // Supprimer le projet et ses compteurs de tâches
+            if (projectProgressRepository.existsById(id)) {
+                projectProgressRepository.deleteById(id);
+            }
             projectRepository.delete(project);
         }
     }
@@ -218,6 +222,7 @@ public class ProjectServices implements IProjectServices {
 
 
     @Override
+    @Transactional
     public ProjectOppDTO createprojectoperation(ProjectOpp projectOperation, Long idpdhase, Long idoperation) {
         // Trouver la phase correspondante par son ID
         Phase phase = phaseRepository.findById(idpdhase).orElseThrow(() -> new RuntimeException("Phase non trouvée"));
@@ -257,6 +262,11 @@ public class ProjectServices implements IProjectServices {
         // Sauvegarder l'opération du projet dans la base de données
         projectOperation = projectOperationRepository.save(projectOperation);  // Cela persistera les ProjectTasks grâce au cascade
 
+        // Les nouvelles tâches sont "To Do" : elles s'ajoutent aux tâches ouvertes du projet
+        if (phase.getProject() != null) {
+            adjustProgress(phase.getProject().getIdProjet(), projectTasks.size(), projectTasks.size());
+        }
+
         // Retourner le DTO de l'opportunité de projet après création
         return new ProjectOppDTO(projectOperation); // Retourne le ProjectOppDTO
     }
@@ -377,8 +387,8 @@ public class ProjectServices implements IProjectServices {
     @Transactional
     @Override
     public void deleteProjectOperation(Long id) {
-        // Récupérer toutes les phases
-        List<Phase> allPhases = phaseRepository.findAll();
+        // Phases contenant cette opération
+        List<Phase> phases = phaseRepository.findByProjectOperationId(id);
 
         // Trouver l'opération de projet par ID
         ProjectOpp projectOperation = projectOperationRepository.findById(id).orElse(null);
@@ -391,6 +401,7 @@ public class ProjectServices implements IProjectServices {
 
             // Supprimer toutes les tâches associées à cette opération de projet
             Set<ProjectTask> tasksToDelete = new HashSet<>(projectOperation.getProjecttasks());
+            long openTasks = tasksToDelete.stream().filter(task -> !isDone(task.getStatus())).count();
             for (ProjectTask task : tasksToDelete) {
                 task.setProjectOpp(null); // Déassocier la tâche de l'opération de projet
                 // Marquer la tâche comme supprimée ou à l'état "Deleted"
@@ -398,13 +409,11 @@ public class ProjectServices implements IProjectServices {
                 projectTaskRepository.delete(task);
             }
 
-            // Parcourir toutes les phases et supprimer la relation avec cette opération de projet
-            for (Phase phase : allPhases) {
-                for (ProjectOpp phaseProjectOpp : phase.getProjectOperations()) {
-                    if (phaseProjectOpp.equals(projectOperation)) {
-                        phase.getProjectOperations().remove(phaseProjectOpp);
-                        break; // Sortir de la boucle dès que l'élément est trouvé
-                    }
+            // Supprimer la relation entre les phases et cette opération de projet
+            for (Phase phase : phases) {
+                phase.getProjectOperations().remove(projectOperation);
+                if (phase.getProject() != null) {
+                    adjustProgress(phase.getProject().getIdProjet(), -openTasks, -tasksToDelete.size());
                 }
             }
 
@@ -467,10 +476,12 @@ public class ProjectServices implements IProjectServices {
                 .collect(Collectors.toList());
     }
     @Override
+    @Transactional
     public ProjectTask updateTask(Long idTask, String newStatus) {
         ProjectTask projectTask = projectTaskRepository.findById(idTask).orElseThrow(
                 () -> new RuntimeException("Task not found with id " + idTask)
         );
+        boolean wasDone = isDone(projectTask.getStatus());
 
         // Met à jour le statut de la tâche
         projectTask.setStatus(newStatus);
@@ -482,52 +493,44 @@ public class ProjectServices implements IProjectServices {
         }
         projectTaskRepository.save(projectTask);
 
-        // Vérifie si la tâche est bien "Done"
-        if (!"Done".equalsIgnoreCase(newStatus)) {
-            return projectTask; // Pas besoin de continuer si la tâche n'est pas Done
-        }
-
-        // Recherche du projet contenant cette tâche
-        List<Project> projects = projectRepository.findAll();
-        for (Project p : projects) {
-            for (Phase ph : p.getPhases()) {
-                for (ProjectOpp po : ph.getProjectOperations()) {
-                    for (ProjectTask t : po.getProjecttasks()) {
-                        if (t.getId().equals(idTask)) {
-                            // Vérifier que toutes les tâches du projet sont Done
-                            boolean allTasksDone = true;
-
-                            for (Phase phase : p.getPhases()) {
-                                for (ProjectOpp opp : phase.getProjectOperations()) {
-                                    for (ProjectTask task : opp.getProjecttasks()) {
-                                        if (!task.getId().equals(idTask) &&
-                                                !"Done".equalsIgnoreCase(task.getStatus())) {
-                                            allTasksDone = false;
-                                            break;
-                                        }
-                                    }
-                                    if (!allTasksDone) break;
-                                }
-                                if (!allTasksDone) break;
-                            }
-
-                            // Si toutes les autres tâches + celle-ci sont Done → mettre à jour la date de fin
-                            if (allTasksDone) {
-                                p.setActual_endDate(LocalDate.now());
-                                projectRepository.save(p);
-                            }
-
-                            return projectTask;
-                        }
-                    }
-                }
-            }
+        boolean done = isDone(newStatus);
+        if (wasDone == done) {
+            return projectTask; // Le nombre de tâches ouvertes du projet ne change pas
+        }
+
+        // Projet contenant cette tâche
+        Project p = projectRepository.findByProjectTaskId(idTask).orElse(null);
+        if (p == null) {
+            return projectTask;
+        }
+
+        // Si toutes les tâches du projet sont Done → mettre à jour la date de fin
+        long openTasks = adjustProgress(p.getIdProjet(), done ? -1 : 1, 0);
+        if (done && openTasks == 0) {
+            p.setActual_endDate(LocalDate.now());
+            projectRepository.save(p);
         }
 
         return projectTask;
     }
 
+    private static boolean isDone(String status) {
+        return "Done".equalsIgnoreCase(status);
+    }
 
+    /**
+     * Applique une variation aux compteurs de tâches du projet et renvoie le nombre de tâches
+     * ouvertes. À la première modification d'un projet, les compteurs sont initialisés par
+     * comptage (l'état courant inclut déjà la variation).
+     */
+    private long adjustProgress(Long projectId, long openDelta, long totalDelta) {
+        if (projectProgressRepository.adjust(projectId, openDelta, totalDelta) == 0) {
+            ProjectProgress progress = new ProjectProgress(projectId,
+                    projectRepository.countOpenTasks(projectId), projectRepository.countTasks(projectId));
+            return projectProgressRepository.save(progress).getOpenTasks();
+        }
+        return projectProgressRepository.findOpenTasks(projectId);
+    }
 
 
 
@@ -580,20 +583,9 @@ public class ProjectServices implements IProjectServices {
 
     @Override
     public ProjectDTO getProjectbyprojectTask(Long idProjectTask) {
-        List<Project> allProjects = projectRepository.findAll();
-
-        for (Project project : allProjects) {
-            for (Phase phase : project.getPhases()) {
-                for (ProjectOpp po : phase.getProjectOperations()) {
-                    for (ProjectTask pt : po.getProjecttasks()) {
-                        if (pt.getId().equals(idProjectTask)) {
-                            return new ProjectDTO(project); // Utilisation directe du constructeur
-                        }
-                    }
-                }
-            }
-        }
-        return null; // ou throw new NotFoundException("Project not found for task ID: " + idProjectTask);
+        return projectRepository.findByProjectTaskId(idProjectTask)
+                .map(ProjectDTO::new)
+                .orElse(null); // ou throw new NotFoundException("Project not found for task ID: " + idProjectTask);
     }
 
     @Override
@@ -809,23 +801,9 @@ public class ProjectServices implements IProjectServices {
 
     @Override
     public ProjectDTO getProjectbyProjectopp(Long projectOppId) {
-        List<Project> projects = projectRepository.findAll();
-        Project preturned = null;
-
-        for (Project p : projects) {
-            for (Phase ph : p.getPhases()) {
-                for (ProjectOpp ppopp : ph.getProjectOperations()) {
-                    if (ppopp.getIdProjectOperation().equals(projectOppId)) {
-                        preturned = p;
-                        break;
-                    }
-                }
-                if (preturned != null) break;
-            }
-            if (preturned != null) break;
-        }
-
-        return preturned != null ? new ProjectDTO(preturned) : null;
+        return projectRepository.findByProjectOppId(projectOppId)
+                .map(ProjectDTO::new)
+                .orElse(null);
     }
 
 
@@ -934,19 +912,9 @@ public class ProjectServices implements IProjectServices {
         Bug existingBug = bugRepository.findById(idBug)
                 .orElseThrow(() -> new RuntimeException("Bug not found with ID: " + idBug));
 
-        // 2. Dissocier les bugs de leurs tasks
-        List<ProjectTask> tasks = projectTaskRepository.findAll();
-
-        // Supposons que `projectTaskRepository` est le repository des entités de type ProjectTask
-        for (ProjectTask task : tasks) {
-            // Utilisation d'un itérateur pour éviter ConcurrentModificationException si on modifie la collection
-            Iterator<Bug> iterator = task.getBugs().iterator();
-            while (iterator.hasNext()) {
-                Bug b = iterator.next();
-                if (b.equals(existingBug)) {
-                    iterator.remove();  // Enlever le bug de la liste des bugs de la task
-                }
-            }
+        // 2. Dissocier le bug des tasks qui le référencent
+        for (ProjectTask task : projectTaskRepository.findByBugId(idBug)) {
+            task.getBugs().removeIf(b -> b.getIdBug().equals(idBug));
             // Sauvegarder la task après la dissociation
             projectTaskRepository.save(task);
         }
@@ -0,0 +1,221 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.stereotype.Service;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Candidate;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.ResumeFeatures;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.ResumeFeaturesRepository;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Extraction et stockage des caractéristiques des CV. Le PDF n'est décodé et analysé
+ * qu'à la création ou à la modification du CV ; la notation travaille ensuite sur les
+ * phrases et les regroupements par critère enregistrés.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResumeFeatureService {
+
+    private static final Pattern EXPERIENCE_PATTERN = Pattern.compile("(\\d+)\\s*(an|annee|year|years)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final ResumeFeaturesRepository featuresRepository;
+    private final SemanticSimilarityEngine similarityEngine;
+
+    /**
+     * Met à jour les caractéristiques du CV du candidat si celui-ci a changé.
+     */
+    public ResumeFeatures refresh(Candidate candidate) {
+        if (candidate.getResume() == null || candidate.getResume().isBlank()) {
+            delete(candidate.getId());
+            return null;
+        }
+        String hash = sha256(candidate.getResume());
+        Optional<ResumeFeatures> existing = featuresRepository.findById(candidate.getId());
+        if (existing.isPresent() && hash.equals(existing.get().getResumeHash())) {
+            return existing.get();
+        }
+        return featuresRepository.save(extract(candidate.getId(), candidate.getResume(), hash));
+    }
+
+    /**
+     * Caractéristiques à jour des candidats ayant un CV ; les CV absents ou modifiés
+     * sont analysés en parallèle.
+     */
+    public Map<Long, ResumeFeatures> ensureFeatures(Collection<Candidate> candidates) {
+        Map<Long, String> resumes = new HashMap<>();
+        for (Candidate candidate : candidates) {
+            if (candidate.getResume() != null && !candidate.getResume().isBlank()) {
+                resumes.put(candidate.getId(), candidate.getResume());
+            }
+        }
+        Map<Long, ResumeFeatures> features = featuresRepository.findAllById(resumes.keySet()).stream()
+                .collect(Collectors.toMap(ResumeFeatures::getCandidateId, Function.identity()));
+
+        List<Map.Entry<Long, String>> toExtract = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        for (Map.Entry<Long, String> resume : resumes.entrySet()) {
+            String hash = sha256(resume.getValue());
+            ResumeFeatures current = features.get(resume.getKey());
+            if (current == null || !hash.equals(current.getResumeHash())) {
+                toExtract.add(resume);
+                hashes.add(hash);
+            }
+        }
+        if (!toExtract.isEmpty()) {
+            List<Integer> positions = IntStream.range(0, toExtract.size()).boxed().toList();
+            List<ResumeFeatures> extracted = similarityEngine.mapInParallel(positions,
+                    i -> extract(toExtract.get(i).getKey(), toExtract.get(i).getValue(), hashes.get(i)));
+            featuresRepository.saveAll(extracted).forEach(f -> features.put(f.getCandidateId(), f));
+            log.info("{} CV analysés pour la notation", extracted.size());
+        }
+        return features;
+    }
+
+    public void delete(Long candidateId) {
+        if (featuresRepository.existsById(candidateId)) {
+            featuresRepository.deleteById(candidateId);
+        }
+    }
+
+    public List<String> sentences(ResumeFeatures features) {
+        if (features.getSentences() == null || features.getSentences().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return List.of(features.getSentences().split("\n"));
+    }
+
+    /**
+     * Indices des phrases rattachées à chaque critère.
+     */
+    public Map<ScoringCriterion, int[]> buckets(ResumeFeatures features) {
+        String[] parts = Objects.requireNonNullElse(features.getKeywordBuckets(), "").split("\\|", -1);
+        Map<ScoringCriterion, int[]> buckets = new EnumMap<>(ScoringCriterion.class);
+        for (ScoringCriterion criterion : ScoringCriterion.values()) {
+            String part = criterion.ordinal() < parts.length ? parts[criterion.ordinal()] : "";
+            buckets.put(criterion, part.isEmpty()
+                    ? new int[0]
+                    : Arrays.stream(part.split(",")).mapToInt(Integer::parseInt).toArray());
+        }
+        return buckets;
+    }
+
+    /**
+     * Indices des phrases rattachées à chaque critère, pour un texte quelconque (une offre).
+     */
+    public Map<ScoringCriterion, int[]> buckets(List<String> sentences) {
+        Map<ScoringCriterion, int[]> buckets = new EnumMap<>(ScoringCriterion.class);
+        for (ScoringCriterion criterion : ScoringCriterion.values()) {
+            buckets.put(criterion, IntStream.range(0, sentences.size())
+                    .filter(i -> criterion.matches(sentences.get(i)))
+                    .toArray());
+        }
+        return buckets;
+    }
+
+    // Plus grand nombre d'années cité dans les phrases données
+    public int extractYears(List<String> sentences, int[] indices) {
+        int years = 0;
+        for (int i : indices) {
+            Matcher matcher = EXPERIENCE_PATTERN.matcher(sentences.get(i));
+            if (matcher.find()) {
+                years = Math.max(years, Integer.parseInt(matcher.group(1)));
+            }
+        }
+        return years;
+    }
+
+    private ResumeFeatures extract(Long candidateId, String resume, String hash) {
+        List<String> sentences = extractSentences(preprocessText(extractTextFromPDF(resume)));
+        if (sentences.isEmpty()) {
+            log.warn("No text extracted from resume for candidate {}", candidateId);
+        }
+        Map<ScoringCriterion, int[]> buckets = buckets(sentences);
+        int[] all = IntStream.range(0, sentences.size()).toArray();
+        String encodedBuckets = Arrays.stream(ScoringCriterion.values())
+                .map(c -> Arrays.stream(buckets.get(c)).mapToObj(String::valueOf).collect(Collectors.joining(",")))
+                .collect(Collectors.joining("|"));
+        return new ResumeFeatures(candidateId, hash, String.join("\n", sentences),
+                extractYears(sentences, buckets.get(ScoringCriterion.EXPERIENCE)), extractYears(sentences, all),
+                encodedBuckets, LocalDateTime.now());
+    }
+
+    // Extract text from a Base64-encoded PDF
+    private String extractTextFromPDF(String base64EncodedPDF) {
+        try {
+            if (base64EncodedPDF == null || base64EncodedPDF.trim().isEmpty()) {
+                log.warn("Base64-encoded PDF is null or empty");
+                return "";
+            }
+            String base64 = base64EncodedPDF.replace("data:application/pdf;base64,", "").trim();
+            byte[] decodedBytes = Base64.getDecoder().decode(base64);
+            ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(decodedBytes);
+            try (PDDocument document = PDDocument.load(byteArrayInputStream)) {
+                PDFTextStripper textStripper = new PDFTextStripper();
+                String text = textStripper.getText(document);
+                log.debug("Extracted PDF text: {}", text);
+                return text;
+            }
+        } catch (Exception e) {
+            log.error("Error extracting text from PDF: {}", e.getMessage(), e);
+            return "";
+        }
+    }
+
+    // Preprocess text
+    public String preprocessText(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = text.toLowerCase()
+                .replaceAll("[àáâãäå]", "a")
+                .replaceAll("[èéêë]", "e")
+                .replaceAll("[ìíîï]", "i")
+                .replaceAll("[òóôõö]", "o")
+                .replaceAll("[ùúûü]", "u")
+                .replaceAll("[ç]", "c")
+                .replaceAll("[^a-z0-9\\s\\.]", " ") // Keep periods for sentence splitting
+                .replaceAll("\\s+", " ")
+                .trim();
+        log.debug("Preprocessed text: {}", normalized);
+        return normalized;
+    }
+
+    // Extract relevant sentences
+    public List<String> extractSentences(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            log.warn("Text is empty; no sentences to extract");
+            return Collections.emptyList();
+        }
+        String[] sentences = text.split("[.!?]");
+        List<String> result = Arrays.stream(sentences)
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toList());
+        log.debug("Extracted sentences: {}", result);
+        return result;
+    }
+
+    static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import java.util.Arrays;
+
+/**
+ * Critères de notation d'un CV face à une offre, avec leur pondération et les mots-clés
+ * qui rattachent une phrase au critère.
+ */
+enum ScoringCriterion {
+    EXPERIENCE(0.35, "experience", "annee", "year"),
+    SKILLS(0.35, "competence", "creation", "developpement", "maille", "textile", "skill", "java", "python", "spring"),
+    TOOLS(0.20, "lectra", "tool", "software"),
+    QUALITIES(0.10, "creativite", "rigueur", "detail", "equipe", "delais", "team", "organized");
+
+    final double weight;
+    private final String[] keywords;
+
+    ScoringCriterion(double weight, String... keywords) {
+        this.weight = weight;
+        this.keywords = keywords;
+    }
+
+    boolean matches(String sentence) {
+        return Arrays.stream(keywords).anyMatch(sentence::contains);
+    }
+}
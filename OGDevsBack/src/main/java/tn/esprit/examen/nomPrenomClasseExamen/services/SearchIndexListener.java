@@ -0,0 +1,57 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Répercute les écritures JPA des entités indexées dans l'index plein texte.
+ * Le contenu est capturé immédiatement, mais n'est appliqué qu'après le commit
+ * afin qu'une transaction annulée ne laisse pas de trace dans l'index.
+ */
+@Component
+public class SearchIndexListener {
+
+    // Résolu paresseusement : le listener est instancié pendant la création de l'EntityManagerFactory
+    private final ObjectProvider<FullTextIndexService> indexService;
+
+    public SearchIndexListener(ObjectProvider<FullTextIndexService> indexService) {
+        this.indexService = indexService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Object entity) {
+        FullTextIndexService service = indexService.getObject();
+        FullTextIndexService.IndexEntry entry = service.toEntry(entity);
+        if (entry != null) {
+            afterCommit(() -> service.index(entry));
+        }
+    }
+
+    @PostRemove
+    public void onRemove(Object entity) {
+        FullTextIndexService service = indexService.getObject();
+        FullTextIndexService.IndexEntry entry = service.toEntry(entity);
+        if (entry != null) {
+            afterCommit(() -> service.delete(entry.type(), entry.id()));
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -1,7 +1,9 @@
 package tn.esprit.examen.nomPrenomClasseExamen.services;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.SearchPageDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.dto.SearchResultDTO;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Process;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Operation;
@@ -10,8 +12,10 @@ import tn.esprit.examen.nomPrenomClasseExamen.repositories.ProcessRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.OperationRepository;
 import tn.esprit.examen.nomPrenomClasseExamen.repositories.TaskRepository;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,60 +25,104 @@ public class SearchService implements ISearchService {
     private final ProcessRepository processRepository;
     private final OperationRepository operationRepository;
     private final TaskRepository taskRepository;
+    private final FullTextIndexService fullTextIndexService;
+
+    @Value("${search.max-results:200}")
+    private int maxResults;
 
     @Override
     public List<SearchResultDTO> searchAll(String query) {
         List<SearchResultDTO> results = new ArrayList<>();
 
         // Search Processes
-        List<Process> processes = processRepository.findByProcNameContainingIgnoreCaseOrDescriptionContainingIgnoreCase(query);
-        results.addAll(processes.stream().map(process -> {
-            SearchResultDTO dto = new SearchResultDTO();
-            dto.setEntityType("Process");
-            dto.setId(process.getId());
-            dto.setDisplayName(process.getProcName());
-            dto.setDescription(process.getDescription());
-            if (process.getPilote() != null) {
-                dto.setPiloteName(process.getPilote().getUsername());
-            }
-            return dto;
-        }).collect(Collectors.toList()));
+        results.addAll(findRanked(query, FullTextIndexService.TYPE_PROCESS, processRepository::findAllById, Process::getId)
+                .stream().map(this::toResult).collect(Collectors.toList()));
 
         // Search Operations
-        List<Operation> operations = operationRepository.findByOperationNameContainingIgnoreCaseOrOperationDescriptionContainingIgnoreCase(query);
-        results.addAll(operations.stream().map(operation -> {
-            SearchResultDTO dto = new SearchResultDTO();
-            dto.setEntityType("Operation");
-            dto.setId(operation.getId());
-            dto.setDisplayName(operation.getOperationName());
-            dto.setDescription(operation.getOperationDescription());
-            if (operation.getProcess() != null) {
-                dto.setProcessName(operation.getProcess().getProcName());
-            }
-            dto.setTaskNames(operation.getTasks().stream()
-                    .map(Task::getTaskDescription)
-                    .collect(Collectors.toList()));
-            dto.setAssignedUsers(operation.getUserEntities().stream()
-                    .map(user -> user.getUsername())
-                    .collect(Collectors.toList()));
-            return dto;
-        }).collect(Collectors.toList()));
+        results.addAll(findRanked(query, FullTextIndexService.TYPE_OPERATION, operationRepository::findAllById, Operation::getId)
+                .stream().map(this::toResult).collect(Collectors.toList()));
 
         // Search Tasks
-        List<Task> tasks = taskRepository.findByTaskDescriptionContainingIgnoreCaseOrTaskStatusContainingIgnoreCase(query);
-        results.addAll(tasks.stream().map(task -> {
-            SearchResultDTO dto = new SearchResultDTO();
-            dto.setEntityType("Task");
-            dto.setId(task.getId());
-            dto.setDisplayName(task.getTaskDescription());
-            dto.setDescription(task.getTaskStatus());
-            if (task.getOperation() != null) {
-                dto.setProcessName(task.getOperation().getOperationName());
-            }
-            // Add assignedUsers for Task if you implement user assignments for Task
-            return dto;
-        }).collect(Collectors.toList()));
+        results.addAll(findRanked(query, FullTextIndexService.TYPE_TASK, taskRepository::findAllById, Task::getId)
+                .stream().map(this::toResult).collect(Collectors.toList()));
 
         return results;
     }
-}
\ No newline at end of file
+
+    @Override
+    public SearchPageDTO searchFullText(String query, String type, int page, int size) {
+        try {
+            return fullTextIndexService.search(query, type, page, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int rebuildIndex() {
+        try {
+            return fullTextIndexService.rebuild();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Charge les entités correspondant aux résultats de l'index en conservant l'ordre de pertinence
+    private <T> List<T> findRanked(String query, String type, Function<List<Long>, List<T>> loader,
+                                   Function<T, Long> idOf) {
+        List<Long> ids;
+        try {
+            ids = fullTextIndexService.searchIds(query, type, maxResults);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, T> byId = loader.apply(ids).stream().collect(Collectors.toMap(idOf, Function.identity()));
+        return ids.stream().map(byId::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private SearchResultDTO toResult(Process process) {
+        SearchResultDTO dto = new SearchResultDTO();
+        dto.setEntityType("Process");
+        dto.setId(process.getId());
+        dto.setDisplayName(process.getProcName());
+        dto.setDescription(process.getDescription());
+        if (process.getPilote() != null) {
+            dto.setPiloteName(process.getPilote().getUsername());
+        }
+        return dto;
+    }
+
+    private SearchResultDTO toResult(Operation operation) {
+        SearchResultDTO dto = new SearchResultDTO();
+        dto.setEntityType("Operation");
+        dto.setId(operation.getId());
+        dto.setDisplayName(operation.getOperationName());
+        dto.setDescription(operation.getOperationDescription());
+        if (operation.getProcess() != null) {
+            dto.setProcessName(operation.getProcess().getProcName());
+        }
+        dto.setTaskNames(operation.getTasks().stream()
+                .map(Task::getTaskDescription)
+                .collect(Collectors.toList()));
+        dto.setAssignedUsers(operation.getUserEntities().stream()
+                .map(user -> user.getUsername())
+                .collect(Collectors.toList()));
+        return dto;
+    }
+
+    private SearchResultDTO toResult(Task task) {
+        SearchResultDTO dto = new SearchResultDTO();
+        dto.setEntityType("Task");
+        dto.setId(task.getId());
+        dto.setDisplayName(task.getTaskDescription());
+        dto.setDescription(task.getTaskStatus());
+        if (task.getOperation() != null) {
+            dto.setProcessName(task.getOperation().getOperationName());
+        }
+        // Add assignedUsers for Task if you implement user assignments for Task
+        return dto;
+    }
+}
@@ -0,0 +1,252 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import info.debatty.java.stringsimilarity.Cosine;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Similarité sémantique entre listes de phrases, calculée dans la JVM. Chaque phrase est
+ * projetée par hachage dans un vecteur dense normalisé (mots, paires de mots et trigrammes de
+ * caractères, fréquences amorties, mots vides écartés) ; la comparaison de deux textes se fait
+ * en un seul produit matriciel, dont on extrait ensuite autant de sous-scores que nécessaire.
+ */
+@Service
+public class SemanticSimilarityEngine {
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "au", "aux", "avec", "ce", "ces", "dans", "de", "des", "du", "elle", "en", "et", "il", "je",
+            "la", "le", "les", "leur", "lui", "ma", "mais", "me", "mes", "mon", "ne", "nous", "on", "ou", "par",
+            "pas", "pour", "qu", "que", "qui", "sa", "se", "ses", "son", "sur", "ta", "te", "tes", "ton", "tu",
+            "un", "une", "vos", "votre", "vous", "est", "sont", "etre", "avoir", "ainsi", "plus",
+            "an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "have", "in", "is", "it", "its",
+            "of", "or", "that", "the", "this", "to", "was", "were", "will", "with", "our", "your");
+
+    private final int dimensions;
+    private final double bigramWeight;
+    private final double shingleWeight;
+    private final Cosine shingler;
+    private final ForkJoinPool pool;
+
+    public SemanticSimilarityEngine(@Value("${similarity.engine.dimensions:1024}") int dimensions,
+                                    @Value("${similarity.engine.bigram-weight:0.7}") double bigramWeight,
+                                    @Value("${similarity.engine.shingle-size:3}") int shingleSize,
+                                    @Value("${similarity.engine.shingle-weight:0.4}") double shingleWeight,
+                                    @Value("${similarity.engine.threads:0}") int threads) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("similarity.engine.dimensions doit être positif.");
+        }
+        this.dimensions = dimensions;
+        this.bigramWeight = bigramWeight;
+        this.shingleWeight = shingleWeight;
+        this.shingler = new Cosine(shingleSize);
+        int parallelism = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("similarity-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+    }
+
+    /**
+     * Encode des phrases déjà normalisées (minuscules, sans accents).
+     */
+    public EncodedSentences encode(List<String> sentences) {
+        float[] vectors = new float[sentences.size() * dimensions];
+        for (int i = 0; i < sentences.size(); i++) {
+            embed(sentences.get(i), vectors, i * dimensions, dimensions);
+        }
+        return new EncodedSentences(List.copyOf(sentences), vectors, dimensions);
+    }
+
+    /**
+     * Vecteur normalisé de {@code dimensions} composantes d'un texte libre (casse et accents
+     * quelconques) pris comme une seule phrase, ou {@code null} si le texte ne contient aucun
+     * mot significatif.
+     */
+    public float[] embedText(String text, int dimensions) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("[^a-z0-9]+", " ")
+                .trim();
+        float[] vector = new float[dimensions];
+        embed(normalized, vector, 0, dimensions);
+        for (float v : vector) {
+            if (v != 0f) {
+                return vector;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Matrice des cosinus entre chaque phrase de {@code reference} (lignes) et chaque phrase
+     * de {@code candidate} (colonnes).
+     */
+    public SimilarityMatrix compare(EncodedSentences reference, EncodedSentences candidate) {
+        if (reference.dimensions != dimensions || candidate.dimensions != dimensions) {
+            throw new IllegalArgumentException("Vecteurs encodés avec une autre dimension que " + dimensions + ".");
+        }
+        int rows = reference.size();
+        int cols = candidate.size();
+        float[] a = reference.vectors;
+        float[] b = candidate.vectors;
+        float[] scores = new float[rows * cols];
+        for (int i = 0; i < rows; i++) {
+            int ai = i * dimensions;
+            for (int j = 0; j < cols; j++) {
+                int bj = j * dimensions;
+                float dot = 0f;
+                // Boucle simple sur tableaux primitifs : vectorisée par le compilateur JIT
+                for (int k = 0; k < dimensions; k++) {
+                    dot += a[ai + k] * b[bj + k];
+                }
+                scores[i * cols + j] = dot;
+            }
+        }
+        return new SimilarityMatrix(rows, cols, scores);
+    }
+
+    /**
+     * Applique {@code task} à chaque élément sur le pool dédié, en conservant l'ordre.
+     */
+    public <T, R> List<R> mapInParallel(List<T> items, Function<T, R> task) {
+        if (items.size() < 2) {
+            return items.stream().map(task).toList();
+        }
+        return pool.submit(() -> items.parallelStream().map(task).toList()).join();
+    }
+
+    private void embed(String sentence, float[] target, int offset, int dimensions) {
+        Map<String, Integer> features = new HashMap<>();
+        String previous = null;
+        StringBuilder kept = new StringBuilder();
+        for (String token : sentence.split("\\s+")) {
+            if (token.length() < 2 || STOP_WORDS.contains(token)) {
+                continue;
+            }
+            features.merge("w:" + token, 1, Integer::sum);
+            if (previous != null) {
+                features.merge("b:" + previous + " " + token, 1, Integer::sum);
+            }
+            previous = token;
+            kept.append(token).append(' ');
+        }
+        if (features.isEmpty()) {
+            return;
+        }
+        features.forEach((feature, count) -> add(target, offset, dimensions, feature,
+                (feature.charAt(0) == 'w' ? 1.0 : bigramWeight) * (1.0 + Math.log(count))));
+        // Les trigrammes de caractères rapprochent les variantes d'un même mot (développeur / développement)
+        shingler.getProfile(kept.toString().trim()).forEach((shingle, count) ->
+                add(target, offset, dimensions, "c:" + shingle, shingleWeight * (1.0 + Math.log(count))));
+
+        double norm = 0;
+        for (int k = 0; k < dimensions; k++) {
+            norm += target[offset + k] * target[offset + k];
+        }
+        if (norm > 0) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int k = 0; k < dimensions; k++) {
+                target[offset + k] *= inv;
+            }
+        }
+    }
+
+    // Hachage signé : les collisions se compensent en moyenne au lieu de s'additionner
+    private static void add(float[] target, int offset, int dimensions, String feature, double weight) {
+        int h = feature.hashCode() * 0x9E3779B9;
+        int index = Math.floorMod(h >> 1, dimensions);
+        target[offset + index] += (float) ((h & 1) == 0 ? weight : -weight);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Phrases et leurs vecteurs, rangés à la suite dans un même tableau.
+     */
+    public static final class EncodedSentences {
+        private final List<String> sentences;
+        private final float[] vectors;
+        private final int dimensions;
+
+        private EncodedSentences(List<String> sentences, float[] vectors, int dimensions) {
+            this.sentences = sentences;
+            this.vectors = vectors;
+            this.dimensions = dimensions;
+        }
+
+        public List<String> sentences() {
+            return sentences;
+        }
+
+        public int size() {
+            return sentences.size();
+        }
+
+        public boolean isEmpty() {
+            return sentences.isEmpty();
+        }
+
+        public int[] allIndices() {
+            return IntStream.range(0, sentences.size()).toArray();
+        }
+    }
+
+    public static final class SimilarityMatrix {
+        private final int rows;
+        private final int cols;
+        private final float[] scores;
+
+        private SimilarityMatrix(int rows, int cols, float[] scores) {
+            this.rows = rows;
+            this.cols = cols;
+            this.scores = scores;
+        }
+
+        /**
+         * Couverture des lignes sélectionnées par les colonnes sélectionnées : moyenne, sur les
+         * lignes, de la meilleure similarité obtenue parmi les colonnes. Résultat dans [0, 1].
+         */
+        public double coverage(int[] rowIndices, int[] colIndices) {
+            if (rowIndices.length == 0 || colIndices.length == 0) {
+                return 0.0;
+            }
+            double sum = 0;
+            for (int i : rowIndices) {
+                float best = 0f;
+                int base = i * cols;
+                for (int j : colIndices) {
+                    best = Math.max(best, scores[base + j]);
+                }
+                sum += Math.min(best, 1f);
+            }
+            return sum / rowIndices.length;
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public int cols() {
+            return cols;
+        }
+    }
+}
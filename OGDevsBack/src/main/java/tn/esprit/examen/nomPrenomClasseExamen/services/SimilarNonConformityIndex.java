@@ -0,0 +1,374 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.SimilarNonConformityDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformitySource;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityType;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Non_Conformity;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.NonConformityRepository;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Index vectoriel des non-conformités pour retrouver, dans la JVM, les cas passés les plus
+ * proches d'un texte. Chaque description est encodée par {@link SemanticSimilarityEngine} et
+ * rangée dans un graphe HNSW Lucene, stocké dans des fichiers projetés en mémoire ; source,
+ * type, statut et indicateur servent de filtres. Les champs renvoyés sont lus dans des
+ * doc values (colonnes non compressées) plutôt que dans les champs stockés, dont la
+ * décompression coûtait plus que le parcours du graphe. L'index est tenu à jour par
+ * {@link SimilarNonConformityListener} et reconstruit depuis la base s'il diverge.
+ */
+@Service
+public class SimilarNonConformityIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SimilarNonConformityIndex.class);
+
+    private static final String F_ID = "id";
+    private static final String F_VECTOR = "vector";
+    private static final String F_SOURCE = "source";
+    private static final String F_TYPE = "type";
+    private static final String F_STATUS = "status";
+    private static final String F_INDICATOR = "indicator";
+    private static final String F_DESCRIPTION = "description";
+    private static final String F_ACTION = "actionTaken";
+    private static final String COMMIT_DIMENSIONS = "dimensions";
+    private static final int REBUILD_BATCH_SIZE = 500;
+    private static final double REBUILD_RAM_BUFFER_MB = 64;
+
+    /**
+     * Contenu indexable d'une non-conformité, capturé tant que la session JPA est ouverte.
+     */
+    public record IndexEntry(Long id, String description, String actionTaken, NonConformitySource source,
+                             NonConformityType type, String status, Long indicatorId) {
+    }
+
+    /**
+     * Restrictions appliquées pendant le parcours du graphe ; un champ {@code null} ne filtre pas.
+     */
+    public record Filter(NonConformitySource source, NonConformityType type, String status,
+                         Long indicatorId, Long excludeId) {
+        public static final Filter NONE = new Filter(null, null, null, null, null);
+    }
+
+    private final NonConformityRepository nonConformityRepository;
+    private final SemanticSimilarityEngine similarityEngine;
+    private final TransactionTemplate readOnlyTransaction;
+    private final String indexDir;
+    private final int dimensions;
+    private final int maxConnections;
+    private final int beamWidth;
+    private final float minSimilarity;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private boolean rebuildRequired;
+
+    public SimilarNonConformityIndex(NonConformityRepository nonConformityRepository,
+                                     SemanticSimilarityEngine similarityEngine,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${nonconformity.vector-index.dir:${file.upload-dir}/nonconformity-vectors}") String indexDir,
+                                     @Value("${nonconformity.vector-index.dimensions:256}") int dimensions,
+                                     @Value("${nonconformity.vector-index.max-connections:16}") int maxConnections,
+                                     @Value("${nonconformity.vector-index.beam-width:100}") int beamWidth,
+                                     @Value("${nonconformity.vector-index.min-similarity:0.2}") float minSimilarity) {
+        this.nonConformityRepository = nonConformityRepository;
+        this.similarityEngine = similarityEngine;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.indexDir = indexDir;
+        this.dimensions = dimensions;
+        this.maxConnections = maxConnections;
+        this.beamWidth = beamWidth;
+        this.minSimilarity = minSimilarity;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (dimensions <= 0 || dimensions > KnnVectorsFormat.DEFAULT_MAX_DIMENSIONS) {
+            throw new IllegalStateException("nonconformity.vector-index.dimensions doit être compris entre 1 et "
+                    + KnnVectorsFormat.DEFAULT_MAX_DIMENSIONS + ".");
+        }
+        directory = new MMapDirectory(Paths.get(indexDir));
+        IndexWriterConfig config = new IndexWriterConfig();
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        // Tampon large : une reconstruction produit peu de segments, donc peu de graphes à fusionner
+        config.setRAMBufferSizeMB(REBUILD_RAM_BUFFER_MB);
+        config.setCodec(new Lucene99Codec() {
+            @Override
+            public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+                return new Lucene99HnswVectorsFormat(maxConnections, beamWidth);
+            }
+        });
+        writer = new IndexWriter(directory, config);
+
+        // Vecteurs d'une autre dimension : l'index est inutilisable et doit être refait
+        String indexed = commitData(COMMIT_DIMENSIONS);
+        if (indexed != null && !indexed.equals(String.valueOf(dimensions))) {
+            log.warn("Index des non-conformités encodé en dimension {} au lieu de {} : reconstruction", indexed, dimensions);
+            writer.deleteAll();
+            rebuildRequired = true;
+        }
+        searcherManager = new SearcherManager(writer, null);
+        log.info("Index vectoriel des non-conformités ouvert : {} ({} entrées)", indexDir, writer.getDocStats().numDocs);
+    }
+
+    // Premier démarrage, changement de dimension ou écritures perdues : l'index est refait depuis la base
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfStale() throws IOException {
+        long expected = nonConformityRepository.count();
+        if (rebuildRequired || writer.getDocStats().numDocs != expected) {
+            rebuild();
+        }
+    }
+
+    public static IndexEntry toEntry(Non_Conformity nc) {
+        return new IndexEntry(nc.getIdNonConformity(), nc.getDescription(), nc.getActionTaken(), nc.getSource(),
+                nc.getType(), nc.getStatus(), nc.getIndicator() != null ? nc.getIndicator().getIdIndicateur() : null);
+    }
+
+    public void index(IndexEntry entry) {
+        if (entry.id() == null) {
+            return;
+        }
+        try {
+            writer.updateDocument(new Term(F_ID, entry.id().toString()), toLuceneDocument(entry));
+            dirty.set(true);
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            log.error("Échec de l'indexation vectorielle de la non-conformité {} : {}", entry.id(), e.getMessage(), e);
+        }
+    }
+
+    public void delete(Long id) {
+        if (id == null) {
+            return;
+        }
+        try {
+            writer.deleteDocuments(new Term(F_ID, id.toString()));
+            dirty.set(true);
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            log.error("Échec de la suppression de la non-conformité {} de l'index vectoriel : {}", id, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Au plus {@code limit} non-conformités dont la description est la plus proche de {@code text},
+     * par similarité décroissante ; les résultats sous le seuil de similarité sont écartés.
+     */
+    public List<SimilarNonConformityDTO> findSimilar(String text, int limit, Filter filter) throws IOException {
+        float[] vector = similarityEngine.embedText(text, dimensions);
+        if (vector == null || limit <= 0) {
+            return List.of();
+        }
+        // Lucene bascule sur un parcours exact quand le filtre ne retient que peu de documents
+        Query query = new KnnFloatVectorQuery(F_VECTOR, vector, limit, buildFilter(filter != null ? filter : Filter.NONE));
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            List<SimilarNonConformityDTO> results = new ArrayList<>();
+            for (ScoreDoc scoreDoc : searcher.search(query, limit).scoreDocs) {
+                // Produit scalaire de vecteurs unitaires : Lucene renvoie (1 + cosinus) / 2
+                float similarity = 2 * scoreDoc.score - 1;
+                if (similarity < minSimilarity) {
+                    continue;
+                }
+                List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+                LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(scoreDoc.doc, leaves));
+                results.add(toDto(leaf.reader(), scoreDoc.doc - leaf.docBase, similarity));
+            }
+            return results;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Reconstruit l'index complet à partir de la base, par lots lus chacun dans une transaction
+     * en lecture seule. Les lots suivent l'ordre des identifiants ; une non-conformité ajoutée
+     * pendant la reconstruction est indexée par le listener, sans doublon.
+     */
+    public synchronized int rebuild() throws IOException {
+        log.info("Reconstruction de l'index vectoriel des non-conformités...");
+        writer.deleteAll();
+        int count = 0;
+        Pageable pageable = PageRequest.of(0, REBUILD_BATCH_SIZE, Sort.by("idNonConformity"));
+        while (pageable != null) {
+            Pageable current = pageable;
+            // Les entrées sont extraites dans la transaction (indicateur chargé à la demande)
+            Slice<IndexEntry> batch = readOnlyTransaction.execute(status -> {
+                Page<Non_Conformity> page = nonConformityRepository.findAll(current);
+                return new SliceImpl<>(page.getContent().stream().map(SimilarNonConformityIndex::toEntry).toList(),
+                        current, page.hasNext());
+            });
+            for (IndexEntry entry : batch.getContent()) {
+                writer.updateDocument(new Term(F_ID, entry.id().toString()), toLuceneDocument(entry));
+                count++;
+            }
+            pageable = batch.hasNext() ? batch.nextPageable() : null;
+        }
+        // Un seul graphe à parcourir par recherche
+        writer.forceMerge(1);
+        commit();
+        rebuildRequired = false;
+        searcherManager.maybeRefresh();
+        log.info("Index vectoriel des non-conformités reconstruit : {} entrées", count);
+        return count;
+    }
+
+    @Scheduled(fixedDelay = 30000)
+    public void commitIfDirty() {
+        if (dirty.getAndSet(false)) {
+            try {
+                commit();
+            } catch (IOException e) {
+                dirty.set(true);
+                log.error("Échec du commit de l'index vectoriel des non-conformités : {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        commitIfDirty();
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    private void commit() throws IOException {
+        writer.setLiveCommitData(Map.of(COMMIT_DIMENSIONS, String.valueOf(dimensions)).entrySet());
+        writer.commit();
+    }
+
+    private String commitData(String key) {
+        Iterable<Map.Entry<String, String>> data = writer.getLiveCommitData();
+        if (data == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : data) {
+            if (key.equals(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private Query buildFilter(Filter filter) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        boolean restricted = false;
+        if (filter.source() != null) {
+            builder.add(new TermQuery(new Term(F_SOURCE, filter.source().name())), BooleanClause.Occur.FILTER);
+            restricted = true;
+        }
+        if (filter.type() != null) {
+            builder.add(new TermQuery(new Term(F_TYPE, filter.type().name())), BooleanClause.Occur.FILTER);
+            restricted = true;
+        }
+        if (filter.status() != null && !filter.status().isBlank()) {
+            builder.add(new TermQuery(new Term(F_STATUS, filter.status().trim().toUpperCase(Locale.ROOT))), BooleanClause.Occur.FILTER);
+            restricted = true;
+        }
+        if (filter.indicatorId() != null) {
+            builder.add(new TermQuery(new Term(F_INDICATOR, filter.indicatorId().toString())), BooleanClause.Occur.FILTER);
+            restricted = true;
+        }
+        if (filter.excludeId() != null) {
+            if (!restricted) {
+                builder.add(new MatchAllDocsQuery(), BooleanClause.Occur.FILTER);
+            }
+            builder.add(new TermQuery(new Term(F_ID, filter.excludeId().toString())), BooleanClause.Occur.MUST_NOT);
+            restricted = true;
+        }
+        return restricted ? builder.build() : null;
+    }
+
+    // Toutes les non-conformités sont indexées, avec ou sans vecteur, pour que le nombre de
+    // documents reste comparable au nombre de lignes en base
+    private Document toLuceneDocument(IndexEntry entry) {
+        Document doc = new Document();
+        doc.add(new StringField(F_ID, entry.id().toString(), Field.Store.NO));
+        doc.add(new NumericDocValuesField(F_ID, entry.id()));
+        float[] vector = similarityEngine.embedText(entry.description(), dimensions);
+        if (vector != null) {
+            doc.add(new KnnFloatVectorField(F_VECTOR, vector, VectorSimilarityFunction.DOT_PRODUCT));
+        }
+        addKeyword(doc, F_SOURCE, entry.source() != null ? entry.source().name() : null);
+        addKeyword(doc, F_TYPE, entry.type() != null ? entry.type().name() : null);
+        addKeyword(doc, F_STATUS, entry.status() != null ? entry.status().toUpperCase(Locale.ROOT) : null);
+        addKeyword(doc, F_INDICATOR, entry.indicatorId() != null ? entry.indicatorId().toString() : null);
+        addText(doc, F_DESCRIPTION, entry.description());
+        addText(doc, F_ACTION, entry.actionTaken() != null && !entry.actionTaken().isBlank() ? entry.actionTaken() : null);
+        return doc;
+    }
+
+    // Terme de filtre et valeur restituée dans les résultats
+    private static void addKeyword(Document doc, String field, String value) {
+        if (value != null) {
+            doc.add(new StringField(field, value, Field.Store.NO));
+            doc.add(new SortedDocValuesField(field, new BytesRef(value)));
+        }
+    }
+
+    private static void addText(Document doc, String field, String value) {
+        if (value != null) {
+            doc.add(new BinaryDocValuesField(field, new BytesRef(value)));
+        }
+    }
+
+    private SimilarNonConformityDTO toDto(LeafReader reader, int doc, float similarity) throws IOException {
+        SimilarNonConformityDTO dto = new SimilarNonConformityDTO();
+        NumericDocValues ids = reader.getNumericDocValues(F_ID);
+        dto.setIdNonConformity(ids != null && ids.advanceExact(doc) ? ids.longValue() : null);
+        dto.setDescription(Objects.toString(text(reader, F_DESCRIPTION, doc), ""));
+        dto.setActionTaken(text(reader, F_ACTION, doc));
+        String source = keyword(reader, F_SOURCE, doc);
+        dto.setSource(source != null ? NonConformitySource.valueOf(source) : null);
+        String type = keyword(reader, F_TYPE, doc);
+        dto.setType(type != null ? NonConformityType.valueOf(type) : null);
+        dto.setStatus(keyword(reader, F_STATUS, doc));
+        String indicator = keyword(reader, F_INDICATOR, doc);
+        dto.setIndicatorId(indicator != null ? Long.valueOf(indicator) : null);
+        dto.setSimilarity(similarity);
+        return dto;
+    }
+
+    private static String keyword(LeafReader reader, String field, int doc) throws IOException {
+        SortedDocValues values = reader.getSortedDocValues(field);
+        return values != null && values.advanceExact(doc) ? values.lookupOrd(values.ordValue()).utf8ToString() : null;
+    }
+
+    private static String text(LeafReader reader, String field, int doc) throws IOException {
+        BinaryDocValues values = reader.getBinaryDocValues(field);
+        return values != null && values.advanceExact(doc) ? values.binaryValue().utf8ToString() : null;
+    }
+}
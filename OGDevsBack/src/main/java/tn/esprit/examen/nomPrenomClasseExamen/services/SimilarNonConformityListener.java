@@ -0,0 +1,54 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Non_Conformity;
+
+/**
+ * Répercute les créations, modifications et suppressions de non-conformités dans l'index
+ * vectoriel. Comme pour l'index plein texte, le contenu est capturé tout de suite et
+ * appliqué après le commit.
+ */
+@Component
+public class SimilarNonConformityListener {
+
+    // Résolu paresseusement : le listener est instancié pendant la création de l'EntityManagerFactory
+    private final ObjectProvider<SimilarNonConformityIndex> index;
+
+    public SimilarNonConformityListener(ObjectProvider<SimilarNonConformityIndex> index) {
+        this.index = index;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Non_Conformity nc) {
+        SimilarNonConformityIndex service = index.getObject();
+        SimilarNonConformityIndex.IndexEntry entry = SimilarNonConformityIndex.toEntry(nc);
+        afterCommit(() -> service.index(entry));
+    }
+
+    @PostRemove
+    public void onRemove(Non_Conformity nc) {
+        SimilarNonConformityIndex service = index.getObject();
+        Long id = nc.getIdNonConformity();
+        afterCommit(() -> service.delete(id));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
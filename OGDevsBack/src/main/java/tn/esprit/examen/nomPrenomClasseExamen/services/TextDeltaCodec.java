@@ -0,0 +1,223 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodage compact des différences ligne à ligne entre deux textes (algorithme de Myers).
+ * <p>
+ * Format du delta : une suite d'opérations appliquées aux lignes du texte de base,
+ * {@code =n;} recopie n lignes, {@code -n;} en saute n et {@code +l;<l caractères>}
+ * insère le texte littéral qui suit.
+ */
+public final class TextDeltaCodec {
+
+    // Au-delà, le delta serait peu rentable : une version complète est stockée
+    private static final int MAX_EDITS = 2000;
+
+    private TextDeltaCodec() {
+    }
+
+    /**
+     * Retourne le delta permettant de passer de {@code base} à {@code target},
+     * ou {@code null} si les textes diffèrent trop pour qu'un delta soit utile.
+     */
+    public static String encode(String base, String target) {
+        List<String> a = splitLines(base);
+        List<String> b = splitLines(target);
+
+        int prefix = 0;
+        while (prefix < a.size() && prefix < b.size() && a.get(prefix).equals(b.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.size() - prefix && suffix < b.size() - prefix
+                && a.get(a.size() - 1 - suffix).equals(b.get(b.size() - 1 - suffix))) {
+            suffix++;
+        }
+
+        List<String> aMid = a.subList(prefix, a.size() - suffix);
+        List<String> bMid = b.subList(prefix, b.size() - suffix);
+        char[] ops = diff(aMid, bMid);
+        if (ops == null) {
+            return null;
+        }
+
+        DeltaWriter writer = new DeltaWriter();
+        writer.copy(prefix);
+        int y = 0;
+        for (char op : ops) {
+            switch (op) {
+                case '=' -> {
+                    writer.copy(1);
+                    y++;
+                }
+                case '-' -> writer.skip(1);
+                default -> writer.insert(bMid.get(y++));
+            }
+        }
+        writer.copy(suffix);
+        return writer.toString();
+    }
+
+    /**
+     * Reconstruit le texte cible à partir du texte de base et d'un delta produit par {@link #encode}.
+     */
+    public static String apply(String base, String delta) {
+        List<String> lines = splitLines(base);
+        StringBuilder out = new StringBuilder();
+        int line = 0;
+        int pos = 0;
+        while (pos < delta.length()) {
+            char op = delta.charAt(pos);
+            int sep = delta.indexOf(';', pos);
+            int count = Integer.parseInt(delta.substring(pos + 1, sep));
+            pos = sep + 1;
+            switch (op) {
+                case '=' -> {
+                    for (int i = 0; i < count; i++) {
+                        out.append(lines.get(line++));
+                    }
+                }
+                case '-' -> line += count;
+                case '+' -> {
+                    out.append(delta, pos, pos + count);
+                    pos += count;
+                }
+                default -> throw new IllegalArgumentException("Delta invalide à la position " + pos);
+            }
+        }
+        return out.toString();
+    }
+
+    // Découpe en lignes en conservant les fins de ligne, pour une reconstruction à l'identique
+    private static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return lines;
+        }
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    /**
+     * Script d'édition minimal ('=' conserve, '-' supprime, '+' insère),
+     * ou {@code null} si plus de {@link #MAX_EDITS} éditions sont nécessaires.
+     */
+    private static char[] diff(List<String> a, List<String> b) {
+        int n = a.size();
+        int m = b.size();
+        int max = Math.min(n + m, MAX_EDITS);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+
+        for (int d = 0; d <= max; d++) {
+            trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]))
+                        ? v[offset + k + 1]
+                        : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a.get(x).equals(b.get(y))) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    return backtrack(trace, n, m);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static char[] backtrack(List<int[]> trace, int n, int m) {
+        StringBuilder reversed = new StringBuilder();
+        int x = n;
+        int y = m;
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] v = trace.get(d);
+            int shift = d + 1;
+            int k = x - y;
+            int prevK = (k == -d || (k != d && v[shift + k - 1] < v[shift + k + 1])) ? k + 1 : k - 1;
+            int prevX = v[shift + prevK];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                reversed.append('=');
+                x--;
+                y--;
+            }
+            reversed.append(x == prevX ? '+' : '-');
+            x = prevX;
+            y = prevY;
+        }
+        while (x > 0 && y > 0) {
+            reversed.append('=');
+            x--;
+            y--;
+        }
+        return reversed.reverse().toString().toCharArray();
+    }
+
+    private static final class DeltaWriter {
+        private final StringBuilder out = new StringBuilder();
+        private char pendingOp;
+        private int pendingCount;
+        private final StringBuilder pendingText = new StringBuilder();
+
+        void copy(int count) {
+            run('=', count);
+        }
+
+        void skip(int count) {
+            run('-', count);
+        }
+
+        void insert(String text) {
+            if (pendingOp != '+') {
+                flush();
+                pendingOp = '+';
+            }
+            pendingText.append(text);
+        }
+
+        private void run(char op, int count) {
+            if (count == 0) {
+                return;
+            }
+            if (pendingOp != op) {
+                flush();
+                pendingOp = op;
+            }
+            pendingCount += count;
+        }
+
+        private void flush() {
+            if (pendingOp == '+') {
+                out.append('+').append(pendingText.length()).append(';').append(pendingText);
+            } else if (pendingOp != 0 && pendingCount > 0) {
+                out.append(pendingOp).append(pendingCount).append(';');
+            }
+            pendingOp = 0;
+            pendingCount = 0;
+            pendingText.setLength(0);
+        }
+
+        @Override
+        public String toString() {
+            flush();
+            return out.toString();
+        }
+    }
+}
@@ -12,9 +12,11 @@ import java.io.InputStream;
 @Service
 public class TextExtractionService {
 
+    private final ExtractionCacheService extractionCache;
     private Tika tika;
 
-    public TextExtractionService() {
+    public TextExtractionService(ExtractionCacheService extractionCache) {
+        this.extractionCache = extractionCache;
     }
 
     private Tika getTika() {
@@ -25,8 +27,14 @@ public class TextExtractionService {
     }
 
     public String extractText(MultipartFile file) throws IOException, TikaException, SAXException {
+        String sha256;
         try (InputStream stream = file.getInputStream()) {
-            return getTika().parseToString(stream);
+            sha256 = extractionCache.hash(stream);
         }
+        return extractionCache.getOrExtract("tika", sha256, () -> {
+            try (InputStream stream = file.getInputStream()) {
+                return getTika().parseToString(stream);
+            }
+        }, null).getText();
     }
 }
@@ -0,0 +1,113 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Forêt d'arbres de régression exportée depuis scikit-learn par {@code ml/export_duration_model.py}.
+ * Chaque arbre est gardé sous forme de tableaux plats (un indice par nœud) ; une prédiction est
+ * la moyenne des feuilles atteintes, comme {@code RandomForestRegressor.predict}.
+ */
+final class TreeEnsembleModel {
+
+    private static final int LEAF = -1;
+
+    private final List<String> features;
+    private final Map<String, Integer> categories = new HashMap<>();
+    private final Tree[] trees;
+
+    private TreeEnsembleModel(ModelFile file) {
+        if (file.features() == null || file.features().isEmpty()) {
+            throw new IllegalArgumentException("Modèle sans variable d'entrée.");
+        }
+        if (file.trees() == null || file.trees().isEmpty()) {
+            throw new IllegalArgumentException("Modèle sans arbre.");
+        }
+        this.features = List.copyOf(file.features());
+        // Encodage identique à LabelEncoder : rang de la catégorie dans classes_
+        List<String> classes = file.categories() != null ? file.categories() : List.of();
+        for (int i = 0; i < classes.size(); i++) {
+            categories.put(classes.get(i), i);
+        }
+        this.trees = file.trees().stream().map(t -> new Tree(t, features.size())).toArray(Tree[]::new);
+    }
+
+    static TreeEnsembleModel read(InputStream in, ObjectMapper mapper) throws IOException {
+        return new TreeEnsembleModel(mapper.readValue(in, ModelFile.class));
+    }
+
+    int featureCount() {
+        return features.size();
+    }
+
+    int treeCount() {
+        return trees.length;
+    }
+
+    /**
+     * Code de la variable catégorielle, ou -1 si la catégorie n'a pas été vue à l'entraînement.
+     */
+    int encodeCategory(String value) {
+        return value == null ? -1 : categories.getOrDefault(value, -1);
+    }
+
+    double predict(double[] x) {
+        if (x.length != features.size()) {
+            throw new IllegalArgumentException("Le modèle attend " + features.size() + " variables, " + x.length + " reçues.");
+        }
+        double sum = 0;
+        for (Tree tree : trees) {
+            sum += tree.evaluate(x);
+        }
+        return sum / trees.length;
+    }
+
+    private static final class Tree {
+        private final int[] feature;
+        private final double[] threshold;
+        private final int[] left;
+        private final int[] right;
+        private final double[] value;
+
+        Tree(TreeFile file, int featureCount) {
+            int nodes = file.value() == null ? 0 : file.value().length;
+            if (nodes == 0 || file.feature().length != nodes || file.threshold().length != nodes
+                    || file.left().length != nodes || file.right().length != nodes) {
+                throw new IllegalArgumentException("Arbre mal formé : tableaux de tailles différentes.");
+            }
+            for (int i = 0; i < nodes; i++) {
+                boolean leaf = file.left()[i] == LEAF;
+                if (!leaf && (file.feature()[i] < 0 || file.feature()[i] >= featureCount
+                        || file.left()[i] <= i || file.left()[i] >= nodes
+                        || file.right()[i] <= i || file.right()[i] >= nodes)) {
+                    throw new IllegalArgumentException("Arbre mal formé au nœud " + i + ".");
+                }
+            }
+            this.feature = file.feature();
+            this.threshold = file.threshold();
+            this.left = file.left();
+            this.right = file.right();
+            this.value = file.value();
+        }
+
+        // Les enfants ont toujours un indice supérieur au parent : le parcours termine
+        double evaluate(double[] x) {
+            int node = 0;
+            while (left[node] != LEAF) {
+                node = x[feature[node]] <= threshold[node] ? left[node] : right[node];
+            }
+            return value[node];
+        }
+    }
+
+    record ModelFile(List<String> features, List<String> categories, List<TreeFile> trees) {
+    }
+
+    record TreeFile(int[] feature, double[] threshold, int[] left, int[] right, double[] value) {
+    }
+}
@@ -3,7 +3,9 @@ package tn.esprit.examen.nomPrenomClasseExamen.services;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Document;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.StatutDocument;
 import tn.esprit.examen.nomPrenomClasseExamen.entities.Version;
@@ -13,6 +15,7 @@ import tn.esprit.examen.nomPrenomClasseExamen.services.IVersionServices;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
@@ -23,6 +26,9 @@ public class VersionServices implements IVersionServices {
     private final DocumentationRepository documentRepository;
     private static final Logger log = LoggerFactory.getLogger(VersionServices.class);
 
+    @Value("${versions.snapshot-interval:10}")
+    private int snapshotInterval;
+
     @Override
     public Version createVersion(Version version) {
         if (version.getDocument() == null || version.getDocument().getId() == null) {
@@ -36,8 +42,7 @@ public class VersionServices implements IVersionServices {
                     return new IllegalArgumentException("Document avec l'ID " + version.getDocument().getId() + " n'existe pas.");
                 });
 
-        List<Version> existingVersions = versionRepository.findByDocument(document);
-        Long nextVersionNumber = existingVersions.isEmpty() ? 1L : existingVersions.size() + 1L;
+        Long nextVersionNumber = versionRepository.findMaxNumeroVersion(document) + 1L;
         version.setNumeroVersion(nextVersionNumber);
 
         version.setDateCreation(LocalDate.now());
@@ -56,11 +61,18 @@ public class VersionServices implements IVersionServices {
             version.setStatut(StatutDocument.ACTIF);
         }
 
-        log.info("Création de la version {} pour le document ID : {}", nextVersionNumber, document.getId());
-        return versionRepository.save(version);
+        String contenu = version.getContenu();
+        storeContent(version, document, contenu);
+
+        log.info("Création de la version {} pour le document ID : {} ({})", nextVersionNumber, document.getId(),
+                version.isSnapshot() ? "complète" : "delta");
+        Version savedVersion = versionRepository.save(version);
+        savedVersion.setContenu(contenu);
+        return savedVersion;
     }
 
     @Override
+    @Transactional
     public Version updateVersion(Long id, Version version) {
         if (!versionRepository.existsById(id)) {
             log.error("Version avec l'ID {} n'existe pas.", id);
@@ -73,7 +85,14 @@ public class VersionServices implements IVersionServices {
                     return new IllegalArgumentException("Version avec l'ID " + id + " n'existe pas.");
                 });
 
-        existingVersion.setContenu(version.getContenu() != null ? version.getContenu() : existingVersion.getContenu());
+        fillContent(existingVersion);
+        if (version.getContenu() != null && !version.getContenu().equals(existingVersion.getContenu())) {
+            // La version suivante est exprimée par rapport à celle-ci : elle devient complète
+            detachSuccessor(existingVersion);
+            existingVersion.setContenu(version.getContenu());
+            existingVersion.setSnapshotContenu(version.getContenu());
+            existingVersion.setDelta(null);
+        }
         existingVersion.setModifiePar(version.getModifiePar() != null ? version.getModifiePar() : existingVersion.getModifiePar());
         existingVersion.setModificationDetails(version.getModificationDetails() != null
                 ? version.getModificationDetails()
@@ -82,27 +101,43 @@ public class VersionServices implements IVersionServices {
         existingVersion.setDateCreation(LocalDate.now());
 
         log.info("Mise à jour de la version ID : {}", id);
-        return versionRepository.save(existingVersion);
+        Version savedVersion = versionRepository.save(existingVersion);
+        savedVersion.setContenu(existingVersion.getContenu());
+        return savedVersion;
     }
 
     @Override
     public Optional<Version> getVersionById(Long id) {
         log.info("Récupération de la version ID : {}", id);
-        return versionRepository.findById(id);
+        Optional<Version> version = versionRepository.findById(id);
+        version.ifPresent(this::fillContent);
+        return version;
     }
 
     @Override
     public List<Version> getAllVersions() {
         log.info("Récupération de toutes les versions");
-        return versionRepository.findAll();
+        List<Version> versions = versionRepository.findAllOrderByDocumentAndNumero();
+        // Les versions sont triées par document : chaque historique est rejoué en une passe
+        int start = 0;
+        for (int i = 1; i <= versions.size(); i++) {
+            if (i == versions.size() || !sameDocument(versions.get(start), versions.get(i))) {
+                replay(versions.subList(start, i));
+                start = i;
+            }
+        }
+        return versions;
     }
 
     @Override
+    @Transactional
     public void deleteVersion(Long id) {
-        if (!versionRepository.existsById(id)) {
-            log.error("Version avec l'ID {} n'existe pas.", id);
-            throw new IllegalArgumentException("Version avec l'ID " + id + " n'existe pas.");
-        }
+        Version version = versionRepository.findById(id)
+                .orElseThrow(() -> {
+                    log.error("Version avec l'ID {} n'existe pas.", id);
+                    return new IllegalArgumentException("Version avec l'ID " + id + " n'existe pas.");
+                });
+        detachSuccessor(version);
         log.info("Suppression de la version ID : {}", id);
         versionRepository.deleteById(id);
     }
@@ -119,7 +154,9 @@ public class VersionServices implements IVersionServices {
                     return new IllegalArgumentException("Document avec l'ID " + documentId + " n'existe pas.");
                 });
         log.info("Récupération des versions du document ID : {}", documentId);
-        return versionRepository.findByDocument(document);
+        List<Version> versions = versionRepository.findByDocumentOrderByNumeroVersionAsc(document);
+        replay(versions);
+        return versions;
     }
 
     @Override
@@ -139,7 +176,85 @@ public class VersionServices implements IVersionServices {
             throw new IllegalArgumentException("Version " + versionNumber + " non trouvée pour le document ID " + documentId);
         }
         log.info("Récupération de la version {} du document ID : {}", versionNumber, documentId);
+        version.setContenu(reconstruct(document, versionNumber));
         return version;
     }
 
+    /**
+     * Stocke la version en entier toutes les {@code snapshotInterval} versions,
+     * ou lorsque le delta ne serait pas plus court que le texte ; sinon seul
+     * le delta par rapport à la version précédente est conservé.
+     */
+    private void storeContent(Version version, Document document, String contenu) {
+        version.setSnapshotContenu(contenu);
+        version.setDelta(null);
+        long previousNumber = version.getNumeroVersion() - 1;
+        if (previousNumber < 1 || contenu == null) {
+            return;
+        }
+        Long snapshotNumber = versionRepository.findSnapshotNumeroAtOrBefore(document, previousNumber);
+        if (snapshotNumber == null || version.getNumeroVersion() - snapshotNumber >= snapshotInterval) {
+            return;
+        }
+        String previous = reconstruct(document, previousNumber);
+        String delta = TextDeltaCodec.encode(previous != null ? previous : "", contenu);
+        if (delta != null && delta.length() < contenu.length()) {
+            version.setSnapshotContenu(null);
+            version.setDelta(delta);
+        }
+    }
+
+    // Texte complet d'une version : dernière version complète puis application des deltas suivants
+    private String reconstruct(Document document, Long numeroVersion) {
+        Long snapshotNumber = versionRepository.findSnapshotNumeroAtOrBefore(document, numeroVersion);
+        if (snapshotNumber == null) {
+            return null;
+        }
+        List<Version> chain = versionRepository
+                .findByDocumentAndNumeroVersionBetweenOrderByNumeroVersionAsc(document, snapshotNumber, numeroVersion);
+        replay(chain);
+        return chain.isEmpty() ? null : chain.get(chain.size() - 1).getContenu();
+    }
+
+    // Renseigne le contenu de versions consécutives d'un même document, triées par numéro
+    private void replay(List<Version> versions) {
+        String current = null;
+        for (Version version : versions) {
+            if (version.isSnapshot()) {
+                current = version.getSnapshotContenu();
+            } else {
+                current = TextDeltaCodec.apply(current != null ? current : "", version.getDelta());
+            }
+            version.setContenu(current);
+        }
+    }
+
+    private void fillContent(Version version) {
+        if (version.isSnapshot() || version.getDocument() == null) {
+            version.setContenu(version.getSnapshotContenu());
+        } else {
+            version.setContenu(reconstruct(version.getDocument(), version.getNumeroVersion()));
+        }
+    }
+
+    // Avant de modifier ou supprimer une version, la suivante est stockée en entier
+    private void detachSuccessor(Version version) {
+        if (version.getDocument() == null || version.getNumeroVersion() == null) {
+            return;
+        }
+        versionRepository.findFirstByDocumentAndNumeroVersionGreaterThanOrderByNumeroVersionAsc(
+                        version.getDocument(), version.getNumeroVersion())
+                .filter(successor -> !successor.isSnapshot())
+                .ifPresent(successor -> {
+                    successor.setSnapshotContenu(reconstruct(successor.getDocument(), successor.getNumeroVersion()));
+                    successor.setDelta(null);
+                    versionRepository.save(successor);
+                });
+    }
+
+    private boolean sameDocument(Version a, Version b) {
+        return Objects.equals(a.getDocument() != null ? a.getDocument().getId() : null,
+                b.getDocument() != null ? b.getDocument().getId() : null);
+    }
+
 }
@@ -0,0 +1,100 @@
+"""
+Worker persistant du chatbot RAG, lancé par ChatbotWorkerPool.
+
+Usage : python -u chatbot_worker.py <script_du_chatbot.py>
+
+Le script du chatbot est importé une seule fois : l'index Chroma et le modèle d'embedding
+qu'il charge au niveau module restent en mémoire. Il doit exposer une fonction
+answer(query) qui renvoie un dict sérialisable en JSON (ou une chaîne).
+
+Compatibilité : un script sans answer(query) (ancien format, question en argument et
+réponse JSON sur stdout) n'est pas importé ; il est lancé une fois par question, comme
+avant, sans le bénéfice du chargement unique.
+
+Protocole : une ligne JSON par message sur stdin / stdout (voir ChatbotWorkerPool).
+Tout ce que le script écrit lui-même sur stdout est redirigé vers stderr.
+"""
+import ast
+import importlib.util
+import json
+import os
+import subprocess
+import sys
+
+# Durée maximale d'une exécution ponctuelle d'un script à l'ancien format (secondes)
+ONE_SHOT_TIMEOUT = 120
+
+protocol_out = sys.stdout
+sys.stdout = sys.stderr
+
+
+def reply(message):
+    protocol_out.write(json.dumps(message, ensure_ascii=False) + "\n")
+    protocol_out.flush()
+
+
+def defines_answer(path):
+    # Analyse statique : importer un script à l'ancien format exécuterait sa question
+    with open(path, encoding="utf-8") as source:
+        tree = ast.parse(source.read(), filename=path)
+    return any(isinstance(node, ast.FunctionDef) and node.name == "answer" for node in tree.body)
+
+
+def one_shot(path):
+    def answer(query):
+        completed = subprocess.run(
+            [sys.executable, path, query],
+            cwd=os.getcwd(),
+            stdin=subprocess.DEVNULL,
+            stdout=subprocess.PIPE,
+            stderr=sys.stderr,
+            timeout=ONE_SHOT_TIMEOUT,
+            text=True,
+            encoding="utf-8",
+        )
+        if completed.returncode != 0:
+            raise RuntimeError(f"Python script failed with exit code: {completed.returncode}")
+        return json.loads("".join(completed.stdout.splitlines()))
+
+    return answer
+
+
+def load_chatbot(path):
+    if not defines_answer(path):
+        print(f"{path} ne définit pas de fonction answer(query) : exécution ponctuelle par question",
+              file=sys.stderr)
+        return one_shot(path)
+    spec = importlib.util.spec_from_file_location("chatbot", path)
+    module = importlib.util.module_from_spec(spec)
+    spec.loader.exec_module(module)
+    return module.answer
+
+
+def main():
+    if len(sys.argv) < 2:
+        print("Erreur: chemin du script du chatbot requis", file=sys.stderr)
+        sys.exit(1)
+    answer = load_chatbot(sys.argv[1])
+    reply({"ready": True})
+
+    for line in sys.stdin:
+        line = line.strip()
+        if not line:
+            continue
+        try:
+            message = json.loads(line)
+        except ValueError:
+            print(f"Message illisible : {line}", file=sys.stderr)
+            continue
+        request_id = message.get("id")
+        if message.get("type") == "ping":
+            reply({"id": request_id, "pong": True})
+            continue
+        try:
+            reply({"id": request_id, "result": answer(message.get("query", ""))})
+        except Exception as e:
+            reply({"id": request_id, "error": str(e)})
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,50 @@
+"""
+Exporte le modèle random forest de durée des projets (random_forest_model.pkl) et son
+LabelEncoder (label_encoder.pkl) vers project-duration-model.json, lu par ProjectDurationService.
+
+Usage : python export_duration_model.py [dossier_des_pkl] [fichier_json]
+"""
+import json
+import os
+import sys
+
+import joblib
+
+FEATURES = ["nb_ressources", "nb_equipes", "nb_technologies", "nb_tasks", "projectType"]
+
+
+def export_tree(estimator):
+    tree = estimator.tree_
+    return {
+        "feature": [int(f) for f in tree.feature],
+        "threshold": [float(t) for t in tree.threshold],
+        "left": [int(c) for c in tree.children_left],
+        "right": [int(c) for c in tree.children_right],
+        # Régression à une sortie : value a la forme (nœuds, 1, 1)
+        "value": [float(v[0][0]) for v in tree.value],
+    }
+
+
+def main():
+    current_directory = os.path.dirname(os.path.abspath(__file__))
+    source = sys.argv[1] if len(sys.argv) > 1 else current_directory
+    target = sys.argv[2] if len(sys.argv) > 2 else os.path.join(current_directory, "project-duration-model.json")
+
+    model = joblib.load(os.path.join(source, "random_forest_model.pkl"))
+    label_encoder = joblib.load(os.path.join(source, "label_encoder.pkl"))
+    if model.n_features_in_ != len(FEATURES):
+        print(f"Erreur: {len(FEATURES)} variables attendues, le modèle en a {model.n_features_in_}")
+        sys.exit(1)
+
+    exported = {
+        "features": FEATURES,
+        "categories": [str(c) for c in label_encoder.classes_],
+        "trees": [export_tree(e) for e in model.estimators_],
+    }
+    with open(target, "w", encoding="utf-8") as f:
+        json.dump(exported, f, separators=(",", ":"))
+    print(f"{len(exported['trees'])} arbres exportés vers {target}")
+
+
+if __name__ == "__main__":
+    main()
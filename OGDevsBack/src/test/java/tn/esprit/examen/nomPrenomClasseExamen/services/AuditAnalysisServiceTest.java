@@ -0,0 +1,148 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Non_Conformity;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuditAnalysisServiceTest {
+
+    private final AiSuggestionService aiSuggestionService = mock(AiSuggestionService.class);
+    private final INonConformityService nonConformityService = mock(INonConformityService.class);
+
+    // Lots de 3 constats / 100 caractères, 5 constats au plus, chacun entre 10 et 50 caractères
+    private final AuditAnalysisService service = new AuditAnalysisService(
+            aiSuggestionService, nonConformityService, 3, 100, 2, 5, 10, 50);
+
+    @Test
+    void numberedFindingsIgnoreTheReportHeader() {
+        String report = """
+                Rapport d'audit interne - site de Tunis
+                Auditeur : A. Ben Salah
+
+                Constat n°1 : calibration
+                non mise à jour
+                Écart 2 - registre des formations incomplet
+                NC 3. absence de revue de direction
+                """;
+
+        assertEquals(List.of(
+                "Constat n°1 : calibration non mise à jour",
+                "Écart 2 - registre des formations incomplet",
+                "NC 3. absence de revue de direction"), service.segment(report));
+    }
+
+    @Test
+    void bulletsAreUsedWithoutNumbering() {
+        String report = """
+                Points relevés :
+                • fiches de poste non signées par le personnel
+                - étalonnage des balances en retard
+                  sur la ligne 2
+                """;
+
+        assertEquals(List.of(
+                "• fiches de poste non signées par le personnel",
+                "- étalonnage des balances en retard sur la ligne 2"), service.segment(report));
+    }
+
+    @Test
+    void paragraphsAreUsedWithoutNumberingOrBullets() {
+        String report = "Les enregistrements de température manquent.\n\n  \nLe plan d'actions n'est pas suivi.";
+
+        assertEquals(List.of(
+                "Les enregistrements de température manquent.",
+                "Le plan d'actions n'est pas suivi."), service.segment(report));
+    }
+
+    @Test
+    void shortDuplicateLongAndExtraFindingsAreFiltered() {
+        String report = """
+                1. court
+                2) constat répété dans le rapport
+                2) constat répété dans le rapport
+                4- %s
+                5. cinquième constat du rapport
+                6. sixième constat du rapport
+                7. septième constat du rapport
+                8. huitième constat du rapport
+                """.formatted("x".repeat(80));
+
+        List<String> findings = service.segment(report);
+
+        assertEquals(5, findings.size());
+        assertEquals("2) constat répété dans le rapport", findings.get(0));
+        assertEquals(("4- " + "x".repeat(80)).substring(0, 50), findings.get(1));
+        assertEquals("7. septième constat du rapport", findings.get(4));
+    }
+
+    @Test
+    void unstructuredTextIsASingleFinding() {
+        assertEquals(List.of("court texte"), service.segment("  court\ntexte "));
+        assertEquals(List.of(), service.segment("  \n "));
+        assertEquals(List.of(), service.segment(null));
+    }
+
+    @Test
+    void batchesRespectCountAndCharacterLimits() {
+        List<String> findings = List.of(
+                "a".repeat(20), "b".repeat(20), "c".repeat(20), "d".repeat(20),
+                "e".repeat(70), "f".repeat(40), "g".repeat(150), "h".repeat(10));
+
+        assertEquals(List.of(
+                List.of(0, 1, 2),   // 3 constats
+                List.of(3, 4),      // 90 caractères, f dépasserait 100
+                List.of(5),         // g dépasserait 100
+                List.of(6),         // trop long, mais seul dans son lot
+                List.of(7)), service.batches(findings));
+        assertEquals(List.of(), service.batches(List.of()));
+    }
+
+    @Test
+    void analyzeStreamsEachFindingThenASummary() {
+        String report = """
+                1. procédure de calibration non mise à jour
+                2. registre des formations incomplet
+                3. absence de revue de direction
+                4. fiches de poste non signées
+                """;
+        when(aiSuggestionService.suggestForFindings(anyList()))
+                .thenAnswer(invocation -> invocation.<List<String>>getArgument(0).stream()
+                        .map(finding -> List.of("Corriger : " + finding, "Vérifier : " + finding))
+                        .toList());
+        AtomicLong ids = new AtomicLong();
+        when(nonConformityService.addNonConformitiesFromAudit(anyList(), anyList(), eq("user-1")))
+                .thenAnswer(invocation -> invocation.<List<String>>getArgument(0).stream()
+                        .map(finding -> {
+                            Non_Conformity nc = new Non_Conformity();
+                            nc.setIdNonConformity(ids.incrementAndGet());
+                            return nc;
+                        })
+                        .toList());
+
+        List<ServerSentEvent<String>> events = service.analyze(report, "user-1").collectList().block();
+
+        assertNotNull(events);
+        assertEquals(5, events.size());
+        assertEquals(4, events.stream().filter(e -> AuditAnalysisService.EVENT_FINDING.equals(e.event())).count());
+        ServerSentEvent<String> done = events.get(4);
+        assertEquals(OpenAIService.EVENT_DONE, done.event());
+        assertTrue(done.data().contains("\"findings\":4"));
+        assertTrue(done.data().contains("\"batches\":2"));
+        assertTrue(done.data().contains("\"saved\":4"));
+        assertTrue(done.data().contains("\"failed\":0"));
+    }
+
+    @Test
+    void analyzeRejectsReportsWithoutFindings() {
+        assertThrows(IllegalArgumentException.class, () -> service.analyze(" ", "user-1"));
+    }
+}
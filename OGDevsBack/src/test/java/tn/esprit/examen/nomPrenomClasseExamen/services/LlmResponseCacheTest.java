@@ -0,0 +1,198 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.LlmCacheEntryRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LlmResponseCacheTest {
+
+    private static final String NAMESPACE = "test";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Thread> callers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        callers.forEach(Thread::interrupt);
+    }
+
+    @Test
+    void identicalPromptsAreAnsweredFromCache() {
+        LlmResponseCache cache = cache(60);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("réponse", cache.getOrCompute(NAMESPACE, "Quelle est  la cause ?", counting(calls, "réponse")));
+        // Espaces normalisés : même clé
+        assertEquals("réponse", cache.getOrCompute(NAMESPACE, " Quelle est la cause ? ", counting(calls, "autre")));
+        assertEquals(1, calls.get());
+        assertEquals(1.0, count("hit"));
+        assertEquals(1.0, count("miss"));
+    }
+
+    @Test
+    void namespacesDoNotShareEntries() {
+        LlmResponseCache cache = cache(60);
+
+        cache.getOrCompute("a", "prompt", () -> "réponse a");
+
+        assertEquals("réponse b", cache.getOrCompute("b", "prompt", () -> "réponse b"));
+    }
+
+    @Test
+    void concurrentCallersShareOneUpstreamCall() throws Exception {
+        LlmResponseCache cache = cache(60);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = call("llm-cache-first-caller", () -> cache.getOrCompute(NAMESPACE, "prompt", () -> {
+            calls.incrementAndGet();
+            await(release);
+            return "réponse";
+        }));
+        waitUntil(() -> (Integer) cache.snapshot().get("inFlight") == 1);
+        Future<String> second = call("llm-cache-second-caller", () -> cache.getOrCompute(NAMESPACE, "prompt", () -> {
+            calls.incrementAndGet();
+            return "doublon";
+        }));
+        waitUntilParked(callers.get(1));
+        release.countDown();
+
+        assertEquals("réponse", first.get(5, TimeUnit.SECONDS));
+        assertEquals("réponse", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(1.0, count("coalesced"));
+        assertEquals(0, cache.snapshot().get("inFlight"));
+    }
+
+    @Test
+    void expiredEntriesCallUpstreamAgain() {
+        LlmResponseCache cache = cache(0);
+        AtomicInteger calls = new AtomicInteger();
+
+        cache.getOrCompute(NAMESPACE, "prompt", () -> "réponse " + calls.incrementAndGet());
+
+        assertEquals("réponse 2", cache.getOrCompute(NAMESPACE, "prompt", () -> "réponse " + calls.incrementAndGet()));
+        cache.purgeExpired();
+        assertEquals(0, cache.snapshot().get("entries"));
+    }
+
+    @Test
+    void errorsAreNotCached() {
+        LlmResponseCache cache = cache(60);
+
+        assertThrows(IllegalStateException.class, () -> cache.getOrCompute(NAMESPACE, "prompt", () -> {
+            throw new IllegalStateException("quota dépassé");
+        }));
+
+        assertEquals("réponse", cache.getOrCompute(NAMESPACE, "prompt", () -> "réponse"));
+        assertEquals(1.0, count("error"));
+        assertEquals(0, cache.snapshot().get("inFlight"));
+    }
+
+    @Test
+    void waitingCallersReceiveTheUpstreamError() throws Exception {
+        LlmResponseCache cache = cache(60);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = call("llm-cache-first-caller", () -> cache.getOrCompute(NAMESPACE, "prompt", () -> {
+            await(release);
+            throw new IllegalStateException("délai dépassé");
+        }));
+        waitUntil(() -> (Integer) cache.snapshot().get("inFlight") == 1);
+        Future<String> second = call("llm-cache-second-caller", () -> cache.getOrCompute(NAMESPACE, "prompt", () -> "doublon"));
+        waitUntilParked(callers.get(1));
+        release.countDown();
+
+        ExecutionException firstError = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        ExecutionException secondError = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertEquals("délai dépassé", firstError.getCause().getMessage());
+        assertEquals("délai dépassé", secondError.getCause().getMessage());
+        assertEquals("réponse", cache.getOrCompute(NAMESPACE, "prompt", () -> "réponse"));
+    }
+
+    @Test
+    void responsesRefusedByThePredicateAreNotCached() {
+        LlmResponseCache cache = cache(60);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("", cache.getOrCompute(NAMESPACE, "prompt", counting(calls, ""), v -> !v.isBlank()));
+        assertEquals("réponse", cache.getOrCompute(NAMESPACE, "prompt", () -> "réponse", v -> !v.isBlank()));
+        assertEquals("réponse", cache.getOrCompute(NAMESPACE, "prompt", () -> "autre", v -> !v.isBlank()));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void invalidateForgetsOnlyItsNamespace() {
+        LlmResponseCache cache = cache(60);
+        cache.getOrCompute("a", "prompt", () -> "réponse a");
+        cache.getOrCompute("b", "prompt", () -> "réponse b");
+
+        assertEquals(1, cache.invalidate("a"));
+
+        assertEquals("nouvelle a", cache.getOrCompute("a", "prompt", () -> "nouvelle a"));
+        assertEquals("réponse b", cache.getOrCompute("b", "prompt", () -> "nouvelle b"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private LlmResponseCache cache(long ttlMinutes) {
+        ObjectProvider<MeterRegistry> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable(any())).thenReturn(meterRegistry);
+        return new LlmResponseCache(mock(LlmCacheEntryRepository.class), provider, true, false, ttlMinutes, 100);
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get("llm.cache.requests").tag("namespace", NAMESPACE).tag("outcome", outcome).timer().count();
+    }
+
+    private Future<String> call(String name, Callable<String> caller) {
+        FutureTask<String> task = new FutureTask<>(caller);
+        Thread thread = new Thread(task, name);
+        callers.add(thread);
+        thread.start();
+        return task;
+    }
+
+    // Le second appelant, une fois l'appel en cours réservé par le premier, ne peut que l'attendre (join)
+    private static void waitUntilParked(Thread caller) throws Exception {
+        waitUntil(() -> caller.getState() == Thread.State.WAITING);
+    }
+
+    private static Supplier<String> counting(AtomicInteger calls, String value) {
+        return () -> {
+            calls.incrementAndGet();
+            return value;
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition non atteinte");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import tn.esprit.examen.nomPrenomClasseExamen.dto.SimilarNonConformityDTO;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformitySource;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.NonConformityType;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Non_Conformity;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.NonConformityRepository;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Les vecteurs sont fixés à la main : la similarité attendue est le cosinus exact.
+ */
+class SimilarNonConformityIndexTest {
+
+    private static final int DIMENSIONS = 4;
+    private static final float MIN_SIMILARITY = 0.2f;
+
+    private static final Map<String, float[]> VECTORS = Map.of(
+            "requête", new float[]{1, 0, 0, 0},
+            "identique", new float[]{1, 0, 0, 0},
+            "proche", new float[]{0.6f, 0.8f, 0, 0},
+            "orthogonale", new float[]{0, 1, 0, 0},
+            "opposée", new float[]{-1, 0, 0, 0});
+
+    @TempDir
+    Path indexDir;
+
+    private final NonConformityRepository repository = mock(NonConformityRepository.class);
+    private SimilarNonConformityIndex index;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        SemanticSimilarityEngine engine = mock(SemanticSimilarityEngine.class);
+        when(engine.embedText(anyString(), eq(DIMENSIONS))).thenAnswer(invocation -> VECTORS.get(invocation.<String>getArgument(0)));
+        index = new SimilarNonConformityIndex(repository, engine, mock(PlatformTransactionManager.class),
+                indexDir.toString(), DIMENSIONS, 16, 100, MIN_SIMILARITY);
+        index.open();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        index.close();
+    }
+
+    @Test
+    void scoreIsConvertedBackToCosine() throws Exception {
+        index.index(entry(1L, "identique", NonConformitySource.AUDIT, NonConformityType.BUG, "OPEN", 10L));
+        index.index(entry(2L, "proche", NonConformitySource.AUDIT, NonConformityType.BUG, "OPEN", 10L));
+
+        List<SimilarNonConformityDTO> results = index.findSimilar("requête", 10, SimilarNonConformityIndex.Filter.NONE);
+
+        assertEquals(List.of(1L, 2L), ids(results));
+        // Lucene renvoie (1 + cos) / 2 pour un produit scalaire de vecteurs unitaires
+        assertEquals(1.0f, results.get(0).getSimilarity(), 1e-5);
+        assertEquals(0.6f, results.get(1).getSimilarity(), 1e-5);
+        assertEquals("proche", results.get(1).getDescription());
+        assertEquals(NonConformitySource.AUDIT, results.get(1).getSource());
+        assertEquals(10L, results.get(1).getIndicatorId());
+    }
+
+    @Test
+    void resultsBelowTheSimilarityThresholdAreDropped() throws Exception {
+        index.index(entry(1L, "orthogonale", NonConformitySource.AUDIT, NonConformityType.BUG, "OPEN", null));
+        index.index(entry(2L, "opposée", NonConformitySource.AUDIT, NonConformityType.BUG, "OPEN", null));
+        index.index(entry(3L, "proche", NonConformitySource.AUDIT, NonConformityType.BUG, "OPEN", null));
+
+        assertEquals(List.of(3L), ids(index.findSimilar("requête", 10, SimilarNonConformityIndex.Filter.NONE)));
+    }
+
+    @Test
+    void filtersRestrictTheCandidates() throws Exception {
+        index.index(entry(1L, "identique", NonConformitySource.AUDIT, NonConformityType.BUG, "OPEN", 10L));
+        index.index(entry(2L, "identique", NonConformitySource.CLIENT_COMPLAINT, NonConformityType.BUG, "FIXED", 10L));
+        index.index(entry(3L, "identique", NonConformitySource.AUDIT, NonConformityType.SECURITY, "fixed", 20L));
+
+        assertEquals(List.of(2L), ids(index.findSimilar("requête", 10,
+                new SimilarNonConformityIndex.Filter(NonConformitySource.CLIENT_COMPLAINT, null, null, null, null))));
+        assertEquals(List.of(3L), ids(index.findSimilar("requête", 10,
+                new SimilarNonConformityIndex.Filter(null, NonConformityType.SECURITY, null, null, null))));
+        // Le statut est comparé sans tenir compte de la casse
+        assertEquals(List.of(2L, 3L), ids(index.findSimilar("requête", 10,
+                new SimilarNonConformityIndex.Filter(null, null, " Fixed ", null, null))));
+        assertEquals(List.of(1L, 2L), ids(index.findSimilar("requête", 10,
+                new SimilarNonConformityIndex.Filter(null, null, null, 10L, null))));
+        assertEquals(List.of(1L, 3L), ids(index.findSimilar("requête", 10,
+                new SimilarNonConformityIndex.Filter(null, null, null, null, 2L))));
+        assertEquals(List.of(3L), ids(index.findSimilar("requête", 10,
+                new SimilarNonConformityIndex.Filter(NonConformitySource.AUDIT, null, "FIXED", null, 1L))));
+    }
+
+    @Test
+    void updatedAndDeletedEntriesAreNotReturnedTwice() throws Exception {
+        index.index(entry(1L, "proche", NonConformitySource.AUDIT, NonConformityType.BUG, "OPEN", null));
+        index.index(entry(1L, "identique", NonConformitySource.AUDIT, NonConformityType.BUG, "FIXED", null));
+        index.index(entry(2L, "identique", NonConformitySource.AUDIT, NonConformityType.BUG, "OPEN", null));
+        index.delete(2L);
+
+        List<SimilarNonConformityDTO> results = index.findSimilar("requête", 10, SimilarNonConformityIndex.Filter.NONE);
+
+        assertEquals(List.of(1L), ids(results));
+        assertEquals("FIXED", results.get(0).getStatus());
+    }
+
+    @Test
+    void rebuildIndexesEachNonConformityOnce() throws Exception {
+        index.index(entry(1L, "identique", NonConformitySource.AUDIT, NonConformityType.BUG, "OPEN", null));
+        when(repository.findAll(any(Pageable.class))).thenAnswer(invocation -> {
+            Pageable pageable = invocation.getArgument(0);
+            List<Non_Conformity> all = List.of(nonConformity(1L, "identique"), nonConformity(2L, "proche"));
+            return new PageImpl<>(pageable.getPageNumber() == 0 ? all : List.of(), pageable, all.size());
+        });
+
+        assertEquals(2, index.rebuild());
+        assertEquals(List.of(1L, 2L), ids(index.findSimilar("requête", 10, SimilarNonConformityIndex.Filter.NONE)));
+    }
+
+    private static SimilarNonConformityIndex.IndexEntry entry(Long id, String description, NonConformitySource source,
+                                                              NonConformityType type, String status, Long indicatorId) {
+        return new SimilarNonConformityIndex.IndexEntry(id, description, null, source, type, status, indicatorId);
+    }
+
+    private static Non_Conformity nonConformity(Long id, String description) {
+        Non_Conformity nc = new Non_Conformity();
+        nc.setIdNonConformity(id);
+        nc.setDescription(description);
+        nc.setSource(NonConformitySource.AUDIT);
+        nc.setType(NonConformityType.BUG);
+        nc.setStatus("OPEN");
+        return nc;
+    }
+
+    private static List<Long> ids(List<SimilarNonConformityDTO> results) {
+        return results.stream().map(SimilarNonConformityDTO::getIdNonConformity).toList();
+    }
+}
@@ -0,0 +1,100 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextDeltaCodecTest {
+
+    @Test
+    void roundTripRestoresTargetExactly() {
+        String base = "Titre\nIntroduction\nSection 1\nSection 2\nConclusion\n";
+        String target = "Titre\nIntroduction révisée\nSection 1\nSection 1 bis\nConclusion";
+
+        String delta = TextDeltaCodec.encode(base, target);
+
+        assertNotNull(delta);
+        assertEquals(target, TextDeltaCodec.apply(base, delta));
+    }
+
+    @Test
+    void identicalTextsOnlyCopyLines() {
+        String text = "a\nb\nc\n";
+
+        String delta = TextDeltaCodec.encode(text, text);
+
+        assertEquals("=3;", delta);
+        assertEquals(text, TextDeltaCodec.apply(text, delta));
+    }
+
+    @Test
+    void handlesEmptyTextsAndLineEndings() {
+        assertEquals("", TextDeltaCodec.apply("", TextDeltaCodec.encode("", "")));
+        assertEquals("x\r\ny", TextDeltaCodec.apply("", TextDeltaCodec.encode("", "x\r\ny")));
+        assertEquals("", TextDeltaCodec.apply("x\ny\n", TextDeltaCodec.encode("x\ny\n", "")));
+        // Seule la fin de ligne de la dernière ligne change
+        assertEquals("a\nb\n", TextDeltaCodec.apply("a\nb", TextDeltaCodec.encode("a\nb", "a\nb\n")));
+    }
+
+    @Test
+    void insertedTextMayContainDeltaSyntax() {
+        String base = "ligne\n";
+        String target = "=3;+2;-1;\nligne\n;;\n";
+
+        assertEquals(target, TextDeltaCodec.apply(base, TextDeltaCodec.encode(base, target)));
+    }
+
+    @Test
+    void randomEditsRoundTrip() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            String base = randomText(random, random.nextInt(40));
+            String target = mutate(random, base);
+
+            String delta = TextDeltaCodec.encode(base, target);
+
+            assertNotNull(delta);
+            assertEquals(target, TextDeltaCodec.apply(base, delta), "essai " + run);
+        }
+    }
+
+    @Test
+    void tooManyEditsGiveNoDelta() {
+        StringBuilder base = new StringBuilder();
+        StringBuilder target = new StringBuilder();
+        for (int i = 0; i < 1500; i++) {
+            base.append("a").append(i).append('\n');
+            target.append("b").append(i).append('\n');
+        }
+
+        assertNull(TextDeltaCodec.encode(base.toString(), target.toString()));
+    }
+
+    private static String randomText(Random random, int lines) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append("l").append(random.nextInt(8)).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String mutate(Random random, String base) {
+        StringBuilder out = new StringBuilder();
+        for (String line : base.split("(?<=\n)")) {
+            int action = random.nextInt(6);
+            if (action == 0) {
+                continue;
+            }
+            if (action == 1) {
+                out.append("nouveau ").append(random.nextInt(100)).append('\n');
+            }
+            out.append(line);
+        }
+        if (random.nextBoolean()) {
+            out.append("fin sans retour");
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Forêt de deux arbres dont les prédictions se calculent à la main.
+ */
+class TreeEnsembleModelTest {
+
+    // Arbre 1 : x0 <= 5 -> 10, sinon 20
+    private static final String TREE_1 = """
+            {"feature": [0, -2, -2], "threshold": [5.0, -2, -2],
+             "left": [1, -1, -1], "right": [2, -1, -1], "value": [0, 10.0, 20.0]}""";
+    // Arbre 2 : x1 <= 0.5 -> 1, sinon (x0 <= 2 -> 3, sinon 5)
+    private static final String TREE_2 = """
+            {"feature": [1, -2, 0, -2, -2], "threshold": [0.5, -2, 2.0, -2, -2],
+             "left": [1, -1, 3, -1, -1], "right": [2, -1, 4, -1, -1], "value": [0, 1.0, 0, 3.0, 5.0]}""";
+
+    @Test
+    void predictionIsTheMeanOfTheLeavesReached() throws IOException {
+        TreeEnsembleModel model = read("""
+                {"features": ["x0", "x1"], "categories": ["A", "B"], "trees": [%s, %s]}""".formatted(TREE_1, TREE_2));
+
+        assertEquals(2, model.featureCount());
+        assertEquals(2, model.treeCount());
+        // Seuil inclusif, comme scikit-learn (x <= seuil va à gauche)
+        assertEquals((10.0 + 1.0) / 2, model.predict(new double[]{5, 0}), 1e-9);
+        assertEquals((20.0 + 5.0) / 2, model.predict(new double[]{6, 1}), 1e-9);
+        assertEquals((10.0 + 3.0) / 2, model.predict(new double[]{1, 1}), 1e-9);
+    }
+
+    @Test
+    void categoriesAreEncodedByRank() throws IOException {
+        TreeEnsembleModel model = read("""
+                {"features": ["x0", "x1"], "categories": ["A", "B"], "trees": [%s]}""".formatted(TREE_1));
+
+        assertEquals(0, model.encodeCategory("A"));
+        assertEquals(1, model.encodeCategory("B"));
+        assertEquals(-1, model.encodeCategory("C"));
+        assertEquals(-1, model.encodeCategory(null));
+    }
+
+    @Test
+    void rejectsInputOfTheWrongSize() throws IOException {
+        TreeEnsembleModel model = read("""
+                {"features": ["x0", "x1"], "trees": [%s]}""".formatted(TREE_1));
+
+        assertThrows(IllegalArgumentException.class, () -> model.predict(new double[]{1}));
+    }
+
+    @Test
+    void rejectsMalformedTrees() {
+        // Enfant d'indice inférieur au parent : le parcours pourrait boucler
+        String cycle = """
+                {"feature": [0, 0], "threshold": [1.0, 1.0], "left": [1, 0], "right": [1, 0], "value": [0, 0]}""";
+        String unknownFeature = """
+                {"feature": [3, -2, -2], "threshold": [1.0, -2, -2], "left": [1, -1, -1], "right": [2, -1, -1], "value": [0, 1, 2]}""";
+        String sizeMismatch = """
+                {"feature": [0], "threshold": [1.0, 2.0], "left": [-1], "right": [-1], "value": [1.0]}""";
+
+        for (String tree : new String[]{cycle, unknownFeature, sizeMismatch}) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> read("{\"features\": [\"x0\"], \"trees\": [" + tree + "]}"), tree);
+        }
+        assertThrows(IllegalArgumentException.class, () -> read("{\"features\": [\"x0\"], \"trees\": []}"));
+        assertThrows(IllegalArgumentException.class, () -> read("{\"features\": [], \"trees\": [" + TREE_1 + "]}"));
+    }
+
+    private static TreeEnsembleModel read(String json) throws IOException {
+        return TreeEnsembleModel.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), new ObjectMapper());
+    }
+}
@@ -0,0 +1,116 @@
+package tn.esprit.examen.nomPrenomClasseExamen.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Document;
+import tn.esprit.examen.nomPrenomClasseExamen.entities.Version;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.DocumentationRepository;
+import tn.esprit.examen.nomPrenomClasseExamen.repositories.VersionRepository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Cadence des versions complètes : le dépôt de versions est simulé en mémoire.
+ */
+class VersionServicesTest {
+
+    private static final int SNAPSHOT_INTERVAL = 10;
+
+    private final List<Version> stored = new ArrayList<>();
+    private Document document;
+    private VersionServices service;
+
+    @BeforeEach
+    void setUp() {
+        document = new Document();
+        document.setId(1L);
+
+        DocumentationRepository documentRepository = mock(DocumentationRepository.class);
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+
+        VersionRepository versionRepository = mock(VersionRepository.class);
+        when(versionRepository.save(any(Version.class))).thenAnswer(invocation -> {
+            Version version = invocation.getArgument(0);
+            if (!stored.contains(version)) {
+                stored.add(version);
+            }
+            return version;
+        });
+        when(versionRepository.findMaxNumeroVersion(any())).thenAnswer(invocation ->
+                stored.stream().mapToLong(Version::getNumeroVersion).max().orElse(0L));
+        when(versionRepository.findSnapshotNumeroAtOrBefore(any(), anyLong())).thenAnswer(invocation -> {
+            long at = invocation.getArgument(1);
+            return stored.stream()
+                    .filter(v -> v.isSnapshot() && v.getNumeroVersion() <= at)
+                    .map(Version::getNumeroVersion)
+                    .max(Long::compare)
+                    .orElse(null);
+        });
+        when(versionRepository.findByDocumentAndNumeroVersionBetweenOrderByNumeroVersionAsc(any(), anyLong(), anyLong()))
+                .thenAnswer(invocation -> between(invocation.getArgument(1), invocation.getArgument(2)));
+        when(versionRepository.findByDocumentOrderByNumeroVersionAsc(any()))
+                .thenAnswer(invocation -> between(Long.MIN_VALUE, Long.MAX_VALUE));
+
+        service = new VersionServices(versionRepository, documentRepository);
+        ReflectionTestUtils.setField(service, "snapshotInterval", SNAPSHOT_INTERVAL);
+    }
+
+    @Test
+    void fullVersionIsStoredEverySnapshotInterval() {
+        List<String> contents = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            text.append("Paragraphe initial ").append(i).append(" de la procédure qualité.\n");
+        }
+        for (int n = 1; n <= 25; n++) {
+            text.append("Modification ").append(n).append('\n');
+            contents.add(text.toString());
+            service.createVersion(newVersion(text.toString()));
+        }
+
+        for (Version version : stored) {
+            long n = version.getNumeroVersion();
+            assertEquals((n - 1) % SNAPSHOT_INTERVAL == 0, version.isSnapshot(), "version " + n);
+        }
+
+        List<Version> replayed = service.getVersionsByDocument(1L);
+        assertEquals(25, replayed.size());
+        for (int i = 0; i < replayed.size(); i++) {
+            assertEquals(contents.get(i), replayed.get(i).getContenu(), "version " + (i + 1));
+        }
+    }
+
+    @Test
+    void versionIsStoredInFullWhenDeltaIsNotShorter() {
+        service.createVersion(newVersion("a\n"));
+        service.createVersion(newVersion("texte entièrement différent\n"));
+
+        assertTrue(stored.get(1).isSnapshot());
+        assertEquals("texte entièrement différent\n", stored.get(1).getSnapshotContenu());
+    }
+
+    private Version newVersion(String content) {
+        Version version = new Version();
+        version.setDocument(document);
+        version.setContenu(content);
+        version.setModifiePar("test");
+        return version;
+    }
+
+    private List<Version> between(long from, long to) {
+        return stored.stream()
+                .filter(v -> v.getNumeroVersion() >= from && v.getNumeroVersion() <= to)
+                .sorted(Comparator.comparing(Version::getNumeroVersion))
+                .toList();
+    }
+}
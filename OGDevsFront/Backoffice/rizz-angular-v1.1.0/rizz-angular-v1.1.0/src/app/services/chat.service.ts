@@ -1,5 +1,5 @@
 import { Injectable } from '@angular/core';
-import { HttpClient, HttpHeaders } from '@angular/common/http';
+import { HttpClient, HttpHeaders, HttpParams } from '@angular/common/http';
 import { Observable, Subject } from 'rxjs';
 import { KeycloakService } from 'keycloak-angular';
 import { Client } from '@stomp/stompjs';
@@ -24,6 +24,14 @@ export interface ChatRoomDTO {
   userIds?: string[];
 }
 
+export interface ChatAttachment {
+  id: number;
+  fileName: string;
+  contentType: string;
+  size: number;
+  url: string;
+}
+
 export interface MessageDTO {
   id: number;
   chatRoomId: number;
@@ -31,11 +39,17 @@ export interface MessageDTO {
   senderId: string;
   senderUsername: string;
   content: string;
-  attachment: string | null;
+  attachment: ChatAttachment | null;
   createdAt: string;
   seen: boolean;
 }
 
+// Page de messages, du plus récent au plus ancien ; nextCursor est null quand l'historique est complet
+export interface MessagePage {
+  messages: MessageDTO[];
+  nextCursor: number | null;
+}
+
 export interface MessageRequest {
   chatRoomId: number;
   message: string;
@@ -315,11 +329,31 @@ export class ChatService {
 
   getMessages(roomId: number): Observable<MessageDTO[]> {
     return new Observable<MessageDTO[]>(observer => {
+      this.getMessagePage(roomId).subscribe({
+        next: (page) => observer.next(page.messages),
+        error: (error) => observer.error(error),
+        complete: () => observer.complete()
+      });
+    });
+  }
+
+  // before : curseur renvoyé par la page précédente (en-tête X-Next-Cursor), pour remonter l'historique
+  getMessagePage(roomId: number, before?: number | null): Observable<MessagePage> {
+    return new Observable<MessagePage>(observer => {
       this.getHeaders().then(headers => {
-        this.http.get<MessageDTO[]>(`${this.apiUrl}/chat/rooms/${roomId}/messages`, { headers }).subscribe({
+        let params = new HttpParams();
+        if (before != null) {
+          params = params.set('before', before);
+        }
+        this.http.get<MessageDTO[]>(`${this.apiUrl}/chat/rooms/${roomId}/messages`, { headers, params, observe: 'response' }).subscribe({
           next: (response) => {
-            console.log('📩 Messages fetched for room', roomId, ':', response);
-            observer.next(response);
+            const cursor = response.headers.get('X-Next-Cursor');
+            const page: MessagePage = {
+              messages: response.body ?? [],
+              nextCursor: cursor ? Number(cursor) : null
+            };
+            console.log('📩 Messages fetched for room', roomId, ':', page);
+            observer.next(page);
           },
           error: (error) => {
             console.error('❌ Failed to fetch messages for room', roomId, ':', error);
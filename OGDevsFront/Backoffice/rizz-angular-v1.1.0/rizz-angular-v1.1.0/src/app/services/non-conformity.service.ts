@@ -1,7 +1,7 @@
 import { Injectable } from '@angular/core';
-import { HttpClient, HttpHeaders } from '@angular/common/http';
+import { HttpClient, HttpHeaders, HttpParams } from '@angular/common/http';
 import { Observable, throwError } from 'rxjs';
-import { catchError, lastValueFrom } from 'rxjs';
+import { catchError, lastValueFrom, map } from 'rxjs';
 import { NonConformityDTO } from '@core/models/nonconformance.model';
 import { IndicatorDTO } from '@/app/services/indicator.model'; // Use the updated IndicatorDTO
 import { KeycloakService } from 'keycloak-angular';
@@ -170,6 +170,45 @@ export class NonConformityService {
     );
   }
 
+  // One page of the register (page is 0-based); the total comes from the X-Total-Count header
+  async getNonConformitiesPage(page: number, size: number): Promise<Observable<{ items: NonConformityDTO[]; total: number }>> {
+    const headers = await this.getHeaders();
+    if (!headers) return throwError(() => new Error('User not authenticated'));
+
+    const params = new HttpParams().set('page', page).set('size', size);
+    return this.http.get<NonConformityDTO[]>(`${this.apiUrl}/api/nonconformities`, { headers, params, observe: 'response' }).pipe(
+      map((response) => {
+        const items = response.body ?? [];
+        const total = Number(response.headers.get('X-Total-Count'));
+        return { items, total: Number.isNaN(total) ? items.length : total };
+      }),
+      catchError((error) => {
+        const errorMessage = error.statusText
+          ? `HTTP ${error.status}: ${error.statusText} - ${error.error?.error || error.error || 'Unknown error'}`
+          : `Error: ${error.message || 'Unknown error'}`;
+        console.error('❌ Error fetching non-conformities:', errorMessage);
+        return throwError(() => new Error(errorMessage));
+      })
+    );
+  }
+
+  // Attachments require a bearer token: the file is fetched here and opened from a blob URL
+  async downloadAttachment(url: string): Promise<Observable<Blob>> {
+    const headers = await this.getHeaders(true);
+    if (!headers) return throwError(() => new Error('User not authenticated'));
+
+    const absoluteUrl = /^https?:\/\//.test(url) ? url : `${this.apiUrl}${url}`;
+    return this.http.get(absoluteUrl, { headers, responseType: 'blob' }).pipe(
+      catchError((error) => {
+        const errorMessage = error.statusText
+          ? `HTTP ${error.status}: ${error.statusText}`
+          : `Error: ${error.message || 'Unknown error'}`;
+        console.error('❌ Error downloading attachment:', errorMessage);
+        return throwError(() => new Error(errorMessage));
+      })
+    );
+  }
+
   async addNonConformance(nonConformance: NonConformityDTO, isByIndicator: boolean = false): Promise<Observable<NonConformityDTO>> {
     const headers = await this.getHeaders();
     if (!headers) return throwError(() => new Error('User not authenticated'));
@@ -615,6 +615,8 @@ export class ChatComponent implements OnInit, OnDestroy {
   chatRooms: ChatRoom[] = [];
   selectedRoom: ChatRoom | null = null;
   messages: MessageDTO[] = [];
+  nextCursor: number | null = null;
+  loadingOlder = false;
   messageContent: string = '';
   userId: string | null = null;
   errorMessage: string | null = null;
@@ -898,11 +900,13 @@ export class ChatComponent implements OnInit, OnDestroy {
   }
 
   loadMessages(roomId: number): void {
-    this.chatService.getMessages(roomId).subscribe({
-      next: (messages) => {
-        console.log('📩 Loaded messages for room', roomId, ':', messages);
-        this.messages = messages;
+    this.nextCursor = null;
+    this.chatService.getMessagePage(roomId).subscribe({
+      next: (page) => {
+        console.log('📩 Loaded messages for room', roomId, ':', page.messages);
+        this.messages = page.messages;
         this.messages.sort((a, b) => new Date(a.createdAt).getTime() - new Date(b.createdAt).getTime());
+        this.nextCursor = page.nextCursor;
       },
       error: (err) => {
         this.showError('Failed to load messages. Please try again.');
@@ -911,6 +915,31 @@ export class ChatComponent implements OnInit, OnDestroy {
     });
   }
 
+  loadOlderMessages(): void {
+    if (!this.selectedRoom || this.nextCursor == null || this.loadingOlder) {
+      return;
+    }
+    const roomId = this.selectedRoom.id;
+    this.loadingOlder = true;
+    this.chatService.getMessagePage(roomId, this.nextCursor).subscribe({
+      next: (page) => {
+        this.loadingOlder = false;
+        if (this.selectedRoom?.id !== roomId) {
+          return;
+        }
+        const known = new Set(this.messages.map(msg => msg.id));
+        this.messages = [...page.messages.filter(msg => !known.has(msg.id)), ...this.messages];
+        this.messages.sort((a, b) => new Date(a.createdAt).getTime() - new Date(b.createdAt).getTime());
+        this.nextCursor = page.nextCursor;
+      },
+      error: (err) => {
+        this.loadingOlder = false;
+        this.showError('Failed to load older messages. Please try again.');
+        console.error('❌ Failed to load older messages:', err);
+      }
+    });
+  }
+
   sendMessage(): void {
     if (this.messageContent.trim() && this.selectedRoom) {
       const messageRequest: MessageRequest = {
@@ -3,7 +3,7 @@ import { FormBuilder, FormGroup, Validators } from '@angular/forms';
 import { CommonModule } from '@angular/common';
 import { FormsModule, ReactiveFormsModule } from '@angular/forms';
 import { Router } from '@angular/router';
-import { NgbModal, NgbModalRef } from '@ng-bootstrap/ng-bootstrap';
+import { NgbModal, NgbModalRef, NgbPaginationModule } from '@ng-bootstrap/ng-bootstrap';
 import { lastValueFrom, Observable } from 'rxjs';
 import { NonConformityService } from '@/app/services/non-conformity.service';
 import { SweetAlertService } from '@/app/services/sweet-alert.service';
@@ -26,7 +26,7 @@ interface ChatMessage {
 @Component({
   selector: 'app-non-conformance',
   standalone: true,
-  imports: [CommonModule, FormsModule, ReactiveFormsModule, NotificationComponent , JustGageDirective],
+  imports: [CommonModule, FormsModule, ReactiveFormsModule, NgbPaginationModule, NotificationComponent , JustGageDirective],
   templateUrl: './non-conformance.component.html',
   styleUrls: ['./non-conformance.component.scss'],
 })
@@ -38,6 +38,10 @@ export class NonConformanceComponent implements OnInit, AfterViewInit, AfterView
   @ViewChild('chatBody') chatBody!: ElementRef;
 
   nonConformities: NonConformityDTO[] = [];
+  // Register paging (ngb-pagination is 1-based, the API 0-based)
+  ncPage = 1;
+  ncPageSize = 20;
+  ncCollectionSize = 0;
   indicators: IndicatorDTO[] = [];
   hasIndMag02: boolean = false; // Add this property
   hasIndMag01: boolean = false; // Add this property
@@ -126,8 +130,9 @@ export class NonConformanceComponent implements OnInit, AfterViewInit, AfterView
   async loadNonConformities(): Promise<void> {
     this.loading = true;
     try {
-      const nonConformitiesObservable = await this.conformityService.getAllNonConformities();
-      const nonConformities = await lastValueFrom(nonConformitiesObservable);
+      const pageObservable = await this.conformityService.getNonConformitiesPage(this.ncPage - 1, this.ncPageSize);
+      const { items: nonConformities, total } = await lastValueFrom(pageObservable);
+      this.ncCollectionSize = total;
 
       this.nonConformities = nonConformities.map((nc) => {
         if (nc.indicatorId) {
@@ -225,7 +230,6 @@ export class NonConformanceComponent implements OnInit, AfterViewInit, AfterView
       if (matchingIndicator) {
         added.indicator = matchingIndicator;
       }
-      this.nonConformities.push(added);
       this.modalService.dismissAll();
 
       if (this.isNotificationComponentReady && this.notificationComponent) {
@@ -239,7 +243,9 @@ export class NonConformanceComponent implements OnInit, AfterViewInit, AfterView
         console.warn('NotificationComponent not ready yet');
       }
 
-      this.loadNonConformities();
+      // The register is newest-first: the new item and the updated total come from page 1
+      this.ncPage = 1;
+      await this.loadNonConformities();
     } catch (error: any) {
       console.error('❌ Error adding non-conformance:', error);
       this.notificationService.showNotification('Failed to add non-conformance', 'error');
@@ -310,7 +316,12 @@ export class NonConformanceComponent implements OnInit, AfterViewInit, AfterView
     try {
       const deleteObservable: Observable<void> = await this.conformityService.deleteNonConformance(id);
       await lastValueFrom(deleteObservable);
-      this.nonConformities = this.nonConformities.filter((nc) => nc.idNonConformity !== id);
+      await this.loadNonConformities();
+      // Deleting the last row of a page: step back to the previous one
+      if (this.nonConformities.length === 0 && this.ncPage > 1) {
+        this.ncPage--;
+        await this.loadNonConformities();
+      }
       this.sweetAlertService.showSuccess('Non-conformity deleted successfully!');
     } catch (error: any) {
       console.error('Error deleting non-conformity:', error);
@@ -318,6 +329,28 @@ export class NonConformanceComponent implements OnInit, AfterViewInit, AfterView
     }
   }
 
+  async openAttachment(attachment: string): Promise<void> {
+    // Opened before the download so the browser does not treat it as an unsolicited popup
+    const tab = window.open('', '_blank');
+    try {
+      const blob = await lastValueFrom(await this.conformityService.downloadAttachment(attachment));
+      const objectUrl = URL.createObjectURL(blob);
+      if (tab) {
+        tab.location.href = objectUrl;
+      } else {
+        const link = document.createElement('a');
+        link.href = objectUrl;
+        link.download = attachment.split('/').pop() || 'attachment';
+        link.click();
+      }
+      setTimeout(() => URL.revokeObjectURL(objectUrl), 60000);
+    } catch (error: any) {
+      tab?.close();
+      console.error('Error opening attachment:', error);
+      this.sweetAlertService.showError(`Failed to open attachment: ${error.message || 'Unknown error'}`);
+    }
+  }
+
   viewNonConformityDetails(id: number): void {
     this.selectedNonConformity = this.nonConformities.find((nc) => nc.idNonConformity === id) || null;
   }